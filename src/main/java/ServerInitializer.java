@@ -13,7 +13,8 @@ public class ServerInitializer {
 
     public static void initializeServer (Map<String, RouteHandler> handlers) {
         /* Generate a in-memory representation of the graph */
-        Constants.graph = new GraphDB(Constants.OSM_DB_PATH);
+        Constants.graph = GraphDB.load(Constants.OSM_DB_PATH, Constants.OSM_IMPORTER,
+                Constants.GRAPH_STORAGE);
 
         /* Create a new image rasterer */
         Constants.rasterer = new Rasterer();
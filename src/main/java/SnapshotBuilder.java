@@ -0,0 +1,25 @@
+import service.GraphDB;
+import service.GraphSnapshot;
+import utils.Constants;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The entry point for writing the binary snapshot of the graph, which lets the map server
+ * start without re-parsing the OSM XML or building the Contraction Hierarchy. Takes an
+ * optional OSM file path as its argument, defaulting to the one the server uses.
+ */
+public class SnapshotBuilder {
+    public static void main(String[] args) throws IOException {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        File snapshot = GraphSnapshot.snapshotFor(dbPath);
+
+        long start = System.currentTimeMillis();
+        GraphDB graph = new GraphDB(dbPath, Constants.OSM_IMPORTER);
+        GraphSnapshot.write(graph, new File(dbPath), snapshot);
+
+        System.out.println(String.format("Wrote %s (%d bytes) in %d ms", snapshot.getPath(),
+                snapshot.length(), System.currentTimeMillis() - start));
+    }
+}
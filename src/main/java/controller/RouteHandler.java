@@ -22,7 +22,7 @@ public abstract class RouteHandler<Req, Res> implements Route {
     /**
      * HTTP invalid request response.
      */
-    private static final int HALT_RESPONSE = 400;
+    protected static final int HALT_RESPONSE = 400;
 
     private Gson gson;
 
@@ -14,6 +14,9 @@ public class RouteHandlerFactory {
         handlerMap.put("raster", new RasterHandler());
         handlerMap.put("route", new RouterHandler());
         handlerMap.put("clear_route", new ClearRouteHandler());
+        handlerMap.put("route_cache", new RouteCacheHandler());
+        handlerMap.put("matrix", new MatrixHandler());
+        handlerMap.put("isochrone", new IsochroneHandler());
         handlerMap.put("search", new SearchHandler());
         handlerMap.put("", new RedirectHandler());
     }
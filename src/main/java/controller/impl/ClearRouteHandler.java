@@ -4,7 +4,9 @@ import controller.RouteHandler;
 import spark.Request;
 import spark.Response;
 
+import static utils.Constants.ISOCHRONES;
 import static utils.Constants.ROUTES;
+import static utils.Constants.ROUTE_ENDPOINTS;
 
 public class ClearRouteHandler extends RouteHandler {
     @Override
@@ -14,7 +16,13 @@ public class ClearRouteHandler extends RouteHandler {
 
     @Override
     protected Object processRequest(Object params, Response res) {
-        ROUTES.clear();
+        synchronized (ROUTES) {
+            ROUTES.clear();
+            ROUTE_ENDPOINTS.clear();
+        }
+        synchronized (ISOCHRONES) {
+            ISOCHRONES.clear();
+        }
         return true;
     }
 }
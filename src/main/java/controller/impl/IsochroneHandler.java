@@ -0,0 +1,50 @@
+package controller.impl;
+
+import controller.RouteHandler;
+import service.Isochrone;
+import service.IsochroneSearch;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static spark.Spark.halt;
+import static utils.Constants.ISOCHRONES;
+import static utils.Constants.graph;
+
+/**
+ * Answers what is reachable from a point within some distance along the roads, e.g.
+ * /isochrone?lon=-122.26&lat=37.87&miles=1, and draws the reachable area over the map until
+ * the route is cleared.
+ */
+public class IsochroneHandler extends RouteHandler<double[], Map<String, Object>> {
+    private static final String[] REQUIRED_PARAMS = {"lon", "lat", "miles"};
+
+    @Override
+    protected double[] parseRequestParams(Request req) {
+        Map<String, Double> params = getRequestParams(req, REQUIRED_PARAMS);
+        double miles = params.get("miles");
+        if (!(miles >= 0) || Double.isInfinite(miles)) {
+            halt(HALT_RESPONSE, "Invalid Request - miles must be a finite, non-negative number.");
+        }
+        return new double[] {params.get("lon"), params.get("lat"), miles};
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(double[] params, Response res) {
+        Isochrone isochrone = IsochroneSearch.isochrone(graph, params[0], params[1], params[2]);
+        synchronized (ISOCHRONES) {
+            ISOCHRONES.clear();
+            ISOCHRONES.add(isochrone);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("origin", new double[] {isochrone.originLon, isochrone.originLat});
+        result.put("nodes", isochrone.nodes);
+        result.put("cells", isochrone.cells());
+        result.put("outline", isochrone.outline());
+        result.put("isochrone_success", isochrone.nodes.length > 0);
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+package controller.impl;
+
+import controller.RouteHandler;
+import service.DistanceMatrix;
+import spark.Request;
+import spark.Response;
+import utils.Constants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static spark.Spark.halt;
+import static utils.Constants.graph;
+
+/**
+ * Answers the lengths of the shortest routes between many points at once, e.g.
+ * /matrix?sources=lon,lat;lon,lat&targets=lon,lat;lon,lat. Without targets, the routes
+ * between every two sources are answered. With metric=time, the times of the fastest routes
+ * are answered instead, in minutes.
+ */
+public class MatrixHandler
+        extends RouteHandler<MatrixHandler.MatrixRequest, Map<String, Object>> {
+
+    /** What the cells of a matrix measure, each answered under its own key. */
+    enum Metric {
+        /** The lengths of the shortest routes, in miles. */
+        DISTANCE("distances"),
+        /** The times of the fastest routes, in minutes. */
+        TIME("times");
+
+        final String key;
+
+        Metric(String key) {
+            this.key = key;
+        }
+    }
+
+    /** A parsed matrix request: its {lon, lat} sources and targets, and the metric. */
+    static final class MatrixRequest {
+        final double[][] sources;
+        final double[][] targets;
+        final Metric metric;
+
+        MatrixRequest(double[][] sources, double[][] targets, Metric metric) {
+            this.sources = sources;
+            this.targets = targets;
+            this.metric = metric;
+        }
+    }
+
+    @Override
+    protected MatrixRequest parseRequestParams(Request req) {
+        if (req.queryParams("sources") == null) {
+            halt(HALT_RESPONSE, "Invalid Request - parameters missing.");
+        }
+        double[][] sources = parsePoints(req.queryParams("sources"));
+        double[][] targets = req.queryParams("targets") == null
+                ? sources : parsePoints(req.queryParams("targets"));
+        /* The optional metric parameter is distance, the default, or time */
+        Metric metric = Metric.DISTANCE;
+        if (req.queryParams("metric") != null) {
+            try {
+                metric = Metric.valueOf(req.queryParams("metric").toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Invalid Request - metric must be distance or time.");
+            }
+        }
+        return new MatrixRequest(sources, targets, metric);
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(MatrixRequest request, Response res) {
+        double[][] matrix = request.metric == Metric.TIME
+                ? DistanceMatrix.timeMatrix(graph, request.sources, request.targets)
+                : DistanceMatrix.distanceMatrix(graph, request.sources, request.targets);
+
+        /* Routes that are not found are null, which JSON has in place of infinity */
+        List<List<Double>> rows = new ArrayList<>();
+        for (double[] row : matrix) {
+            List<Double> cells = new ArrayList<>(row.length);
+            for (double d : row) cells.add(Double.isInfinite(d) ? null : d);
+            rows.add(cells);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put(request.metric.key, rows);
+        result.put("matrix_success", true);
+        return result;
+    }
+
+    /* Parses points given as lon,lat pairs separated by semicolons */
+    private static double[][] parsePoints(String value) {
+        String[] pairs = value.split(";");
+        if (pairs.length > Constants.MATRIX_MAX_POINTS) {
+            halt(HALT_RESPONSE, "Invalid Request - too many points.");
+        }
+        double[][] points = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; i++) {
+            String[] lonLat = pairs[i].split(",");
+            try {
+                if (lonLat.length != 2) throw new NumberFormatException(pairs[i]);
+                points[i] = new double[] {Double.parseDouble(lonLat[0].trim()),
+                        Double.parseDouble(lonLat[1].trim())};
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+        }
+        return points;
+    }
+}
@@ -0,0 +1,25 @@
+package controller.impl;
+
+import controller.RouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.Map;
+
+import static utils.Constants.graph;
+
+/**
+ * Reports how many routes the route cache of the graph holds, and its hits, misses and
+ * evictions so far.
+ */
+public class RouteCacheHandler extends RouteHandler<Object, Map<String, Long>> {
+    @Override
+    protected Object parseRequestParams(Request req) {
+        return null;
+    }
+
+    @Override
+    protected Map<String, Long> processRequest(Object params, Response res) {
+        return graph.getRouteCache().stats();
+    }
+}
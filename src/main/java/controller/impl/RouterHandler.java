@@ -1,41 +1,224 @@
 package controller.impl;
 
+import service.AlternativeRoutes;
+import service.RouteCache;
 import service.Router;
 import controller.RouteHandler;
 import spark.Request;
 import spark.Response;
 import utils.Constants;
+import utils.dataStructures.spatial.EdgeSnap;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import static spark.Spark.halt;
 import static utils.TextFormatter.getDirectionsText;
 import static utils.Constants.graph;
 import static utils.Constants.ROUTES;
+import static utils.Constants.ROUTE_ENDPOINTS;
+
+public class RouterHandler extends RouteHandler<RouterHandler.RouteRequest, Map<String, Object>> {
+
+    /**
+     * A parsed route request: the coordinates of its endpoints, how to search the route, the
+     * profile it is weighed by and how many routes to answer.
+     */
+    static final class RouteRequest {
+        final Map<String, Double> params;
+        final Router.Search search;
+        final Router.Weighting weighting;
+        final int alternatives;
+
+        RouteRequest(Map<String, Double> params, Router.Search search,
+                     Router.Weighting weighting, int alternatives) {
+            this.params = params;
+            this.search = search;
+            this.weighting = weighting;
+            this.alternatives = alternatives;
+        }
+    }
 
-public class RouterHandler extends RouteHandler<Map<String, Double>, Map<String, Object>> {
     @Override
-    protected Map<String, Double> parseRequestParams(Request req) {
-        return getRequestParams(req, Constants.REQUIRED_ROUTE_REQUEST_PARAMS);
+    protected RouteRequest parseRequestParams(Request req) {
+        Map<String, Double> params =
+                getRequestParams(req, Constants.REQUIRED_ROUTE_REQUEST_PARAMS);
+        /* The optional search parameter names a Router.Search, e.g. search=bidirectional */
+        Router.Search search = Constants.ROUTE_SEARCH;
+        if (req.queryParams("search") != null) {
+            try {
+                String name = req.queryParams("search").toUpperCase(Locale.ROOT);
+                search = Router.Search.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Invalid Request - unknown search.");
+            }
+        }
+        /* The optional profile parameter names a Router.Weighting, e.g. profile=fastest */
+        Router.Weighting weighting = Constants.ROUTE_WEIGHTING;
+        if (req.queryParams("profile") != null) {
+            try {
+                String name = req.queryParams("profile").toUpperCase(Locale.ROOT);
+                weighting = Router.Weighting.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                halt(HALT_RESPONSE, "Invalid Request - unknown profile.");
+            }
+        }
+        /* The optional alternatives parameter asks for up to that many routes, the shortest
+         * and others that are meaningfully different, e.g. alternatives=3 */
+        int alternatives = 1;
+        if (req.queryParams("alternatives") != null) {
+            try {
+                alternatives = Integer.parseInt(req.queryParams("alternatives"));
+                if (alternatives < 1 || alternatives > Constants.ALTERNATIVE_ROUTES_MAX) {
+                    throw new NumberFormatException(req.queryParams("alternatives"));
+                }
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Invalid Request - alternatives must be between 1 and "
+                        + Constants.ALTERNATIVE_ROUTES_MAX + ".");
+            }
+        }
+        return new RouteRequest(params, search, weighting, alternatives);
     }
 
     @Override
-    protected Map<String, Object> processRequest(Map<String, Double> params, Response res) {
-        ROUTES.clear();
+    protected Map<String, Object> processRequest(RouteRequest request, Response res) {
+        Map<String, Double> params = request.params;
+        Router.Search search = request.search;
+        Router.Weighting weighting = request.weighting;
+        double startLon = params.get("start_lon"), startLat = params.get("start_lat");
+        double endLon = params.get("end_lon"), endLat = params.get("end_lat");
+        if (request.alternatives > 1) {
+            return routeAlternatives(params, request.alternatives, weighting);
+        }
+        /* Routes are searched without holding any lock; only publishing the route drawn on
+         * the map is serialised. A route whose endpoints snap to the same places as one
+         * answered before is served from the cache of the graph, without a search. */
+        RouteCache cache = graph.getRouteCache();
+        RouteCache.Key key;
+        EdgeSnap start = null, dest = null;
+        if (Constants.SNAP_ROUTES_TO_EDGES) {
+            start = graph.snap(startLon, startLat);
+            dest = graph.snap(endLon, endLat);
+            key = start == null || dest == null ? null
+                    : new RouteCache.Key(start.lon, start.lat, dest.lon, dest.lat, search,
+                            weighting);
+        } else {
+            long startNode = graph.closest(startLon, startLat);
+            long destNode = graph.closest(endLon, endLat);
+            key = new RouteCache.Key(graph.lon(startNode), graph.lat(startNode),
+                    graph.lon(destNode), graph.lat(destNode), search, weighting);
+        }
+        RouteCache.Entry route = key == null ? null : cache.get(key);
+        boolean cached = route != null;
+        int expanded = 0;
+        if (!cached) {
+            route = searchRoute(params, search, weighting, start, dest);
+            expanded = Router.expandedVertices();
+            if (key != null) cache.put(key, route);
+        }
+        synchronized (ROUTES) {
+            ROUTES.clear();
+            ROUTES.addAll(route.nodes);
+            ROUTE_ENDPOINTS.clear();
+            ROUTE_ENDPOINTS.addAll(route.endpoints);
+        }
+
+        String directions = route.directions;
+        Map<String, Object> routeParams = new HashMap<>();
+        routeParams.put("routing_success", route.found);
+        routeParams.put("expanded_nodes", expanded);
+        routeParams.put("cached", cached);
+        routeParams.put("directions_success", directions.length() > 0);
+        routeParams.put("directions", directions);
+
+        return routeParams;
+    }
 
-        ROUTES.addAll(Router.shortestPath(graph,
-                        params.get("start_lon"),
-                        params.get("start_lat"),
-                        params.get("end_lon"),
-                        params.get("end_lat")));
+    /* Answers the lightest route under the profile and its alternatives, each with its
+     * length and directions, and draws the lightest on the map. Alternatives are searched
+     * between the endpoints snapped onto roads whether or not single routes are, and are not
+     * cached. They are read off their own two search trees, so the search parameter, which
+     * only picks how a lightest route is found, does not apply to them. Like single routes
+     * they keep to one-way streets and turn restrictions, see AlternativeRoutes. */
+    private static Map<String, Object> routeAlternatives(Map<String, Double> params, int count,
+                                                         Router.Weighting weighting) {
+        EdgeSnap start = graph.snap(params.get("start_lon"), params.get("start_lat"));
+        EdgeSnap dest = graph.snap(params.get("end_lon"), params.get("end_lat"));
+        List<Router.Route> routes = start == null || dest == null ? Collections.emptyList()
+                : AlternativeRoutes.alternativeRoutes(graph, start, dest, count, weighting);
+        int expanded = Router.expandedVertices();
+        Router.Route shortest = routes.isEmpty() ? null : routes.get(0);
+        boolean found = shortest != null && shortest.found();
 
-        String directions = getDirectionsText(graph, ROUTES);
+        List<Map<String, Object>> alternatives = new ArrayList<>();
+        for (Router.Route route : routes) {
+            if (!route.found()) continue;
+            Map<String, Object> alternative = new HashMap<>();
+            alternative.put("distance", route.distance);
+            alternative.put("directions", getDirectionsText(graph, route.nodes));
+            alternatives.add(alternative);
+        }
+        synchronized (ROUTES) {
+            ROUTES.clear();
+            ROUTE_ENDPOINTS.clear();
+            if (found) {
+                ROUTES.addAll(shortest.nodes);
+                ROUTE_ENDPOINTS.add(new double[] {shortest.startLon, shortest.startLat});
+                ROUTE_ENDPOINTS.add(new double[] {shortest.destLon, shortest.destLat});
+            }
+        }
 
+        String directions = found ? (String) alternatives.get(0).get("directions") : "";
         Map<String, Object> routeParams = new HashMap<>();
-        routeParams.put("routing_success", !ROUTES.isEmpty());
+        routeParams.put("routing_success", found);
+        routeParams.put("expanded_nodes", expanded);
+        routeParams.put("cached", false);
         routeParams.put("directions_success", directions.length() > 0);
         routeParams.put("directions", directions);
-
+        routeParams.put("alternatives", alternatives);
         return routeParams;
     }
+
+    /* Searches a route and its directions; start and dest are the snapped endpoints when
+     * routes are snapped to roads, null if the graph has no roads to snap to */
+    private static RouteCache.Entry searchRoute(Map<String, Double> params,
+                                                Router.Search search,
+                                                Router.Weighting weighting,
+                                                EdgeSnap start, EdgeSnap dest) {
+        List<Long> nodes;
+        List<double[]> endpoints = new ArrayList<>();
+        boolean found;
+        if (Constants.SNAP_ROUTES_TO_EDGES) {
+            Router.Route route = start == null || dest == null
+                    ? Router.snappedPath(graph,
+                            params.get("start_lon"),
+                            params.get("start_lat"),
+                            params.get("end_lon"),
+                            params.get("end_lat"),
+                            search,
+                            weighting)
+                    : Router.snappedPath(graph, start, dest, search, weighting);
+            found = route.found();
+            nodes = route.nodes;
+            if (found) {
+                endpoints.add(new double[] {route.startLon, route.startLat});
+                endpoints.add(new double[] {route.destLon, route.destLat});
+            }
+        } else {
+            nodes = Router.shortestPath(graph,
+                    params.get("start_lon"),
+                    params.get("start_lat"),
+                    params.get("end_lon"),
+                    params.get("end_lat"),
+                    Constants.ROUTE_ON_CONTRACTED_GRAPH,
+                    search,
+                    weighting);
+            found = !nodes.isEmpty();
+        }
+        return new RouteCache.Entry(nodes, endpoints, found, getDirectionsText(graph, nodes));
+    }
 }
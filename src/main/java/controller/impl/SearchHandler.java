@@ -2,30 +2,117 @@ package controller.impl;
 
 import controller.RouteHandler;
 import spark.Request;
+import service.GraphDB;
 import spark.Response;
+import utils.Constants;
 
-import utils.dataStructures.Tuple;
-
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import static spark.Spark.halt;
 import static utils.Constants.graph;
 
-public class SearchHandler extends RouteHandler<Tuple<Set<String>, String>, Object>
+public class SearchHandler extends RouteHandler<SearchHandler.SearchRequest, Object>
 {
+    /* Number of nodes suggested around a point when no radius is given */
+    private static final int DEFAULT_NEARBY_COUNT = 5;
+
+    /**
+     * A parsed search request: the query parameters and term of a location search, and for a
+     * nearby search its point with either a radius or a count.
+     */
+    static final class SearchRequest {
+        final Set<String> params;
+        final String term;
+        final boolean nearby;
+        final double lon, lat;
+        /* The radius in miles, NaN to ask for the k closest nodes instead */
+        final double radius;
+        final int k;
+
+        SearchRequest(Set<String> params, String term) {
+            this(params, term, false, 0, 0, Double.NaN, 0);
+        }
+
+        SearchRequest(Set<String> params, String term, boolean nearby, double lon, double lat,
+                      double radius, int k) {
+            this.params = params;
+            this.term = term;
+            this.nearby = nearby;
+            this.lon = lon;
+            this.lat = lat;
+            this.radius = radius;
+            this.k = k;
+        }
+    }
+
     @Override
-    protected Tuple<Set<String>, String> parseRequestParams(Request req) {
-        return new Tuple<>(req.queryParams(), req.queryParams("term"));
+    protected SearchRequest parseRequestParams(Request req) {
+        Set<String> reqParams = req.queryParams();
+        String term = req.queryParams("term");
+        if (!reqParams.contains("lon") || !reqParams.contains("lat")) {
+            return new SearchRequest(reqParams, term);
+        }
+
+        /* A nearby search is bounded by NEARBY_MAX_RADIUS or NEARBY_MAX_COUNT, so a single
+         * request cannot ask the grid index for every node of the map */
+        double lon = 0, lat = 0, radius = Double.NaN;
+        int k = DEFAULT_NEARBY_COUNT;
+        try {
+            lon = Double.parseDouble(req.queryParams("lon"));
+            lat = Double.parseDouble(req.queryParams("lat"));
+            if (req.queryParams("radius") != null) {
+                radius = Double.parseDouble(req.queryParams("radius"));
+                if (!(radius >= 0 && radius <= Constants.NEARBY_MAX_RADIUS)) {
+                    halt(HALT_RESPONSE, "Invalid Request - radius must be between 0 and "
+                            + Constants.NEARBY_MAX_RADIUS + " miles.");
+                }
+            } else if (req.queryParams("k") != null) {
+                k = Integer.parseInt(req.queryParams("k"));
+                if (k <= 0 || k > Constants.NEARBY_MAX_COUNT) {
+                    halt(HALT_RESPONSE, "Invalid Request - k must be between 1 and "
+                            + Constants.NEARBY_MAX_COUNT + ".");
+                }
+            }
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        return new SearchRequest(reqParams, term, true, lon, lat, radius, k);
     }
 
     @Override
-    protected Object processRequest(Tuple<Set<String>, String> params, Response res) {
-        Set<String> reqParams = params.first;
-        String term = params.second;
+    protected Object processRequest(SearchRequest params, Response res) {
+        /* Search for the nodes around a point, e.g. for pickup point suggestions. */
+        if (params.nearby) return nearby(params);
 
         /* Search for actual location data. */
-        if (reqParams.contains("full")) return graph.getSearcher().getLocations(term);
+        if (params.params.contains("full")) return graph.getSearcher().getLocations(params.term);
 
         /* Search for prefix matching strings. */
-        return graph.getSearcher().getKeysByPrefix(term);
+        return graph.getSearcher().getKeysByPrefix(params.term);
+    }
+
+    /**
+     * Returns the nodes within radius miles of lon, lat if a radius is given, and the k
+     * (default 5) nodes closest to it otherwise, closest first.
+     */
+    private static List<Map<String, Object>> nearby(SearchRequest req) {
+        double lon = req.lon, lat = req.lat;
+        List<Long> ids = Double.isNaN(req.radius) ? graph.kNearest(lon, lat, req.k)
+                : graph.withinRadius(lon, lat, req.radius);
+
+        List<Map<String, Object>> nodes = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            Map<String, Object> node = new HashMap<>();
+            node.put("id", id);
+            node.put("lon", graph.lon(id));
+            node.put("lat", graph.lat(id));
+            node.put("distance", GraphDB.distance(lon, lat, graph.lon(id), graph.lat(id)));
+            nodes.add(node);
+        }
+        return nodes;
     }
 }
@@ -0,0 +1,331 @@
+package service;
+
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds a route together with meaningfully different alternatives to it by the plateau
+ * method, reading every route off one search tree from each end. The searches use the
+ * per-thread search state, anchors and path expansion of Router, and a route on a graph with
+ * restrictions to keep to is only taken if it keeps to them.
+ */
+public class AlternativeRoutes {
+    /**
+     * Returns the shortest route between two points and up to count - 1 meaningfully
+     * different alternatives to it, each point snapped onto the closest point of any road as
+     * for Router.snappedPath. One Dijkstra search from the start and one backward from the
+     * destination settle every core vertex a route within ALTERNATIVE_MAX_STRETCH of the
+     * shortest can pass, and every route is then read off the two search trees: the route
+     * through a core vertex follows the forward tree to it and the backward tree on from it.
+     * Stretches of road both trees share are plateaus, and the route through a long plateau
+     * is a shortest route along it, so it makes no pointless detour. The candidates go in
+     * order of their length less their plateau, and one is taken if its plateau is at least
+     * ALTERNATIVE_MIN_PLATEAU and at most ALTERNATIVE_MAX_SHARING of it runs along the routes
+     * taken before, each a share of the shortest route's length. On a graph with
+     * restrictions to keep to, the shortest route is the one Router.turnPath finds, and a
+     * candidate is only taken if it keeps to them too.
+     * @param db The graph to use.
+     * @param start The snapped start.
+     * @param dest The snapped destination.
+     * @param count The most routes to return.
+     * @return The shortest route first and then the alternatives in the order they were
+     *         taken; just the unfound route if the destination cannot be reached.
+     */
+    public static List<Router.Route> alternativeRoutes(GraphDB db, EdgeSnap start,
+                                                       EdgeSnap dest, int count) {
+        return alternativeRoutes(db, start, dest, count, Router.Weighting.SHORTEST);
+    }
+
+    /**
+     * Returns the route of least weight between two points and up to count - 1 meaningfully
+     * different alternatives to it, as alternativeRoutes above with every length, stretch,
+     * plateau and share measured in weights instead.
+     * @param db The graph to use.
+     * @param start The snapped start.
+     * @param dest The snapped destination.
+     * @param count The most routes to return.
+     * @param weighting how to weigh the roads
+     * @return The lightest route first and then the alternatives in the order they were
+     *         taken, each with its length in miles whatever the weighting; just the unfound
+     *         route if the destination cannot be reached.
+     */
+    public static List<Router.Route> alternativeRoutes(GraphDB db, EdgeSnap start,
+                                                       EdgeSnap dest, int count,
+                                                       Router.Weighting weighting) {
+        ContractedGraph cg = db.getContractedGraph();
+        SearchContext ctx = Router.CONTEXT.get(), back = Router.BACKWARD_CONTEXT.get();
+        EdgeWeights weights = db.getEdgeWeights(weighting);
+        Anchor from = Anchor.onEdge(cg, weights, start), to = Anchor.onEdge(cg, weights, dest);
+        double along = Double.POSITIVE_INFINITY;
+        if (from.edge != CompactGraph.NO_VERTEX && from.edge == to.edge) {
+            along = Math.abs(from.offset - to.offset);
+        }
+
+        /* With restrictions to keep to, the lightest route is the one Router.turnPath finds,
+         * and the search trees below only offer the alternatives, which must keep to them
+         * too */
+        ContractedRestrictions restrictions = Router.restrictions(db);
+        List<Long> restricted = new ArrayList<>();
+        double restrictedWeight = restrictions == null ? 0
+                : Router.turnPath(ctx, back, db, restrictions, weights, from, to,
+                Router.Search.ALT, restricted);
+        List<Router.Route> routes = new ArrayList<>();
+        if (Double.isInfinite(restrictedWeight)) {
+            routes.add(Router.route(db, start, dest, restricted, restrictedWeight, weighting));
+            return routes;
+        }
+
+        /* The core vertices settled from both ends, with the one the shortest route through
+         * the core graph passes */
+        int[] settled = plateauSearch(ctx, back, cg, weights, from, to, along);
+        int meet = CompactGraph.NO_VERTEX;
+        double shortest = along;
+        for (int c : settled) {
+            if (ctx.dist(c) + back.dist(c) < shortest) {
+                shortest = ctx.dist(c) + back.dist(c);
+                meet = c;
+            }
+        }
+        List<Integer> edges = new ArrayList<>();
+        List<Long> path = new ArrayList<>();
+        if (restrictions != null) {
+            shortest = restrictedWeight;
+            path = restricted;
+        } else if (!Double.isInfinite(shortest)) {
+            if (meet != CompactGraph.NO_VERTEX) Router.coreEdges(ctx, back, cg, meet, edges);
+            Router.expandPath(cg, from, to, meet, edges, path);
+        }
+        routes.add(Router.route(db, start, dest, path, shortest, weighting));
+        if (Double.isInfinite(shortest)) return routes;
+
+        /* The end of every plateau long enough, ordered by the length of the route through
+         * it less the length of the plateau */
+        double maxLength = Constants.ALTERNATIVE_MAX_STRETCH * shortest;
+        double minPlateau = Constants.ALTERNATIVE_MIN_PLATEAU * shortest;
+        List<double[]> candidates = new ArrayList<>();
+        for (int b : settled) {
+            double length = ctx.dist(b) + back.dist(b);
+            if (length > maxLength || !onPlateau(ctx, back, cg, weights, b)) continue;
+            int next = back.parent(b) == SearchContext.NO_PARENT
+                    ? CompactGraph.NO_VERTEX : cg.source(back.parent(b));
+            if (next != CompactGraph.NO_VERTEX && back.closed(next) && ctx.closed(next)
+                    && onPlateau(ctx, back, cg, weights, next)
+                    && cg.source(ctx.parent(next)) == b) {
+                continue;
+            }
+            int a = b;
+            while (onPlateau(ctx, back, cg, weights, a)) a = cg.source(ctx.parent(a));
+            double plateau = ctx.dist(b) - ctx.dist(a);
+            if (plateau >= minPlateau) candidates.add(new double[] {length - plateau, b});
+        }
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate[0]));
+
+        /* The roads of the routes taken so far, by canonicalEdge, and the core vertices they
+         * leave the start's chain and enter the destination's chain at */
+        boolean[] taken = new boolean[cg.edgeCount()];
+        Set<Integer> firstCores = new HashSet<>(), lastCores = new HashSet<>();
+        if (restrictions != null) {
+            take(cg, path, taken, firstCores, lastCores);
+        } else if (meet != CompactGraph.NO_VERTEX) {
+            take(cg, meet, edges, taken, firstCores, lastCores);
+        }
+        boolean[] visited = new boolean[cg.size()];
+        double maxShared = Constants.ALTERNATIVE_MAX_SHARING * shortest;
+        for (int i = 0; i < candidates.size() && routes.size() < count; i++) {
+            int via = (int) candidates.get(i)[1];
+            edges.clear();
+            Router.coreEdges(ctx, back, cg, via, edges);
+            if (!simple(cg, edges, visited)) continue;
+            double shared = 0;
+            for (int e : edges) {
+                int road = e >= 0 ? e : ~e;
+                if (taken[canonicalEdge(cg, road)]) shared += weights.edge(road);
+            }
+            int first = Router.firstCore(cg, via, edges);
+            int last = Router.lastCore(cg, via, edges);
+            if (firstCores.contains(first)) shared += ctx.dist(first);
+            if (lastCores.contains(last)) shared += back.dist(last);
+            if (shared > maxShared) continue;
+            path = new ArrayList<>();
+            Router.expandPath(cg, from, to, via, edges, path);
+            if (restrictions != null && !Router.drivable(cg, restrictions, from, to, path)) {
+                continue;
+            }
+            take(cg, via, edges, taken, firstCores, lastCores);
+            routes.add(Router.route(db, start, dest, path, ctx.dist(via) + back.dist(via),
+                    weighting));
+        }
+        return routes;
+    }
+
+    /**
+     * Runs Dijkstra over the contracted graph from the start and backward from the
+     * destination, taking turns, until each side has settled every core vertex within
+     * ALTERNATIVE_MAX_STRETCH of the shortest route found where they meet.
+     * @return the core vertices both sides settled
+     */
+    private static int[] plateauSearch(SearchContext ctx, SearchContext back,
+                                       ContractedGraph cg, EdgeWeights weights, Anchor start,
+                                       Anchor dest, double best) {
+        CompactGraph g = cg.base();
+        ctx.start(cg.size());
+        back.start(cg.size());
+        int[] starts = start.cores(cg), ends = dest.cores(cg);
+        double[] startDist = start.distances(), endDist = dest.distances();
+        for (int i = 0; i < starts.length; i++) {
+            if (startDist[i] < ctx.dist(starts[i])) {
+                ctx.set(starts[i], startDist[i], SearchContext.NO_PARENT);
+                ctx.heap.addOrChange(starts[i], startDist[i]);
+            }
+        }
+        for (int i = 0; i < ends.length; i++) {
+            if (endDist[i] < back.dist(ends[i])) {
+                back.set(ends[i], endDist[i], SearchContext.NO_PARENT);
+                back.heap.addOrChange(ends[i], endDist[i]);
+            }
+        }
+        for (int c : starts) best = Math.min(best, ctx.dist(c) + back.dist(c));
+
+        int[] settled = new int[16];
+        int count = 0;
+        while (true) {
+            double bound = Constants.ALTERNATIVE_MAX_STRETCH * best;
+            boolean forwardDone = ctx.heap.isEmpty() || ctx.heap.peekPriority() > bound;
+            boolean backwardDone = back.heap.isEmpty() || back.heap.peekPriority() > bound;
+            if (forwardDone && backwardDone) break;
+            boolean forward = backwardDone
+                    || !forwardDone && ctx.heap.size() <= back.heap.size();
+            SearchContext self = forward ? ctx : back, other = forward ? back : ctx;
+            int c = self.heap.removeSmallest();
+            self.close(c);
+            if (other.closed(c)) {
+                if (count == settled.length) settled = Arrays.copyOf(settled, 2 * count);
+                settled[count++] = c;
+            }
+            double distC = self.dist(c);
+            Anchor target = forward ? dest : start;
+            for (int e = cg.edgeBegin(c), end = cg.edgeEnd(c); e < end; e++) {
+                int adj = cg.target(e);
+                if (self.closed(adj)) continue;
+                double dist = distC + weights.edge(e);
+                if (dist >= self.dist(adj)) continue;
+                best = Math.min(best, dist + other.dist(adj));
+                /* No route within the stretch passes a vertex whose weight plus the great
+                 * circle distance on from it, which no weight is below, exceeds the bound,
+                 * nor the vertices behind it */
+                int v = cg.vertex(adj);
+                double h = Router.heuristic(g.lon(v), g.lat(v), target.lon, target.lat);
+                if (dist + h > Constants.ALTERNATIVE_MAX_STRETCH * best) continue;
+                self.set(adj, dist, e);
+                self.heap.addOrChange(adj, dist);
+            }
+        }
+        ctx.expanded += back.expanded;
+        return Arrays.copyOf(settled, count);
+    }
+
+    /* Whether core vertex w, settled from both ends, is reached in the forward tree over an
+     * edge the backward tree follows the other way, so both trees share the edge */
+    private static boolean onPlateau(SearchContext ctx, SearchContext back, ContractedGraph cg,
+                                     EdgeWeights weights, int w) {
+        int e = ctx.parent(w);
+        if (e == SearchContext.NO_PARENT) return false;
+        int u = cg.source(e);
+        if (!back.closed(u) || !ctx.closed(u)) return false;
+        int f = back.parent(u);
+        return f != SearchContext.NO_PARENT && cg.source(f) == w
+                && weights.edge(f) == weights.edge(e);
+    }
+
+    /* Marks the roads of a path over contracted edges through core vertex via as taken, and
+     * the core vertices it starts and ends at */
+    private static void take(ContractedGraph cg, int via, List<Integer> edges, boolean[] taken,
+                             Set<Integer> firstCores, Set<Integer> lastCores) {
+        for (int e : edges) taken[canonicalEdge(cg, e >= 0 ? e : ~e)] = true;
+        firstCores.add(Router.firstCore(cg, via, edges));
+        lastCores.add(Router.lastCore(cg, via, edges));
+    }
+
+    /* Marks the roads of a path over the nodes of the underlying graph as taken, and the
+     * first and last core vertices it passes */
+    private static void take(ContractedGraph cg, List<Long> path, boolean[] taken,
+                             Set<Integer> firstCores, Set<Integer> lastCores) {
+        CompactGraph g = cg.base();
+        int first = CompactGraph.NO_VERTEX, last = CompactGraph.NO_VERTEX;
+        boolean afterCore = false;
+        for (long id : path) {
+            int v = g.indexOf(id), e = cg.chainEdge(v);
+            if (e != CompactGraph.NO_VERTEX) {
+                taken[canonicalEdge(cg, e)] = true;
+                afterCore = false;
+                continue;
+            }
+            int c = cg.coreOf(v);
+            if (afterCore) {
+                /* Two core vertices in a row are joined by an edge without shape points */
+                int road = CompactGraph.NO_VERTEX;
+                for (int f = cg.edgeBegin(last); f < cg.edgeEnd(last); f++) {
+                    if (cg.target(f) == c && cg.shapeBegin(f) == cg.shapeEnd(f)
+                            && (road == CompactGraph.NO_VERTEX
+                            || cg.length(f) < cg.length(road))) {
+                        road = f;
+                    }
+                }
+                if (road != CompactGraph.NO_VERTEX) taken[canonicalEdge(cg, road)] = true;
+            }
+            if (first == CompactGraph.NO_VERTEX) first = c;
+            last = c;
+            afterCore = true;
+        }
+        if (first != CompactGraph.NO_VERTEX) {
+            firstCores.add(first);
+            lastCores.add(last);
+        }
+    }
+
+    /* Whether a path over contracted edges visits no core vertex twice; visited is all false
+     * before and after */
+    private static boolean simple(ContractedGraph cg, List<Integer> edges, boolean[] visited) {
+        if (edges.isEmpty()) return true;
+        int[] vertices = new int[edges.size() + 1];
+        vertices[0] = Router.firstCore(cg, CompactGraph.NO_VERTEX, edges);
+        for (int i = 0; i < edges.size(); i++) {
+            int e = edges.get(i);
+            vertices[i + 1] = e >= 0 ? cg.target(e) : cg.source(~e);
+        }
+        boolean simple = true;
+        for (int c : vertices) {
+            simple &= !visited[c];
+            visited[c] = true;
+        }
+        for (int c : vertices) visited[c] = false;
+        return simple;
+    }
+
+    /* The same index for a contracted edge and the edge that runs the other way along the
+     * same road */
+    private static int canonicalEdge(ContractedGraph cg, int e) {
+        if (cg.shapeBegin(e) < cg.shapeEnd(e)) {
+            return cg.chainEdge(cg.shapeVertex(cg.shapeBegin(e)));
+        }
+        int source = cg.source(e), target = cg.target(e);
+        for (int f = cg.edgeBegin(target), end = cg.edgeEnd(target); f < end; f++) {
+            if (cg.target(f) == source && cg.shapeBegin(f) == cg.shapeEnd(f)
+                    && cg.length(f) == cg.length(e)) {
+                return Math.min(e, f);
+            }
+        }
+        return e;
+    }
+}
@@ -0,0 +1,172 @@
+package service;
+
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.graph.Landmarks;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.util.Arrays;
+
+/**
+ * A place a search on the contracted graph starts or ends at: a core vertex, or a point
+ * some distance along the chain of a contracted edge, which is either one of its shape
+ * points or a virtual vertex between two of them.
+ */
+final class Anchor {
+    /* The core vertex the anchor is at, when it is not on a chain */
+    final int core;
+    /* The contracted edge whose chain holds the anchor, NO_VERTEX at a core vertex */
+    final int edge;
+    /* Weight along the chain from the source of edge, and the weight of edge */
+    final double offset;
+    final double length;
+    /* Distance in miles along the chain from the source of edge */
+    final double miles;
+    /* Number of shape points of edge before the anchor */
+    final int before;
+    /* The vertex of the underlying graph at the anchor, NO_VERTEX for a virtual vertex */
+    final int vertex;
+    /* Where the anchor is, which the heuristics aim at */
+    final double lon;
+    final double lat;
+
+    private Anchor(int core, int edge, double offset, double length, double miles,
+                   int before, int vertex, double lon, double lat) {
+        this.core = core;
+        this.edge = edge;
+        this.offset = offset;
+        this.length = length;
+        this.miles = miles;
+        this.before = before;
+        this.vertex = vertex;
+        this.lon = lon;
+        this.lat = lat;
+    }
+
+    /* The anchor at vertex v of the underlying graph, weighed by w */
+    static Anchor atVertex(ContractedGraph cg, EdgeWeights w, int v) {
+        int e = cg.chainEdge(v);
+        if (e == CompactGraph.NO_VERTEX) {
+            return new Anchor(cg.coreOf(v), CompactGraph.NO_VERTEX, 0, 0, 0, 0, v,
+                    cg.base().lon(v), cg.base().lat(v));
+        }
+        return new Anchor(CompactGraph.NO_VERTEX, e, w.chainOffset(v), w.edge(e),
+                cg.chainOffset(v), cg.chainPosition(v) - cg.shapeBegin(e), v,
+                cg.base().lon(v), cg.base().lat(v));
+    }
+
+    /* The virtual vertex at a point snapped onto an edge of the underlying graph,
+     * weighed by w; the weight of a part of the snapped edge is its share of the
+     * weight of the whole edge */
+    static Anchor onEdge(ContractedGraph cg, EdgeWeights w, EdgeSnap snap) {
+        CompactGraph g = cg.base();
+        double fromDist = GraphDB.distance(g.lon(snap.from), g.lat(snap.from),
+                snap.lon, snap.lat);
+        double toDist = GraphDB.distance(snap.lon, snap.lat,
+                g.lon(snap.to), g.lat(snap.to));
+        double factor = g.length(snap.edge) > 0 ? w.base(snap.edge) / g.length(snap.edge) : 1;
+        int x = cg.chainEdge(snap.from) != CompactGraph.NO_VERTEX ? snap.from : snap.to;
+        int e = cg.chainEdge(x);
+        if (e == CompactGraph.NO_VERTEX) {
+            /* Both ends are core vertices, joined by an edge without shape points; the
+             * one leaving the smaller core vertex holds the anchor */
+            int from = cg.coreOf(snap.from), to = cg.coreOf(snap.to);
+            int source = Math.min(from, to), target = Math.max(from, to);
+            for (int f = cg.edgeBegin(source); f < cg.edgeEnd(source); f++) {
+                if (cg.target(f) == target && cg.shapeBegin(f) == cg.shapeEnd(f)) {
+                    double miles = source == from ? fromDist : toDist;
+                    double offset = Math.min(w.edge(f), miles * factor);
+                    return new Anchor(CompactGraph.NO_VERTEX, f, offset, w.edge(f),
+                            miles, 0, CompactGraph.NO_VERTEX, snap.lon, snap.lat);
+                }
+            }
+            throw new IllegalStateException("No contracted edge holds edge " + snap.edge);
+        }
+
+        /* x is a shape point, and the other end of the snapped edge is next to it on
+         * the chain, either before or after it */
+        double xDist = x == snap.from ? fromDist : toDist;
+        int other = x == snap.from ? snap.to : snap.from;
+        int pos = cg.chainPosition(x), before = pos - cg.shapeBegin(e);
+        int prev = before > 0 ? cg.shapeVertex(pos - 1) : cg.vertex(cg.source(e));
+        double offset = w.chainOffset(x), miles = cg.chainOffset(x);
+        if (prev == other) {
+            offset -= xDist * factor;
+            miles -= xDist;
+        } else {
+            offset += xDist * factor;
+            miles += xDist;
+            before++;
+        }
+        offset = Math.max(0, Math.min(w.edge(e), offset));
+        miles = Math.max(0, Math.min(cg.length(e), miles));
+        return new Anchor(CompactGraph.NO_VERTEX, e, offset, w.edge(e), miles, before,
+                CompactGraph.NO_VERTEX, snap.lon, snap.lat);
+    }
+
+    /* Number of shape points of edge before or at the anchor */
+    int through() {
+        return vertex == CompactGraph.NO_VERTEX ? before : before + 1;
+    }
+
+    /* The ends of the edge of the underlying graph a virtual vertex lies on, in the
+     * direction of its chain */
+    int[] edgeEnds(ContractedGraph cg) {
+        return new int[] {cg.chainVertex(edge, before), cg.chainVertex(edge, before + 1)};
+    }
+
+    /* The end of the edge of the underlying graph a virtual vertex lies on other than v */
+    int otherEnd(ContractedGraph cg, int v) {
+        int[] ends = edgeEnds(cg);
+        return ends[0] == v ? ends[1] : ends[0];
+    }
+
+    /* The core vertices next to the anchor */
+    int[] cores(ContractedGraph cg) {
+        if (edge == CompactGraph.NO_VERTEX) return new int[] {core};
+        return new int[] {cg.source(edge), cg.target(edge)};
+    }
+
+    /* The distances of the anchor to each landmark in units, null without landmarks */
+    int[] landmarkDistances(ContractedGraph cg, Landmarks landmarks) {
+        if (landmarks == null || vertex != CompactGraph.NO_VERTEX) {
+            return Router.landmarkDistances(landmarks, vertex);
+        }
+        int[] cores = cores(cg);
+        double[] dist = {miles, cg.length(edge) - miles};
+        int[] distances = new int[landmarks.count()];
+        Arrays.fill(distances, Landmarks.UNREACHED);
+        for (int i = 0; i < distances.length; i++) {
+            for (int j = 0; j < cores.length; j++) {
+                int d = landmarks.distance(cg.vertex(cores[j]), i);
+                if (d == Landmarks.UNREACHED) continue;
+                distances[i] = Math.min(distances[i], d + (int) (dist[j] / Landmarks.UNIT));
+            }
+        }
+        return distances;
+    }
+
+    /* The weights between the anchor and each of its core vertices */
+    double[] distances() {
+        if (edge == CompactGraph.NO_VERTEX) return new double[] {0};
+        return new double[] {offset, length - offset};
+    }
+
+    /* The weights between the anchor and each of its core vertices, infinite where the
+     * part of its chain between them may not be driven, from the anchor to the core
+     * vertex when leaving, else from the core vertex to the anchor */
+    double[] distances(ContractedRestrictions restrictions, boolean leaving) {
+        double[] distances = distances();
+        if (edge == CompactGraph.NO_VERTEX) return distances;
+        int twin = restrictions.twin(edge), last = restrictions.chainLength(edge) - 1;
+        boolean source = leaving ? restrictions.open(twin, last - before, last)
+                : restrictions.open(edge, 0, before);
+        boolean target = leaving ? restrictions.open(edge, through(), last)
+                : restrictions.open(twin, 0, last - through());
+        if (!source) distances[0] = Double.POSITIVE_INFINITY;
+        if (!target) distances[1] = Double.POSITIVE_INFINITY;
+        return distances;
+    }
+}
@@ -0,0 +1,270 @@
+package service;
+
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The lengths, or times, of the routes between many points at once. Each source is searched
+ * from once over the contracted graph, with the per-thread search state and the anchors
+ * Router searches single routes with, so the matrix keeps to the same restrictions.
+ */
+public class DistanceMatrix {
+    /**
+     * Returns the lengths of the shortest routes from every source to every target, each
+     * point snapped onto the closest point of any road as for Router.snappedPath. Every point is
+     * snapped once, and each source is searched from once with Dijkstra over the contracted
+     * graph until the core vertices next to every target are settled, the sources spread
+     * over the cores of the machine. On a graph with restrictions to keep to, its contracted
+     * edges are searched instead, as Router.turnPath searches them (see turnDistancesFrom).
+     * @param db The graph to use.
+     * @param sources The {lon, lat} points the routes start at.
+     * @param targets The {lon, lat} points the routes lead to.
+     * @return The matrix of route lengths in miles, by source then target, infinite where
+     *         a target cannot be reached from a source.
+     */
+    public static double[][] distanceMatrix(GraphDB db, double[][] sources,
+                                            double[][] targets) {
+        return weightMatrix(db, sources, targets, Router.Weighting.SHORTEST);
+    }
+
+    /**
+     * Returns the times of the fastest routes from every source to every target, searched
+     * as distanceMatrix searches the shortest routes over the FASTEST weights, which are
+     * times in the miles that take as long at TOP_SPEED.
+     * @param db The graph to use.
+     * @param sources The {lon, lat} points the routes start at.
+     * @param targets The {lon, lat} points the routes lead to.
+     * @return The matrix of route times in minutes, by source then target, infinite where
+     *         a target cannot be reached from a source.
+     */
+    public static double[][] timeMatrix(GraphDB db, double[][] sources, double[][] targets) {
+        double[][] matrix = weightMatrix(db, sources, targets, Router.Weighting.FASTEST);
+        for (double[] row : matrix) {
+            for (int j = 0; j < row.length; j++) row[j] *= 60 / Router.Weighting.TOP_SPEED;
+        }
+        return matrix;
+    }
+
+    /* The weights of the lightest routes from every source to every target, see
+     * distanceMatrix */
+    private static double[][] weightMatrix(GraphDB db, double[][] sources, double[][] targets,
+                                           Router.Weighting weighting) {
+        ContractedGraph cg = db.getContractedGraph();
+        EdgeWeights weights = db.getEdgeWeights(weighting);
+        Anchor[] from = new Anchor[sources.length];
+        Anchor[] to = new Anchor[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            from[i] = snapAnchor(db, cg, weights, sources[i]);
+        }
+        for (int j = 0; j < targets.length; j++) to[j] = snapAnchor(db, cg, weights, targets[j]);
+
+        /* The core vertices next to the targets, which a search must settle */
+        boolean[] targetCore = new boolean[cg.size()];
+        int targetCores = 0;
+        for (Anchor anchor : to) {
+            if (anchor == null) continue;
+            for (int c : anchor.cores(cg)) {
+                if (!targetCore[c]) targetCores++;
+                targetCore[c] = true;
+            }
+        }
+
+        double[][] matrix = new double[sources.length][];
+        ContractedRestrictions restrictions = Router.restrictions(db);
+        if (restrictions != null) {
+            /* The open edges arriving at those core vertices, which a search must settle */
+            int targetEdges = 0;
+            for (int c = 0; c < cg.size(); c++) {
+                if (!targetCore[c]) continue;
+                for (int o = cg.edgeBegin(c); o < cg.edgeEnd(c); o++) {
+                    if (restrictions.open(restrictions.twin(o))) targetEdges++;
+                }
+            }
+            int edges = targetEdges;
+            IntStream.range(0, sources.length).parallel().forEach(i -> matrix[i] =
+                    turnDistancesFrom(Router.CONTEXT.get(), cg, restrictions, weights, from[i],
+                            to, targetCore, edges));
+            return matrix;
+        }
+        int cores = targetCores;
+        IntStream.range(0, sources.length).parallel().forEach(i -> matrix[i] =
+                distancesFrom(Router.CONTEXT.get(), cg, weights, from[i], to, targetCore,
+                        cores));
+        return matrix;
+    }
+
+    /* The anchor of a {lon, lat} point snapped onto a road, null if there is no road */
+    private static Anchor snapAnchor(GraphDB db, ContractedGraph cg, EdgeWeights weights,
+                                     double[] point) {
+        EdgeSnap snap = db.snap(point[0], point[1]);
+        return snap == null ? null : Anchor.onEdge(cg, weights, snap);
+    }
+
+    /**
+     * Searches the contracted graph from one anchor until the core vertices next to every
+     * target are settled, or all reachable ones are.
+     * @param ctx the search state of the calling thread
+     * @param cg the contracted graph
+     * @param weights the weights of the contracted edges
+     * @param start where the routes start, weighed by weights, null if it could not be
+     *              snapped
+     * @param targets where the routes lead to, null where a point could not be snapped
+     * @param targetCore whether each core vertex is next to a target
+     * @param targetCores the number of core vertices next to a target
+     * @return the weight of the lightest route to each target, infinite if there is none
+     */
+    private static double[] distancesFrom(SearchContext ctx, ContractedGraph cg,
+                                          EdgeWeights weights, Anchor start, Anchor[] targets,
+                                          boolean[] targetCore, int targetCores) {
+        double[] distances = new double[targets.length];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        if (start == null) return distances;
+
+        ctx.start(cg.size());
+        int[] starts = start.cores(cg);
+        double[] startDist = start.distances();
+        for (int i = 0; i < starts.length; i++) {
+            if (startDist[i] < ctx.dist(starts[i])) {
+                ctx.set(starts[i], startDist[i], SearchContext.NO_PARENT);
+                ctx.heap.addOrChange(starts[i], startDist[i]);
+            }
+        }
+        int remaining = targetCores;
+        while (remaining > 0 && !ctx.heap.isEmpty()) {
+            int c = ctx.heap.removeSmallest();
+            ctx.close(c);
+            if (targetCore[c]) remaining--;
+            double distC = ctx.dist(c);
+            for (int e = cg.edgeBegin(c), end = cg.edgeEnd(c); e < end; e++) {
+                int adj = cg.target(e);
+                if (ctx.closed(adj)) continue;
+                double dist = distC + weights.edge(e);
+                if (dist < ctx.dist(adj)) {
+                    ctx.set(adj, dist, e);
+                    ctx.heap.addOrChange(adj, dist);
+                }
+            }
+        }
+
+        for (int j = 0; j < targets.length; j++) {
+            Anchor dest = targets[j];
+            if (dest == null) continue;
+            double distance = Double.POSITIVE_INFINITY;
+            if (start.edge != CompactGraph.NO_VERTEX && start.edge == dest.edge) {
+                distance = Math.abs(start.offset - dest.offset);
+            }
+            int[] ends = dest.cores(cg);
+            double[] endDist = dest.distances();
+            for (int k = 0; k < ends.length; k++) {
+                distance = Math.min(distance, ctx.dist(ends[k]) + endDist[k]);
+            }
+            distances[j] = distance;
+        }
+        return distances;
+    }
+
+    /**
+     * Searches the contracted edges from one anchor as Router.turnPath does, keeping to the
+     * restrictions, until every open edge arriving at a core vertex next to a target is
+     * settled, or all reachable ones are.
+     * @param ctx the search state of the calling thread
+     * @param cg the contracted graph
+     * @param restrictions the restrictions to keep to
+     * @param weights the weights of the contracted edges
+     * @param start where the routes start, weighed by weights, null if it could not be
+     *              snapped
+     * @param targets where the routes lead to, null where a point could not be snapped
+     * @param targetCore whether each core vertex is next to a target
+     * @param targetEdges the number of open edges arriving at a core vertex next to a target
+     * @return the weight of the lightest route to each target, infinite if there is none
+     */
+    private static double[] turnDistancesFrom(SearchContext ctx, ContractedGraph cg,
+                                              ContractedRestrictions restrictions,
+                                              EdgeWeights weights, Anchor start,
+                                              Anchor[] targets, boolean[] targetCore,
+                                              int targetEdges) {
+        double[] distances = new double[targets.length];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        if (start == null) return distances;
+
+        ctx.start(cg.edgeCount());
+        List<Integer> firsts = new ArrayList<>();
+        Router.departures(ctx, cg, restrictions, weights, start, firsts);
+        for (int e : firsts) ctx.heap.add(e, ctx.dist(e));
+        int remaining = targetEdges;
+        while (remaining > 0 && !ctx.heap.isEmpty()) {
+            int e = ctx.heap.removeSmallest();
+            ctx.close(e);
+            int c = cg.target(e);
+            if (targetCore[c]) remaining--;
+            double distE = ctx.dist(e);
+            for (int o = cg.edgeBegin(c), end = cg.edgeEnd(c); o < end; o++) {
+                if (ctx.closed(o) || !restrictions.open(o) || !restrictions.allowed(e, o)) {
+                    continue;
+                }
+                double dist = distE + weights.edge(o);
+                if (dist < ctx.dist(o)) {
+                    ctx.set(o, dist, e);
+                    ctx.heap.addOrChange(o, dist);
+                }
+            }
+        }
+
+        for (int j = 0; j < targets.length; j++) {
+            Anchor dest = targets[j];
+            if (dest == null) continue;
+            double distance = Router.alongChain(cg, restrictions, start, dest);
+            if (start.edge == CompactGraph.NO_VERTEX && dest.edge == CompactGraph.NO_VERTEX
+                    && start.core == dest.core) {
+                distance = 0;
+            }
+            distances[j] = Math.min(distance, arrival(ctx, cg, restrictions, dest));
+        }
+        return distances;
+    }
+
+    /* The weight of the lightest route to the destination over the edges a forward search
+     * of the contracted edges settled, arriving where it is reached from as in
+     * Router.turnPath */
+    private static double arrival(SearchContext ctx, ContractedGraph cg,
+                                  ContractedRestrictions restrictions, Anchor dest) {
+        double best = Double.POSITIVE_INFINITY;
+        if (dest.edge == CompactGraph.NO_VERTEX) {
+            for (int o = cg.edgeBegin(dest.core); o < cg.edgeEnd(dest.core); o++) {
+                best = Math.min(best, ctx.dist(restrictions.twin(o)));
+            }
+            return best;
+        }
+        int d = dest.edge, twin = restrictions.twin(d);
+        int last = restrictions.chainLength(d) - 1;
+        if (restrictions.open(d, 0, dest.before)) {
+            best = turnOnto(ctx, cg, restrictions, d) + dest.offset;
+        }
+        if (restrictions.open(twin, 0, last - dest.through())) {
+            best = Math.min(best, turnOnto(ctx, cg, restrictions, twin)
+                    + dest.length - dest.offset);
+        }
+        return best;
+    }
+
+    /* The least weight a forward search of the contracted edges reached the source of e with
+     * over an edge that may turn onto e */
+    private static double turnOnto(SearchContext ctx, ContractedGraph cg,
+                                   ContractedRestrictions restrictions, int e) {
+        double best = Double.POSITIVE_INFINITY;
+        int c = cg.target(restrictions.twin(e));
+        for (int o = cg.edgeBegin(c); o < cg.edgeEnd(c); o++) {
+            int f = restrictions.twin(o);
+            if (restrictions.allowed(f, e)) best = Math.min(best, ctx.dist(f));
+        }
+        return best;
+    }
+}
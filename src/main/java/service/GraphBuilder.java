@@ -0,0 +1,693 @@
+package service;
+
+import utils.dataStructures.graph.Columns;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.HighwayType;
+import utils.dataStructures.graph.TurnRestrictions;
+import utils.dataStructures.graph.WayTable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * Collects the raw contents of an OSM file in primitive buffers while it is being parsed,
+ * and turns them into the in-memory graph once parsing is done. Every import pipeline
+ * (the SAX handler and the byte-level scanner) pushes into a GraphBuilder, so the graph
+ * they produce is the same regardless of how the file was read.
+ *
+ * A parallel builder runs the phases of the build on the common fork-join pool: way refs
+ * are resolved and edges generated and sorted in parallel, and the search index is built
+ * concurrently with the graph.
+ *
+ * Importers read the file in two phases so that nodes which never become part of the graph
+ * (buildings, points of interest and the like) are not held in memory: in the way phase
+ * only the accepted ways are recorded, and in the node phase only the nodes those ways
+ * reference are kept, along with the node names fed to the searcher. A builder that is
+ * never switched to a phase records everything.
+ */
+public class GraphBuilder {
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    /* Marks an unused slot in the sorted edge key array; sorts after every real edge */
+    private static final long NO_EDGE = Long.MAX_VALUE;
+
+    /* Which elements the builder records, see beginWayPhase() and beginNodePhase() */
+    private enum Phase {
+        ALL, WAYS, NODES
+    }
+
+    private final boolean parallel;
+    private Phase phase = Phase.ALL;
+
+    /* Sorted ids of the nodes referenced by the recorded ways, set in the node phase */
+    private long[] keptNodeIds;
+
+    /* Number of nodes passed to addNode, including the ones that were not kept */
+    private long parsedNodes;
+
+    /* Parsed nodes, in file order until build time */
+    private long[] nodeIds;
+    private double[] nodeLons;
+    private double[] nodeLats;
+    private int nodeCount;
+
+    /* Accepted ways, the node refs of way i are wayRefs[wayEnds[i - 1] .. wayEnds[i]) */
+    private long[] wayIds;
+    private String[] wayNames;
+    /* The HighwayType ordinal, maxspeed and one-way direction (see EdgeAttributes) of every
+     * accepted way */
+    private byte[] wayTypes;
+    private byte[] waySpeeds;
+    private byte[] wayOneWays;
+    /* One instance of every way name, so that ways sharing a name share the string */
+    private final Map<String, String> internedNames = new HashMap<>();
+    private int[] wayEnds;
+    private int wayCount;
+    private long[] wayRefs;
+    private int refCount;
+
+    /* Turn restrictions as the ids of their from way, via node and to way, and whether
+     * they allow the only turn they name rather than forbid it */
+    private long[] restrictionIds;
+    private boolean[] restrictionOnly;
+    private int restrictionCount;
+
+    /* Names of named nodes, fed to the searcher at build time */
+    private long[] namedNodeIds;
+    private String[] nodeNames;
+    private int nameCount;
+
+    /* Creates a builder that builds the graph on the calling thread */
+    public GraphBuilder() {
+        this(false);
+    }
+
+    /**
+     * Creates a builder.
+     * @param parallel whether to build the graph on the common fork-join pool
+     */
+    public GraphBuilder(boolean parallel) {
+        this(parallel, INITIAL_CAPACITY, INITIAL_CAPACITY, INITIAL_CAPACITY, INITIAL_CAPACITY,
+                INITIAL_CAPACITY);
+    }
+
+    private GraphBuilder(boolean parallel, int nodes, int ways, int refs, int names,
+                         int restrictions) {
+        this.parallel = parallel;
+        nodeIds = new long[Math.max(nodes, 1)];
+        nodeLons = new double[nodeIds.length];
+        nodeLats = new double[nodeIds.length];
+        wayIds = new long[Math.max(ways, 1)];
+        wayNames = new String[wayIds.length];
+        wayTypes = new byte[wayIds.length];
+        waySpeeds = new byte[wayIds.length];
+        wayOneWays = new byte[wayIds.length];
+        wayEnds = new int[wayIds.length];
+        wayRefs = new long[Math.max(refs, 1)];
+        restrictionOnly = new boolean[Math.max(restrictions, 1)];
+        restrictionIds = new long[3 * restrictionOnly.length];
+        namedNodeIds = new long[Math.max(names, 1)];
+        nodeNames = new String[namedNodeIds.length];
+    }
+
+    /**
+     * Concatenates builders that each hold a consecutive part of the same file.
+     * @param parts the builders, in file order
+     * @param parallel whether the merged builder builds the graph in parallel
+     * @return a builder holding the contents of all parts
+     */
+    public static GraphBuilder merge(List<GraphBuilder> parts, boolean parallel) {
+        int nodes = 0, ways = 0, refs = 0, names = 0, restrictions = 0;
+        for (GraphBuilder part : parts) {
+            nodes += part.nodeCount;
+            ways += part.wayCount;
+            refs += part.refCount;
+            names += part.nameCount;
+            restrictions += part.restrictionCount;
+        }
+        GraphBuilder merged = new GraphBuilder(parallel, nodes, ways, refs, names,
+                restrictions);
+        for (GraphBuilder part : parts) {
+            System.arraycopy(part.nodeIds, 0, merged.nodeIds, merged.nodeCount, part.nodeCount);
+            System.arraycopy(part.nodeLons, 0, merged.nodeLons, merged.nodeCount, part.nodeCount);
+            System.arraycopy(part.nodeLats, 0, merged.nodeLats, merged.nodeCount, part.nodeCount);
+            merged.nodeCount += part.nodeCount;
+            merged.parsedNodes += part.parsedNodes;
+
+            System.arraycopy(part.wayIds, 0, merged.wayIds, merged.wayCount, part.wayCount);
+            System.arraycopy(part.wayNames, 0, merged.wayNames, merged.wayCount, part.wayCount);
+            System.arraycopy(part.wayTypes, 0, merged.wayTypes, merged.wayCount, part.wayCount);
+            System.arraycopy(part.waySpeeds, 0, merged.waySpeeds, merged.wayCount, part.wayCount);
+            System.arraycopy(part.wayOneWays, 0, merged.wayOneWays, merged.wayCount,
+                    part.wayCount);
+            for (int w = 0; w < part.wayCount; w++) {
+                merged.wayEnds[merged.wayCount + w] = merged.refCount + part.wayEnds[w];
+            }
+            merged.wayCount += part.wayCount;
+            System.arraycopy(part.wayRefs, 0, merged.wayRefs, merged.refCount, part.refCount);
+            merged.refCount += part.refCount;
+
+            System.arraycopy(part.namedNodeIds, 0, merged.namedNodeIds, merged.nameCount,
+                    part.nameCount);
+            System.arraycopy(part.nodeNames, 0, merged.nodeNames, merged.nameCount,
+                    part.nameCount);
+            merged.nameCount += part.nameCount;
+
+            System.arraycopy(part.restrictionIds, 0, merged.restrictionIds,
+                    3 * merged.restrictionCount, 3 * part.restrictionCount);
+            System.arraycopy(part.restrictionOnly, 0, merged.restrictionOnly,
+                    merged.restrictionCount, part.restrictionCount);
+            merged.restrictionCount += part.restrictionCount;
+        }
+        return merged;
+    }
+
+    /**
+     * Switches to the way phase, in which nodes and node names are ignored.
+     */
+    public void beginWayPhase() {
+        phase = Phase.WAYS;
+    }
+
+    /**
+     * Switches to the node phase, in which ways are ignored and only the nodes referenced
+     * by the ways recorded so far are kept. Ways with fewer than two nodes do not count,
+     * as they never contribute an edge.
+     */
+    public void beginNodePhase() {
+        long[] refs = new long[refCount];
+        int count = 0;
+        for (int w = 0; w < wayCount; w++) {
+            int begin = wayBegin(w);
+            if (wayEnds[w] - begin < 2) continue;
+            System.arraycopy(wayRefs, begin, refs, count, wayEnds[w] - begin);
+            count += wayEnds[w] - begin;
+        }
+        if (parallel) Arrays.parallelSort(refs, 0, count);
+        else Arrays.sort(refs, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || refs[i] != refs[unique - 1]) refs[unique++] = refs[i];
+        }
+        keptNodeIds = Arrays.copyOf(refs, unique);
+        phase = Phase.NODES;
+    }
+
+    /**
+     * Returns an empty builder in the node phase that keeps the same nodes as this one, for
+     * importers that read the nodes of a file in parts. See appendNodes().
+     */
+    public GraphBuilder nodePhasePart() {
+        if (phase != Phase.NODES) throw new IllegalStateException("Not in the node phase");
+        GraphBuilder part = new GraphBuilder();
+        part.keptNodeIds = keptNodeIds;
+        part.phase = Phase.NODES;
+        return part;
+    }
+
+    /**
+     * Appends the nodes and node names of parts created by nodePhasePart().
+     * @param parts the parts, in file order
+     */
+    public void appendNodes(List<GraphBuilder> parts) {
+        int nodes = nodeCount, names = nameCount;
+        for (GraphBuilder part : parts) {
+            nodes += part.nodeCount;
+            names += part.nameCount;
+        }
+        nodeIds = Arrays.copyOf(nodeIds, Math.max(nodes, 1));
+        nodeLons = Arrays.copyOf(nodeLons, nodeIds.length);
+        nodeLats = Arrays.copyOf(nodeLats, nodeIds.length);
+        namedNodeIds = Arrays.copyOf(namedNodeIds, Math.max(names, 1));
+        nodeNames = Arrays.copyOf(nodeNames, namedNodeIds.length);
+        for (GraphBuilder part : parts) {
+            System.arraycopy(part.nodeIds, 0, nodeIds, nodeCount, part.nodeCount);
+            System.arraycopy(part.nodeLons, 0, nodeLons, nodeCount, part.nodeCount);
+            System.arraycopy(part.nodeLats, 0, nodeLats, nodeCount, part.nodeCount);
+            nodeCount += part.nodeCount;
+            parsedNodes += part.parsedNodes;
+            System.arraycopy(part.namedNodeIds, 0, namedNodeIds, nameCount, part.nameCount);
+            System.arraycopy(part.nodeNames, 0, nodeNames, nameCount, part.nameCount);
+            nameCount += part.nameCount;
+        }
+    }
+
+    /**
+     * Adds a node. In the node phase the node is dropped unless a recorded way uses it.
+     * @param id the OSM id of the node
+     * @param lon the longitude of the node
+     * @param lat the latitude of the node
+     */
+    public void addNode(long id, double lon, double lat) {
+        if (phase == Phase.WAYS) return;
+        parsedNodes++;
+        if (phase == Phase.NODES && Arrays.binarySearch(keptNodeIds, id) < 0) return;
+        if (nodeCount == nodeIds.length) {
+            int capacity = nodeCount * 2;
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            nodeLons = Arrays.copyOf(nodeLons, capacity);
+            nodeLats = Arrays.copyOf(nodeLats, capacity);
+        }
+        nodeIds[nodeCount] = id;
+        nodeLons[nodeCount] = lon;
+        nodeLats[nodeCount] = lat;
+        nodeCount++;
+    }
+
+    /**
+     * Feeds the name of a node to the searcher.
+     * @param id the OSM id of the node
+     * @param name the name of the node
+     */
+    public void addNodeName(long id, String name) {
+        if (phase == Phase.WAYS) return;
+        if (nameCount == namedNodeIds.length) {
+            namedNodeIds = Arrays.copyOf(namedNodeIds, nameCount * 2);
+            nodeNames = Arrays.copyOf(nodeNames, nameCount * 2);
+        }
+        namedNodeIds[nameCount] = id;
+        nodeNames[nameCount] = name;
+        nameCount++;
+    }
+
+    /**
+     * Adds a way that passed the highway filter.
+     * @param id the OSM id of the way
+     * @param name the name of the way, may be null
+     * @param type the type of road the way is
+     * @param maxSpeed the maxspeed of the way in miles per hour, see
+     *                 HighwayType.parseMaxSpeed(), or EdgeAttributes.NO_MAX_SPEED
+     * @param oneWay the directions the way may be driven in, see EdgeAttributes.oneWay()
+     * @param refs buffer holding the ids of the nodes of the way, in order
+     * @param count the number of node ids in refs
+     */
+    public void addWay(long id, String name, HighwayType type, int maxSpeed, int oneWay,
+                       long[] refs, int count) {
+        if (phase == Phase.NODES) return;
+        if (wayCount == wayIds.length) {
+            int capacity = wayCount * 2;
+            wayIds = Arrays.copyOf(wayIds, capacity);
+            wayNames = Arrays.copyOf(wayNames, capacity);
+            wayTypes = Arrays.copyOf(wayTypes, capacity);
+            waySpeeds = Arrays.copyOf(waySpeeds, capacity);
+            wayOneWays = Arrays.copyOf(wayOneWays, capacity);
+            wayEnds = Arrays.copyOf(wayEnds, capacity);
+        }
+        if (refCount + count > wayRefs.length) {
+            wayRefs = Arrays.copyOf(wayRefs, Math.max(wayRefs.length * 2, refCount + count));
+        }
+        System.arraycopy(refs, 0, wayRefs, refCount, count);
+        refCount += count;
+        wayIds[wayCount] = id;
+        wayNames[wayCount] = name == null ? null : internedNames.computeIfAbsent(name, k -> k);
+        wayTypes[wayCount] = (byte) type.ordinal();
+        waySpeeds[wayCount] = (byte) maxSpeed;
+        wayOneWays[wayCount] = (byte) oneWay;
+        wayEnds[wayCount] = refCount;
+        wayCount++;
+    }
+
+    /**
+     * Adds a turn restriction relation whose via member is a node. Restrictions via a way
+     * are not supported and should not be passed.
+     * @param fromWay the OSM id of the way the restricted turns come from
+     * @param viaNode the OSM id of the node they turn at
+     * @param toWay the OSM id of the way the restricted turns lead to
+     * @param only whether the restriction allows the turn onto toWay only ("only_*"), rather
+     *             than forbid it ("no_*")
+     */
+    public void addRestriction(long fromWay, long viaNode, long toWay, boolean only) {
+        if (phase == Phase.NODES) return;
+        if (restrictionCount == restrictionOnly.length) {
+            restrictionOnly = Arrays.copyOf(restrictionOnly, restrictionCount * 2);
+            restrictionIds = Arrays.copyOf(restrictionIds, restrictionCount * 6);
+        }
+        restrictionIds[3 * restrictionCount] = fromWay;
+        restrictionIds[3 * restrictionCount + 1] = viaNode;
+        restrictionIds[3 * restrictionCount + 2] = toWay;
+        restrictionOnly[restrictionCount] = only;
+        restrictionCount++;
+    }
+
+    /* Returns the number of nodes parsed so far, including the ones that were not kept */
+    public long nodeCount() {
+        return parsedNodes;
+    }
+
+    /* Returns the number of nodes kept so far */
+    public int keptNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Builds the graph into db. Only nodes that lie on an accepted way with at least two
+     * nodes become vertices, which is what the old post-pass clean() used to remove.
+     * Parallel edges and self loops are dropped, and edge lengths are computed once here.
+     * @param db the graph to build into
+     * @param offHeap whether to move the built graph out of the heap
+     */
+    void buildInto(GraphDB db, boolean offHeap) {
+        CompletableFuture<Searcher> searchIndex = parallel
+                ? CompletableFuture.supplyAsync(this::buildSearcher) : null;
+
+        sortNodes();
+
+        /* Map every way ref to its node index, -1 when the node is not in the file */
+        int[] refNodes = new int[refCount];
+        range(0, refCount).forEach(i -> {
+            int nd = Arrays.binarySearch(nodeIds, 0, nodeCount, wayRefs[i]);
+            refNodes[i] = nd < 0 ? -1 : nd;
+        });
+
+        /* Number the nodes that end up in the graph */
+        boolean[] used = new boolean[nodeCount];
+        range(0, wayCount).forEach(w -> {
+            if (wayEnds[w] - wayBegin(w) < 2) return;
+            for (int i = wayBegin(w); i < wayEnds[w]; i++) {
+                if (refNodes[i] >= 0) used[refNodes[i]] = true;
+            }
+        });
+        int[] vertexOf = new int[nodeCount];
+        int n = 0;
+        for (int nd = 0; nd < nodeCount; nd++) vertexOf[nd] = used[nd] ? n++ : -1;
+        long[] ids = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        range(0, nodeCount).forEach(nd -> {
+            int v = vertexOf[nd];
+            if (v < 0) return;
+            ids[v] = nodeIds[nd];
+            lons[v] = nodeLons[nd];
+            lats[v] = nodeLats[nd];
+        });
+        range(0, refCount).forEach(i -> {
+            if (refNodes[i] >= 0) refNodes[i] = vertexOf[refNodes[i]];
+        });
+
+        /* Both directions of every segment as a (source, target) key, sorted so that the
+         * out-edges of each vertex are contiguous and duplicates adjacent */
+        long[] keys = new long[2 * refCount];
+        range(0, wayCount).forEach(w -> {
+            int begin = wayBegin(w);
+            if (begin == wayEnds[w]) return;
+            keys[2 * begin] = keys[2 * begin + 1] = NO_EDGE;
+            for (int i = begin + 1; i < wayEnds[w]; i++) {
+                int a = refNodes[i - 1], b = refNodes[i];
+                boolean valid = a >= 0 && b >= 0 && a != b;
+                keys[2 * i] = valid ? edgeKey(a, b) : NO_EDGE;
+                keys[2 * i + 1] = valid ? edgeKey(b, a) : NO_EDGE;
+            }
+        });
+        if (parallel) Arrays.parallelSort(keys);
+        else Arrays.sort(keys);
+
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[keys.length];
+        int m = 0;
+        for (int k = 0; k < keys.length && keys[k] != NO_EDGE; k++) {
+            if (k > 0 && keys[k] == keys[k - 1]) continue;
+            offsets[(int) (keys[k] >>> 32) + 1]++;
+            targets[m++] = (int) keys[k];
+        }
+        for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+
+        float[] lengths = new float[m];
+        range(0, n).forEach(v -> {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                lengths[e] = (float) GraphDB.distance(lons[v], lats[v], lons[w], lats[w]);
+            }
+        });
+        CompactGraph compactGraph = new CompactGraph(ids, lons, lats, offsets,
+                Arrays.copyOf(targets, m), lengths);
+        if (offHeap) compactGraph = compactGraph.offHeap();
+        EdgeAttributes attributes = buildAttributes(refNodes, offsets, targets, m);
+        if (offHeap) attributes = attributes.offHeap();
+        TurnRestrictions turns = buildTurnRestrictions(refNodes, ids, offsets, targets);
+        if (offHeap) turns = turns.offHeap();
+
+        WayTable wayTable = buildWayTable(refNodes, n, offHeap);
+        Searcher searcher = parallel ? searchIndex.join() : buildSearcher();
+        db.init(compactGraph, attributes, turns, wayTable, searcher);
+    }
+
+    /**
+     * Gives every edge the attributes of the way it lies on, or of the most important way
+     * when it lies on several, whichever order the ways come in. An edge may be driven
+     * along if any of its ways may be driven in its direction, and has NO_ENTRY set if not.
+     * @param refNodes the vertex of every way ref, -1 for refs that are not vertices
+     * @param offsets the edge offsets of each vertex
+     * @param targets the target of each edge, sorted within each vertex
+     * @param m the number of edges
+     */
+    private EdgeAttributes buildAttributes(int[] refNodes, int[] offsets, int[] targets,
+                                           int m) {
+        byte[] types = new byte[m];
+        byte[] speeds = new byte[m];
+        boolean[] set = new boolean[m];
+        boolean[] open = new boolean[m];
+        for (int w = 0; w < wayCount; w++) {
+            for (int i = wayBegin(w) + 1; i < wayEnds[w]; i++) {
+                int a = refNodes[i - 1], b = refNodes[i];
+                if (a < 0 || b < 0 || a == b) continue;
+                int forward = edgeIndex(offsets, targets, a, b);
+                int backward = edgeIndex(offsets, targets, b, a);
+                open[forward] |= wayOneWays[w] != EdgeAttributes.ONE_WAY_REVERSED;
+                open[backward] |= wayOneWays[w] != EdgeAttributes.ONE_WAY;
+                for (int e : new int[] {forward, backward}) {
+                    if (set[e] && types[e] <= wayTypes[w]) continue;
+                    set[e] = true;
+                    types[e] = wayTypes[w];
+                    speeds[e] = waySpeeds[w];
+                }
+            }
+        }
+        for (int e = 0; e < m; e++) {
+            if (!open[e]) types[e] |= EdgeAttributes.NO_ENTRY;
+        }
+        return new EdgeAttributes(types, speeds);
+    }
+
+    /**
+     * Turns the restriction relations into the turns they forbid, each at its via vertex
+     * from and to the edges of the vertex along the from and to ways. A restriction whose
+     * members are not all in the graph, or whose ways do not pass its via node, is dropped.
+     * @param refNodes the vertex of every way ref, -1 for refs that are not vertices
+     * @param ids the OSM ids of the vertices, sorted
+     * @param offsets the edge offsets of each vertex
+     * @param targets the target of each edge, sorted within each vertex
+     */
+    private TurnRestrictions buildTurnRestrictions(int[] refNodes, long[] ids, int[] offsets,
+                                                   int[] targets) {
+        Map<Long, Integer> ways = new HashMap<>();
+        for (int r = 0; r < restrictionCount; r++) {
+            ways.put(restrictionIds[3 * r], -1);
+            ways.put(restrictionIds[3 * r + 2], -1);
+        }
+        for (int w = 0; w < wayCount; w++) ways.replace(wayIds[w], w);
+
+        long[] keys = new long[16];
+        int count = 0;
+        for (int r = 0; r < restrictionCount; r++) {
+            int from = ways.get(restrictionIds[3 * r]), to = ways.get(restrictionIds[3 * r + 2]);
+            int v = Arrays.binarySearch(ids, restrictionIds[3 * r + 1]);
+            if (from < 0 || to < 0 || v < 0) continue;
+            int degree = offsets[v + 1] - offsets[v];
+            if (degree > TurnRestrictions.MAX_DEGREE) continue;
+            boolean[] fromSlots = waySlots(from, v, refNodes, offsets, targets);
+            boolean[] toSlots = waySlots(to, v, refNodes, offsets, targets);
+            if (!any(fromSlots) || !any(toSlots)) continue;
+            for (int in = 0; in < degree; in++) {
+                if (!fromSlots[in]) continue;
+                for (int out = 0; out < degree; out++) {
+                    /* A restriction from a way onto itself is about turning back on it */
+                    boolean named = toSlots[out] && (from != to || in == out);
+                    if (named == restrictionOnly[r]) continue;
+                    if (count == keys.length) keys = Arrays.copyOf(keys, count * 2);
+                    keys[count++] = TurnRestrictions.key(v, in, out);
+                }
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || keys[i] != keys[unique - 1]) keys[unique++] = keys[i];
+        }
+        return new TurnRestrictions(Arrays.copyOf(keys, unique));
+    }
+
+    /* Returns which edges of vertex v lead to a neighbour of v along way w, by position */
+    private boolean[] waySlots(int w, int v, int[] refNodes, int[] offsets, int[] targets) {
+        boolean[] slots = new boolean[offsets[v + 1] - offsets[v]];
+        for (int i = wayBegin(w); i < wayEnds[w]; i++) {
+            if (refNodes[i] != v) continue;
+            for (int j : new int[] {i - 1, i + 1}) {
+                if (j < wayBegin(w) || j >= wayEnds[w] || refNodes[j] < 0 || refNodes[j] == v) {
+                    continue;
+                }
+                slots[edgeIndex(offsets, targets, v, refNodes[j]) - offsets[v]] = true;
+            }
+        }
+        return slots;
+    }
+
+    private static boolean any(boolean[] values) {
+        for (boolean value : values) {
+            if (value) return true;
+        }
+        return false;
+    }
+
+    /* Returns the index of the edge from a to b, which must exist */
+    private static int edgeIndex(int[] offsets, int[] targets, int a, int b) {
+        return Arrays.binarySearch(targets, offsets[a], offsets[a + 1], b);
+    }
+
+    /**
+     * Builds the way table: the ways ordered by id with their names pooled, and the ways
+     * every vertex lies on.
+     * @param refNodes the vertex of every way ref, -1 for refs that are not vertices
+     * @param n the number of vertices
+     * @param offHeap whether to keep the columns off the heap
+     */
+    private WayTable buildWayTable(int[] refNodes, int n, boolean offHeap) {
+        /* OSM files list ways by ascending id, so sorting is usually a single check */
+        int[] order = new int[wayCount];
+        for (int w = 0; w < wayCount; w++) order[w] = w;
+        for (int w = 1; w < wayCount; w++) {
+            if (wayIds[w - 1] > wayIds[w]) {
+                Integer[] boxed = new Integer[wayCount];
+                for (int i = 0; i < wayCount; i++) boxed[i] = i;
+                Arrays.sort(boxed, Comparator.comparingLong(i -> wayIds[i]));
+                for (int i = 0; i < wayCount; i++) order[i] = boxed[i];
+                break;
+            }
+        }
+
+        long[] ids = new long[wayCount];
+        int[] nameIndices = new int[wayCount];
+        int[] refOffsets = new int[wayCount + 1];
+        long[] refs = new long[refCount];
+        Map<String, Integer> namePool = new HashMap<>();
+        for (int k = 0; k < wayCount; k++) {
+            int w = order[k];
+            ids[k] = wayIds[w];
+            nameIndices[k] = wayNames[w] == null ? WayTable.NO_NAME
+                    : namePool.computeIfAbsent(wayNames[w], name -> namePool.size());
+            int count = wayEnds[w] - wayBegin(w);
+            System.arraycopy(wayRefs, wayBegin(w), refs, refOffsets[k], count);
+            refOffsets[k + 1] = refOffsets[k] + count;
+        }
+        String[] names = new String[namePool.size()];
+        for (Map.Entry<String, Integer> entry : namePool.entrySet()) {
+            names[entry.getValue()] = entry.getKey();
+        }
+
+        /* The ways every vertex lies on, counted first and then filled in way order, which
+         * also makes a way that passes a vertex twice easy to skip */
+        int[] vertexOffsets = new int[n + 1];
+        int[] lastWay = new int[n];
+        Arrays.fill(lastWay, -1);
+        for (int k = 0; k < wayCount; k++) {
+            int w = order[k];
+            if (wayEnds[w] - wayBegin(w) < 2) continue;
+            for (int i = wayBegin(w); i < wayEnds[w]; i++) {
+                int v = refNodes[i];
+                if (v < 0 || lastWay[v] == k) continue;
+                lastWay[v] = k;
+                vertexOffsets[v + 1]++;
+            }
+        }
+        for (int v = 0; v < n; v++) vertexOffsets[v + 1] += vertexOffsets[v];
+        int[] vertexWays = new int[vertexOffsets[n]];
+        int[] next = Arrays.copyOf(vertexOffsets, n);
+        Arrays.fill(lastWay, -1);
+        for (int k = 0; k < wayCount; k++) {
+            int w = order[k];
+            if (wayEnds[w] - wayBegin(w) < 2) continue;
+            for (int i = wayBegin(w); i < wayEnds[w]; i++) {
+                int v = refNodes[i];
+                if (v < 0 || lastWay[v] == k) continue;
+                lastWay[v] = k;
+                vertexWays[next[v]++] = k;
+            }
+        }
+
+        return new WayTable(Columns.longs(ids, offHeap), Columns.ints(nameIndices, offHeap),
+                names, Columns.ints(refOffsets, offHeap), Columns.longs(refs, offHeap),
+                Columns.ints(vertexOffsets, offHeap), Columns.ints(vertexWays, offHeap));
+    }
+
+    /* Feeds the node names to a new searcher, in the order they were parsed */
+    private Searcher buildSearcher() {
+        Searcher searcher = new Searcher();
+        for (int i = 0; i < nameCount; i++) {
+            String name = nodeNames[i];
+            searcher.addLowerToOriginalMapping(name);
+            searcher.addToNamesDict(name.toLowerCase(), namedNodeIds[i]);
+            searcher.addToTrie(name.toLowerCase());
+        }
+        return searcher;
+    }
+
+    private int wayBegin(int w) {
+        return w == 0 ? 0 : wayEnds[w - 1];
+    }
+
+    private static long edgeKey(int source, int target) {
+        return (long) source << 32 | target;
+    }
+
+    /* Returns a stream over [from, to) that is parallel if this builder is */
+    private IntStream range(int from, int to) {
+        IntStream stream = IntStream.range(from, to);
+        return parallel ? stream.parallel() : stream;
+    }
+
+    /* OSM files list nodes by ascending id, so sorting is usually a single check */
+    private void sortNodes() {
+        for (int i = 1; i < nodeCount; i++) {
+            if (nodeIds[i - 1] > nodeIds[i]) {
+                sortNodes(0, nodeCount - 1);
+                return;
+            }
+        }
+    }
+
+    /* Quicksort of the node buffers by id, moving coordinates along with their ids */
+    private void sortNodes(int lo, int hi) {
+        while (hi - lo > 16) {
+            long pivot = nodeIds[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (nodeIds[i] < pivot) i++;
+                while (nodeIds[j] > pivot) j--;
+                if (i <= j) swapNodes(i++, j--);
+            }
+            if (j - lo < hi - i) {
+                sortNodes(lo, j);
+                lo = i;
+            } else {
+                sortNodes(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && nodeIds[j - 1] > nodeIds[j]; j--) swapNodes(j - 1, j);
+        }
+    }
+
+    private void swapNodes(int i, int j) {
+        long id = nodeIds[i];
+        nodeIds[i] = nodeIds[j];
+        nodeIds[j] = id;
+        double lon = nodeLons[i];
+        nodeLons[i] = nodeLons[j];
+        nodeLons[j] = lon;
+        double lat = nodeLats[i];
+        nodeLats[i] = nodeLats[j];
+        nodeLats[j] = lat;
+    }
+}
@@ -1,13 +1,31 @@
 package service;
 
+import utils.Constants;
 import utils.GraphBuildingHandler;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractionHierarchy;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.graph.Landmarks;
+import utils.dataStructures.graph.TurnRestrictions;
+import utils.dataStructures.graph.WayTable;
+import utils.dataStructures.spatial.EdgeSnap;
+import utils.dataStructures.spatial.GridIndex;
+import utils.dataStructures.spatial.KdTree;
+import utils.dataStructures.spatial.SegmentIndex;
+import utils.osm.OsmInput;
+import utils.osm.OsmPbfReader;
+import utils.osm.OsmXmlScanner;
+import utils.osm.ParallelOsmImporter;
 import utils.dataStructures.trie.Trie;
 import utils.dataStructures.trie.TrieSet;
 import org.xml.sax.SAXException;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
@@ -18,107 +36,280 @@ import java.util.*;
  * @author Alan Yao, Josh Hug, Junlin Du
  */
 public class GraphDB {
-    // An adjacency list(map) that represents the graph
-    private Map<Long, ArrayList<Long>> graph = new HashMap<>();
-    // HashMap, serves for fast lookup operation, that maps node ids to corresponding nodes
-    private Map<Long, Node> nodesDict = new HashMap<>();
-    // way
-    private Map<Long, Way> waysDict = new HashMap<>();
+    // Immutable CSR form of the graph, built once the import is complete
+    private CompactGraph compactGraph;
+    // The highway type and maxspeed of every edge of the compact graph
+    private EdgeAttributes edgeAttributes;
+    // The turns the restriction relations forbid
+    private TurnRestrictions turnRestrictions;
+    // The graph with its degree-2 chains contracted, built on first use
+    private ContractedGraph contractedGraph;
+    // The one-way streets and forbidden turns over the contracted graph, built on first use
+    private ContractedRestrictions contractedRestrictions;
+    // Contraction Hierarchy over the contracted graph, loaded with a snapshot or built on
+    // first use
+    private ContractionHierarchy contractionHierarchy;
+    // The weights of the contracted graph under each weighting, computed on first use
+    private final Map<Router.Weighting, EdgeWeights> edgeWeights =
+            new EnumMap<>(Router.Weighting.class);
+    // Landmark distances for the ALT route search, built on first use
+    private Landmarks landmarks;
+    // Routes recently answered on this graph, discarded along with the graph
+    private RouteCache routeCache;
+    // 2-d tree over the vertices for snapping points to the graph
+    private KdTree kdTree;
+    // Grid over the vertices for k nearest and radius queries, built on first use
+    private GridIndex gridIndex;
+    // Grid over the edges of the largest component for snapping route endpoints onto roads,
+    // built on first use
+    private SegmentIndex segmentIndex;
+    // The ways, their pooled names and the ways each vertex lies on
+    private WayTable wayTable;
 
     private Searcher searcher = new Searcher();
 
-    /**
-     * Inner class that represents a node on the map.
-     * Nodes is one of the elements in the OSM XML that represents a single point
-     * defined by latitude, longitude and an ID.
-     * <a href="https://wiki.openstreetmap.org/wiki/Node">Documentation</a>
-     * */
-    public static class Node {
-        private long id;
-        private double lon;
-        private double lat;
-
-        /* The way to which the node belongs */
-        private Set<Long> wayIds = new HashSet<>();
-
-        public Node(String id, String lon, String lat) {
-            this.id = Long.parseLong(id);
-            this.lon = Double.parseDouble(lon);
-            this.lat = Double.parseDouble(lat);
-        }
+    private ImportStats importStats;
 
-        public long getId() {
-            return id;
-        }
+    /**
+     * The pipelines the OSM XML can be imported with. SAX goes through the JDK's SAX parser
+     * and GraphBuildingHandler, STREAMING scans the raw bytes with OsmXmlScanner, and
+     * PARALLEL scans chunks of the file on all cores with ParallelOsmImporter and builds
+     * the graph in parallel.
+     */
+    public enum Importer {
+        SAX, STREAMING, PARALLEL
+    }
 
-        public double getLon() {
-            return lon;
-        }
+    /**
+     * Where the per-vertex and per-edge data of the graph is kept. HEAP keeps it in Java
+     * arrays. OFF_HEAP keeps it in direct buffers, or reads it straight out of the mapped
+     * snapshot, so that the heap and the garbage collector only ever see the ways, the
+     * search index and a few buffer objects, however large the region.
+     */
+    public enum Storage {
+        HEAP, OFF_HEAP
+    }
 
-        public double getLat() {
-            return lat;
-        }
+    /**
+     * Example constructor shows how to create and start an XML parser.
+     * You do not need to modify this constructor, but you're welcome to do so.
+     * @param dbPath Path to the XML file to be parsed.
+     */
+    public GraphDB(String dbPath) {
+        this(dbPath, Importer.SAX);
+    }
 
-        private void addWayId(String wayId) {
-            this.wayIds.add(Long.parseLong(wayId));
-        }
+    /**
+     * Builds the graph from an OSM XML file with the given import pipeline. The file may be
+     * gzip, bzip2 or zstd compressed, in which case it is decoded on a separate thread
+     * while it is being parsed. OSM PBF files are recognized too and are always read with
+     * OsmPbfReader, whatever the importer. Every importer reads the file twice, first for
+     * the ways and then for the nodes they use (see GraphBuilder), so that nodes outside of
+     * the graph are never held in memory.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param importer the pipeline to parse the file with
+     */
+    public GraphDB(String dbPath, Importer importer) {
+        this(dbPath, importer, Storage.HEAP);
     }
 
     /**
-     * Inner class representing a way
-     * */
-    public static class Way {
-        private long id;
-        private String name;
-        private ArrayList<Long> nodes = new ArrayList<>();
-
-        public Way(String id, String name, ArrayList<String> nodes) {
-            this.id = Long.parseLong(id);
-            this.name = name;
-            for (String nd : nodes) {
-                this.nodes.add(Long.parseLong(nd));
+     * Builds the graph from an OSM file as GraphDB(String, Importer) does, keeping it in the
+     * given storage. The import itself always runs on the heap.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param importer the pipeline to parse the file with
+     * @param storage where to keep the built graph
+     */
+    public GraphDB(String dbPath, Importer importer, Storage storage) {
+        File inputFile = new File(dbPath);
+        GraphBuilder builder = new GraphBuilder();
+        ImportStats stats = new ImportStats(inputFile.length());
+        stats.startParse();
+        try {
+            if (OsmPbfReader.isPbf(inputFile)) {
+                builder = OsmPbfReader.read(inputFile);
+            } else if (importer == Importer.PARALLEL
+                    && OsmInput.compression(inputFile) == OsmInput.Compression.NONE) {
+                builder = ParallelOsmImporter.read(inputFile);
+            } else {
+                // Compressed files cannot be split, so they are scanned as one stream
+                builder = new GraphBuilder(importer == Importer.PARALLEL);
+                builder.beginWayPhase();
+                parse(inputFile, importer, builder);
+                builder.beginNodePhase();
+                parse(inputFile, importer, builder);
             }
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
         }
+        stats.endParse(builder.nodeCount(), builder.keptNodeCount());
+        builder.buildInto(this, storage == Storage.OFF_HEAP);
+        stats.endBuild();
+        this.importStats = stats;
+    }
 
-        public long getId() {
-            return id;
+    /* Parses the plain or compressed file on the calling thread into builder */
+    private static void parse(File inputFile, Importer importer, GraphBuilder builder)
+            throws ParserConfigurationException, SAXException, IOException {
+        try (InputStream inputStream = OsmInput.open(inputFile)) {
+            if (importer != Importer.SAX) {
+                new OsmXmlScanner(builder).scan(inputStream);
+            } else {
+                // Setting up the parser
+                SAXParserFactory factory = SAXParserFactory.newInstance();
+                SAXParser saxParser = factory.newSAXParser();
+
+                GraphBuildingHandler gbh = new GraphBuildingHandler(builder);
+                saxParser.parse(inputStream, gbh);
+            }
         }
+    }
 
-        public String getName() {
-            return name;
-        }
+    /**
+     * Creates a graph from parts that have already been built, used when loading a snapshot.
+     */
+    GraphDB(CompactGraph compactGraph, EdgeAttributes edgeAttributes,
+            TurnRestrictions turnRestrictions, WayTable wayTable, Searcher searcher) {
+        init(compactGraph, edgeAttributes, turnRestrictions, wayTable, searcher);
+    }
 
-        public ArrayList<Long> getNodes() {
-            return nodes;
-        }
+    /* Sets the built parts of the graph */
+    void init(CompactGraph compactGraph, EdgeAttributes edgeAttributes,
+              TurnRestrictions turnRestrictions, WayTable wayTable, Searcher searcher) {
+        this.compactGraph = compactGraph;
+        this.edgeAttributes = edgeAttributes;
+        this.turnRestrictions = turnRestrictions;
+        this.contractedGraph = null;
+        this.contractedRestrictions = null;
+        this.contractionHierarchy = null;
+        this.edgeWeights.clear();
+        this.landmarks = null;
+        this.routeCache = null;
+        this.kdTree = new KdTree(compactGraph);
+        this.gridIndex = null;
+        this.segmentIndex = null;
+        this.wayTable = wayTable;
+        this.searcher = searcher;
     }
 
     /**
-     * Example constructor shows how to create and start an XML parser.
-     * You do not need to modify this constructor, but you're welcome to do so.
+     * Loads the graph for an OSM file, preferring its binary snapshot when there is an up to
+     * date one (see GraphSnapshot), and parsing the XML otherwise.
      * @param dbPath Path to the XML file to be parsed.
+     * @param importer the pipeline to parse the file with when there is no snapshot
+     * @return the graph
      */
-    public GraphDB(String dbPath) {
-        try {
-            File inputFile = new File(dbPath);
-            FileInputStream inputStream = new FileInputStream(inputFile);
-            // GZIPInputStream stream = new GZIPInputStream(inputStream);
+    public static GraphDB load(String dbPath, Importer importer) {
+        return load(dbPath, importer, Storage.HEAP);
+    }
 
-            // Setting up the parser
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser saxParser = factory.newSAXParser();
+    /**
+     * Loads the graph for an OSM file as load(String, Importer) does, keeping it in the given
+     * storage. An off-heap graph loaded from a snapshot reads its columns from the mapped
+     * file without copying them.
+     * @param dbPath Path to the XML file to be parsed.
+     * @param importer the pipeline to parse the file with when there is no snapshot
+     * @param storage where to keep the graph
+     * @return the graph
+     */
+    public static GraphDB load(String dbPath, Importer importer, Storage storage) {
+        GraphDB db = GraphSnapshot.read(new File(dbPath), GraphSnapshot.snapshotFor(dbPath),
+                storage);
+        return db != null ? db : new GraphDB(dbPath, importer, storage);
+    }
 
+    public Searcher getSearcher() {
+        return searcher;
+    }
 
-            GraphBuildingHandler gbh = new GraphBuildingHandler(this);
-            saxParser.parse(inputStream, gbh);
-        } catch (ParserConfigurationException | SAXException | IOException e) {
-            e.printStackTrace();
+    public CompactGraph getCompactGraph() {
+        return compactGraph;
+    }
+
+    public EdgeAttributes getEdgeAttributes() {
+        return edgeAttributes;
+    }
+
+    public TurnRestrictions getTurnRestrictions() {
+        return turnRestrictions;
+    }
+
+    /* Returns the graph with its degree-2 chains contracted, building it on first use */
+    public synchronized ContractedGraph getContractedGraph() {
+        if (contractedGraph == null) contractedGraph = new ContractedGraph(compactGraph);
+        return contractedGraph;
+    }
+
+    /* Returns the one-way streets and forbidden turns over the contracted graph, building
+     * them on first use */
+    public synchronized ContractedRestrictions getContractedRestrictions() {
+        if (contractedRestrictions == null) {
+            contractedRestrictions = new ContractedRestrictions(getContractedGraph(),
+                    edgeAttributes, turnRestrictions);
         }
-        clean();
+        return contractedRestrictions;
     }
 
-    public Searcher getSearcher() {
-        return searcher;
+    /* Returns the Contraction Hierarchy over the contracted graph, building it on first use
+     * over the edges that keep to one-way streets when routes keep to them */
+    public synchronized ContractionHierarchy getContractionHierarchy() {
+        if (contractionHierarchy == null) {
+            contractionHierarchy = new ContractionHierarchy(getContractedGraph(),
+                    Constants.ROUTE_RESTRICTIONS ? getContractedRestrictions() : null);
+        }
+        return contractionHierarchy;
+    }
+
+    /* Sets a hierarchy built before, such as the one stored with a snapshot */
+    synchronized void setContractionHierarchy(ContractionHierarchy contractionHierarchy) {
+        this.contractionHierarchy = contractionHierarchy;
+    }
+
+    /* Returns the weights of the contracted graph under a weighting, computing them on first
+     * use */
+    public synchronized EdgeWeights getEdgeWeights(Router.Weighting weighting) {
+        EdgeWeights weights = edgeWeights.get(weighting);
+        if (weights == null) {
+            float[] base = new float[compactGraph.edgeCount()];
+            for (int e = 0; e < base.length; e++) {
+                base[e] = compactGraph.length(e) * weighting.factor(edgeAttributes.type(e),
+                        edgeAttributes.speed(e));
+            }
+            weights = new EdgeWeights(getContractedGraph(), base);
+            edgeWeights.put(weighting, weights);
+        }
+        return weights;
+    }
+
+    /* Returns the landmark distances, picking the landmarks on first use */
+    public synchronized Landmarks getLandmarks() {
+        if (landmarks == null) landmarks = new Landmarks(compactGraph, Constants.LANDMARK_COUNT);
+        return landmarks;
+    }
+
+    /* Returns the cache of the routes answered on this graph, creating it on first use */
+    public synchronized RouteCache getRouteCache() {
+        if (routeCache == null) routeCache = new RouteCache(Constants.ROUTE_CACHE_CAPACITY);
+        return routeCache;
+    }
+
+    /* Returns the grid over the vertices, building it on first use */
+    public synchronized GridIndex getGridIndex() {
+        if (gridIndex == null) gridIndex = new GridIndex(compactGraph);
+        return gridIndex;
+    }
+
+    /* Returns the grid over the edges of the largest component, building it on first use */
+    public synchronized SegmentIndex getSegmentIndex() {
+        if (segmentIndex == null) {
+            segmentIndex = new SegmentIndex(compactGraph, compactGraph.largestComponent());
+        }
+        return segmentIndex;
+    }
+
+    /* Returns the figures of the import this graph was built by, null if loaded from a snapshot */
+    public ImportStats getImportStats() {
+        return importStats;
     }
 
     /**
@@ -130,26 +321,14 @@ public class GraphDB {
         return s.replaceAll("[^a-zA-Z ]", "").toLowerCase();
     }
 
-    /**
-     *  Remove nodes with no connections from the graph.
-     *  While this does not guarantee that any two nodes in the remaining graph are connected,
-     *  we can reasonably assume this since typically roads are connected.
-     */
-    private void clean() {
-        Iterator<Map.Entry<Long, Node>> it = this.nodesDict.entrySet().iterator();
-        while (it.hasNext()) {
-            if (!this.graph.containsKey(it.next().getKey())) {
-                it.remove();
-            }
-        }
-    }
-
     /**
      * Returns an iterable of all vertex IDs in the graph.
      * @return An iterable of id's of all vertices in the graph.
      */
     public Iterable<Long> vertices() {
-        return new ArrayList<Long>(nodesDict.keySet());
+        ArrayList<Long> vertices = new ArrayList<>(compactGraph.size());
+        for (int v = 0; v < compactGraph.size(); v++) vertices.add(compactGraph.id(v));
+        return vertices;
     }
 
     /**
@@ -158,7 +337,13 @@ public class GraphDB {
      * @return An iterable of the ids of the neighbors of v.
      */
     public Iterable<Long> adjacent(long v) {
-        return new ArrayList<>(graph.get(v));
+        int i = compactGraph.indexOf(v);
+        ArrayList<Long> adjacent = new ArrayList<>();
+        if (i == CompactGraph.NO_VERTEX) return adjacent;
+        for (int e = compactGraph.edgeBegin(i); e < compactGraph.edgeEnd(i); e++) {
+            adjacent.add(compactGraph.id(compactGraph.target(e)));
+        }
+        return adjacent;
     }
 
     /**
@@ -213,121 +398,106 @@ public class GraphDB {
     }
 
     /**
-     * Returns the vertex closest to the given longitude and latitude.
+     * Returns the vertex closest to the given longitude and latitude, found in logarithmic
+     * time with a 2-d tree; among equally close vertices the one with the smallest id wins.
      * @param lon The target longitude.
      * @param lat The target latitude.
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        long node = 0L;
-        double dist, closestDist = Double.POSITIVE_INFINITY;
-
-        for (Node nd : this.nodesDict.values()) {
-            dist = distance(lon, lat, nd.getLon(), nd.getLat());
-            if (dist < closestDist) {
-                closestDist = dist;
-                node = nd.getId();
-            }
-        }
-
-        return node;
+        int v = kdTree.nearest(lon, lat);
+        return v == CompactGraph.NO_VERTEX ? 0L : compactGraph.id(v);
     }
 
     /**
-     * Gets the longitude of a vertex.
-     * @param v The id of the vertex.
-     * @return The longitude of the vertex.
+     * Returns the point on a road closest to the given longitude and latitude, which may lie
+     * between two nodes. Only roads of the largest connected component are snapped onto, so
+     * that routes are never asked for from a fragment cut off from the rest.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return The snapped point and the edge it lies on, null if the graph has no edges.
      */
-    public double lon(long v) {
-        if (!nodesDict.containsKey(v)) return 0;
-        return this.nodesDict.get(v).getLon();
+    public EdgeSnap snap(double lon, double lat) {
+        return getSegmentIndex().nearest(lon, lat);
     }
 
     /**
-     * Gets the latitude of a vertex.
-     * @param v The id of the vertex.
-     * @return The latitude of the vertex.
+     * Returns the k vertices closest to the given longitude and latitude.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k The number of vertices to return.
+     * @return The ids of the k closest nodes, closest first.
      */
-    public double lat(long v) {
-        if (!nodesDict.containsKey(v)) return 0;
-        return this.nodesDict.get(v).getLat();
+    public List<Long> kNearest(double lon, double lat, int k) {
+        return toIds(getGridIndex().kNearest(lon, lat, k));
     }
 
     /**
-     * Adding a Node to the Node Map
-     * @param node the Node to be added
-     * */
-    public void addNode(Node node) {
-        this.nodesDict.put(node.getId(), node);
+     * Returns the vertices within a distance of the given longitude and latitude.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param miles The radius in miles.
+     * @return The ids of the nodes at most miles away, closest first.
+     */
+    public List<Long> withinRadius(double lon, double lat, double miles) {
+        return toIds(getGridIndex().withinRadius(lon, lat, miles));
     }
 
-    /**
-     * Remove a Node from the Node Map
-     * @param id the id of the Node to be removed
-     * */
-    public void removeNode(long id) {
-        this.nodesDict.remove(id);
+    private List<Long> toIds(int[] vertices) {
+        List<Long> ids = new ArrayList<>(vertices.length);
+        for (int v : vertices) ids.add(compactGraph.id(v));
+        return ids;
     }
 
     /**
-     * Adding an edge to the adjacency list
-     * @param originNode the id of the Node from which the edge extends
-     * @param destNode the id of the Node to which the edge extends
-     * */
-    public void addAdjacency(String originNode, String destNode) {
-        Long originNd = Long.parseLong(originNode);
-        Long destNd = Long.parseLong(destNode);
-        
-        if (!this.graph.containsKey(originNd)) {
-            ArrayList<Long> adjacencies = new ArrayList<>();
-            adjacencies.add(destNd);
-            this.graph.put(originNd, adjacencies);
-        } else {
-            this.graph.get(originNd).add(destNd);
-        }
-
+     * Gets the longitude of a vertex.
+     * @param v The id of the vertex.
+     * @return The longitude of the vertex.
+     */
+    public double lon(long v) {
+        int i = compactGraph.indexOf(v);
+        if (i == CompactGraph.NO_VERTEX) return 0;
+        return compactGraph.lon(i);
     }
 
     /**
-     * Setting the way property of a node
-     * @param nodeId the Id of the Node
-     * @param wayId the Id of the Road
-     * */
-    public void setNodeToWay(String nodeId, String wayId) {
-        nodesDict.get(Long.parseLong(nodeId)).addWayId(wayId);
+     * Gets the latitude of a vertex.
+     * @param v The id of the vertex.
+     * @return The latitude of the vertex.
+     */
+    public double lat(long v) {
+        int i = compactGraph.indexOf(v);
+        if (i == CompactGraph.NO_VERTEX) return 0;
+        return compactGraph.lat(i);
     }
 
-    /**
-     * Adding a way to waysDict
-     * @param way a way object
-     * */
-    public void addWay(Way way) {
-        this.waysDict.put(way.id, way);
+    /* Returns the ways of the graph */
+    WayTable ways() {
+        return wayTable;
     }
 
     /**
      * Find the Id of the way that a node belongs to
      * @param nodeId the Id of the node
      *
-     * @return the Id of the way that the node belongs to
+     * @return a read-only view of the Ids of the ways the node belongs to
      * */
     public Set<Long> getWayIdSetByNode(Long nodeId) {
-        return this.nodesDict.get(nodeId).wayIds;
+        int v = compactGraph.indexOf(nodeId);
+        if (v == CompactGraph.NO_VERTEX) return Collections.emptySet();
+        return wayTable.wayIds(v);
     }
 
     /**
      * Find the Name of the way that a node belongs to
      * @param nodeId the Id of the node
      *
-     * @return the Name of the way that the node belongs to
+     * @return a read-only view of the names of the ways the node belongs to
      * */
     public Set<String> getWayNameListByNode(Long nodeId) {
-        Set<String> wayNameList = new HashSet<>();
-        Set<Long> wayIdList = this.getWayIdSetByNode(nodeId);
-        for (Long id : wayIdList) {
-            wayNameList.add(this.waysDict.get(id).name);
-        }
-        return wayNameList;
+        int v = compactGraph.indexOf(nodeId);
+        if (v == CompactGraph.NO_VERTEX) return Collections.emptySet();
+        return wayTable.names(v);
     }
 
     /**
@@ -337,9 +507,8 @@ public class GraphDB {
      *
      * @return a boolean value that indicates whether the way contains the node */
     public boolean containsNode(Long wayId, Long nodeId) {
-        ArrayList<Long> nodes = this.waysDict.get(wayId).nodes;
-        for (Long nd : nodes) if (nd.equals(nodeId)) return true;
-        return false;
+        int w = wayTable.indexOf(wayId);
+        return w != CompactGraph.NO_VERTEX && wayTable.contains(w, nodeId);
     }
 
 
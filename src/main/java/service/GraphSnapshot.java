@@ -0,0 +1,445 @@
+package service;
+
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractionHierarchy;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.TurnRestrictions;
+import utils.dataStructures.graph.WayTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned, checksummed binary snapshot of a built GraphDB.
+ * A snapshot is written once by an offline command (see SnapshotBuilder) next to the OSM
+ * source it was built from, and memory-mapped on server start instead of re-parsing the XML.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * header  : magic "BMAPSNAP", int version, long source length, long source last-modified,
+ *           long payload length, long CRC32 of the payload
+ * payload : vertices, edges, edge attributes, turn restrictions, ways, way names,
+ *           per-vertex ways, search names, contraction hierarchy
+ * </pre>
+ * A snapshot is only used when its version matches and the recorded source length and
+ * modification time still match the OSM file, so rebuilding the XML invalidates it.
+ * Every column is mapped on its own, and the values between them through a window that
+ * moves along the file, so the snapshot may exceed the 2 GB one mapping can hold as long as
+ * no single column does; writing a graph with a larger column fails.
+ * Writing a snapshot builds the Contraction Hierarchy of the graph if it has none yet, so
+ * the server never has to.
+ */
+public class GraphSnapshot {
+    /* Appended to the OSM source path to locate its snapshot */
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    private static final byte[] MAGIC = "BMAPSNAP".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 5;
+    private static final int HEADER_SIZE = MAGIC.length + 4 + 8 * 4;
+    /* The most bytes one mapping, and so one column, can hold */
+    private static final long MAX_COLUMN = Integer.MAX_VALUE;
+    /* The bytes mapped at a time for the values between columns and for the checksum */
+    private static final int WINDOW_SIZE = 1 << 26;
+
+    /**
+     * Returns the snapshot file belonging to an OSM source file.
+     * @param dbPath path of the OSM source
+     * @return the snapshot file
+     */
+    public static File snapshotFor(String dbPath) {
+        return new File(dbPath + FILE_SUFFIX);
+    }
+
+    /**
+     * Writes a snapshot of the graph. The file is written next to the target and moved into
+     * place once complete, so a running server never maps a half-written snapshot.
+     * @param db the graph to write
+     * @param source the OSM file the graph was built from
+     * @param target the snapshot file to write
+     * @throws IOException if the snapshot cannot be written, or a column of the graph is
+     *                     too large to be mapped
+     */
+    public static void write(GraphDB db, File source, File target) throws IOException {
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    Channels.newOutputStream(channel), crc);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked, 1 << 16));
+            writePayload(db, out);
+            out.flush();
+            long payloadLength = channel.position() - HEADER_SIZE;
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC).putInt(FORMAT_VERSION)
+                    .putLong(source.length()).putLong(source.lastModified())
+                    .putLong(payloadLength).putLong(crc.getValue());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a graph from its snapshot.
+     * @param source the OSM file the snapshot must have been built from
+     * @param snapshot the snapshot file
+     * @return the loaded graph, or null if there is no usable snapshot, in which case the
+     *         caller should fall back to parsing the source
+     */
+    public static GraphDB read(File source, File snapshot) {
+        return read(source, snapshot, GraphDB.Storage.HEAP);
+    }
+
+    /**
+     * Loads a graph from its snapshot into the given storage. An off-heap graph keeps reading
+     * its vertex and edge columns from the mapped snapshot, which stays mapped for as long
+     * as the graph is reachable.
+     * @param source the OSM file the snapshot must have been built from
+     * @param snapshot the snapshot file
+     * @param storage where to keep the graph
+     * @return the loaded graph, or null if there is no usable snapshot; a snapshot that is
+     *         up to date but cannot be read is reported on standard error
+     */
+    public static GraphDB read(File source, File snapshot, GraphDB.Storage storage) {
+        if (!snapshot.isFile()) return null;
+        try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) return null;
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE);
+            while (buf.hasRemaining() && channel.read(buf, buf.position()) >= 0) continue;
+            buf.flip();
+
+            byte[] magic = new byte[MAGIC.length];
+            buf.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buf.getInt() != FORMAT_VERSION) return null;
+            long sourceLength = buf.getLong();
+            long sourceModified = buf.getLong();
+            long payloadLength = buf.getLong();
+            long checksum = buf.getLong();
+
+            /* A missing source is allowed so hosts can ship the snapshot alone */
+            if (source.exists() && (source.length() != sourceLength
+                    || source.lastModified() != sourceModified)) {
+                return null;
+            }
+            if (payloadLength != channel.size() - HEADER_SIZE) {
+                System.err.println("Snapshot " + snapshot + " is truncated; parsing "
+                        + source + " instead");
+                return null;
+            }
+
+            CRC32 crc = new CRC32();
+            for (long at = HEADER_SIZE; at < channel.size(); at += WINDOW_SIZE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, at,
+                        Math.min(WINDOW_SIZE, channel.size() - at)));
+            }
+            if (crc.getValue() != checksum) {
+                System.err.println("Snapshot " + snapshot + " is corrupt; parsing " + source
+                        + " instead");
+                return null;
+            }
+
+            Input in = new Input(channel, HEADER_SIZE);
+            return readPayload(in, storage == GraphDB.Storage.OFF_HEAP);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot read snapshot " + snapshot + " (" + e + "); parsing "
+                    + source + " instead");
+            return null;
+        }
+    }
+
+    private static void writePayload(GraphDB db, DataOutputStream out) throws IOException {
+        CompactGraph g = db.getCompactGraph();
+        int n = g.size();
+
+        /* Vertices */
+        checkColumn(n, 8);
+        out.writeInt(n);
+        for (int v = 0; v < n; v++) out.writeLong(g.id(v));
+        for (int v = 0; v < n; v++) out.writeDouble(g.lon(v));
+        for (int v = 0; v < n; v++) out.writeDouble(g.lat(v));
+
+        /* Edges */
+        checkColumn(g.edgeCount(), 4);
+        out.writeInt(g.edgeCount());
+        for (int v = 0; v <= n; v++) out.writeInt(v < n ? g.edgeBegin(v) : g.edgeCount());
+        for (int e = 0; e < g.edgeCount(); e++) out.writeInt(g.target(e));
+        for (int e = 0; e < g.edgeCount(); e++) out.writeFloat(g.length(e));
+
+        /* Highway types, with the one-way bit, and maxspeeds of the edges */
+        EdgeAttributes attributes = db.getEdgeAttributes();
+        for (int e = 0; e < g.edgeCount(); e++) {
+            int noEntry = attributes.noEntry(e) ? EdgeAttributes.NO_ENTRY : 0;
+            out.writeByte(attributes.type(e).ordinal() | noEntry);
+        }
+        for (int e = 0; e < g.edgeCount(); e++) out.writeByte(attributes.maxSpeed(e));
+
+        /* Forbidden turns */
+        TurnRestrictions turns = db.getTurnRestrictions();
+        checkColumn(turns.count(), 8);
+        out.writeInt(turns.count());
+        for (int i = 0; i < turns.count(); i++) out.writeLong(turns.key(i));
+
+        /* Ways, their name pool and the ways of each vertex */
+        WayTable ways = db.ways();
+        int wayCount = ways.size();
+        checkColumn(wayCount, 8);
+        out.writeInt(wayCount);
+        for (int w = 0; w < wayCount; w++) out.writeLong(ways.id(w));
+        for (int w = 0; w < wayCount; w++) out.writeInt(ways.nameIndex(w));
+        for (int w = 0; w <= wayCount; w++) out.writeInt(ways.refsBegin(w));
+        int refCount = ways.refsBegin(wayCount);
+        checkColumn(refCount, 8);
+        out.writeInt(refCount);
+        for (int i = 0; i < refCount; i++) out.writeLong(ways.ref(i));
+        out.writeInt(ways.nameCount());
+        for (int i = 0; i < ways.nameCount(); i++) writeString(out, ways.nameOf(i));
+        for (int v = 0; v <= n; v++) out.writeInt(ways.waysBegin(v));
+        checkColumn(ways.waysBegin(n), 4);
+        out.writeInt(ways.waysBegin(n));
+        for (int i = 0; i < ways.waysBegin(n); i++) out.writeInt(ways.way(i));
+
+        /* Search names */
+        Searcher searcher = db.getSearcher();
+        Map<String, ArrayList<Long>> names = searcher.namesDict();
+        out.writeInt(names.size());
+        for (Map.Entry<String, ArrayList<Long>> entry : names.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, searcher.originalName(entry.getKey()));
+            out.writeInt(entry.getValue().size());
+            for (long id : entry.getValue()) out.writeLong(id);
+        }
+
+        /* Contraction Hierarchy over the contracted graph; its vertices are the core vertices
+         * the contracted graph is rebuilt with on load, which contracts the same graph alike */
+        ContractionHierarchy ch = db.getContractionHierarchy();
+        int cores = ch.size();
+        int chEdges = ch.edgeCount();
+        checkColumn(chEdges, 8);
+        out.writeInt(cores);
+        for (int v = 0; v < cores; v++) out.writeInt(ch.rank(v));
+        for (boolean forward : new boolean[] {true, false}) {
+            int arcs = cores == 0 ? 0 : ch.arcEnd(cores - 1, forward);
+            for (int v = 0; v < cores; v++) out.writeInt(ch.arcBegin(v, forward));
+            out.writeInt(arcs);
+            for (int i = 0; i < arcs; i++) out.writeInt(ch.arc(i, forward));
+        }
+        out.writeInt(chEdges);
+        for (int e = 0; e < chEdges; e++) out.writeInt(ch.source(e));
+        for (int e = 0; e < chEdges; e++) out.writeInt(ch.target(e));
+        for (int e = 0; e < chEdges; e++) out.writeDouble(ch.weight(e));
+        for (int e = 0; e < chEdges; e++) out.writeInt(ch.first(e));
+        for (int e = 0; e < chEdges; e++) out.writeInt(ch.second(e));
+    }
+
+    private static GraphDB readPayload(Input in, boolean offHeap) throws IOException {
+        int n = in.getInt();
+        LongBuffer ids = longs(in, n, offHeap);
+        DoubleBuffer lons = doubles(in, n, offHeap);
+        DoubleBuffer lats = doubles(in, n, offHeap);
+
+        int m = in.getInt();
+        IntBuffer offsets = ints(in, n + 1, offHeap);
+        IntBuffer targets = ints(in, m, offHeap);
+        FloatBuffer lengths = floats(in, m, offHeap);
+        CompactGraph g = new CompactGraph(ids, lons, lats, offsets, targets, lengths);
+        EdgeAttributes attributes = new EdgeAttributes(bytes(in, m, offHeap),
+                bytes(in, m, offHeap));
+        TurnRestrictions turns = new TurnRestrictions(longs(in, in.getInt(), offHeap));
+
+        int wayCount = in.getInt();
+        LongBuffer wayIds = longs(in, wayCount, offHeap);
+        IntBuffer nameIndices = ints(in, wayCount, offHeap);
+        IntBuffer refOffsets = ints(in, wayCount + 1, offHeap);
+        LongBuffer refs = longs(in, in.getInt(), offHeap);
+        String[] namePool = new String[in.getInt()];
+        for (int i = 0; i < namePool.length; i++) namePool[i] = readString(in);
+        IntBuffer vertexOffsets = ints(in, n + 1, offHeap);
+        IntBuffer vertexWays = ints(in, in.getInt(), offHeap);
+        WayTable ways = new WayTable(wayIds, nameIndices, namePool, refOffsets, refs,
+                vertexOffsets, vertexWays);
+
+        Searcher searcher = new Searcher();
+        int nameCount = in.getInt();
+        for (int i = 0; i < nameCount; i++) {
+            String lower = readString(in);
+            String original = readString(in);
+            int count = in.getInt();
+            for (int j = 0; j < count; j++) searcher.addToNamesDict(lower, in.getLong());
+            searcher.addLowerToOriginalMapping(original);
+            searcher.addToTrie(lower);
+        }
+
+        int cores = in.getInt();
+        IntBuffer ranks = ints(in, cores, offHeap);
+        IntBuffer forwardOffsets = ints(in, cores + 1, offHeap);
+        IntBuffer forwardArcs = ints(in, forwardOffsets.get(cores), offHeap);
+        IntBuffer backwardOffsets = ints(in, cores + 1, offHeap);
+        IntBuffer backwardArcs = ints(in, backwardOffsets.get(cores), offHeap);
+        int chEdges = in.getInt();
+        ContractionHierarchy ch = new ContractionHierarchy(ranks, forwardOffsets, forwardArcs,
+                backwardOffsets, backwardArcs, ints(in, chEdges, offHeap),
+                ints(in, chEdges, offHeap), doubles(in, chEdges, offHeap),
+                ints(in, chEdges, offHeap), ints(in, chEdges, offHeap));
+
+        GraphDB db = new GraphDB(g, attributes, turns, ways, searcher);
+        db.setContractionHierarchy(ch);
+        return db;
+    }
+
+    /* Reads a column of count values, either as a view of the mapped snapshot or copied
+     * into an array */
+    private static ByteBuffer bytes(Input in, int count, boolean offHeap) throws IOException {
+        ByteBuffer view = in.column(count);
+        if (offHeap) return view;
+        byte[] values = new byte[count];
+        view.get(values);
+        return ByteBuffer.wrap(values);
+    }
+
+    private static LongBuffer longs(Input in, int count, boolean offHeap) throws IOException {
+        LongBuffer view = in.column(8L * count).asLongBuffer();
+        if (offHeap) return view;
+        long[] values = new long[count];
+        view.get(values);
+        return LongBuffer.wrap(values);
+    }
+
+    private static DoubleBuffer doubles(Input in, int count, boolean offHeap)
+            throws IOException {
+        DoubleBuffer view = in.column(8L * count).asDoubleBuffer();
+        if (offHeap) return view;
+        double[] values = new double[count];
+        view.get(values);
+        return DoubleBuffer.wrap(values);
+    }
+
+    private static IntBuffer ints(Input in, int count, boolean offHeap) throws IOException {
+        IntBuffer view = in.column(4L * count).asIntBuffer();
+        if (offHeap) return view;
+        int[] values = new int[count];
+        view.get(values);
+        return IntBuffer.wrap(values);
+    }
+
+    private static FloatBuffer floats(Input in, int count, boolean offHeap) throws IOException {
+        FloatBuffer view = in.column(4L * count).asFloatBuffer();
+        if (offHeap) return view;
+        float[] values = new float[count];
+        view.get(values);
+        return FloatBuffer.wrap(values);
+    }
+
+    /* Fails the writing of a snapshot whose column of count values of width bytes each
+     * cannot be mapped on reading */
+    private static void checkColumn(long count, int width) throws IOException {
+        if (count * width > MAX_COLUMN) {
+            throw new IOException("A column of " + count * width + " bytes exceeds the "
+                    + MAX_COLUMN + " bytes a snapshot can map at once");
+        }
+    }
+
+    /* Writes a length-prefixed UTF-8 string, a length of -1 encodes null */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(Input in) throws IOException {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The payload of a snapshot being read at a long position. Each column is mapped on its
+     * own, and the values between columns are read through a window of WINDOW_SIZE bytes
+     * that is mapped again wherever a value does not fit the one mapped before.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private long position;
+        private ByteBuffer window = ByteBuffer.allocate(0);
+        private long windowStart;
+
+        Input(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        int getInt() throws IOException {
+            return window(4).getInt();
+        }
+
+        long getLong() throws IOException {
+            return window(8).getLong();
+        }
+
+        void get(byte[] bytes) throws IOException {
+            window(bytes.length).get(bytes);
+        }
+
+        /* Maps the next bytes as a buffer of their own, and skips past them */
+        ByteBuffer column(long bytes) throws IOException {
+            if (bytes > MAX_COLUMN) {
+                throw new IOException("A column of " + bytes + " bytes exceeds the "
+                        + MAX_COLUMN + " bytes a snapshot can map at once");
+            }
+            checkRemaining(bytes);
+            ByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes);
+            position += bytes;
+            return column;
+        }
+
+        /* Returns the window positioned at the next bytes, mapping it there if they do not
+         * fit the current one, and skips past them */
+        private ByteBuffer window(int bytes) throws IOException {
+            long offset = position - windowStart;
+            if (offset < 0 || offset + bytes > window.limit()) {
+                checkRemaining(bytes);
+                long size = Math.min(Math.max(WINDOW_SIZE, bytes), channel.size() - position);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                windowStart = position;
+                offset = 0;
+            }
+            window.position((int) offset);
+            position += bytes;
+            return window;
+        }
+
+        private void checkRemaining(long bytes) throws IOException {
+            if (bytes < 0 || position + bytes > channel.size()) {
+                throw new EOFException("Snapshot ends before " + bytes + " bytes at "
+                        + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package service;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Throughput and allocation figures of one graph import, used to compare the import
+ * pipelines against each other. Allocation is summed over the JVM's per-thread allocation
+ * counters of all live threads, so that imports running on the fork-join pool are counted
+ * too, and is reported as -1 where the JVM does not provide the counters. Peak heap is the
+ * sum of the peak usage of the heap memory pools over the import, so it includes garbage
+ * that was not yet collected.
+ */
+public class ImportStats {
+    private final long inputBytes;
+    private long nodes;
+    private long keptNodes;
+    private long parseNanos;
+    private long buildNanos;
+    private long allocatedBytes = -1;
+    private long peakHeapBytes;
+
+    private long startNanos;
+    private long startAllocated;
+
+    ImportStats(long inputBytes) {
+        this.inputBytes = inputBytes;
+    }
+
+    /* Marks the start of parsing */
+    void startParse() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        startAllocated = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /* Marks the end of parsing */
+    void endParse(long nodes, long keptNodes) {
+        parseNanos = System.nanoTime() - startNanos;
+        long allocated = allocatedBytes();
+        if (allocated >= 0 && startAllocated >= 0) this.allocatedBytes = allocated - startAllocated;
+        this.nodes = nodes;
+        this.keptNodes = keptNodes;
+        startNanos = System.nanoTime();
+    }
+
+    /* Marks the end of graph building */
+    void endBuild() {
+        buildNanos = System.nanoTime() - startNanos;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by all live threads.
+     * @return the allocated bytes, or -1 if the JVM does not track allocation per thread
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        long total = 0;
+        for (long allocated : ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (allocated > 0) total += allocated;
+        }
+        return total;
+    }
+
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /* Returns the number of parsed nodes that were kept for the graph */
+    public long getKeptNodes() {
+        return keptNodes;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public long getParseMillis() {
+        return parseNanos / 1000000;
+    }
+
+    public long getBuildMillis() {
+        return buildNanos / 1000000;
+    }
+
+    /* Returns the parse throughput in megabytes of input per second */
+    public double getMegabytesPerSecond() {
+        return parseNanos == 0 ? 0 : (inputBytes / 1e6) / (parseNanos / 1e9);
+    }
+
+    /* Returns the bytes allocated while parsing per parsed node, or -1 if unknown */
+    public double getAllocatedBytesPerNode() {
+        return allocatedBytes < 0 || nodes == 0 ? -1 : (double) allocatedBytes / nodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d nodes (%d kept), %.1f MB parsed in %d ms (%.1f MB/s), "
+                        + "%.1f bytes allocated per node, graph built in %d ms, "
+                        + "peak heap %.1f MB",
+                nodes, keptNodes, inputBytes / 1e6, getParseMillis(), getMegabytesPerSecond(),
+                getAllocatedBytesPerNode(), getBuildMillis(), peakHeapBytes / 1e6);
+    }
+}
@@ -0,0 +1,109 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Everything reachable from a point within some distance along the roads: the nodes, and the
+ * cells of a grid laid over the map at the point that hold any of them, whose outline is
+ * drawn over the map as the reachable area. The cells are square, with sides of the distance
+ * over Constants.ISOCHRONE_CELLS_PER_DISTANCE, so the outline is as coarse for a short walk
+ * as for a drive across town.
+ */
+public class Isochrone {
+    /* The snapped point the distances are measured from */
+    public final double originLon;
+    public final double originLat;
+    /* The greatest distance in miles along the roads */
+    public final double miles;
+    /* The ids of the nodes within that distance */
+    public final long[] nodes;
+
+    /* The sides of a cell in degrees, and the cells holding a node or the origin, each as
+     * its column in the high and its row in the low half of a long, sorted */
+    private final double cellLon;
+    private final double cellLat;
+    private final long[] cells;
+
+    Isochrone(double originLon, double originLat, double miles, long[] nodes, double[] lons,
+              double[] lats, double cellMiles) {
+        this.originLon = originLon;
+        this.originLat = originLat;
+        this.miles = miles;
+        this.nodes = nodes;
+        /* Degrees of latitude are as long everywhere, degrees of longitude shrink toward the
+         * poles */
+        cellLat = cellMiles / GraphDB.distance(originLon, originLat, originLon, originLat + 1);
+        cellLon = cellMiles / GraphDB.distance(originLon, originLat, originLon + 1, originLat);
+
+        /* The origin counts too, unless nothing is reachable */
+        long[] all = new long[lons.length == 0 ? 0 : lons.length + 1];
+        for (int i = 0; i < lons.length; i++) all[i] = cell(lons[i], lats[i]);
+        if (lons.length > 0) all[lons.length] = cell(originLon, originLat);
+        Arrays.sort(all);
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) all[count++] = all[i];
+        }
+        this.cells = Arrays.copyOf(all, count);
+    }
+
+    /* An isochrone around a point that could not be snapped onto a road, which holds nothing */
+    static Isochrone empty(double lon, double lat, double miles) {
+        return new Isochrone(lon, lat, miles, new long[0], new double[0], new double[0], 1);
+    }
+
+    /* Returns the cells holding a node as {ullon, ullat, lrlon, lrlat} boxes */
+    public List<double[]> cells() {
+        List<double[]> boxes = new ArrayList<>(cells.length);
+        for (long cell : cells) {
+            int col = (int) (cell >> 32), row = (int) cell;
+            boxes.add(new double[] {lon(col), lat(row + 1), lon(col + 1), lat(row)});
+        }
+        return boxes;
+    }
+
+    /* Returns the outline of the cells as {lon, lat, lon, lat} segments, each a side of a
+     * cell whose neighbour across it holds no node */
+    public List<double[]> outline() {
+        List<double[]> segments = new ArrayList<>();
+        for (long cell : cells) {
+            int col = (int) (cell >> 32), row = (int) cell;
+            if (!holds(col - 1, row)) {
+                segments.add(new double[] {lon(col), lat(row), lon(col), lat(row + 1)});
+            }
+            if (!holds(col + 1, row)) {
+                segments.add(new double[] {lon(col + 1), lat(row), lon(col + 1), lat(row + 1)});
+            }
+            if (!holds(col, row - 1)) {
+                segments.add(new double[] {lon(col), lat(row), lon(col + 1), lat(row)});
+            }
+            if (!holds(col, row + 1)) {
+                segments.add(new double[] {lon(col), lat(row + 1), lon(col + 1), lat(row + 1)});
+            }
+        }
+        return segments;
+    }
+
+    private boolean holds(int col, int row) {
+        return Arrays.binarySearch(cells, key(col, row)) >= 0;
+    }
+
+    private long cell(double lon, double lat) {
+        return key((int) Math.floor((lon - originLon) / cellLon),
+                (int) Math.floor((lat - originLat) / cellLat));
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private double lon(int col) {
+        return originLon + col * cellLon;
+    }
+
+    private double lat(int row) {
+        return originLat + row * cellLat;
+    }
+}
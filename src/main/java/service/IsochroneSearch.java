@@ -0,0 +1,236 @@
+package service;
+
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sweeps the roads from a point for everything within some distance of it, with the
+ * per-thread search state and the anchors Router searches single routes with, so the sweep
+ * keeps to the same restrictions. The result is an Isochrone.
+ */
+public class IsochroneSearch {
+    /**
+     * Returns everything reachable from a point within some distance along the roads, the
+     * point snapped onto the closest point of any road as for Router.snappedPath. Dijkstra
+     * sweeps the contracted graph from the snapped point until the distance is exceeded, and
+     * the shape points of every chain it reached are then checked from both of its ends. On
+     * a graph with restrictions to keep to, the contracted edges are swept instead, see
+     * turnIsochrone.
+     * @param db The graph to use.
+     * @param lon The longitude of the point.
+     * @param lat The latitude of the point.
+     * @param miles The greatest distance along the roads.
+     * @return The nodes within the distance and the area they cover.
+     */
+    public static Isochrone isochrone(GraphDB db, double lon, double lat, double miles) {
+        EdgeSnap snap = db.snap(lon, lat);
+        if (snap == null) return Isochrone.empty(lon, lat, miles);
+        ContractedGraph cg = db.getContractedGraph();
+        CompactGraph g = cg.base();
+        EdgeWeights lengths = db.getEdgeWeights(Router.Weighting.SHORTEST);
+        Anchor start = Anchor.onEdge(cg, lengths, snap);
+        ContractedRestrictions restrictions = Router.restrictions(db);
+        if (restrictions != null) {
+            return turnIsochrone(cg, restrictions, lengths, start, miles)
+                    .toIsochrone(snap.lon, snap.lat, miles);
+        }
+        SearchContext ctx = Router.CONTEXT.get();
+        ctx.start(cg.size());
+
+        int[] starts = start.cores(cg);
+        double[] startDist = start.distances();
+        for (int i = 0; i < starts.length; i++) {
+            if (startDist[i] <= miles && startDist[i] < ctx.dist(starts[i])) {
+                ctx.set(starts[i], startDist[i], SearchContext.NO_PARENT);
+                ctx.heap.addOrChange(starts[i], startDist[i]);
+            }
+        }
+        /* The core vertices within the distance, in the order they are settled */
+        int[] settled = new int[16];
+        int count = 0;
+        while (!ctx.heap.isEmpty()) {
+            int c = ctx.heap.removeSmallest();
+            ctx.close(c);
+            if (count == settled.length) settled = Arrays.copyOf(settled, 2 * count);
+            settled[count++] = c;
+            double distC = ctx.dist(c);
+            for (int e = cg.edgeBegin(c), end = cg.edgeEnd(c); e < end; e++) {
+                int adj = cg.target(e);
+                if (ctx.closed(adj)) continue;
+                double dist = distC + cg.length(e);
+                if (dist <= miles && dist < ctx.dist(adj)) {
+                    ctx.set(adj, dist, e);
+                    ctx.heap.addOrChange(adj, dist);
+                }
+            }
+        }
+
+        IsochroneNodes reached = new IsochroneNodes(g);
+        for (int i = 0; i < count; i++) reached.add(cg.vertex(settled[i]));
+        /* Every chain holding a reachable shape point leaves a settled core vertex, or holds
+         * the start. Each chain is checked once, through the edge that holds its shape points
+         * as chainEdge, from the end it leaves if that one was settled, else from the other */
+        for (int i = 0; i < count; i++) {
+            int c = settled[i];
+            for (int e = cg.edgeBegin(c), end = cg.edgeEnd(c); e < end; e++) {
+                if (cg.shapeBegin(e) == cg.shapeEnd(e)) continue;
+                int chain = cg.chainEdge(cg.shapeVertex(cg.shapeBegin(e)));
+                if (chain != e && ctx.closed(cg.target(e))) continue;
+                addChain(ctx, cg, chain, start, miles, reached);
+            }
+        }
+        if (start.edge != CompactGraph.NO_VERTEX
+                && cg.shapeBegin(start.edge) < cg.shapeEnd(start.edge)
+                && !ctx.closed(cg.source(start.edge)) && !ctx.closed(cg.target(start.edge))) {
+            addChain(ctx, cg, start.edge, start, miles, reached);
+        }
+        return reached.toIsochrone(snap.lon, snap.lat, miles);
+    }
+
+    /* Adds the shape points of the chain of edge e within the distance, measured from either
+     * end of the chain, or along it when it holds the start */
+    private static void addChain(SearchContext ctx, ContractedGraph cg, int e, Anchor start,
+                                 double miles, IsochroneNodes reached) {
+        double fromSource = ctx.dist(cg.source(e)), fromTarget = ctx.dist(cg.target(e));
+        double length = cg.length(e);
+        for (int i = cg.shapeBegin(e); i < cg.shapeEnd(e); i++) {
+            int v = cg.shapeVertex(i);
+            double offset = cg.chainOffset(v);
+            double dist = Math.min(fromSource + offset, fromTarget + length - offset);
+            if (e == start.edge) dist = Math.min(dist, Math.abs(start.offset - offset));
+            if (dist <= miles) reached.add(v);
+        }
+    }
+
+    /**
+     * Sweeps the contracted edges from the start as Router.turnPath searches them, keeping to
+     * the restrictions, until the distance is exceeded. The target of every edge reached
+     * within the distance is reached, and the shape points along every edge are reached from
+     * its source, where the sweep turns onto it, for as far as it may be driven.
+     * @param cg the contracted graph
+     * @param restrictions the restrictions to keep to
+     * @param lengths the lengths of the contracted edges
+     * @param start where the sweep starts, weighed by lengths
+     * @param miles the greatest distance along the roads
+     * @return the vertices within the distance, each once
+     */
+    private static IsochroneNodes turnIsochrone(ContractedGraph cg,
+                                                ContractedRestrictions restrictions,
+                                                EdgeWeights lengths, Anchor start,
+                                                double miles) {
+        SearchContext ctx = Router.CONTEXT.get();
+        ctx.start(cg.edgeCount());
+        IsochroneNodes reached = new IsochroneNodes(cg.base());
+        if (start.vertex != CompactGraph.NO_VERTEX) reached.add(start.vertex);
+
+        /* The chain holding the start is driven from it either way, and at a core vertex
+         * every edge leaving it from its source */
+        if (start.edge == CompactGraph.NO_VERTEX) {
+            for (int o = cg.edgeBegin(start.core); o < cg.edgeEnd(start.core); o++) {
+                addOpenChain(cg, restrictions, lengths, o, 0, 0, miles, reached);
+            }
+        } else {
+            int e = start.edge, last = restrictions.chainLength(e) - 1;
+            addOpenChain(cg, restrictions, lengths, e, start.through(), -start.offset, miles,
+                    reached);
+            addOpenChain(cg, restrictions, lengths, restrictions.twin(e), last - start.before,
+                    start.offset - start.length, miles, reached);
+        }
+        List<Integer> firsts = new ArrayList<>();
+        Router.departures(ctx, cg, restrictions, lengths, start, firsts);
+        for (int e : firsts) {
+            if (ctx.dist(e) <= miles) ctx.heap.add(e, ctx.dist(e));
+        }
+
+        while (!ctx.heap.isEmpty()) {
+            int e = ctx.heap.removeSmallest();
+            ctx.close(e);
+            int c = cg.target(e);
+            reached.add(cg.vertex(c));
+            double distE = ctx.dist(e);
+            for (int o = cg.edgeBegin(c), end = cg.edgeEnd(c); o < end; o++) {
+                if (!restrictions.allowed(e, o)) continue;
+                addOpenChain(cg, restrictions, lengths, o, 0, distE, miles, reached);
+                if (ctx.closed(o) || !restrictions.open(o)) continue;
+                double dist = distE + lengths.edge(o);
+                if (dist <= miles && dist < ctx.dist(o)) {
+                    ctx.set(o, dist, e);
+                    ctx.heap.addOrChange(o, dist);
+                }
+            }
+        }
+        reached.distinct();
+        return reached;
+    }
+
+    /**
+     * Adds the shape points of the chain of an edge within the distance that are reached by
+     * driving along it from one of its edges, for as far as it may be driven.
+     * @param e the contracted edge
+     * @param from the first edge of the chain driven, counted from 0 at the source
+     * @param entered the distance the source of e is reached at, less than the distance
+     *                the drive along it starts at when it starts part way along
+     */
+    private static void addOpenChain(ContractedGraph cg, ContractedRestrictions restrictions,
+                                     EdgeWeights lengths, int e, int from, double entered,
+                                     double miles, IsochroneNodes reached) {
+        int end = Math.min(from + restrictions.openEdges(e, from),
+                restrictions.chainLength(e) - 1);
+        for (int i = from + 1; i <= end; i++) {
+            int v = cg.chainVertex(e, i);
+            double offset = cg.chainEdge(v) == e ? lengths.chainOffset(v)
+                    : lengths.edge(e) - lengths.chainOffset(v);
+            if (entered + offset > miles) return;
+            reached.add(v);
+        }
+    }
+
+    /* The vertices an isochrone reaches, gathered without boxing */
+    private static final class IsochroneNodes {
+        private final CompactGraph g;
+        private int[] vertices = new int[64];
+        private int size;
+
+        IsochroneNodes(CompactGraph g) {
+            this.g = g;
+        }
+
+        void add(int v) {
+            if (size == vertices.length) vertices = Arrays.copyOf(vertices, 2 * size);
+            vertices[size++] = v;
+        }
+
+        /* Drops every vertex added more than once */
+        void distinct() {
+            Arrays.sort(vertices, 0, size);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || vertices[i] != vertices[count - 1]) {
+                    vertices[count++] = vertices[i];
+                }
+            }
+            size = count;
+        }
+
+        Isochrone toIsochrone(double lon, double lat, double miles) {
+            long[] ids = new long[size];
+            double[] lons = new double[size];
+            double[] lats = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = g.id(vertices[i]);
+                lons[i] = g.lon(vertices[i]);
+                lats[i] = g.lat(vertices[i]);
+            }
+            return new Isochrone(lon, lat, miles, ids, lons, lats,
+                    miles / Constants.ISOCHRONE_CELLS_PER_DISTANCE);
+        }
+    }
+}
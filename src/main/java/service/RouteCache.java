@@ -0,0 +1,103 @@
+package service;
+
+import utils.dataStructures.cache.LruCache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The routes recently answered on a graph, with their directions, so that a route asked for
+ * again is served without searching. Routes are keyed by where their endpoints were snapped
+ * to, the closest points of roads or the closest nodes, so any clicks snapped to the same
+ * places share a route. Every graph has its own cache, which reloading the graph discards.
+ */
+public class RouteCache {
+    private final LruCache<Key, Entry> cache;
+
+    public RouteCache(int capacity) {
+        cache = new LruCache<>(capacity, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /* Returns the cached route for a key, null if there is none */
+    public Entry get(Key key) {
+        return cache.get(key);
+    }
+
+    public void put(Key key, Entry entry) {
+        cache.put(key, entry);
+    }
+
+    /* Returns the number of routes cached, hits, misses and evictions so far */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size", (long) cache.size());
+        stats.put("hits", cache.hits());
+        stats.put("misses", cache.misses());
+        stats.put("evictions", cache.evictions());
+        return stats;
+    }
+
+    /**
+     * Where a route starts and ends once snapped onto the graph, and how it was searched for,
+     * since different searches may find different routes of the same length, and the roads
+     * weighed.
+     */
+    public static final class Key {
+        private final double startLon;
+        private final double startLat;
+        private final double destLon;
+        private final double destLat;
+        private final Router.Search search;
+        private final Router.Weighting weighting;
+
+        public Key(double startLon, double startLat, double destLon, double destLat,
+                   Router.Search search, Router.Weighting weighting) {
+            this.startLon = startLon;
+            this.startLat = startLat;
+            this.destLon = destLon;
+            this.destLat = destLat;
+            this.search = search;
+            this.weighting = weighting;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Double.compare(startLon, key.startLon) == 0
+                    && Double.compare(startLat, key.startLat) == 0
+                    && Double.compare(destLon, key.destLon) == 0
+                    && Double.compare(destLat, key.destLat) == 0
+                    && search == key.search
+                    && weighting == key.weighting;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(startLon, startLat, destLon, destLat, search, weighting);
+        }
+    }
+
+    /**
+     * A route as the route endpoint answers it: its nodes, the {lon, lat} points it is drawn
+     * from and to when they lie off its nodes, and its directions.
+     */
+    public static final class Entry {
+        public final List<Long> nodes;
+        public final List<double[]> endpoints;
+        public final boolean found;
+        public final String directions;
+
+        public Entry(List<Long> nodes, List<double[]> endpoints, boolean found,
+                     String directions) {
+            this.nodes = Collections.unmodifiableList(nodes);
+            this.endpoints = Collections.unmodifiableList(endpoints);
+            this.found = found;
+            this.directions = directions;
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package service;
 
-import utils.dataStructures.priorityQueue.ArrayHeapMinPQ;
-import utils.dataStructures.priorityQueue.ExtrinsicMinPQ;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.ContractionHierarchy;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.graph.HighwayType;
+import utils.dataStructures.graph.Landmarks;
+import utils.dataStructures.priorityQueue.IndexedMinHeap;
+import utils.dataStructures.spatial.EdgeSnap;
 
 
 import java.util.*;
@@ -13,15 +21,17 @@ import java.util.regex.Pattern;
  * on the map.
  */
 public class Router {
-    /* A Min Priority Queue/Min Heap used for performing path searching */
-    private static ExtrinsicMinPQ<Long> fringe = new ArrayHeapMinPQ<Long>();
+    /* The search state of each thread; searches never share state, so routes can be
+     * searched on any number of threads at once. DistanceMatrix, IsochroneSearch and
+     * AlternativeRoutes search with it too */
+    static final ThreadLocal<SearchContext> CONTEXT =
+            ThreadLocal.withInitial(SearchContext::new);
+    /* The state of the backward half of each thread's bidirectional searches */
+    static final ThreadLocal<SearchContext> BACKWARD_CONTEXT =
+            ThreadLocal.withInitial(SearchContext::new);
 
-    /* Map representing the shortest distance from start node to the target node */
-    private static Map<Long, Double> distTo = new HashMap<>();
-
-    /* Map representing the edge via which constructs the shortest path from
-    *  start node to the target node */
-    private static Map<Long, Long> edgeTo = new HashMap<>();
+    /* Scale of the A* heuristic, see heuristic() */
+    private static final double HEURISTIC_SCALE = 1 - 1e-6;
 
     /**
      * Return a List of longs representing the shortest path from the node
@@ -36,84 +46,1070 @@ public class Router {
      */
     public static List<Long> shortestPath(GraphDB db, double stlon, double stlat,
                                           double destlon, double destlat) {
-        clean();
+        return shortestPath(db, stlon, stlat, destlon, destlat,
+                Constants.ROUTE_ON_CONTRACTED_GRAPH);
+    }
+
+    /**
+     * Return a List of longs representing the shortest path from the node
+     * closest to a start location and the node closest to the destination
+     * location.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param contracted whether to search the graph with its degree-2 chains contracted
+     * @return A list of node id's in the order visited on the shortest path, every node
+     *         of the underlying graph included.
+     */
+    public static List<Long> shortestPath(GraphDB db, double stlon, double stlat,
+                                          double destlon, double destlat, boolean contracted) {
+        return shortestPath(db, stlon, stlat, destlon, destlat, contracted,
+                Constants.ROUTE_SEARCH);
+    }
+
+    /**
+     * Return a List of longs representing the shortest path from the node
+     * closest to a start location and the node closest to the destination
+     * location.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param contracted whether to search the graph with its degree-2 chains contracted
+     * @param search how to search for the path; every search finds a shortest one
+     * @return A list of node id's in the order visited on the shortest path, every node
+     *         of the underlying graph included.
+     */
+    public static List<Long> shortestPath(GraphDB db, double stlon, double stlat,
+                                          double destlon, double destlat, boolean contracted,
+                                          Search search) {
+        return shortestPath(db, stlon, stlat, destlon, destlat, contracted, search,
+                Weighting.SHORTEST);
+    }
+
+    /**
+     * Return a List of longs representing the path of least weight from the node closest
+     * to a start location and the node closest to the destination location.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param contracted whether to search the graph with its degree-2 chains contracted
+     * @param search how to search for the path; every search finds a path of least weight
+     * @param weighting how to weigh the roads
+     * @return A list of node id's in the order visited on the path, every node of the
+     *         underlying graph included.
+     */
+    public static List<Long> shortestPath(GraphDB db, double stlon, double stlat,
+                                          double destlon, double destlat, boolean contracted,
+                                          Search search, Weighting weighting) {
         Long startNode = db.closest(stlon, stlat);
         Long destNode = db.closest(destlon, destlat);
+        CompactGraph g = db.getCompactGraph();
+        int start = g.indexOf(startNode), dest = g.indexOf(destNode);
+        if (start == dest) return new ArrayList<>(Collections.singletonList(startNode));
+        SearchContext ctx = CONTEXT.get();
+        SearchContext back = BACKWARD_CONTEXT.get();
+        EdgeWeights weights = db.getEdgeWeights(weighting);
+        if (contracted || search == Search.CONTRACTION_HIERARCHY || restrictions(db) != null) {
+            ContractedGraph cg = db.getContractedGraph();
+            List<Long> path = new ArrayList<>();
+            contractedPath(ctx, back, db, weights, Anchor.atVertex(cg, weights, start),
+                    Anchor.atVertex(cg, weights, dest), search, path);
+            return path;
+        }
+
+        int meet = AStar(ctx, back, db, weights, start, dest, search);
+
+        return constructPath(ctx, back, g, meet);
+    }
+
+    /**
+     * Returns the shortest route between two points, each snapped onto the closest point of
+     * any road rather than onto the closest node. The search starts and ends at virtual
+     * vertices on the snapped edges, so a route neither detours to the far end of a long
+     * segment nor misses a shorter way out of it. Routes are always searched on the
+     * contracted graph, whose chains the virtual vertices are placed on.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @return The route from the snapped start to the snapped destination.
+     */
+    public static Route snappedPath(GraphDB db, double stlon, double stlat,
+                                    double destlon, double destlat) {
+        return snappedPath(db, stlon, stlat, destlon, destlat, Constants.ROUTE_SEARCH);
+    }
+
+    /**
+     * Returns the shortest route between two points, each snapped onto the closest point of
+     * any road, as snappedPath above.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param search how to search for the route; every search finds a shortest one
+     * @return The route from the snapped start to the snapped destination.
+     */
+    public static Route snappedPath(GraphDB db, double stlon, double stlat,
+                                    double destlon, double destlat, Search search) {
+        return snappedPath(db, stlon, stlat, destlon, destlat, search, Weighting.SHORTEST);
+    }
+
+    /**
+     * Returns the route of least weight between two points, each snapped onto the closest
+     * point of any road, as snappedPath above.
+     * @param db The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param search how to search for the route; every search finds one of least weight
+     * @param weighting how to weigh the roads
+     * @return The route from the snapped start to the snapped destination.
+     */
+    public static Route snappedPath(GraphDB db, double stlon, double stlat,
+                                    double destlon, double destlat, Search search,
+                                    Weighting weighting) {
+        EdgeSnap start = db.snap(stlon, stlat);
+        EdgeSnap dest = db.snap(destlon, destlat);
+        if (start == null || dest == null) {
+            return new Route(new ArrayList<>(), stlon, stlat, destlon, destlat,
+                    Double.POSITIVE_INFINITY);
+        }
+        return snappedPath(db, start, dest, search, weighting);
+    }
+
+    /**
+     * Returns the shortest route between two points that have already been snapped onto
+     * roads, as snappedPath above.
+     * @param db The graph to use.
+     * @param start The snapped start.
+     * @param dest The snapped destination.
+     * @param search how to search for the route; every search finds a shortest one
+     * @return The route from the snapped start to the snapped destination.
+     */
+    public static Route snappedPath(GraphDB db, EdgeSnap start, EdgeSnap dest, Search search) {
+        return snappedPath(db, start, dest, search, Weighting.SHORTEST);
+    }
+
+    /**
+     * Returns the route of least weight between two points that have already been snapped
+     * onto roads, as snappedPath above.
+     * @param db The graph to use.
+     * @param start The snapped start.
+     * @param dest The snapped destination.
+     * @param search how to search for the route; every search finds one of least weight
+     * @param weighting how to weigh the roads
+     * @return The route from the snapped start to the snapped destination, whose distance
+     *         is its length in miles whatever the weighting.
+     */
+    public static Route snappedPath(GraphDB db, EdgeSnap start, EdgeSnap dest, Search search,
+                                    Weighting weighting) {
+        List<Long> path = new ArrayList<>();
+        ContractedGraph cg = db.getContractedGraph();
+        EdgeWeights weights = db.getEdgeWeights(weighting);
+        double weight = contractedPath(CONTEXT.get(), BACKWARD_CONTEXT.get(), db, weights,
+                Anchor.onEdge(cg, weights, start), Anchor.onEdge(cg, weights, dest), search,
+                path);
+        return route(db, start, dest, path, weight, weighting);
+    }
+
+    /* The length in miles of a route from a point through nodes to another point */
+    private static double length(GraphDB db, double startLon, double startLat, List<Long> path,
+                                 double destLon, double destLat) {
+        double length = 0, lon = startLon, lat = startLat;
+        for (long v : path) {
+            length += GraphDB.distance(lon, lat, db.lon(v), db.lat(v));
+            lon = db.lon(v);
+            lat = db.lat(v);
+        }
+        return length + GraphDB.distance(lon, lat, destLon, destLat);
+    }
+
+    /* The route from a snapped start over the nodes of path to a snapped destination, of
+     * the given weight, with its length in miles */
+    static Route route(GraphDB db, EdgeSnap start, EdgeSnap dest, List<Long> path,
+                       double weight, Weighting weighting) {
+        double distance = weighting == Weighting.SHORTEST || Double.isInfinite(weight)
+                ? weight : length(db, start.lon, start.lat, path, dest.lon, dest.lat);
+        return new Route(path, start.lon, start.lat, dest.lon, dest.lat, distance);
+    }
+
+    /**
+     * Searches the contracted graph and expands the result into the full path.
+     * The start and destination may lie on chains, in which case the search starts from
+     * (or ends at) both ends of their chain, and a path along a chain holding both of them
+     * competes with the paths through core vertices. On a graph with restrictions to keep
+     * to, the contracted edges are searched instead (see turnPath), except by the hierarchy,
+     * which is built over the open edges only: it starts and ends its search only where the
+     * chains of the start and destination may be driven, and its path is kept if it makes
+     * no forbidden turn at a core vertex, and searched for again with ALT otherwise.
+     *
+     * @param ctx the search state of the calling thread
+     * @param back the state of the backward half of a bidirectional search
+     * @param db the graph, whose contracted graph and hierarchy are searched
+     * @param weights the weights of the contracted edges; the hierarchy is searched only
+     *                when they are the lengths it was built on, and the core vertices are
+     *                searched bidirectionally instead
+     * @param start where the path searching starts, weighed by weights
+     * @param dest where the path searching leads to, weighed by weights
+     * @param search how to search the core vertices
+     * @param path the list the nodes of the path are added to, none if the destination
+     *             cannot be reached; virtual vertices are not part of it
+     * @return the weight of the path, infinite if the destination cannot be reached
+     * */
+    private static double contractedPath(SearchContext ctx, SearchContext back, GraphDB db,
+                                         EdgeWeights weights, Anchor start, Anchor dest,
+                                         Search search, List<Long> path) {
+        ContractedGraph cg = db.getContractedGraph();
+        CompactGraph g = cg.base();
+        if (search == Search.CONTRACTION_HIERARCHY
+                && weights != db.getEdgeWeights(Weighting.SHORTEST)) {
+            search = Search.BIDIRECTIONAL;
+        }
+        ContractedRestrictions restrictions = restrictions(db);
+        if (restrictions != null && search != Search.CONTRACTION_HIERARCHY) {
+            return turnPath(ctx, back, db, restrictions, weights, start, dest, search, path);
+        }
+        ctx.start(cg.size());
+        back.start(cg.size());
+
+        /* Core vertices the search starts from, with the distance from the start to them,
+         * and the ones it can end at, with the distance from them to the destination */
+        int[] starts = start.cores(cg);
+        double[] startDist = restrictions == null ? start.distances()
+                : start.distances(restrictions, true);
+        int[] ends = dest.cores(cg);
+        double[] endDist = restrictions == null ? dest.distances()
+                : dest.distances(restrictions, false);
+        for (int i = 0; i < starts.length; i++) {
+            ctx.set(starts[i], Math.min(ctx.dist(starts[i]), startDist[i]),
+                    SearchContext.NO_PARENT);
+        }
+        for (int i = 0; i < ends.length; i++) {
+            back.set(ends[i], Math.min(back.dist(ends[i]), endDist[i]), SearchContext.NO_PARENT);
+        }
+        double along = Double.POSITIVE_INFINITY;
+        if (restrictions != null) {
+            along = alongChain(cg, restrictions, start, dest);
+        } else if (start.edge != CompactGraph.NO_VERTEX && start.edge == dest.edge) {
+            along = Math.abs(start.offset - dest.offset);
+        }
+
+        /* The contracted edges of the path through the core vertex where the searches meet,
+         * stored complemented where the path follows them from target to source */
+        ArrayList<Integer> edges = new ArrayList<>();
+        int meet;
+        if (search == Search.CONTRACTION_HIERARCHY) {
+            ContractionHierarchy ch = db.getContractionHierarchy();
+            meet = hierarchySearch(ctx, back, ch, starts, ends, along);
+            if (meet != CompactGraph.NO_VERTEX) hierarchyEdges(ctx, back, ch, meet, edges);
+        } else {
+            Landmarks landmarks = search == Search.ALT ? db.getLandmarks() : null;
+            Potential potential = new Potential(g, start.lon, start.lat, dest.lon, dest.lat,
+                    search == Search.BIDIRECTIONAL, landmarks,
+                    start.landmarkDistances(cg, landmarks), dest.landmarkDistances(cg, landmarks));
+            meet = coreAStar(ctx, back, cg, weights, starts, ends, along, potential);
+            if (meet != CompactGraph.NO_VERTEX) coreEdges(ctx, back, cg, meet, edges);
+        }
+        ctx.expanded += back.expanded;
+
+        if (meet == CompactGraph.NO_VERTEX && Double.isInfinite(along)) return along;
+        if (meet == CompactGraph.NO_VERTEX) expandAlong(cg, start, dest, along, path);
+        else expandPath(cg, start, dest, meet, edges, path);
+        double weight = meet == CompactGraph.NO_VERTEX ? along : ctx.dist(meet) + back.dist(meet);
+        if (restrictions != null && !drivable(cg, restrictions, start, dest, path)) {
+            /* The hierarchy path turns where it may not */
+            int expanded = ctx.expanded;
+            path.clear();
+            weight = turnPath(ctx, back, db, restrictions, weights, start, dest, Search.ALT,
+                    path);
+            ctx.expanded += expanded;
+        }
+        return weight;
+    }
+
+    /* Returns the restrictions routes on a graph keep to, null if there are none to keep,
+     * see Constants.ROUTE_RESTRICTIONS */
+    static ContractedRestrictions restrictions(GraphDB db) {
+        if (!Constants.ROUTE_RESTRICTIONS) return null;
+        ContractedRestrictions restrictions = db.getContractedRestrictions();
+        return restrictions.isEmpty() ? null : restrictions;
+    }
+
+    /* Whether a path from start over the nodes of path to dest keeps to the restrictions */
+    static boolean drivable(ContractedGraph cg, ContractedRestrictions restrictions,
+                            Anchor start, Anchor dest, List<Long> path) {
+        CompactGraph g = cg.base();
+        int[] vertices = new int[path.size() + 2];
+        int count = 0;
+        if (path.isEmpty()) {
+            /* Both lie on the same edge of the underlying graph */
+            if (start.vertex != CompactGraph.NO_VERTEX || start.offset == dest.offset) {
+                return true;
+            }
+            int[] ends = start.edgeEnds(cg);
+            return restrictions.drivable(start.offset < dest.offset ? ends
+                    : new int[] {ends[1], ends[0]}, 2);
+        }
+        /* The virtual vertices are reached from, or left for, the other end of their edge */
+        if (start.vertex == CompactGraph.NO_VERTEX) {
+            vertices[count++] = start.otherEnd(cg, g.indexOf(path.get(0)));
+        }
+        for (long id : path) vertices[count++] = g.indexOf(id);
+        if (dest.vertex == CompactGraph.NO_VERTEX) {
+            vertices[count] = dest.otherEnd(cg, vertices[count - 1]);
+            count++;
+        }
+        return restrictions.drivable(vertices, count);
+    }
+
+    /**
+     * Searches the contracted edges for the lightest path that keeps to one-way streets and
+     * turn restrictions, and expands it into the full path, as contractedPath does. The
+     * states of the search are the contracted edges rather than the core vertices, so that
+     * the turn from every edge onto the next is known: the forward search reaches an edge
+     * with the weight from the start to its target, arriving over it, and the backward
+     * search with the weight from its target to the destination, having arrived over it.
+     * Only open edges are reached, and only over allowed turns. The potentials are those of
+     * the targets of the edges, which the restrictions only make larger, so they stay
+     * consistent, and a bidirectional search stops as coreAStar does.
+     *
+     * @param ctx the search state of the calling thread
+     * @param back the state of the backward half of a bidirectional search
+     * @param db the graph, whose contracted graph is searched
+     * @param restrictions the restrictions to keep to
+     * @param weights the weights of the contracted edges
+     * @param start where the path searching starts, weighed by weights
+     * @param dest where the path searching leads to, weighed by weights
+     * @param search whether to search from the start only or from both ends, and whether
+     *               to bound distances with the landmarks; not CONTRACTION_HIERARCHY
+     * @param path the list the nodes of the path are added to, none if the destination
+     *             cannot be reached; virtual vertices are not part of it
+     * @return the weight of the path, infinite if the destination cannot be reached
+     */
+    static double turnPath(SearchContext ctx, SearchContext back, GraphDB db,
+                           ContractedRestrictions restrictions, EdgeWeights weights,
+                           Anchor start, Anchor dest, Search search, List<Long> path) {
+        ContractedGraph cg = db.getContractedGraph();
+        CompactGraph g = cg.base();
+        ctx.start(cg.edgeCount());
+        back.start(cg.edgeCount());
+        if (start.edge == CompactGraph.NO_VERTEX && dest.edge == CompactGraph.NO_VERTEX
+                && start.core == dest.core) {
+            path.add(g.id(start.vertex));
+            return 0;
+        }
+
+        /* The path along the chain that holds both, if it may be driven */
+        double best = alongChain(cg, restrictions, start, dest);
+        double along = best;
+
+        /* The edges leaving the start, driven from it to their targets */
+        List<Integer> firsts = new ArrayList<>();
+        departures(ctx, cg, restrictions, weights, start, firsts);
+        /* The edges arriving where the destination is reached from, with the weight from
+         * their targets on to it */
+        List<Integer> lasts = new ArrayList<>();
+        boolean fromSourceOpen = false;
+        if (dest.edge == CompactGraph.NO_VERTEX) {
+            for (int o = cg.edgeBegin(dest.core); o < cg.edgeEnd(dest.core); o++) {
+                int f = restrictions.twin(o);
+                if (!restrictions.open(f)) continue;
+                lasts.add(f);
+                back.set(f, 0, SearchContext.NO_PARENT);
+            }
+        } else {
+            int d = dest.edge, twin = restrictions.twin(d);
+            int last = restrictions.chainLength(d) - 1;
+            fromSourceOpen = restrictions.open(d, 0, dest.before);
+            if (fromSourceOpen) {
+                arrivals(back, cg, restrictions, d, dest.offset, lasts);
+            }
+            if (restrictions.open(twin, 0, last - dest.through())) {
+                arrivals(back, cg, restrictions, twin, dest.length - dest.offset, lasts);
+            }
+        }
+
+        Landmarks landmarks = search == Search.ALT ? db.getLandmarks() : null;
+        Potential potential = new Potential(g, start.lon, start.lat, dest.lon, dest.lat,
+                search == Search.BIDIRECTIONAL, landmarks, start.landmarkDistances(cg, landmarks),
+                dest.landmarkDistances(cg, landmarks));
+        boolean bidirectional = potential.bidirectional;
+        int meet = CompactGraph.NO_VERTEX;
+        for (int e : firsts) {
+            ctx.heap.add(e, ctx.dist(e) + potential.of(cg.vertex(cg.target(e))));
+            if (ctx.dist(e) + back.dist(e) < best) {
+                best = ctx.dist(e) + back.dist(e);
+                meet = e;
+            }
+        }
+        if (bidirectional) {
+            for (int f : lasts) {
+                if (back.heap.contains(f)) continue;
+                back.heap.add(f, back.dist(f) - potential.of(cg.vertex(cg.target(f))));
+            }
+        }
+
+        while (!ctx.heap.isEmpty() && !(bidirectional && back.heap.isEmpty())) {
+            double top = ctx.heap.peekPriority();
+            if (bidirectional) top += back.heap.peekPriority();
+            if (top >= best) break;
+            boolean forward = !bidirectional || ctx.heap.size() <= back.heap.size();
+            SearchContext self = forward ? ctx : back, other = forward ? back : ctx;
+            int e = self.heap.removeSmallest();
+            self.close(e);
+            double distE = self.dist(e);
+            /* Forward, the edges e may turn onto at its target; backward, the edges that may
+             * turn onto e at its source, which are the twins of the edges leaving it */
+            int c = cg.target(forward ? e : restrictions.twin(e));
+            for (int o = cg.edgeBegin(c), end = cg.edgeEnd(c); o < end; o++) {
+                int next = forward ? o : restrictions.twin(o);
+                if (self.closed(next) || !restrictions.open(next)) continue;
+                if (forward ? !restrictions.allowed(e, o) : !restrictions.allowed(next, e)) {
+                    continue;
+                }
+                double dist = distE + weights.edge(forward ? o : e);
+                if (dist < self.dist(next)) {
+                    self.set(next, dist, e);
+                    double p = potential.of(cg.vertex(cg.target(next)));
+                    self.heap.addOrChange(next, forward ? dist + p : dist - p);
+                    if (dist + other.dist(next) < best) {
+                        best = dist + other.dist(next);
+                        meet = next;
+                    }
+                }
+            }
+        }
+        ctx.expanded += back.expanded;
+
+        if (meet == CompactGraph.NO_VERTEX) {
+            if (!Double.isInfinite(along)) expandAlong(cg, start, dest, along, path);
+            return along;
+        }
+
+        /* The edges of the path, each driven from its source to its target */
+        List<Integer> edges = new ArrayList<>();
+        for (int e = meet; e != SearchContext.NO_PARENT; e = ctx.parent(e)) edges.add(e);
+        Collections.reverse(edges);
+        for (int e = back.parent(meet); e != SearchContext.NO_PARENT; e = back.parent(e)) {
+            edges.add(e);
+        }
+        int lastEdge = edges.get(edges.size() - 1);
+        int c = start.core;
+        boolean toSource = false, fromSource = false;
+        if (start.edge != CompactGraph.NO_VERTEX) {
+            /* The first edge is the part of the start's chain the path leaves it along */
+            int first = edges.remove(0);
+            toSource = first != start.edge;
+            c = cg.target(first);
+        }
+        if (dest.edge != CompactGraph.NO_VERTEX) {
+            /* The last edge arrives at the end of the destination's chain the path enters it
+             * from, with the weight along the chain from there */
+            int d = dest.edge, source = cg.target(restrictions.twin(d));
+            fromSource = cg.target(lastEdge) == source && (source != cg.target(d)
+                    || fromSourceOpen && restrictions.allowed(lastEdge, d)
+                    && back.dist(lastEdge) == dest.offset);
+        }
+        expandPath(cg, start, dest, c, toSource, fromSource, edges, path);
+        return best;
+    }
+
+    /* The weight of the path along the chain that holds the destination, from the start on
+     * the same chain or at a core vertex at an end of it, infinite if there is none or it
+     * may not be driven; a search from the start over the contracted edges only reaches the
+     * chain of the destination from one of its ends over another edge */
+    static double alongChain(ContractedGraph cg, ContractedRestrictions restrictions,
+                             Anchor start, Anchor dest) {
+        if (dest.edge == CompactGraph.NO_VERTEX) return Double.POSITIVE_INFINITY;
+        int d = dest.edge, last = restrictions.chainLength(d) - 1;
+        if (start.edge == CompactGraph.NO_VERTEX) {
+            double best = Double.POSITIVE_INFINITY;
+            if (cg.source(d) == start.core && restrictions.open(d, 0, dest.before)) {
+                best = dest.offset;
+            }
+            if (cg.target(d) == start.core
+                    && restrictions.open(restrictions.twin(d), 0, last - dest.through())) {
+                best = Math.min(best, dest.length - dest.offset);
+            }
+            return best;
+        }
+        if (start.edge != d) return Double.POSITIVE_INFINITY;
+        boolean open = start.offset < dest.offset
+                ? restrictions.open(d, start.through(), dest.before)
+                : restrictions.open(restrictions.twin(d), last - start.before,
+                last - dest.through());
+        return open || start.offset == dest.offset ? Math.abs(start.offset - dest.offset)
+                : Double.POSITIVE_INFINITY;
+    }
+
+    /* Adds the nodes of the path alongChain weighs to a list */
+    private static void expandAlong(ContractedGraph cg, Anchor start, Anchor dest,
+                                    double weight, List<Long> path) {
+        if (start.edge != CompactGraph.NO_VERTEX) {
+            expandPath(cg, start, dest, CompactGraph.NO_VERTEX, new ArrayList<>(), path);
+            return;
+        }
+        CompactGraph g = cg.base();
+        int d = dest.edge;
+        path.add(g.id(start.vertex));
+        if (cg.source(d) == start.core && weight == dest.offset) {
+            for (int i = 1; i <= dest.before; i++) path.add(g.id(cg.chainVertex(d, i)));
+        } else {
+            for (int i = cg.shapeEnd(d) - cg.shapeBegin(d); i > dest.through(); i--) {
+                path.add(g.id(cg.chainVertex(d, i)));
+            }
+        }
+        if (dest.vertex != CompactGraph.NO_VERTEX) path.add(g.id(dest.vertex));
+    }
+
+    /* Sets the open edges leaving the start in ctx, with the weight from the start to their
+     * targets, and adds them to a list; an edge holding the start is driven from it */
+    static void departures(SearchContext ctx, ContractedGraph cg,
+                           ContractedRestrictions restrictions, EdgeWeights weights,
+                           Anchor start, List<Integer> firsts) {
+        if (start.edge == CompactGraph.NO_VERTEX) {
+            for (int o = cg.edgeBegin(start.core); o < cg.edgeEnd(start.core); o++) {
+                if (!restrictions.open(o)) continue;
+                firsts.add(o);
+                ctx.set(o, weights.edge(o), SearchContext.NO_PARENT);
+            }
+            return;
+        }
+        int e = start.edge, twin = restrictions.twin(e);
+        int last = restrictions.chainLength(e) - 1;
+        if (restrictions.open(e, start.through(), last)) {
+            firsts.add(e);
+            ctx.set(e, start.length - start.offset, SearchContext.NO_PARENT);
+        }
+        if (restrictions.open(twin, last - start.before, last)) {
+            firsts.add(twin);
+            ctx.set(twin, start.offset, SearchContext.NO_PARENT);
+        }
+    }
 
-        AStar(db, startNode, destNode);
+    /* Sets the edges arriving at the source of e that may turn onto it in back, reaching the
+     * destination along e with the given weight, and adds them to a list */
+    private static void arrivals(SearchContext back, ContractedGraph cg,
+                                 ContractedRestrictions restrictions, int e, double weight,
+                                 List<Integer> arrivals) {
+        int c = cg.target(restrictions.twin(e));
+        for (int o = cg.edgeBegin(c); o < cg.edgeEnd(c); o++) {
+            int f = restrictions.twin(o);
+            if (!restrictions.open(f) || !restrictions.allowed(f, e)) continue;
+            if (weight < back.dist(f)) back.set(f, weight, SearchContext.NO_PARENT);
+            arrivals.add(f);
+        }
+    }
+
+    /* The core vertex a path over contracted edges through core vertex via starts at */
+    static int firstCore(ContractedGraph cg, int via, List<Integer> edges) {
+        if (edges.isEmpty()) return via;
+        int e = edges.get(0);
+        return e >= 0 ? cg.source(e) : cg.target(~e);
+    }
 
-        return constructPath(destNode);
+    /* The core vertex a path over contracted edges through core vertex via ends at */
+    static int lastCore(ContractedGraph cg, int via, List<Integer> edges) {
+        if (edges.isEmpty()) return via;
+        int e = edges.get(edges.size() - 1);
+        return e >= 0 ? cg.target(e) : cg.source(~e);
     }
 
     /**
-     * Performs A* Algorithm (directionally optimized Dijkstra using heuristics) on a graph
+     * Expands a path over the contracted graph into the full list of nodes it visits.
+     * @param cg the contracted graph
+     * @param start where the path starts
+     * @param dest where the path leads to
+     * @param meet a core vertex on the path, NO_VERTEX for the path along the chain that
+     *             holds both the start and the destination
+     * @param edges the contracted edges of the path, complemented where the path follows
+     *              them from target to source
+     * @param path the list the nodes of the path are added to
+     */
+    static void expandPath(ContractedGraph cg, Anchor start, Anchor dest, int meet,
+                           List<Integer> edges, List<Long> path) {
+        CompactGraph g = cg.base();
+        if (meet == CompactGraph.NO_VERTEX) {
+            /* Along the chain that holds both the start and the destination */
+            int begin = cg.shapeBegin(start.edge);
+            if (start.vertex != CompactGraph.NO_VERTEX) path.add(g.id(start.vertex));
+            if (start.offset <= dest.offset) {
+                for (int i = start.through(); i < dest.before; i++) {
+                    path.add(g.id(cg.shapeVertex(begin + i)));
+                }
+            } else {
+                for (int i = start.before - 1; i >= dest.through(); i--) {
+                    path.add(g.id(cg.shapeVertex(begin + i)));
+                }
+            }
+            if (dest.vertex != CompactGraph.NO_VERTEX) path.add(g.id(dest.vertex));
+            return;
+        }
+
+        /* The core vertices the path enters the core graph at and leaves it from */
+        int c = firstCore(cg, meet, edges), last = lastCore(cg, meet, edges);
+        boolean toSource = start.edge != CompactGraph.NO_VERTEX && c == cg.source(start.edge)
+                && (c != cg.target(start.edge) || start.offset <= start.length - start.offset);
+        boolean fromSource = dest.edge != CompactGraph.NO_VERTEX
+                && last == cg.source(dest.edge) && (last != cg.target(dest.edge)
+                || dest.offset <= dest.length - dest.offset);
+        expandPath(cg, start, dest, c, toSource, fromSource, edges, path);
+    }
+
+    /**
+     * Expands a path over the contracted graph through core vertices into the full list of
+     * nodes it visits.
+     * @param cg the contracted graph
+     * @param start where the path starts
+     * @param dest where the path leads to
+     * @param c the core vertex the path enters the core graph at
+     * @param toSource whether the path leaves a start on a chain towards the source of its
+     *                 edge, rather than its target
+     * @param fromSource whether the path enters the chain of a destination on one from the
+     *                   source of its edge, rather than its target
+     * @param edges the contracted edges of the path, complemented where the path follows
+     *              them from target to source
+     * @param path the list the nodes of the path are added to
+     */
+    private static void expandPath(ContractedGraph cg, Anchor start, Anchor dest, int c,
+                                   boolean toSource, boolean fromSource, List<Integer> edges,
+                                   List<Long> path) {
+        CompactGraph g = cg.base();
+        if (start.edge != CompactGraph.NO_VERTEX) {
+            /* From the start along its chain to the core vertex the search started from */
+            int begin = cg.shapeBegin(start.edge);
+            int count = cg.shapeEnd(start.edge) - begin;
+            if (start.vertex != CompactGraph.NO_VERTEX) path.add(g.id(start.vertex));
+            if (toSource) {
+                for (int i = start.before - 1; i >= 0; i--) {
+                    path.add(g.id(cg.shapeVertex(begin + i)));
+                }
+            } else {
+                for (int i = start.through(); i < count; i++) {
+                    path.add(g.id(cg.shapeVertex(begin + i)));
+                }
+            }
+        }
+        path.add(g.id(cg.vertex(c)));
+        for (int e : edges) {
+            if (e >= 0) {
+                for (int i = cg.shapeBegin(e); i < cg.shapeEnd(e); i++) {
+                    path.add(g.id(cg.shapeVertex(i)));
+                }
+                path.add(g.id(cg.vertex(cg.target(e))));
+            } else {
+                e = ~e;
+                for (int i = cg.shapeEnd(e) - 1; i >= cg.shapeBegin(e); i--) {
+                    path.add(g.id(cg.shapeVertex(i)));
+                }
+                path.add(g.id(cg.vertex(cg.source(e))));
+            }
+        }
+        if (dest.edge != CompactGraph.NO_VERTEX) {
+            /* From the core vertex the search ended at along the chain to the destination */
+            int begin = cg.shapeBegin(dest.edge);
+            int count = cg.shapeEnd(dest.edge) - begin;
+            if (fromSource) {
+                for (int i = 0; i < dest.before; i++) path.add(g.id(cg.shapeVertex(begin + i)));
+            } else {
+                for (int i = count - 1; i >= dest.through(); i--) {
+                    path.add(g.id(cg.shapeVertex(begin + i)));
+                }
+            }
+            if (dest.vertex != CompactGraph.NO_VERTEX) path.add(g.id(dest.vertex));
+        }
+    }
+
+    /**
+     * Performs A* over the core vertices of the contracted graph, from the start only or
+     * from both ends, as AStar does over the whole graph. The distances of the core vertices
+     * next to the start and the destination are set in ctx and back beforehand.
      *
-     * @param db the database representing the graph
-     * @param startNode the node where the path searching starts
-     * @param destNode to node where the path searching leads to
+     * @param ctx the search state of the calling thread
+     * @param back the state of the backward half of a bidirectional search
+     * @param cg the contracted graph
+     * @param weights the weights of the contracted edges
+     * @param starts the core vertices the search starts from
+     * @param ends the core vertices the search can end at
+     * @param best the weight of a path found without the search, infinite if none
+     * @param potential the potential the fringes are ordered by
+     * @return the core vertex where the path lighter than best leaves the forward search
+     *         for the backward one, NO_VERTEX if there is none
      * */
-    public static void AStar (GraphDB db, Long startNode, Long destNode) {
-        fringe.add(startNode, 0);
-        edgeTo.put(startNode, null);
-        distTo.put(startNode, 0.0);
+    private static int coreAStar(SearchContext ctx, SearchContext back, ContractedGraph cg,
+                                 EdgeWeights weights, int[] starts, int[] ends, double best,
+                                 Potential potential) {
+        CompactGraph g = cg.base();
+        boolean bidirectional = potential.bidirectional;
+        int meet = CompactGraph.NO_VERTEX;
+        for (int c : starts) {
+            if (ctx.heap.contains(c)) continue;
+            ctx.heap.add(c, ctx.dist(c) + potential.of(cg.vertex(c)));
+            if (ctx.dist(c) + back.dist(c) < best) {
+                best = ctx.dist(c) + back.dist(c);
+                meet = c;
+            }
+        }
+        if (bidirectional) {
+            for (int c : ends) {
+                if (back.heap.contains(c)) continue;
+                back.heap.add(c, back.dist(c) - potential.of(cg.vertex(c)));
+            }
+        }
+
+        while (!ctx.heap.isEmpty() && !(bidirectional && back.heap.isEmpty())) {
+            double top = ctx.heap.peekPriority();
+            if (bidirectional) top += back.heap.peekPriority();
+            if (top >= best) break;
+            boolean forward = !bidirectional || ctx.heap.size() <= back.heap.size();
+            SearchContext self = forward ? ctx : back, other = forward ? back : ctx;
+            int c = self.heap.removeSmallest();
+            self.close(c);
+            double distC = self.dist(c);
+            /* The edges come in both directions, so the backward search follows the edges
+             * leaving a vertex back to it */
+            for (int e = cg.edgeBegin(c), end = cg.edgeEnd(c); e < end; e++) {
+                int adj = cg.target(e);
+                if (self.closed(adj)) continue;
+                double dist = distC + weights.edge(e);
+                if (dist < self.dist(adj)) {
+                    self.set(adj, dist, e);
+                    double p = potential.of(cg.vertex(adj));
+                    self.heap.addOrChange(adj, forward ? dist + p : dist - p);
+                    if (dist + other.dist(adj) < best) {
+                        best = dist + other.dist(adj);
+                        meet = adj;
+                    }
+                }
+            }
+        }
+        return meet;
+    }
 
-        Long currExamNode;
-        while (fringe.size() != 0 && !fringe.getSmallest().equals(destNode)) {
-            currExamNode = fringe.removeSmallest();
-            AStarRelaxEdgeFrom(currExamNode, destNode, db);
+    /* Adds the contracted edges of the path through meet that coreAStar found to a list */
+    static void coreEdges(SearchContext ctx, SearchContext back, ContractedGraph cg,
+                          int meet, List<Integer> edges) {
+        for (int c = meet; ctx.parent(c) != SearchContext.NO_PARENT;
+             c = cg.source(ctx.parent(c))) {
+            edges.add(ctx.parent(c));
+        }
+        Collections.reverse(edges);
+        for (int c = meet; back.parent(c) != SearchContext.NO_PARENT;
+             c = cg.source(back.parent(c))) {
+            edges.add(~back.parent(c));
         }
     }
 
+    /**
+     * Searches the Contraction Hierarchy upward from the core vertices next to the start and
+     * the destination at once, taking turns. Each side stops once the smallest distance of
+     * its fringe reaches the shortest path found where they meet, since every shortest path
+     * has a version over shortcuts whose highest vertex both sides reach upward. The
+     * distances of the core vertices next to the start and the destination are set in ctx
+     * and back beforehand.
+     *
+     * @param ctx the search state of the calling thread
+     * @param back the state of the backward search
+     * @param ch the hierarchy over the contracted graph
+     * @param starts the core vertices the search starts from
+     * @param ends the core vertices the search can end at
+     * @param best the length of a path found without the search, infinite if none
+     * @return the core vertex where the shortest path shorter than best leaves the forward
+     *         search for the backward one, NO_VERTEX if there is none
+     * */
+    private static int hierarchySearch(SearchContext ctx, SearchContext back,
+                                       ContractionHierarchy ch, int[] starts, int[] ends,
+                                       double best) {
+        int meet = CompactGraph.NO_VERTEX;
+        for (int c : starts) {
+            if (ctx.heap.contains(c)) continue;
+            ctx.heap.add(c, ctx.dist(c));
+            if (ctx.dist(c) + back.dist(c) < best) {
+                best = ctx.dist(c) + back.dist(c);
+                meet = c;
+            }
+        }
+        for (int c : ends) {
+            if (!back.heap.contains(c)) back.heap.add(c, back.dist(c));
+        }
+
+        boolean forward = false;
+        while (true) {
+            boolean forwardDone = ctx.heap.isEmpty() || ctx.heap.peekPriority() >= best;
+            boolean backwardDone = back.heap.isEmpty() || back.heap.peekPriority() >= best;
+            if (forwardDone && backwardDone) break;
+            forward = backwardDone || !forwardDone && !forward;
+            SearchContext self = forward ? ctx : back, other = forward ? back : ctx;
+            int c = self.heap.removeSmallest();
+            self.close(c);
+            double distC = self.dist(c);
+            if (stalled(self, ch, c, forward)) continue;
+            for (int i = ch.arcBegin(c, forward), end = ch.arcEnd(c, forward); i < end; i++) {
+                int e = ch.arc(i, forward);
+                int adj = forward ? ch.target(e) : ch.source(e);
+                if (self.closed(adj)) continue;
+                double dist = distC + ch.weight(e);
+                if (dist < self.dist(adj)) {
+                    self.set(adj, dist, e);
+                    self.heap.addOrChange(adj, dist);
+                    if (dist + other.dist(adj) < best) {
+                        best = dist + other.dist(adj);
+                        meet = adj;
+                    }
+                }
+            }
+        }
+        return meet;
+    }
+
+    /* Whether the search reaches c shorter from above it, over an arc down to c, in which
+     * case c is no part of a shortest path it finds and need not be expanded */
+    private static boolean stalled(SearchContext self, ContractionHierarchy ch, int c,
+                                   boolean forward) {
+        double distC = self.dist(c);
+        for (int i = ch.arcBegin(c, !forward), end = ch.arcEnd(c, !forward); i < end; i++) {
+            int e = ch.arc(i, !forward);
+            if (self.dist(forward ? ch.source(e) : ch.target(e)) + ch.weight(e) < distC) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Adds the contracted edges of the path through meet that hierarchySearch found to a
+     * list, unpacking its shortcuts */
+    private static void hierarchyEdges(SearchContext ctx, SearchContext back,
+                                       ContractionHierarchy ch, int meet, List<Integer> edges) {
+        ArrayList<Integer> arcs = new ArrayList<>();
+        for (int c = meet; ctx.parent(c) != SearchContext.NO_PARENT;
+             c = ch.source(ctx.parent(c))) {
+            arcs.add(ctx.parent(c));
+        }
+        Collections.reverse(arcs);
+        for (int c = meet; back.parent(c) != SearchContext.NO_PARENT;
+             c = ch.target(back.parent(c))) {
+            arcs.add(back.parent(c));
+        }
+        for (int e : arcs) ch.unpack(e, edges);
+    }
+
+    /**
+     * Performs A* Algorithm (directionally optimized Dijkstra using heuristics) on a graph.
+     * The fringe is ordered by f = g + h, where g is the distance from the start kept in the
+     * search context and h the heuristic; a vertex joins the fringe only once its g improves,
+     * and is closed when it is expanded, so no vertex is expanded twice.
+     *
+     * A bidirectional search also runs A* backward from the destination, expanding from
+     * whichever side has the smaller fringe. Both sides order their fringes by the average
+     * potential of Potential, which keeps them consistent with each other, and the search
+     * stops once the smallest priorities of the two fringes add up to the shortest path
+     * found where they meet, since no path through unexpanded vertices can be shorter.
+     *
+     * @param ctx the search state of the calling thread
+     * @param back the state of the backward half of a bidirectional search
+     * @param db the graph, whose compact graph is searched
+     * @param weights the weights of the edges
+     * @param start the vertex where the path searching starts
+     * @param dest the vertex where the path searching leads to
+     * @param search whether to search from the start only or from both ends, and whether
+     *               to bound distances with the landmarks
+     * @return the vertex where the lightest path found leaves the forward search for the
+     *         backward one, dest itself when searching forward only; NO_VERTEX if none
+     * */
+    private static int AStar(SearchContext ctx, SearchContext back, GraphDB db,
+                             EdgeWeights weights, int start, int dest, Search search) {
+        CompactGraph g = db.getCompactGraph();
+        boolean bidirectional = search == Search.BIDIRECTIONAL;
+        Landmarks landmarks = search == Search.ALT ? db.getLandmarks() : null;
+        Potential potential = new Potential(g, g.lon(start), g.lat(start), g.lon(dest),
+                g.lat(dest), bidirectional, landmarks, landmarkDistances(landmarks, start),
+                landmarkDistances(landmarks, dest));
+        ctx.start(g.size());
+        back.start(g.size());
+        ctx.set(start, 0, SearchContext.NO_PARENT);
+        ctx.heap.add(start, potential.of(start));
+        back.set(dest, 0, SearchContext.NO_PARENT);
+        if (bidirectional) back.heap.add(dest, -potential.of(dest));
+
+        double best = Double.POSITIVE_INFINITY;
+        int meet = CompactGraph.NO_VERTEX;
+        while (!ctx.heap.isEmpty() && !(bidirectional && back.heap.isEmpty())) {
+            double top = ctx.heap.peekPriority();
+            if (bidirectional) top += back.heap.peekPriority();
+            if (top >= best) break;
+            boolean forward = !bidirectional || ctx.heap.size() <= back.heap.size();
+            SearchContext self = forward ? ctx : back, other = forward ? back : ctx;
+            int curr = self.heap.removeSmallest();
+            self.close(curr);
+            int adj = AStarRelaxEdgeFrom(self, other, g, weights, curr, potential, forward,
+                    best);
+            if (adj != CompactGraph.NO_VERTEX) {
+                best = self.dist(adj) + other.dist(adj);
+                meet = adj;
+            }
+        }
+        ctx.expanded += back.expanded;
+        return meet;
+    }
+
     /**
      * Performs edge relaxation operation for A*
      *
-     * @param currExamNode the node from which an edge is extended
-     * @param destNode the destination node
-     * @param db the database representing the graph
+     * @param self the search state of the side expanding curr
+     * @param other the search state of the other side
+     * @param g the compact graph being searched
+     * @param weights the weights of its edges
+     * @param curr the vertex from which an edge is extended
+     * @param potential the potential the fringe is ordered by
+     * @param forward whether self searches forward from the start
+     * @param best the length of the shortest path found so far
+     * @return the vertex relaxed through which the sides now meet on the shortest path found,
+     *         NO_VERTEX if no relaxation found a path shorter than best
      * */
-    private static void AStarRelaxEdgeFrom(Long currExamNode, Long destNode, GraphDB db) {
-        Iterable<Long> it = db.adjacent(currExamNode);
-        for (Long adjNode: it) {
-            if (!fringe.contains(adjNode)) fringe.add(adjNode, Double.POSITIVE_INFINITY);
-            if (!distTo.containsKey(adjNode)) distTo.put(adjNode, Double.POSITIVE_INFINITY);
-
-            // the distance/priority associated with an adjacent node is the distance from the
-            // start node to the current adjacent node plus the great circle distance from the
-            // current adjacent node to the destination node as heuristics.
-            double weight = db.distance(currExamNode, adjNode) + db.distance(adjNode, destNode);
-
-            if (distTo.get(currExamNode) + weight < distTo.get(adjNode)) {
-                distTo.put(adjNode, distTo.get(currExamNode) + weight);
-                edgeTo.put(adjNode, currExamNode);
-                fringe.changePriority(adjNode, distTo.get(adjNode));
+    private static int AStarRelaxEdgeFrom(SearchContext self, SearchContext other,
+                                          CompactGraph g, EdgeWeights weights, int curr,
+                                          Potential potential, boolean forward,
+                                          double best) {
+        int meet = CompactGraph.NO_VERTEX;
+        double distCurr = self.dist(curr);
+        /* The edges come in both directions, so the backward search follows the edges
+         * leaving a vertex back to it */
+        for (int e = g.edgeBegin(curr), end = g.edgeEnd(curr); e < end; e++) {
+            int adj = g.target(e);
+            if (self.closed(adj)) continue;
+
+            // g-score: the distance from the start node to the adjacent node through curr;
+            // the priority adds the potential, a lower bound of the distance to the
+            // destination when searching forward only.
+            double dist = distCurr + weights.base(e);
+            if (dist < self.dist(adj)) {
+                self.set(adj, dist, curr);
+                double p = potential.of(adj);
+                self.heap.addOrChange(adj, forward ? dist + p : dist - p);
+                if (dist + other.dist(adj) < best) {
+                    best = dist + other.dist(adj);
+                    meet = adj;
+                }
             }
         }
+        return meet;
+    }
+
+    /**
+     * The A* heuristic: the great circle distance to the destination, shrunk by a millionth.
+     * Edge lengths are stored as floats, which can round a length below the great circle
+     * distance between its ends; shrinking the heuristic by more than that rounding keeps it
+     * consistent, so a vertex's distance is final when it is closed.
+     */
+    static double heuristic(double lon, double lat, double destLon, double destLat) {
+        return HEURISTIC_SCALE * GraphDB.distance(lon, lat, destLon, destLat);
+    }
+
+    /* Returns the distances of vertex v to each landmark, null without landmarks */
+    static int[] landmarkDistances(Landmarks landmarks, int v) {
+        if (landmarks == null) return null;
+        int[] distances = new int[landmarks.count()];
+        for (int i = 0; i < distances.length; i++) distances[i] = landmarks.distance(v, i);
+        return distances;
+    }
+
+    /**
+     * The potential a search orders its fringe by. Searching forward only, it is the
+     * heuristic towards the destination. Searching from both ends, it is half the difference
+     * between the heuristic towards the destination and the one towards the start: the
+     * forward search adds it and the backward search subtracts it, which keeps both sides
+     * consistent, so a vertex is final when either side closes it.
+     *
+     * With landmarks, the heuristic is the larger of the great circle distance and the
+     * landmark bound (see Landmarks). Either is consistent, and so is the larger of them.
+     */
+    private static final class Potential {
+        private final CompactGraph g;
+        private final double startLon;
+        private final double startLat;
+        private final double destLon;
+        private final double destLat;
+        final boolean bidirectional;
+        /* The landmarks and the distances of the start and the destination to each, null
+         * when the heuristic is the great circle distance only */
+        private final Landmarks landmarks;
+        private final int[] startLandmarks;
+        private final int[] destLandmarks;
+
+        Potential(CompactGraph g, double startLon, double startLat, double destLon,
+                  double destLat, boolean bidirectional, Landmarks landmarks,
+                  int[] startLandmarks, int[] destLandmarks) {
+            this.g = g;
+            this.startLon = startLon;
+            this.startLat = startLat;
+            this.destLon = destLon;
+            this.destLat = destLat;
+            this.bidirectional = bidirectional;
+            this.landmarks = landmarks;
+            this.startLandmarks = startLandmarks;
+            this.destLandmarks = destLandmarks;
+        }
+
+        /* The potential of vertex v of the compact graph */
+        double of(int v) {
+            double lon = g.lon(v), lat = g.lat(v);
+            double toDest = bound(v, lon, lat, destLon, destLat, destLandmarks);
+            if (!bidirectional) return toDest;
+            return (toDest - bound(v, lon, lat, startLon, startLat, startLandmarks)) / 2;
+        }
+
+        private double bound(int v, double lon, double lat, double toLon, double toLat,
+                             int[] toLandmarks) {
+            double h = heuristic(lon, lat, toLon, toLat);
+            if (landmarks == null) return h;
+            /* A virtual vertex rounds its distances to the landmarks down by up to a unit
+             * on either side of its edge */
+            int units = landmarks.lowerBound(v, toLandmarks) - 2;
+            return Math.max(h, HEURISTIC_SCALE * Landmarks.UNIT * units);
+        }
+    }
+
+    /**
+     * Returns the number of vertices the last route search on the calling thread expanded,
+     * the core vertices when it searched the contracted graph, on both sides when it
+     * searched from both ends.
+     */
+    public static int expandedVertices() {
+        return CONTEXT.get().expanded;
     }
 
     /**
      *  Constructing the shortest path return query
      *
-     *  @param targetNode the target to which the shortest path is heading
+     *  @param ctx the forward search state of the calling thread
+     *  @param back the backward search state
+     *  @param g the graph that was searched
+     *  @param meet the vertex where the path leaves the forward search for the backward one
      *  @return a list containing nodes to be traverse through that constructs a
-     *          shortest path to the target node in the order of start -> target
+     *          shortest path in the order of start -> target, empty if meet is NO_VERTEX
      *  */
-    private static ArrayList<Long> constructPath(Long targetNode) {
+    private static ArrayList<Long> constructPath(SearchContext ctx, SearchContext back,
+                                                 CompactGraph g, int meet) {
         ArrayList<Long> path = new ArrayList<>();
-        while (path.add(targetNode) && edgeTo.get(targetNode) != null)
-            targetNode = edgeTo.get(targetNode);
+        if (meet == CompactGraph.NO_VERTEX) return path;
+        for (int v = meet; v != SearchContext.NO_PARENT; v = ctx.parent(v)) path.add(g.id(v));
 
         Collections.reverse(path);
+        for (int v = back.parent(meet); v != SearchContext.NO_PARENT; v = back.parent(v)) {
+            path.add(g.id(v));
+        }
         return path;
     }
 
-    /**
-     * Clean the shortest path route */
-    private static void clean() {
-        fringe.clearMinPQ();
-        distTo.clear();
-        edgeTo.clear();
-    }
-
 
     /**
      * Create the list of directions corresponding to a route on the graph.
@@ -126,6 +1122,7 @@ public class Router {
     public static List<NavigationDirection> routeDirections(GraphDB db, List<Long> route) {
         ArrayList<NavigationDirection> navigationDirections = new ArrayList<>();
         double dist = 0.0;
+        if (route.size() < 2) return navigationDirections;
 
         Long currNode = route.get(0);
         Long nextNode = route.get(1);
@@ -143,7 +1140,7 @@ public class Router {
 //            System.out.println(Arrays.toString(db.getWayNameListByNode(currNode).toArray()));
 //            System.out.println("Name Identification: " + identifyWayName(currNode, nextNode, db) + "\n");
 
-            if (wayName.equals(identifyWayName(currNode, nextNode, db))) {
+            if (Objects.equals(wayName, identifyWayName(currNode, nextNode, db))) {
                 dist += db.distance(currNode, nextNode);
             } else {
                 navigationDirections.add(createNavigationDirection(dir, wayName, dist));
@@ -251,6 +1248,100 @@ public class Router {
         return direction;
     }
 
+    /**
+     * The ways a route can be searched for, which all find a shortest route.
+     */
+    public enum Search {
+        /** A* from the start towards the destination. */
+        ASTAR,
+        /** A* from the start and backward from the destination at once, meeting between. */
+        BIDIRECTIONAL,
+        /**
+         * Upward searches of the Contraction Hierarchy, always on the contracted graph. The
+         * hierarchy is built on the lengths of the roads, so routes weighed otherwise are
+         * searched as BIDIRECTIONAL on the contracted graph instead. With restrictions to
+         * keep to (see Constants.ROUTE_RESTRICTIONS) it is built over the edges that keep
+         * to one-way streets, and a path that makes a forbidden turn is searched for again
+         * with ALT.
+         */
+        CONTRACTION_HIERARCHY,
+        /** A* from the start, bounding distances with landmarks as well (see Landmarks). */
+        ALT
+    }
+
+    /**
+     * The ways of weighing the roads a route is searched over, each the length of a road
+     * times a factor of at least one, so that the great circle distance and the landmark
+     * bounds, which are in miles, never overestimate a weight. The weights of every edge
+     * under each weighting are computed once per graph (see GraphDB.getEdgeWeights).
+     */
+    public enum Weighting {
+        /** The length of a road. */
+        SHORTEST {
+            @Override
+            public float factor(HighwayType type, int speed) {
+                return 1;
+            }
+        },
+        /** The time it takes to drive a road, in the miles that take as long at TOP_SPEED. */
+        FASTEST {
+            @Override
+            public float factor(HighwayType type, int speed) {
+                return TOP_SPEED / Math.min(speed, TOP_SPEED);
+            }
+        },
+        /** The time it takes to drive a road as FASTEST, five times as long on motorways. */
+        AVOID_MOTORWAYS {
+            @Override
+            public float factor(HighwayType type, int speed) {
+                boolean motorway = type == HighwayType.MOTORWAY
+                        || type == HighwayType.MOTORWAY_LINK;
+                return FASTEST.factor(type, speed) * (motorway ? 5 : 1);
+            }
+        };
+
+        /** The speed in miles per hour above which driving is taken to be no faster. */
+        public static final float TOP_SPEED = 75;
+
+        /**
+         * Returns the weight of a road per mile of its length.
+         * @param type the type of the road
+         * @param speed the speed a car is assumed to drive along it in miles per hour
+         * @return the factor, at least one
+         */
+        public abstract float factor(HighwayType type, int speed);
+    }
+
+    /**
+     * A route between two points snapped onto roads: from the snapped start point through
+     * the nodes of the route to the snapped destination point.
+     */
+    public static class Route {
+        /** The nodes along the route, none when both points lie between the same two nodes. */
+        public final List<Long> nodes;
+        public final double startLon;
+        public final double startLat;
+        public final double destLon;
+        public final double destLat;
+        /** The length of the route in miles, infinite if there is none. */
+        public final double distance;
+
+        public Route(List<Long> nodes, double startLon, double startLat,
+                     double destLon, double destLat, double distance) {
+            this.nodes = nodes;
+            this.startLon = startLon;
+            this.startLat = startLat;
+            this.destLon = destLon;
+            this.destLat = destLat;
+            this.distance = distance;
+        }
+
+        /** Whether the destination can be reached from the start. */
+        public boolean found() {
+            return !Double.isInfinite(distance);
+        }
+    }
+
     /**
      * Class to represent a navigation direction, which consists of 3 attributes:
      * a direction to go, a way, and the distance to travel for.
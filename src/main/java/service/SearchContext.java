@@ -0,0 +1,79 @@
+package service;
+
+import utils.dataStructures.priorityQueue.IndexedMinHeap;
+
+import java.util.Arrays;
+
+/**
+ * The mutable state of one route search over dense vertex indices, for the vertices of the
+ * graph or the core vertices of the contracted graph. Router hands every thread its own
+ * context and reuses it from one search to the next, so that searches on different threads
+ * never share state and a search neither allocates nor boxes anything once the arrays have
+ * grown to the size of the graph.
+ *
+ * The distance and parent of a vertex only count if its stamp is the epoch of the current
+ * search, and likewise a vertex is closed only if its closed stamp is. Starting a search
+ * increments the epoch, which forgets every vertex the previous search touched in constant
+ * time instead of clearing the arrays.
+ */
+class SearchContext {
+    /* Returned by parent() for vertices without a parent */
+    static final int NO_PARENT = -1;
+
+    final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+    private double[] dist = new double[0];
+    private int[] parent = new int[0];
+    private int[] visitedEpoch = new int[0];
+    private int[] closedEpoch = new int[0];
+    private int epoch;
+
+    /* Number of vertices the current search has expanded */
+    int expanded;
+
+    /* Forgets the previous search and readies the state for size vertices */
+    void start(int size) {
+        if (visitedEpoch.length < size) {
+            dist = Arrays.copyOf(dist, size);
+            parent = Arrays.copyOf(parent, size);
+            visitedEpoch = Arrays.copyOf(visitedEpoch, size);
+            closedEpoch = Arrays.copyOf(closedEpoch, size);
+            heap.ensureCapacity(size);
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            /* Once every two billion searches the stamps wrap around and are reset */
+            Arrays.fill(visitedEpoch, 0);
+            Arrays.fill(closedEpoch, 0);
+            epoch = 0;
+        }
+        epoch++;
+        expanded = 0;
+        heap.clear();
+    }
+
+    /* Returns the distance to vertex v found so far, infinite if v was not reached */
+    double dist(int v) {
+        return visitedEpoch[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /* Returns the vertex or edge v was reached through, NO_PARENT if none */
+    int parent(int v) {
+        return visitedEpoch[v] == epoch ? parent[v] : NO_PARENT;
+    }
+
+    void set(int v, double distance, int via) {
+        dist[v] = distance;
+        parent[v] = via;
+        visitedEpoch[v] = epoch;
+    }
+
+    /* Adds vertex v to the closed set once it is expanded, its distance final */
+    void close(int v) {
+        closedEpoch[v] = epoch;
+        expanded++;
+    }
+
+    boolean closed(int v) {
+        return closedEpoch[v] == epoch;
+    }
+}
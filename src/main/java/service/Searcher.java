@@ -18,7 +18,14 @@ public class Searcher {
      * @param name name of the node
      * @param id node id*/
     public void addToNamesDict(String name, String id) {
-        Long nodeId = Long.parseLong(id);
+        addToNamesDict(name, Long.parseLong(id));
+    }
+
+    /**
+     * map node names (string) to node id(s)
+     * @param name name of the node
+     * @param nodeId node id*/
+    public void addToNamesDict(String name, long nodeId) {
         if (!this.namesDict.containsKey(name)) {
             ArrayList<Long> nodes = new ArrayList<>();
             nodes.add(nodeId);
@@ -43,6 +50,16 @@ public class Searcher {
         this.loToOrigin.put(original.toLowerCase(), original);
     }
 
+    /* Returns the name to node ids mapping, keyed by lower-cased name */
+    Map<String, ArrayList<Long>> namesDict() {
+        return namesDict;
+    }
+
+    /* Returns the original casing of a lower-cased name */
+    String originalName(String lowercase) {
+        return loToOrigin.get(lowercase);
+    }
+
     /**
      * getting original cased node names by providing prefix
      * @param prefix the string prefix to match
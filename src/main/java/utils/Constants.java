@@ -1,7 +1,9 @@
 package utils;
 
 import service.GraphDB;
+import service.Isochrone;
 import service.Rasterer;
+import service.Router;
 
 import java.awt.*;
 import java.util.LinkedList;
@@ -28,6 +30,96 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library/data/graph/berkeley-2018.osm.xml";
 
+    /** The pipeline used to import the OSM XML when there is no graph snapshot. */
+    public static final GraphDB.Importer OSM_IMPORTER = GraphDB.Importer.PARALLEL;
+
+    /**
+     * Where the graph is kept once loaded. OFF_HEAP suits regions whose graph would not fit
+     * in a reasonable heap, best together with a snapshot, whose columns are then mapped.
+     */
+    public static final GraphDB.Storage GRAPH_STORAGE = GraphDB.Storage.HEAP;
+
+    /**
+     * Whether routes are searched on the graph with its degree-2 chains contracted, which
+     * has several times fewer vertices. Routes are expanded back to every node either way.
+     */
+    public static final boolean ROUTE_ON_CONTRACTED_GRAPH = true;
+
+    /**
+     * Whether the route endpoints are snapped onto the closest point of any road, and the
+     * route drawn from and to those points, rather than onto the closest node.
+     */
+    public static final boolean SNAP_ROUTES_TO_EDGES = true;
+
+    /**
+     * How routes are searched for when a request does not name a search, see Router.Search.
+     * A route request can pick another one with its search parameter. CONTRACTION_HIERARCHY
+     * answers fastest, but builds the hierarchy on its first route unless it was loaded with
+     * a snapshot.
+     */
+    public static final Router.Search ROUTE_SEARCH = Router.Search.ASTAR;
+
+    /**
+     * How the roads are weighed when a route request does not name a profile, see
+     * Router.Weighting. A route request can pick another one with its profile parameter.
+     */
+    public static final Router.Weighting ROUTE_WEIGHTING = Router.Weighting.SHORTEST;
+
+    /**
+     * Whether routes keep to one-way streets and turn restrictions. Routes, distance
+     * matrices, isochrones and alternative routes on a graph that has any are then searched
+     * over its contracted edges rather than its core vertices, which takes longer, see
+     * Router. The Contraction Hierarchy is then built over the edges that keep to one-way
+     * streets, and a route it finds that makes a forbidden turn is searched for again with
+     * ALT.
+     */
+    public static final boolean ROUTE_RESTRICTIONS = true;
+
+    /**
+     * Number of landmarks the ALT route search bounds distances with. More landmarks bound
+     * more routes tightly, at four bytes per vertex each.
+     */
+    public static final int LANDMARK_COUNT = 16;
+
+    /**
+     * Number of routes the route endpoint keeps with their directions, so that a route asked
+     * for again is answered without searching; see service.RouteCache.
+     */
+    public static final int ROUTE_CACHE_CAPACITY = 1024;
+
+    /** The most sources, and the most targets, a distance matrix request may name. */
+    public static final int MATRIX_MAX_POINTS = 100;
+
+    /** The most nodes a nearby search may ask for by count. */
+    public static final int NEARBY_MAX_COUNT = 100;
+
+    /** The largest radius, in miles, a nearby search may ask for. */
+    public static final double NEARBY_MAX_RADIUS = 1.0;
+
+    /** The most routes, the shortest included, a route request may ask for at once. */
+    public static final int ALTERNATIVE_ROUTES_MAX = 5;
+
+    /** How many times longer than the shortest route an alternative route may be. */
+    public static final double ALTERNATIVE_MAX_STRETCH = 1.25;
+
+    /**
+     * The share of the shortest route's length that an alternative route may run along the
+     * routes taken before it.
+     */
+    public static final double ALTERNATIVE_MAX_SHARING = 0.8;
+
+    /**
+     * The share of the shortest route's length that an alternative route must run along a
+     * stretch the searches from both ends share, so that it is locally a shortest route.
+     */
+    public static final double ALTERNATIVE_MIN_PLATEAU = 0.2;
+
+    /**
+     * The cells the reachable area of an isochrone is drawn in have sides of its distance
+     * over this many, which is about the number of cells from its center to its edge.
+     */
+    public static final int ISOCHRONE_CELLS_PER_DISTANCE = 16;
+
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
@@ -40,6 +132,14 @@ public class Constants {
     /** Route stroke information: Cyan with half transparency. */
     public static final Color ROUTE_STROKE_COLOR = new Color(108, 181, 230, 200);
 
+    /** Isochrone fill information: the reachable area in translucent green. */
+    public static final Color ISOCHRONE_FILL_COLOR = new Color(76, 175, 80, 70);
+
+    /** Isochrone stroke information: the outline of the reachable area, in darker green. */
+    public static final Color ISOCHRONE_STROKE_COLOR = new Color(46, 125, 50, 200);
+
+    public static final float ISOCHRONE_STROKE_WIDTH_PX = 2.0f;
+
     /**
      * Each raster request to the server will have the following parameters
      * as keys in the params map accessible by,
@@ -67,8 +167,15 @@ public class Constants {
      public static final String[] REQUIRED_RASTER_RESULT_PARAMS = {"render_grid", "raster_ul_lon",
             "raster_ul_lat", "raster_lr_lon", "raster_lr_lat", "depth", "query_success"};
 
+    /** The nodes of the route drawn on the map; it and ROUTE_ENDPOINTS are guarded by ROUTES. */
     public static final List<Long> ROUTES = new LinkedList<>();
 
+    /** The {lon, lat} points the route is drawn from and to, when they lie off its nodes. */
+    public static final List<double[]> ROUTE_ENDPOINTS = new LinkedList<>();
+
+    /** The isochrone drawn on the map, if any; guarded by itself. */
+    public static final List<Isochrone> ISOCHRONES = new LinkedList<>();
+
     public static GraphDB graph;
 
     public static Rasterer rasterer;
@@ -3,11 +3,12 @@ package utils;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
-import service.GraphDB;
-import service.Searcher;
+import service.GraphBuilder;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.HighwayType;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -22,24 +23,40 @@ public class GraphBuildingHandler extends DefaultHandler {
      * Only allow for non-service roads; this prevents going on pedestrian streets as much as
      * possible.
      */
-    private static final Set<String> ALLOWED_HIGHWAY_TYPES = new HashSet<>(Arrays.asList
+    public static final Set<String> ALLOWED_HIGHWAY_TYPES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
-                    "secondary_link", "tertiary_link"));
+                    "secondary_link", "tertiary_link")));
+    private static final long NO_MEMBER = Long.MIN_VALUE;
     private String activeState = "";
-    private final GraphDB db;
-    private String wayId;
+    private final GraphBuilder builder;
+    private long wayId;
     private String wayName;
-    private String currentNodeId;
-    private ArrayList<String> way = new ArrayList<>();
+    private HighwayType wayType;
+    private int wayMaxSpeed;
+    private String wayOneWay;
+    private boolean wayRoundabout;
+    private long currentNodeId;
+    private long[] way = new long[256];
+    private int wayLength = 0;
     private boolean valid = false;
+    /* The members of the relation being parsed, NO_MEMBER until seen, how many from ways,
+     * via nodes and to ways it has and whether it has a via way, and its tags */
+    private long fromWay;
+    private long viaNode;
+    private long toWay;
+    private int fromWays, viaNodes, toWays;
+    private boolean viaWay;
+    private String relationType;
+    private String restriction;
 
     /**
      * Create a new GraphBuilding.GraphBuildingHandler.
-     * @param db The graph to populate with the XML data.
+     * @param builder The graph builder to populate with the XML data.
      */
-    public GraphBuildingHandler(GraphDB db) {
-        this.db = db;
+    public GraphBuildingHandler(GraphBuilder builder) {
+        this.builder = builder;
     }
 
     /**
@@ -61,40 +78,76 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("node")) {
             /* A <node .../> is encountered */
             activeState = "node";
-            currentNodeId = attributes.getValue("id");
+            currentNodeId = Long.parseLong(attributes.getValue("id"));
 
-            GraphDB.Node newNode = new GraphDB.Node
-                    (currentNodeId, attributes.getValue("lon"), attributes.getValue("lat"));
-            db.addNode(newNode);
+            builder.addNode(currentNodeId, Double.parseDouble(attributes.getValue("lon")),
+                    Double.parseDouble(attributes.getValue("lat")));
 
         } else if (qName.equals("way")) {
             /* A <way> is encountered */
             activeState = "way";
-            this.wayId = attributes.getValue("id");
+            this.wayId = Long.parseLong(attributes.getValue("id"));
+            this.wayName = null;
+            this.wayMaxSpeed = EdgeAttributes.NO_MAX_SPEED;
+            this.wayOneWay = null;
+            this.wayRoundabout = false;
         } else if (activeState.equals("way") && qName.equals("nd")) {
             /* <nd ... /> is encountered as a child element of <way> ... </way> */
-            way.add(attributes.getValue("ref"));
+            if (wayLength == way.length) way = Arrays.copyOf(way, wayLength * 2);
+            way[wayLength++] = Long.parseLong(attributes.getValue("ref"));
 
         } else if (activeState.equals("way") && qName.equals("tag")) {
             /* <tag ... /> is encountered as a child element of <way> ... </way> */
             String k = attributes.getValue("k");
             String v = attributes.getValue("v");
             if (k.equals("highway")) {
-                if (ALLOWED_HIGHWAY_TYPES.contains(v)) valid = true;
+                if (ALLOWED_HIGHWAY_TYPES.contains(v)) {
+                    valid = true;
+                    wayType = HighwayType.of(v);
+                }
             } else if (k.equals("name")) {
                 this.wayName = attributes.getValue("v");
+            } else if (k.equals("maxspeed")) {
+                this.wayMaxSpeed = HighwayType.parseMaxSpeed(v);
+            } else if (k.equals("oneway")) {
+                this.wayOneWay = v;
+            } else if (k.equals("junction")) {
+                this.wayRoundabout = v.equals("roundabout");
             }
 
+        } else if (qName.equals("relation")) {
+            /* A <relation> is encountered */
+            activeState = "relation";
+            fromWay = viaNode = toWay = NO_MEMBER;
+            fromWays = viaNodes = toWays = 0;
+            viaWay = false;
+            relationType = restriction = null;
+        } else if (activeState.equals("relation") && qName.equals("member")) {
+            /* <member ... /> is encountered as a child element of <relation> ... </relation> */
+            String type = attributes.getValue("type"), role = attributes.getValue("role");
+            long ref = Long.parseLong(attributes.getValue("ref"));
+            if (role.equals("from") && type.equals("way")) {
+                fromWay = ref;
+                fromWays++;
+            } else if (role.equals("via") && type.equals("node")) {
+                viaNode = ref;
+                viaNodes++;
+            } else if (role.equals("to") && type.equals("way")) {
+                toWay = ref;
+                toWays++;
+            } else if (role.equals("via") && type.equals("way")) {
+                viaWay = true;
+            }
+        } else if (activeState.equals("relation") && qName.equals("tag")) {
+            /* <tag ... /> is encountered as a child element of <relation> ... </relation> */
+            String k = attributes.getValue("k");
+            if (k.equals("type")) relationType = attributes.getValue("v");
+            else if (k.equals("restriction")) restriction = attributes.getValue("v");
+
         } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
                 .equals("name")) {
             /* <tag ... /> with k="name" is encountered as a child element of <node> ... </node> . */
-            String nodeName = attributes.getValue("v");
-
-            Searcher searcher = db.getSearcher();
-
-            searcher.addLowerToOriginalMapping(nodeName);
-            searcher.addToNamesDict(nodeName.toLowerCase(), currentNodeId);
-            searcher.addToTrie(nodeName.toLowerCase());
+            builder.addNodeName(currentNodeId, attributes.getValue("v"));
         }
     }
 
@@ -113,18 +166,22 @@ public class GraphBuildingHandler extends DefaultHandler {
         if (qName.equals("way")) {
             /* </way> is encountered. */
             if (valid) {
-                db.addWay(new GraphDB.Way(wayId, wayName, way));
-
-                for (int i = 0; i < way.size() - 1; i++) {
-                    db.addAdjacency(way.get(i), way.get(i + 1));
-                    db.addAdjacency(way.get(i + 1), way.get(i));
-                    db.setNodeToWay(way.get(i), wayId);
-                    if (i == way.size() - 2) db.setNodeToWay(way.get(i + 1), wayId);
-                }
+                builder.addWay(wayId, wayName, wayType, wayMaxSpeed,
+                        EdgeAttributes.oneWay(wayOneWay, wayRoundabout), way, wayLength);
             }
 
+            activeState = "";
             valid = false;
-            way.clear();
+            wayLength = 0;
+        } else if (qName.equals("relation")) {
+            /* </relation> is encountered; only restrictions of a from way, a via node and a
+             * to way are kept, whatever other members, such as a location_hint, they have */
+            if ("restriction".equals(relationType) && restriction != null && !viaWay
+                    && fromWays == 1 && viaNodes == 1 && toWays == 1
+                    && (restriction.startsWith("no_") || restriction.startsWith("only_"))) {
+                builder.addRestriction(fromWay, viaNode, toWay, restriction.startsWith("only_"));
+            }
+            activeState = "";
         }
     }
 
@@ -1,15 +1,20 @@
 package utils;
 
+import service.Isochrone;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static utils.Constants.ISOCHRONES;
 import static utils.Constants.ROUTES;
+import static utils.Constants.ROUTE_ENDPOINTS;
 import static utils.Constants.graph;
 
 
@@ -48,7 +53,42 @@ public class ImageToOutputStreamWriter {
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
 
-        List<Long> route = ROUTES;
+        /* If there is an isochrone, shade the cells it reaches and outline them under the
+         * route */
+        Isochrone isochrone = null;
+        synchronized (ISOCHRONES) {
+            if (!ISOCHRONES.isEmpty()) isochrone = ISOCHRONES.get(0);
+        }
+
+        if (isochrone != null) {
+            Graphics2D g2d = (Graphics2D) graphic;
+            g2d.setColor(Constants.ISOCHRONE_FILL_COLOR);
+            for (double[] cell : isochrone.cells()) {
+                int x1 = (int) ((cell[0] - ullon) * (1 / wdpp));
+                int y1 = (int) ((ullat - cell[1]) * (1 / hdpp));
+                int x2 = (int) ((cell[2] - ullon) * (1 / wdpp));
+                int y2 = (int) ((ullat - cell[3]) * (1 / hdpp));
+                g2d.fillRect(x1, y1, x2 - x1, y2 - y1);
+            }
+            g2d.setColor(Constants.ISOCHRONE_STROKE_COLOR);
+            g2d.setStroke(new BasicStroke(Constants.ISOCHRONE_STROKE_WIDTH_PX,
+                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (double[] s : isochrone.outline()) {
+                g2d.drawLine((int) ((s[0] - ullon) * (1 / wdpp)),
+                        (int) ((ullat - s[1]) * (1 / hdpp)),
+                        (int) ((s[2] - ullon) * (1 / wdpp)),
+                        (int) ((ullat - s[3]) * (1 / hdpp)));
+            }
+        }
+
+        /* The route runs from its start point, if it lies off the nodes, through its nodes
+         * to its end point */
+        List<double[]> route = new ArrayList<>();
+        synchronized (ROUTES) {
+            if (ROUTE_ENDPOINTS.size() == 2) route.add(ROUTE_ENDPOINTS.get(0));
+            for (long v : ROUTES) route.add(new double[] {graph.lon(v), graph.lat(v)});
+            if (ROUTE_ENDPOINTS.size() == 2) route.add(ROUTE_ENDPOINTS.get(1));
+        }
 
         if (!route.isEmpty()) {
             Graphics2D g2d = (Graphics2D) graphic;
@@ -57,10 +97,10 @@ public class ImageToOutputStreamWriter {
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 
             route.stream().reduce((v, w) -> {
-                g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
-                        (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
+                g2d.drawLine((int) ((v[0] - ullon) * (1 / wdpp)),
+                        (int) ((ullat - v[1]) * (1 / hdpp)),
+                        (int) ((w[0] - ullon) * (1 / wdpp)),
+                        (int) ((ullat - w[1]) * (1 / hdpp)));
                 return w;
             });
         }
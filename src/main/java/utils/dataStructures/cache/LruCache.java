@@ -0,0 +1,119 @@
+package utils.dataStructures.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded map that evicts its least recently used entries, safe to use from many threads.
+ * The entries are spread over segments by the hash of their key, each a LinkedHashMap in
+ * access order behind its own lock, so that threads using different segments never wait for
+ * each other. Every segment holds an equal share of the capacity and evicts its own least
+ * recently used entry when it is full, which approximates evicting the least recently used
+ * entry of the whole cache. Hits, misses and evictions are counted.
+ */
+public class LruCache<K, V> {
+    private final List<Segment> segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     * @param capacity the number of entries the cache holds at most
+     * @param segmentCount the number of segments, which bounds how many threads use the
+     *                     cache at once without waiting
+     */
+    public LruCache(int capacity, int segmentCount) {
+        if (capacity < 1 || segmentCount < 1) {
+            throw new IllegalArgumentException("The capacity and segments must be positive");
+        }
+        segmentCount = Math.min(segmentCount, capacity);
+        segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            /* The first capacity % segmentCount segments hold one entry more */
+            int share = capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0);
+            segments.add(new Segment(share));
+        }
+    }
+
+    /* Returns the value of a key, null if it is not cached, and marks it recently used */
+    public V get(K key) {
+        Segment segment = segmentOf(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) misses.increment();
+        else hits.increment();
+        return value;
+    }
+
+    /* Caches the value of a key, evicting the least recently used entry of its segment if
+     * the segment is full */
+    public void put(K key, V value) {
+        Segment segment = segmentOf(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /* Removes every entry; the counts are kept */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /* Returns the number of entries cached */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private Segment segmentOf(K key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments.get((h & Integer.MAX_VALUE) % segments.size());
+    }
+
+    /* A share of the entries in access order, evicting the eldest beyond its capacity */
+    private final class Segment extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
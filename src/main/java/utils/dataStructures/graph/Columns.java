@@ -0,0 +1,118 @@
+package utils.dataStructures.graph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Creates the primitive columns graphs are stored in. A column is a typed NIO buffer that
+ * either wraps a Java array or lives in direct memory outside of the Java heap, where the
+ * garbage collector neither scans nor moves it. Columns are only ever read through
+ * absolute gets, so their positions and limits are never touched once created.
+ */
+public class Columns {
+    private Columns() {
+    }
+
+    public static ByteBuffer bytes(byte[] values, boolean offHeap) {
+        if (!offHeap) return ByteBuffer.wrap(values);
+        ByteBuffer column = direct(values.length);
+        column.put(values);
+        column.clear();
+        return column;
+    }
+
+    public static IntBuffer ints(int[] values, boolean offHeap) {
+        if (!offHeap) return IntBuffer.wrap(values);
+        IntBuffer column = direct(4L * values.length).asIntBuffer();
+        column.put(values);
+        column.clear();
+        return column;
+    }
+
+    public static LongBuffer longs(long[] values, boolean offHeap) {
+        if (!offHeap) return LongBuffer.wrap(values);
+        LongBuffer column = direct(8L * values.length).asLongBuffer();
+        column.put(values);
+        column.clear();
+        return column;
+    }
+
+    public static FloatBuffer floats(float[] values, boolean offHeap) {
+        if (!offHeap) return FloatBuffer.wrap(values);
+        FloatBuffer column = direct(4L * values.length).asFloatBuffer();
+        column.put(values);
+        column.clear();
+        return column;
+    }
+
+    public static DoubleBuffer doubles(double[] values, boolean offHeap) {
+        if (!offHeap) return DoubleBuffer.wrap(values);
+        DoubleBuffer column = direct(8L * values.length).asDoubleBuffer();
+        column.put(values);
+        column.clear();
+        return column;
+    }
+
+    /* Copies a column into direct memory, unless it already is off heap */
+    public static ByteBuffer offHeap(ByteBuffer column) {
+        if (column.isDirect()) return column;
+        ByteBuffer source = column.duplicate();
+        source.clear();
+        ByteBuffer copy = direct(column.capacity());
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    public static IntBuffer offHeap(IntBuffer column) {
+        if (column.isDirect()) return column;
+        IntBuffer source = column.duplicate();
+        source.clear();
+        IntBuffer copy = direct(4L * column.capacity()).asIntBuffer();
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    public static LongBuffer offHeap(LongBuffer column) {
+        if (column.isDirect()) return column;
+        LongBuffer source = column.duplicate();
+        source.clear();
+        LongBuffer copy = direct(8L * column.capacity()).asLongBuffer();
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    public static FloatBuffer offHeap(FloatBuffer column) {
+        if (column.isDirect()) return column;
+        FloatBuffer source = column.duplicate();
+        source.clear();
+        FloatBuffer copy = direct(4L * column.capacity()).asFloatBuffer();
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    public static DoubleBuffer offHeap(DoubleBuffer column) {
+        if (column.isDirect()) return column;
+        DoubleBuffer source = column.duplicate();
+        source.clear();
+        DoubleBuffer copy = direct(8L * column.capacity()).asDoubleBuffer();
+        copy.put(source);
+        copy.clear();
+        return copy;
+    }
+
+    /* Allocates direct memory in native byte order, so reads need no byte swapping */
+    private static ByteBuffer direct(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Column of " + bytes + " bytes is too large");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,188 @@
+package utils.dataStructures.graph;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse row (CSR) representation of the road graph.
+ * OSM node ids are remapped to dense int indices in [0, size()), ordered by id, so
+ * that every per-vertex property can live in a primitive array indexed by vertex.
+ * The out-edges of vertex v are the edge indices in [edgeBegin(v), edgeEnd(v)).
+ *
+ * The arrays are held as columns (see Columns), which are either plain Java arrays or
+ * direct buffers outside of the heap; a graph loaded from a snapshot may also read its
+ * columns straight out of the memory-mapped file.
+ */
+public class CompactGraph {
+    /* Returned by indexOf when an OSM id is not part of the graph */
+    public static final int NO_VERTEX = -1;
+
+    /* Sorted OSM ids, the position of an id is its dense vertex index */
+    private final LongBuffer ids;
+    private final DoubleBuffer lons;
+    private final DoubleBuffer lats;
+
+    /* offsets.get(v) .. offsets.get(v + 1) is the range of out-edges of vertex v */
+    private final IntBuffer offsets;
+    /* The vertex each edge points to */
+    private final IntBuffer targets;
+    /* Great-circle length of each edge in miles */
+    private final FloatBuffer lengths;
+
+    /**
+     * Creates a graph over the given arrays; the arrays are not copied.
+     * @param ids OSM ids in ascending order
+     * @param lons longitude of each vertex
+     * @param lats latitude of each vertex
+     * @param offsets edge offsets of each vertex, of length ids.length + 1
+     * @param targets target vertex of each edge
+     * @param lengths length of each edge in miles
+     */
+    public CompactGraph(long[] ids, double[] lons, double[] lats,
+                        int[] offsets, int[] targets, float[] lengths) {
+        this(LongBuffer.wrap(ids), DoubleBuffer.wrap(lons), DoubleBuffer.wrap(lats),
+                IntBuffer.wrap(offsets), IntBuffer.wrap(targets), FloatBuffer.wrap(lengths));
+    }
+
+    /**
+     * Creates a graph over the given columns, which are read with absolute gets from index 0
+     * up to their capacity and are not copied.
+     * @param ids OSM ids in ascending order
+     * @param lons longitude of each vertex
+     * @param lats latitude of each vertex
+     * @param offsets edge offsets of each vertex, of capacity ids.capacity() + 1
+     * @param targets target vertex of each edge
+     * @param lengths length of each edge in miles
+     */
+    public CompactGraph(LongBuffer ids, DoubleBuffer lons, DoubleBuffer lats,
+                        IntBuffer offsets, IntBuffer targets, FloatBuffer lengths) {
+        int n = ids.capacity();
+        if (lons.capacity() != n || lats.capacity() != n || offsets.capacity() != n + 1
+                || targets.capacity() != lengths.capacity()
+                || offsets.get(n) != targets.capacity()) {
+            throw new IllegalArgumentException("Inconsistent CSR arrays");
+        }
+        this.ids = ids;
+        this.lons = lons;
+        this.lats = lats;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.lengths = lengths;
+    }
+
+    /* Returns a copy of this graph whose columns all live off the heap, or itself if they do */
+    public CompactGraph offHeap() {
+        if (isOffHeap()) return this;
+        return new CompactGraph(Columns.offHeap(ids), Columns.offHeap(lons),
+                Columns.offHeap(lats), Columns.offHeap(offsets), Columns.offHeap(targets),
+                Columns.offHeap(lengths));
+    }
+
+    /* Whether the columns of this graph live outside of the Java heap */
+    public boolean isOffHeap() {
+        return ids.isDirect();
+    }
+
+    /* Returns the number of vertices */
+    public int size() {
+        return ids.capacity();
+    }
+
+    /* Returns the number of directed edges */
+    public int edgeCount() {
+        return targets.capacity();
+    }
+
+    /**
+     * Returns the dense index of an OSM node id.
+     * @param id the OSM id
+     * @return the vertex index, or NO_VERTEX if the id is not in the graph
+     */
+    public int indexOf(long id) {
+        int lo = 0, hi = ids.capacity() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midId = ids.get(mid);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return NO_VERTEX;
+    }
+
+    /* Returns the OSM id of vertex v */
+    public long id(int v) {
+        return ids.get(v);
+    }
+
+    public double lon(int v) {
+        return lons.get(v);
+    }
+
+    public double lat(int v) {
+        return lats.get(v);
+    }
+
+    /* Returns the index of the first out-edge of vertex v */
+    public int edgeBegin(int v) {
+        return offsets.get(v);
+    }
+
+    /* Returns one past the index of the last out-edge of vertex v */
+    public int edgeEnd(int v) {
+        return offsets.get(v + 1);
+    }
+
+    public int degree(int v) {
+        return offsets.get(v + 1) - offsets.get(v);
+    }
+
+    /* Returns the vertex that edge e points to */
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    /* Returns the length of edge e in miles */
+    public float length(int e) {
+        return lengths.get(e);
+    }
+
+    /**
+     * Marks the vertices of the largest connected component, the one with the most vertices
+     * and the smallest vertex among equally large ones. Edges are taken to come in both
+     * directions.
+     * @return whether each vertex is in the largest component
+     */
+    public boolean[] largestComponent() {
+        int n = size();
+        int[] component = new int[n];
+        Arrays.fill(component, NO_VERTEX);
+        int[] queue = new int[n];
+        int best = NO_VERTEX, bestSize = 0;
+        for (int s = 0; s < n; s++) {
+            if (component[s] != NO_VERTEX) continue;
+            int head = 0, tail = 0;
+            component[s] = s;
+            queue[tail++] = s;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int e = edgeBegin(v); e < edgeEnd(v); e++) {
+                    int w = target(e);
+                    if (component[w] != NO_VERTEX) continue;
+                    component[w] = s;
+                    queue[tail++] = w;
+                }
+            }
+            if (tail > bestSize) {
+                best = s;
+                bestSize = tail;
+            }
+        }
+        boolean[] largest = new boolean[n];
+        for (int v = 0; v < n; v++) largest[v] = component[v] == best;
+        return largest;
+    }
+}
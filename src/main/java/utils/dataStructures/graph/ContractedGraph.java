@@ -0,0 +1,232 @@
+package utils.dataStructures.graph;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Topology of a CompactGraph with its degree-2 chains contracted. Most vertices of a road
+ * graph are shape points with exactly two neighbours; only the others (intersections and
+ * dead ends) are kept as core vertices, and every chain of shape points between two core
+ * vertices becomes a single edge whose length is the length of the chain. The shape points
+ * of each edge are kept in order, so a path over core vertices can be expanded back into
+ * the full list of vertices of the underlying graph.
+ *
+ * Core vertices have their own dense indices in [0, size()). Every shape point records the
+ * contracted edge whose chain it lies on, so searches can start and end at shape points.
+ * A cycle made only of shape points gets one of its vertices promoted to core vertex.
+ * The contracted graph is stored off the heap whenever the graph it contracts is.
+ */
+public class ContractedGraph {
+    private final CompactGraph base;
+
+    /* Underlying vertex of each core vertex, and core index of each vertex or NO_VERTEX */
+    private final IntBuffer vertices;
+    private final IntBuffer coreOf;
+
+    /* CSR adjacency over core vertices, see CompactGraph */
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final FloatBuffer lengths;
+
+    /* shape[shapeOffsets[e] .. shapeOffsets[e + 1]) are the shape points of edge e, in order */
+    private final IntBuffer shapeOffsets;
+    private final IntBuffer shape;
+
+    /* For shape points: an edge whose chain holds the point, its position in shape, and its
+     * distance from the source of that edge */
+    private final IntBuffer chainEdge;
+    private final IntBuffer chainPosition;
+    private final FloatBuffer chainOffset;
+
+    /**
+     * Contracts the degree-2 chains of a graph whose edges all come in both directions.
+     * @param base the graph to contract
+     */
+    public ContractedGraph(CompactGraph base) {
+        this.base = base;
+        int n = base.size();
+
+        /* Core vertices are the ones that are not shape points, plus one per pure cycle */
+        boolean[] core = new boolean[n];
+        for (int v = 0; v < n; v++) core[v] = base.degree(v) != 2;
+        boolean[] onChain = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            if (!core[v]) continue;
+            for (int e = base.edgeBegin(v); e < base.edgeEnd(v); e++) markChain(v, e, core, onChain);
+        }
+        for (int v = 0; v < n; v++) {
+            if (core[v] || onChain[v]) continue;
+            core[v] = true;
+            markChain(v, base.edgeBegin(v), core, onChain);
+        }
+
+        int coreCount = 0, edgeCount = 0;
+        int[] coreOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            coreOf[v] = core[v] ? coreCount++ : CompactGraph.NO_VERTEX;
+            if (core[v]) edgeCount += base.degree(v);
+        }
+        int[] vertices = new int[coreCount];
+        for (int v = 0; v < n; v++) {
+            if (core[v]) vertices[coreOf[v]] = v;
+        }
+
+        /* Every shape point lies on one chain, which is walked once from each end */
+        int[] offsets = new int[coreCount + 1];
+        int[] targets = new int[edgeCount];
+        float[] lengths = new float[edgeCount];
+        int[] shapeOffsets = new int[edgeCount + 1];
+        int[] shape = new int[2 * (n - coreCount)];
+        int[] chainEdge = new int[n];
+        int[] chainPosition = new int[n];
+        float[] chainOffset = new float[n];
+        Arrays.fill(chainEdge, CompactGraph.NO_VERTEX);
+
+        int edge = 0, shapeSize = 0;
+        for (int c = 0; c < coreCount; c++) {
+            int v = vertices[c];
+            for (int e = base.edgeBegin(v); e < base.edgeEnd(v); e++) {
+                int prev = v, curr = base.target(e);
+                double length = base.length(e);
+                while (!core[curr]) {
+                    if (chainEdge[curr] == CompactGraph.NO_VERTEX) {
+                        chainEdge[curr] = edge;
+                        chainPosition[curr] = shapeSize;
+                        chainOffset[curr] = (float) length;
+                    }
+                    shape[shapeSize++] = curr;
+                    int next = otherEdge(curr, prev);
+                    prev = curr;
+                    curr = base.target(next);
+                    length += base.length(next);
+                }
+                targets[edge] = coreOf[curr];
+                lengths[edge] = (float) length;
+                shapeOffsets[++edge] = shapeSize;
+            }
+            offsets[c + 1] = edge;
+        }
+
+        boolean offHeap = base.isOffHeap();
+        this.vertices = Columns.ints(vertices, offHeap);
+        this.coreOf = Columns.ints(coreOf, offHeap);
+        this.offsets = Columns.ints(offsets, offHeap);
+        this.targets = Columns.ints(targets, offHeap);
+        this.lengths = Columns.floats(lengths, offHeap);
+        this.shapeOffsets = Columns.ints(shapeOffsets, offHeap);
+        this.shape = Columns.ints(shape, offHeap);
+        this.chainEdge = Columns.ints(chainEdge, offHeap);
+        this.chainPosition = Columns.ints(chainPosition, offHeap);
+        this.chainOffset = Columns.floats(chainOffset, offHeap);
+    }
+
+    /* Marks the shape points on the chain that leaves core vertex v through edge e */
+    private void markChain(int v, int e, boolean[] core, boolean[] onChain) {
+        int prev = v, curr = base.target(e);
+        while (!core[curr] && !onChain[curr]) {
+            onChain[curr] = true;
+            int next = otherEdge(curr, prev);
+            prev = curr;
+            curr = base.target(next);
+        }
+    }
+
+    /* Returns the edge of shape point v that does not lead back to prev */
+    private int otherEdge(int v, int prev) {
+        int e = base.edgeBegin(v);
+        return base.target(e) == prev ? e + 1 : e;
+    }
+
+    /* Returns the graph this graph contracts */
+    public CompactGraph base() {
+        return base;
+    }
+
+    /* Returns the number of core vertices */
+    public int size() {
+        return vertices.capacity();
+    }
+
+    /* Returns the number of contracted edges */
+    public int edgeCount() {
+        return targets.capacity();
+    }
+
+    /* Returns the vertex of the underlying graph that core vertex c stands for */
+    public int vertex(int c) {
+        return vertices.get(c);
+    }
+
+    /* Returns the core index of vertex v of the underlying graph, NO_VERTEX for shape points */
+    public int coreOf(int v) {
+        return coreOf.get(v);
+    }
+
+    public int edgeBegin(int c) {
+        return offsets.get(c);
+    }
+
+    public int edgeEnd(int c) {
+        return offsets.get(c + 1);
+    }
+
+    /* Returns the core vertex edge e starts at */
+    public int source(int e) {
+        /* The last core vertex whose edges begin at or before e, which skips the vertices
+         * without edges that share their offset with the next one */
+        int lo = 0, hi = size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets.get(mid) <= e) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    /* Returns the length of edge e in miles, the sum of the lengths along its chain */
+    public float length(int e) {
+        return lengths.get(e);
+    }
+
+    /* Returns the index in shape of the first shape point of edge e */
+    public int shapeBegin(int e) {
+        return shapeOffsets.get(e);
+    }
+
+    public int shapeEnd(int e) {
+        return shapeOffsets.get(e + 1);
+    }
+
+    /* Returns the underlying vertex at index i of the shape points */
+    public int shapeVertex(int i) {
+        return shape.get(i);
+    }
+
+    /* Returns vertex i along the chain of edge e, from its source at 0 to its target at
+     * shapeEnd(e) - shapeBegin(e) + 1 */
+    public int chainVertex(int e, int i) {
+        if (i == 0) return vertex(source(e));
+        if (i == shapeEnd(e) - shapeBegin(e) + 1) return vertex(target(e));
+        return shapeVertex(shapeBegin(e) + i - 1);
+    }
+
+    /* Returns an edge whose chain holds shape point v, NO_VERTEX for core vertices */
+    public int chainEdge(int v) {
+        return chainEdge.get(v);
+    }
+
+    /* Returns the index in shape of shape point v on its chainEdge */
+    public int chainPosition(int v) {
+        return chainPosition.get(v);
+    }
+
+    /* Returns the distance in miles from the source of chainEdge(v) to shape point v */
+    public float chainOffset(int v) {
+        return chainOffset.get(v);
+    }
+}
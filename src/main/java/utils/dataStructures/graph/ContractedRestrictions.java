@@ -0,0 +1,173 @@
+package utils.dataStructures.graph;
+
+import java.nio.IntBuffer;
+
+/**
+ * The one-way streets and forbidden turns of a graph as seen from its ContractedGraph, for
+ * searches whose states are contracted edges. The contracted graph keeps both directions
+ * of every chain as edges of their own; the twin of an edge is the one that runs its chain
+ * the other way, so a search that arrives at a core vertex over an edge knows which edge of
+ * the vertex it came back along, and thereby which turns it may make there.
+ *
+ * A contracted edge is closed if any edge along its chain runs against a one-way street,
+ * or a turn along the chain is forbidden; closed edges are marked in a bitmap, so that
+ * searches only walk the chain of an edge they start or end part way along when the edge
+ * is closed. The twins take an int per contracted edge, and stay on the heap or off it
+ * with the graph.
+ */
+public class ContractedRestrictions {
+    private final ContractedGraph cg;
+    private final EdgeAttributes attributes;
+    private final TurnRestrictions turns;
+
+    private final IntBuffer twins;
+    /* Bit e is set if contracted edge e is closed */
+    private final long[] closed;
+    private final boolean empty;
+
+    /**
+     * Finds the twins and the closed edges of a contracted graph.
+     * @param cg the contracted graph
+     * @param attributes the attributes of the edges of the graph it contracts
+     * @param turns the turns forbidden in the graph it contracts
+     */
+    public ContractedRestrictions(ContractedGraph cg, EdgeAttributes attributes,
+                                  TurnRestrictions turns) {
+        this.cg = cg;
+        this.attributes = attributes;
+        this.turns = turns;
+        CompactGraph g = cg.base();
+
+        /* The twin of an edge leaves its target towards the last vertex before it */
+        int[] twins = new int[cg.edgeCount()];
+        for (int c = 0; c < cg.size(); c++) {
+            for (int e = cg.edgeBegin(c); e < cg.edgeEnd(c); e++) {
+                int t = cg.target(e);
+                int last = cg.shapeBegin(e) == cg.shapeEnd(e) ? cg.vertex(c)
+                        : cg.shapeVertex(cg.shapeEnd(e) - 1);
+                int slot = baseEdge(cg.vertex(t), last) - g.edgeBegin(cg.vertex(t));
+                twins[e] = cg.edgeBegin(t) + slot;
+            }
+        }
+        this.twins = Columns.ints(twins, g.isOffHeap());
+
+        closed = new long[(cg.edgeCount() + 63) >>> 6];
+        boolean any = false;
+        for (int c = 0; c < cg.size(); c++) {
+            for (int e = cg.edgeBegin(c); e < cg.edgeEnd(c); e++) {
+                if (walk(e, 0, chainLength(e) - 1)) continue;
+                closed[e >>> 6] |= 1L << e;
+                any = true;
+            }
+        }
+        empty = !any && turns.isEmpty();
+    }
+
+    /* Returns whether the graph has neither one-way streets nor forbidden turns */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /* Returns the edge that runs the chain of edge e the other way */
+    public int twin(int e) {
+        return twins.get(e);
+    }
+
+    /* Returns whether the whole chain of edge e may be driven along from its source */
+    public boolean open(int e) {
+        return (closed[e >>> 6] & 1L << e) == 0;
+    }
+
+    /**
+     * Returns whether part of the chain of an edge may be driven along from its source.
+     * @param e the contracted edge
+     * @param from the first edge of the chain to drive, counted from 0 at the source
+     * @param to the last edge of the chain to drive; no edge is driven if it is below from
+     */
+    public boolean open(int e, int from, int to) {
+        return from > to || open(e) || walk(e, from, to);
+    }
+
+    /* Returns the number of edges of the underlying graph along the chain of edge e */
+    public int chainLength(int e) {
+        return cg.shapeEnd(e) - cg.shapeBegin(e) + 1;
+    }
+
+    /**
+     * Returns whether a search that arrives at a core vertex over one edge may leave it over
+     * another, the turn between them not being forbidden.
+     * @param in the edge arriving at the core vertex
+     * @param out the edge leaving it
+     */
+    public boolean allowed(int in, int out) {
+        int c = cg.target(in), v = cg.vertex(c);
+        if (!turns.isVia(v)) return true;
+        return !turns.forbidden(v, twin(in) - cg.edgeBegin(c), out - cg.edgeBegin(c));
+    }
+
+    /**
+     * Returns whether a walk over the underlying graph may be driven: every edge along it
+     * in its direction, and every turn between two of them.
+     * @param vertices the vertices of the walk, in order, each next to the one before
+     * @param count the number of vertices
+     */
+    public boolean drivable(int[] vertices, int count) {
+        for (int i = 1; i < count; i++) {
+            if (attributes.noEntry(baseEdge(vertices[i - 1], vertices[i]))) return false;
+            if (i > 1 && !turnAllowed(vertices[i - 2], vertices[i - 1], vertices[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many edges along the chain of an edge may be driven in a row from one of
+     * them, and the turns between them made, so that a search can reach the part of a
+     * closed edge before the restriction that closes it.
+     * @param e the contracted edge
+     * @param from the first edge of the chain to drive, counted from 0 at the source
+     */
+    public int openEdges(int e, int from) {
+        int last = chainLength(e) - 1;
+        return open(e) ? Math.max(0, last - from + 1) : run(e, from, last);
+    }
+
+    /* Whether edges from..to along the chain of edge e may be driven along, and the turns
+     * between them made */
+    private boolean walk(int e, int from, int to) {
+        return run(e, from, to) == to - from + 1;
+    }
+
+    /* The number of edges from from up to to along the chain of edge e that may be driven
+     * along in a row, with the turns between them */
+    private int run(int e, int from, int to) {
+        int prev = CompactGraph.NO_VERTEX, a = cg.chainVertex(e, from);
+        for (int i = from; i <= to; i++) {
+            int b = cg.chainVertex(e, i + 1);
+            if (attributes.noEntry(baseEdge(a, b))) return i - from;
+            if (i > from && !turnAllowed(prev, a, b)) return i - from;
+            prev = a;
+            a = b;
+        }
+        return Math.max(0, to - from + 1);
+    }
+
+    /* Whether the turn at v from the edge coming from a onto the edge leading to b is
+     * allowed */
+    private boolean turnAllowed(int a, int v, int b) {
+        if (!turns.isVia(v)) return true;
+        CompactGraph g = cg.base();
+        return !turns.forbidden(v, baseEdge(v, a) - g.edgeBegin(v),
+                baseEdge(v, b) - g.edgeBegin(v));
+    }
+
+    /* Returns the edge of the underlying graph from a to b, which must exist */
+    private int baseEdge(int a, int b) {
+        CompactGraph g = cg.base();
+        for (int e = g.edgeBegin(a), end = g.edgeEnd(a); e < end; e++) {
+            if (g.target(e) == b) return e;
+        }
+        throw new IllegalArgumentException("No edge from " + a + " to " + b);
+    }
+}
@@ -0,0 +1,439 @@
+package utils.dataStructures.graph;
+
+import utils.dataStructures.priorityQueue.IndexedMinHeap;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Contraction Hierarchy over the core vertices of a ContractedGraph, for answering route
+ * queries with two small upward searches instead of one search over the whole graph.
+ *
+ * The vertices are contracted one at a time, least important first: contracting a vertex
+ * removes it from the remaining graph and adds a shortcut between two of its neighbours
+ * wherever the path through it is the only shortest one, which a bounded witness search
+ * checks. The order of contraction is the rank of a vertex. Every shortest path then has a
+ * version that only climbs in rank up to some vertex and only descends after it, so a query
+ * searches upward from both ends and meets at the top.
+ *
+ * Edges keep their direction: an edge from u to w with rank(u) < rank(w) is a forward arc of
+ * u, one with rank(u) > rank(w) a backward arc of w. Every edge is either an edge of the
+ * contracted graph or a shortcut made of two edges, so a path over shortcuts unpacks back
+ * into contracted edges and from there into every vertex of the underlying graph.
+ * Built with the restrictions of the graph, the hierarchy leaves out every closed edge, so
+ * its paths keep to one-way streets; only the turns at core vertices are left for the
+ * caller to check. The hierarchy is stored off the heap whenever the graph it is built over
+ * is.
+ */
+public class ContractionHierarchy {
+    /* A witness search settles at most this many vertices before the shortcut is added, and
+     * fewer when it only estimates how many shortcuts contracting a vertex would add */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int ESTIMATE_SETTLE_LIMIT = 50;
+
+    /* The order each core vertex was contracted in */
+    private final IntBuffer ranks;
+
+    /* Upward arcs in CSR form: forwardArcs[forwardOffsets[v] .. forwardOffsets[v + 1]) are the
+     * edges leaving v upward, backwardArcs likewise the edges entering v from above */
+    private final IntBuffer forwardOffsets;
+    private final IntBuffer forwardArcs;
+    private final IntBuffer backwardOffsets;
+    private final IntBuffer backwardArcs;
+
+    /* Every edge: where it leads from and to, its length in miles, and what it is made of.
+     * An edge of the contracted graph has its edge as first and NO_VERTEX as second; a
+     * shortcut has the two edges it replaces, first to the contracted vertex and second
+     * from it */
+    private final IntBuffer sources;
+    private final IntBuffer targets;
+    private final DoubleBuffer weights;
+    private final IntBuffer firsts;
+    private final IntBuffer seconds;
+
+    /**
+     * Builds the hierarchy over the core vertices of a contracted graph.
+     * @param cg the contracted graph
+     */
+    public ContractionHierarchy(ContractedGraph cg) {
+        this(cg, null);
+    }
+
+    /**
+     * Builds the hierarchy over the open edges of a contracted graph.
+     * @param cg the contracted graph
+     * @param restrictions the restrictions whose closed edges are left out, null to keep
+     *                     every edge
+     */
+    public ContractionHierarchy(ContractedGraph cg, ContractedRestrictions restrictions) {
+        Builder builder = new Builder(cg, restrictions);
+        builder.contractAll();
+        int n = cg.size();
+        int m = builder.edgeCount;
+        int[] ranks = builder.rank;
+
+        /* Upward arcs of the edges that were not replaced by shorter ones */
+        int[] forwardOffsets = new int[n + 1];
+        int[] backwardOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            if (builder.dead[e]) continue;
+            int u = builder.from[e], w = builder.to[e];
+            if (ranks[u] < ranks[w]) forwardOffsets[u + 1]++;
+            else backwardOffsets[w + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            forwardOffsets[v + 1] += forwardOffsets[v];
+            backwardOffsets[v + 1] += backwardOffsets[v];
+        }
+        int[] forwardArcs = new int[forwardOffsets[n]];
+        int[] backwardArcs = new int[backwardOffsets[n]];
+        int[] nextForward = Arrays.copyOf(forwardOffsets, n);
+        int[] nextBackward = Arrays.copyOf(backwardOffsets, n);
+        for (int e = 0; e < m; e++) {
+            if (builder.dead[e]) continue;
+            int u = builder.from[e], w = builder.to[e];
+            if (ranks[u] < ranks[w]) forwardArcs[nextForward[u]++] = e;
+            else backwardArcs[nextBackward[w]++] = e;
+        }
+
+        boolean offHeap = cg.base().isOffHeap();
+        this.ranks = Columns.ints(ranks, offHeap);
+        this.forwardOffsets = Columns.ints(forwardOffsets, offHeap);
+        this.forwardArcs = Columns.ints(forwardArcs, offHeap);
+        this.backwardOffsets = Columns.ints(backwardOffsets, offHeap);
+        this.backwardArcs = Columns.ints(backwardArcs, offHeap);
+        this.sources = Columns.ints(Arrays.copyOf(builder.from, m), offHeap);
+        this.targets = Columns.ints(Arrays.copyOf(builder.to, m), offHeap);
+        this.weights = Columns.doubles(Arrays.copyOf(builder.weight, m), offHeap);
+        this.firsts = Columns.ints(Arrays.copyOf(builder.first, m), offHeap);
+        this.seconds = Columns.ints(Arrays.copyOf(builder.second, m), offHeap);
+    }
+
+    /**
+     * Creates a hierarchy from columns that have already been built, such as the ones of a
+     * snapshot; see the accessors for what each column holds.
+     */
+    public ContractionHierarchy(IntBuffer ranks, IntBuffer forwardOffsets, IntBuffer forwardArcs,
+                                IntBuffer backwardOffsets, IntBuffer backwardArcs,
+                                IntBuffer sources, IntBuffer targets, DoubleBuffer weights,
+                                IntBuffer firsts, IntBuffer seconds) {
+        this.ranks = ranks;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardArcs = forwardArcs;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardArcs = backwardArcs;
+        this.sources = sources;
+        this.targets = targets;
+        this.weights = weights;
+        this.firsts = firsts;
+        this.seconds = seconds;
+    }
+
+    /* Returns the number of core vertices */
+    public int size() {
+        return ranks.capacity();
+    }
+
+    /* Returns the number of edges, shortcuts included */
+    public int edgeCount() {
+        return sources.capacity();
+    }
+
+    public int rank(int v) {
+        return ranks.get(v);
+    }
+
+    /* The upward arcs of v for the search in the given direction, as edges */
+    public int arcBegin(int v, boolean forward) {
+        return forward ? forwardOffsets.get(v) : backwardOffsets.get(v);
+    }
+
+    public int arcEnd(int v, boolean forward) {
+        return forward ? forwardOffsets.get(v + 1) : backwardOffsets.get(v + 1);
+    }
+
+    public int arc(int i, boolean forward) {
+        return forward ? forwardArcs.get(i) : backwardArcs.get(i);
+    }
+
+    public int source(int e) {
+        return sources.get(e);
+    }
+
+    public int target(int e) {
+        return targets.get(e);
+    }
+
+    public double weight(int e) {
+        return weights.get(e);
+    }
+
+    /* The contracted edge e is, or the first half of shortcut e */
+    public int first(int e) {
+        return firsts.get(e);
+    }
+
+    /* The second half of shortcut e, NO_VERTEX if e is an edge of the contracted graph */
+    public int second(int e) {
+        return seconds.get(e);
+    }
+
+    public boolean isShortcut(int e) {
+        return second(e) != CompactGraph.NO_VERTEX;
+    }
+
+    /**
+     * Adds the edges of the contracted graph that edge e stands for to a list, in order.
+     * @param e an edge of the hierarchy
+     * @param edges the list to add the contracted edges to
+     */
+    public void unpack(int e, List<Integer> edges) {
+        while (isShortcut(e)) {
+            unpack(first(e), edges);
+            e = second(e);
+        }
+        edges.add(first(e));
+    }
+
+    /**
+     * The state of the contraction: the remaining graph, with every edge ever added in one
+     * table and lists of the edges entering and leaving each vertex, which may still name
+     * edges that were replaced or lead to contracted vertices.
+     */
+    private static final class Builder {
+        final int n;
+        final boolean[] contracted;
+        final int[] rank;
+        /* One more than the highest level of a contracted neighbour of each vertex, which
+         * keeps the hierarchy shallow */
+        final int[] level;
+        /* The rank of the last vertex whose contraction updated each vertex, plus one */
+        final int[] touched;
+
+        int edgeCount;
+        int[] from = new int[16];
+        int[] to = new int[16];
+        double[] weight = new double[16];
+        int[] first = new int[16];
+        int[] second = new int[16];
+        /* Number of contracted edges each edge stands for */
+        int[] hops = new int[16];
+        boolean[] dead = new boolean[16];
+
+        final int[][] out;
+        final int[][] in;
+        final int[] outSize;
+        final int[] inSize;
+
+        /* Witness searches, whose distances only count when stamped with the current one */
+        final double[] dist;
+        final int[] stamp;
+        int search;
+        final IndexedMinHeap witnessHeap;
+
+        /* Number of contracted edges the shortcuts of the last contraction stand for */
+        int addedHops;
+
+        Builder(ContractedGraph cg, ContractedRestrictions restrictions) {
+            n = cg.size();
+            contracted = new boolean[n];
+            rank = new int[n];
+            level = new int[n];
+            touched = new int[n];
+            out = new int[n][];
+            in = new int[n][];
+            outSize = new int[n];
+            inSize = new int[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new int[4];
+                in[v] = new int[4];
+            }
+            dist = new double[n];
+            stamp = new int[n];
+            witnessHeap = new IndexedMinHeap(n);
+
+            /* The open edges of the contracted graph, only the shortest between two vertices
+             * and no loops, which never lie on a shortest path */
+            int[] shortest = new int[n];
+            Arrays.fill(shortest, CompactGraph.NO_VERTEX);
+            for (int u = 0; u < n; u++) {
+                for (int e = cg.edgeBegin(u); e < cg.edgeEnd(u); e++) {
+                    int w = cg.target(e);
+                    if (w == u || restrictions != null && !restrictions.open(e)) continue;
+                    int s = shortest[w];
+                    if (s != CompactGraph.NO_VERTEX && from[s] == u) {
+                        if (weight[s] <= cg.length(e)) continue;
+                        dead[s] = true;
+                    }
+                    shortest[w] = addEdge(u, w, cg.length(e), e, CompactGraph.NO_VERTEX);
+                }
+            }
+        }
+
+        int addEdge(int u, int w, double length, int a, int b) {
+            if (edgeCount == from.length) {
+                int capacity = 2 * edgeCount;
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                weight = Arrays.copyOf(weight, capacity);
+                first = Arrays.copyOf(first, capacity);
+                second = Arrays.copyOf(second, capacity);
+                hops = Arrays.copyOf(hops, capacity);
+                dead = Arrays.copyOf(dead, capacity);
+            }
+            int e = edgeCount++;
+            from[e] = u;
+            to[e] = w;
+            weight[e] = length;
+            first[e] = a;
+            second[e] = b;
+            hops[e] = b == CompactGraph.NO_VERTEX ? 1 : hops[a] + hops[b];
+            if (outSize[u] == out[u].length) out[u] = Arrays.copyOf(out[u], 2 * outSize[u]);
+            out[u][outSize[u]++] = e;
+            if (inSize[w] == in[w].length) in[w] = Arrays.copyOf(in[w], 2 * inSize[w]);
+            in[w][inSize[w]++] = e;
+            return e;
+        }
+
+        /* Whether edge e is still part of the remaining graph */
+        boolean live(int e) {
+            return !dead[e] && !contracted[from[e]] && !contracted[to[e]];
+        }
+
+        void contractAll() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) queue.add(v, priority(v));
+            int next = 0;
+            while (!queue.isEmpty()) {
+                /* Priorities only grow stale upward, so a vertex whose recomputed priority
+                 * is still the smallest is contracted, and requeued otherwise */
+                int v = queue.removeSmallest();
+                double p = priority(v);
+                if (!queue.isEmpty() && p > queue.peekPriority()) {
+                    queue.add(v, p);
+                    continue;
+                }
+                contract(v, false);
+                contracted[v] = true;
+                rank[v] = next++;
+                for (int i = 0; i < outSize[v]; i++) touch(v, to[out[v][i]], next, queue);
+                for (int i = 0; i < inSize[v]; i++) touch(v, from[in[v][i]], next, queue);
+            }
+        }
+
+        /* Updates neighbour w of v, the count-th vertex contracted, once */
+        void touch(int v, int w, int count, IndexedMinHeap queue) {
+            if (contracted[w] || touched[w] == count) return;
+            touched[w] = count;
+            level[w] = Math.max(level[w], level[v] + 1);
+            compact(w);
+            queue.changePriority(w, priority(w));
+        }
+
+        /* Drops the edges of v that are no longer part of the remaining graph from its lists */
+        void compact(int v) {
+            int size = 0;
+            for (int i = 0; i < outSize[v]; i++) {
+                if (live(out[v][i])) out[v][size++] = out[v][i];
+            }
+            outSize[v] = size;
+            size = 0;
+            for (int i = 0; i < inSize[v]; i++) {
+                if (live(in[v][i])) in[v][size++] = in[v][i];
+            }
+            inSize[v] = size;
+        }
+
+        /* The level of v, plus how many edges and how many contracted edges contracting v
+         * adds for each one it removes */
+        double priority(int v) {
+            int removed = 0, removedHops = 0;
+            for (int i = 0; i < outSize[v]; i++) {
+                int e = out[v][i];
+                if (!live(e)) continue;
+                removed++;
+                removedHops += hops[e];
+            }
+            for (int i = 0; i < inSize[v]; i++) {
+                int e = in[v][i];
+                if (!live(e)) continue;
+                removed++;
+                removedHops += hops[e];
+            }
+            addedHops = 0;
+            int added = contract(v, true);
+            if (removed == 0) return level[v];
+            return level[v] + (double) added / removed + (double) addedHops / removedHops;
+        }
+
+        /**
+         * Adds the shortcuts contracting v needs, or only counts them.
+         * @return the number of shortcuts
+         */
+        int contract(int v, boolean simulate) {
+            double maxOut = 0;
+            for (int j = 0; j < outSize[v]; j++) {
+                int b = out[v][j];
+                if (live(b)) maxOut = Math.max(maxOut, weight[b]);
+            }
+            int shortcuts = 0;
+            for (int i = 0; i < inSize[v]; i++) {
+                int a = in[v][i];
+                if (!live(a)) continue;
+                int u = from[a];
+                witness(u, v, weight[a] + maxOut,
+                        simulate ? ESTIMATE_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int b = out[v][j];
+                    if (!live(b) || to[b] == u) continue;
+                    int w = to[b];
+                    double via = weight[a] + weight[b];
+                    if (stamp[w] == search && dist[w] <= via) continue;
+                    shortcuts++;
+                    addedHops += hops[a] + hops[b];
+                    if (!simulate) addShortcut(u, w, via, a, b);
+                }
+            }
+            return shortcuts;
+        }
+
+        /* Replaces a longer edge from u to w, if there is one, by a shortcut */
+        void addShortcut(int u, int w, double length, int a, int b) {
+            for (int i = 0; i < outSize[u]; i++) {
+                int e = out[u][i];
+                if (to[e] != w || !live(e)) continue;
+                if (weight[e] <= length) return;
+                dead[e] = true;
+            }
+            addEdge(u, w, length, a, b);
+        }
+
+        /* Distances from u in the remaining graph without v, up to limit or until the search
+         * has settled maxSettled vertices */
+        void witness(int u, int v, double limit, int maxSettled) {
+            search++;
+            witnessHeap.clear();
+            dist[u] = 0;
+            stamp[u] = search;
+            witnessHeap.add(u, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && settled++ < maxSettled) {
+                if (witnessHeap.peekPriority() > limit) return;
+                int x = witnessHeap.removeSmallest();
+                for (int i = 0; i < outSize[x]; i++) {
+                    int e = out[x][i];
+                    int y = to[e];
+                    if (y == v || !live(e)) continue;
+                    double d = dist[x] + weight[e];
+                    if (stamp[y] != search || d < dist[y]) {
+                        dist[y] = d;
+                        stamp[y] = search;
+                        witnessHeap.addOrChange(y, d);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package utils.dataStructures.graph;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * What the ways of a graph say about each of its edges, kept in byte columns (see Columns)
+ * indexed like the edges of the CompactGraph: the HighwayType of the way and its maxspeed
+ * tag in whole miles per hour, 0 where it has none. An edge that lies on several ways takes
+ * the attributes of the most important one, the one whose type comes first. The type byte
+ * of an edge that runs against a one-way street also has its NO_ENTRY bit set, so one-way
+ * streets cost no memory of their own.
+ */
+public class EdgeAttributes {
+    /* Returned by maxSpeed for edges whose way has no usable maxspeed tag */
+    public static final int NO_MAX_SPEED = 0;
+
+    /* Set in the type byte of an edge that may not be driven along, see noEntry() */
+    public static final int NO_ENTRY = 0x80;
+
+    /* The directions a way may be driven in, see oneWay() */
+    public static final int TWO_WAY = 0, ONE_WAY = 1, ONE_WAY_REVERSED = -1;
+
+    private final ByteBuffer types;
+    private final ByteBuffer maxSpeeds;
+
+    /**
+     * Creates the attributes over the given arrays; the arrays are not copied.
+     * @param types the ordinal of the HighwayType of each edge, with NO_ENTRY set for
+     *              edges against a one-way street
+     * @param maxSpeeds the maxspeed of each edge in miles per hour as an unsigned byte, or
+     *                  NO_MAX_SPEED
+     */
+    public EdgeAttributes(byte[] types, byte[] maxSpeeds) {
+        this(ByteBuffer.wrap(types), ByteBuffer.wrap(maxSpeeds));
+    }
+
+    /**
+     * Creates the attributes over the given columns, which are read with absolute gets from
+     * index 0 up to their capacity and are not copied.
+     */
+    public EdgeAttributes(ByteBuffer types, ByteBuffer maxSpeeds) {
+        if (types.capacity() != maxSpeeds.capacity()) {
+            throw new IllegalArgumentException("Inconsistent edge attribute columns");
+        }
+        this.types = types;
+        this.maxSpeeds = maxSpeeds;
+    }
+
+    /* Returns a copy whose columns live off the heap, or itself if they do */
+    public EdgeAttributes offHeap() {
+        if (types.isDirect()) return this;
+        return new EdgeAttributes(Columns.offHeap(types), Columns.offHeap(maxSpeeds));
+    }
+
+    /* Returns the number of edges */
+    public int edgeCount() {
+        return types.capacity();
+    }
+
+    public HighwayType type(int e) {
+        return HighwayType.of(types.get(e) & (NO_ENTRY - 1));
+    }
+
+    /* Returns whether edge e runs against a one-way street, which routes may not follow */
+    public boolean noEntry(int e) {
+        return (types.get(e) & NO_ENTRY) != 0;
+    }
+
+    /* Returns the maxspeed of edge e in miles per hour, NO_MAX_SPEED if it has none */
+    public int maxSpeed(int e) {
+        return maxSpeeds.get(e) & 0xFF;
+    }
+
+    /* Returns the speed a car is assumed to drive along edge e in miles per hour */
+    public int speed(int e) {
+        int maxSpeed = maxSpeed(e);
+        return maxSpeed != NO_MAX_SPEED ? maxSpeed : type(e).defaultSpeed;
+    }
+
+    /**
+     * Returns the directions a way may be driven in from its OSM tags. A oneway tag of
+     * "yes", "true" or "1" allows the order of its nodes only, "-1" or "reverse" the
+     * opposite order only, and roundabouts are one-way unless tagged otherwise. Any other
+     * value, such as "no" or "reversible", leaves the way two-way.
+     * @param oneWay the value of the oneway tag, null if the way has none
+     * @param roundabout whether the way is tagged junction=roundabout
+     * @return TWO_WAY, ONE_WAY or ONE_WAY_REVERSED
+     */
+    public static int oneWay(String oneWay, boolean roundabout) {
+        if (oneWay == null) return roundabout ? ONE_WAY : TWO_WAY;
+        switch (oneWay.trim().toLowerCase(Locale.ROOT)) {
+            case "yes":
+            case "true":
+            case "1":
+                return ONE_WAY;
+            case "-1":
+            case "reverse":
+                return ONE_WAY_REVERSED;
+            default:
+                return TWO_WAY;
+        }
+    }
+}
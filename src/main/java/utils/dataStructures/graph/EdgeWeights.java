@@ -0,0 +1,68 @@
+package utils.dataStructures.graph;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The weights of the edges of a ContractedGraph under one way of weighing the roads, with
+ * the partial weights along its chains, all computed once so that searches read a weight
+ * exactly as they would read a length. The weight of a contracted edge is the sum of the
+ * weights of the edges along its chain, and the weight of a shape point is the sum up to
+ * it from the source of its chainEdge, as ContractedGraph sums the lengths; weights equal
+ * to the lengths therefore give exactly the lengths of the contracted graph back.
+ */
+public class EdgeWeights {
+    private final FloatBuffer base;
+    private final FloatBuffer edges;
+    private final FloatBuffer chainOffsets;
+
+    /**
+     * Sums weights of the edges of the underlying graph over a contracted graph.
+     * @param cg the contracted graph
+     * @param weights the weight of each edge of the underlying graph, no less than zero
+     */
+    public EdgeWeights(ContractedGraph cg, float[] weights) {
+        CompactGraph g = cg.base();
+        if (weights.length != g.edgeCount()) {
+            throw new IllegalArgumentException("One weight per edge is needed");
+        }
+        float[] edges = new float[cg.edgeCount()];
+        float[] chainOffsets = new float[g.size()];
+        for (int c = 0; c < cg.size(); c++) {
+            int v = cg.vertex(c);
+            /* The contracted edges of c follow the edges of v in order */
+            for (int k = 0; k < g.degree(v); k++) {
+                int e = cg.edgeBegin(c) + k, be = g.edgeBegin(v) + k;
+                int prev = v, curr = g.target(be);
+                double weight = weights[be];
+                for (int i = cg.shapeBegin(e); i < cg.shapeEnd(e); i++) {
+                    if (cg.chainEdge(curr) == e) chainOffsets[curr] = (float) weight;
+                    int next = g.edgeBegin(curr);
+                    if (g.target(next) == prev) next++;
+                    prev = curr;
+                    curr = g.target(next);
+                    weight += weights[next];
+                }
+                edges[e] = (float) weight;
+            }
+        }
+        boolean offHeap = g.isOffHeap();
+        this.base = Columns.floats(weights, offHeap);
+        this.edges = Columns.floats(edges, offHeap);
+        this.chainOffsets = Columns.floats(chainOffsets, offHeap);
+    }
+
+    /* Returns the weight of edge e of the underlying graph */
+    public float base(int e) {
+        return base.get(e);
+    }
+
+    /* Returns the weight of contracted edge e */
+    public float edge(int e) {
+        return edges.get(e);
+    }
+
+    /* Returns the weight from the source of chainEdge(v) to shape point v */
+    public float chainOffset(int v) {
+        return chainOffsets.get(v);
+    }
+}
@@ -0,0 +1,69 @@
+package utils.dataStructures.graph;
+
+import java.util.Locale;
+
+/**
+ * The kinds of road the graph is built from, the values of the OSM highway tag that pass
+ * the importers' filter (see GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES), each with the speed
+ * a car is assumed to drive on it where the way has no maxspeed tag.
+ */
+public enum HighwayType {
+    MOTORWAY(65), TRUNK(55), PRIMARY(45), SECONDARY(40), TERTIARY(35), UNCLASSIFIED(30),
+    RESIDENTIAL(25), LIVING_STREET(10), MOTORWAY_LINK(45), TRUNK_LINK(40), PRIMARY_LINK(35),
+    SECONDARY_LINK(30), TERTIARY_LINK(25);
+
+    private static final HighwayType[] VALUES = values();
+
+    /** The assumed speed in miles per hour. */
+    public final int defaultSpeed;
+
+    HighwayType(int defaultSpeed) {
+        this.defaultSpeed = defaultSpeed;
+    }
+
+    /* Returns the type with the given ordinal */
+    public static HighwayType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /* Returns the type a highway tag value names, null for values the graph leaves out */
+    public static HighwayType of(String tag) {
+        for (HighwayType type : VALUES) {
+            if (type.name().toLowerCase(Locale.ROOT).equals(tag)) return type;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the value of an OSM maxspeed tag, a number of kilometres per hour unless it is
+     * followed by "mph", e.g. "50", "30 mph" or "50 km/h".
+     * @param tag the value of the tag
+     * @return the speed in miles per hour rounded to a whole number within [1, 255], 0 if
+     *         the value is not a plain speed (such as "none", "signals" or "DE:urban")
+     */
+    public static int parseMaxSpeed(String tag) {
+        String value = tag.trim().toLowerCase(Locale.ROOT);
+        int end = 0;
+        while (end < value.length()
+                && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+            end++;
+        }
+        if (end == 0) return 0;
+        String unit = value.substring(end).trim();
+        double speed;
+        try {
+            speed = Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        if (unit.equals("mph")) {
+            /* Already in miles per hour */
+        } else if (unit.isEmpty() || unit.equals("km/h") || unit.equals("kmh")
+                || unit.equals("kph")) {
+            speed /= 1.609344;
+        } else {
+            return 0;
+        }
+        return (int) Math.max(1, Math.min(255, Math.round(speed)));
+    }
+}
@@ -0,0 +1,127 @@
+package utils.dataStructures.graph;
+
+import utils.dataStructures.priorityQueue.IndexedMinHeap;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Shortest path distances from a few landmark vertices to every vertex of a CompactGraph, for
+ * the ALT lower bounds of A*: by the triangle inequality, the distance between two vertices
+ * is at least the difference of their distances to any landmark. Landmarks far out on the
+ * edge of the graph bound most routes well, so each one is picked as the vertex of the
+ * largest connected component farthest from the ones picked before.
+ *
+ * The distances are counted in whole units of UNIT miles over edge lengths rounded down to
+ * whole units, so they are exact and never exceed the true ones. The bound between two
+ * vertices then never exceeds the length of a path between them, nor does the difference of
+ * the bounds of two adjacent vertices exceed the length of the edge, which keeps A*
+ * consistent. They are stored vertex by vertex, so the distances of one vertex to all the
+ * landmarks share a cache line.
+ */
+public class Landmarks {
+    /* Length in miles of the unit distances are counted in */
+    public static final double UNIT = 1e-5;
+    /* The distance of a vertex a landmark does not reach */
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private final int count;
+    private final int[] landmarks;
+    /* distances[v * count + i] is the distance between landmark i and vertex v in units */
+    private final IntBuffer distances;
+
+    /**
+     * Picks the landmarks of a graph and computes their distances.
+     * @param g the graph
+     * @param count the number of landmarks, fewer if the graph has fewer vertices
+     */
+    public Landmarks(CompactGraph g, int count) {
+        int n = g.size();
+        boolean[] largest = g.largestComponent();
+        int first = 0;
+        while (first < n && !largest[first]) first++;
+        this.count = first < n ? Math.min(count, n) : 0;
+        this.landmarks = new int[this.count];
+
+        int[] values = new int[n * this.count];
+        int[] dist = new int[n];
+        /* The smallest distance of each vertex to the landmarks picked so far */
+        int[] nearest = new int[n];
+        Arrays.fill(nearest, UNREACHED);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        if (this.count > 0) {
+            /* The first landmark is the vertex farthest from an arbitrary one */
+            dijkstra(g, first, dist, heap);
+            landmarks[0] = farthest(dist, largest);
+        }
+        for (int i = 0; i < this.count; i++) {
+            dijkstra(g, landmarks[i], dist, heap);
+            for (int v = 0; v < n; v++) {
+                values[v * this.count + i] = dist[v];
+                nearest[v] = Math.min(nearest[v], dist[v]);
+            }
+            if (i + 1 < this.count) landmarks[i + 1] = farthest(nearest, largest);
+        }
+        this.distances = Columns.ints(values, g.isOffHeap());
+    }
+
+    /* Returns the number of landmarks */
+    public int count() {
+        return count;
+    }
+
+    /* Returns the vertex landmark i is at */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /* Returns the distance between landmark i and vertex v in units, UNREACHED if none */
+    public int distance(int v, int i) {
+        return distances.get(v * count + i);
+    }
+
+    /**
+     * Returns a lower bound of the distance between vertex v and a place whose distances to
+     * the landmarks are given, in units.
+     * @param v a vertex
+     * @param to the distances of the place to each landmark in units, UNREACHED if none
+     */
+    public int lowerBound(int v, int[] to) {
+        int bound = 0;
+        for (int i = 0, base = v * count; i < count; i++) {
+            int d = distances.get(base + i);
+            if (d == UNREACHED || to[i] == UNREACHED) continue;
+            bound = Math.max(bound, Math.abs(to[i] - d));
+        }
+        return bound;
+    }
+
+    /* Returns the vertex of the largest component with the greatest distance, which is finite */
+    private static int farthest(int[] dist, boolean[] largest) {
+        int farthest = CompactGraph.NO_VERTEX;
+        for (int v = 0; v < dist.length; v++) {
+            if (!largest[v] || dist[v] == UNREACHED) continue;
+            if (farthest == CompactGraph.NO_VERTEX || dist[v] > dist[farthest]) farthest = v;
+        }
+        return farthest;
+    }
+
+    /* Distances in units from vertex s to every vertex */
+    private static void dijkstra(CompactGraph g, int s, int[] dist, IndexedMinHeap heap) {
+        Arrays.fill(dist, UNREACHED);
+        heap.clear();
+        dist[s] = 0;
+        heap.add(s, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.removeSmallest();
+            for (int e = g.edgeBegin(v), end = g.edgeEnd(v); e < end; e++) {
+                int w = g.target(e);
+                int d = dist[v] + (int) (g.length(e) / UNIT);
+                if (d < dist[w]) {
+                    dist[w] = d;
+                    heap.addOrChange(w, d);
+                }
+            }
+        }
+    }
+}
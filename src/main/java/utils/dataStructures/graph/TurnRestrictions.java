@@ -0,0 +1,100 @@
+package utils.dataStructures.graph;
+
+import java.nio.LongBuffer;
+
+/**
+ * The turns a CompactGraph forbids, kept in a sorted long column (see Columns) with one key
+ * per forbidden turn: the via vertex the turn is made at in the high half, and in the low
+ * half the positions among the edges of the via vertex of the edge leading back to where the
+ * turn comes from and of the edge it leaves by. A "no_left_turn" restriction forbids one
+ * such turn, an "only_straight_on" restriction every other turn from the same edge. A bitmap
+ * over the vertices marks the via vertices, so that asking about a turn anywhere else costs
+ * a single lookup.
+ */
+public class TurnRestrictions {
+    /* The most edges a via vertex may have, as positions take 16 bits each */
+    public static final int MAX_DEGREE = 1 << 16;
+
+    private final LongBuffer keys;
+    /* Bit v is set if vertex v is the via vertex of a forbidden turn */
+    private final long[] vias;
+
+    /**
+     * Creates the restrictions over the given keys, which are not copied.
+     * @param keys the keys of the forbidden turns, see key(), sorted without duplicates
+     */
+    public TurnRestrictions(long[] keys) {
+        this(LongBuffer.wrap(keys));
+    }
+
+    /**
+     * Creates the restrictions over the given column, which is read with absolute gets from
+     * index 0 up to its capacity and is not copied.
+     */
+    public TurnRestrictions(LongBuffer keys) {
+        this.keys = keys;
+        int count = keys.capacity();
+        int n = count == 0 ? 0 : (int) (keys.get(count - 1) >>> 32) + 1;
+        vias = new long[(n + 63) >>> 6];
+        for (int i = 0; i < count; i++) {
+            int v = (int) (keys.get(i) >>> 32);
+            vias[v >>> 6] |= 1L << v;
+        }
+    }
+
+    /* Returns a copy whose column lives off the heap, or itself if it does */
+    public TurnRestrictions offHeap() {
+        if (keys.isDirect()) return this;
+        return new TurnRestrictions(Columns.offHeap(keys));
+    }
+
+    /* Returns the number of forbidden turns */
+    public int count() {
+        return keys.capacity();
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    /* Returns the key of forbidden turn i, in sorted order */
+    public long key(int i) {
+        return keys.get(i);
+    }
+
+    /* Returns whether any turn at vertex v is forbidden */
+    public boolean isVia(int v) {
+        return (v >>> 6) < vias.length && (vias[v >>> 6] & 1L << v) != 0;
+    }
+
+    /**
+     * Returns whether a turn is forbidden.
+     * @param v the vertex the turn is made at
+     * @param from the position among the edges of v of the edge back to where the turn
+     *             comes from
+     * @param to the position among the edges of v of the edge the turn leaves by
+     */
+    public boolean forbidden(int v, int from, int to) {
+        if (!isVia(v)) return false;
+        long key = key(v, from, to);
+        int lo = 0, hi = count() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long k = keys.get(mid);
+            if (k < key) lo = mid + 1;
+            else if (k > key) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the key of a turn.
+     * @param v the vertex the turn is made at
+     * @param from the position of the edge back to where the turn comes from, below MAX_DEGREE
+     * @param to the position of the edge the turn leaves by, below MAX_DEGREE
+     */
+    public static long key(int v, int from, int to) {
+        return (long) v << 32 | (long) from << 16 | to;
+    }
+}
@@ -0,0 +1,265 @@
+package utils.dataStructures.graph;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable table of the ways of a graph and of the ways every vertex lies on, kept in
+ * columns (see Columns) like the graph itself. Ways have dense indices in [0, size()),
+ * ordered by OSM id. Names live in a pool of distinct strings that ways refer to by index,
+ * since thousands of segments share a street name, and the node refs of all ways live in
+ * one flat column. The ways of vertex v are the way indices at [waysBegin(v), waysEnd(v)),
+ * each listed once.
+ *
+ * The sets handed out by names(v) and wayIds(v) are read-only views over these columns.
+ */
+public class WayTable {
+    /* Name index of a way without a name */
+    public static final int NO_NAME = -1;
+
+    /* Sorted OSM ids of the ways, and the index in the name pool of each way's name */
+    private final LongBuffer ids;
+    private final IntBuffer nameIndices;
+    private final String[] namePool;
+
+    /* refs[refOffsets[w] .. refOffsets[w + 1]) are the OSM ids of the nodes of way w */
+    private final IntBuffer refOffsets;
+    private final LongBuffer refs;
+
+    /* vertexWays[vertexOffsets[v] .. vertexOffsets[v + 1]) are the ways vertex v lies on */
+    private final IntBuffer vertexOffsets;
+    private final IntBuffer vertexWays;
+
+    /**
+     * Creates a table over the given columns, which are not copied.
+     * @param ids OSM ids of the ways in ascending order
+     * @param nameIndices index in namePool of the name of each way, or NO_NAME
+     * @param namePool the distinct way names
+     * @param refOffsets offsets of the node refs of each way, of capacity ids.capacity() + 1
+     * @param refs OSM ids of the nodes of all ways, in way order
+     * @param vertexOffsets offsets of the ways of each vertex, of capacity vertices + 1
+     * @param vertexWays way indices of the ways of each vertex
+     */
+    public WayTable(LongBuffer ids, IntBuffer nameIndices, String[] namePool,
+                    IntBuffer refOffsets, LongBuffer refs,
+                    IntBuffer vertexOffsets, IntBuffer vertexWays) {
+        int n = ids.capacity();
+        if (nameIndices.capacity() != n || refOffsets.capacity() != n + 1
+                || refOffsets.get(n) != refs.capacity() || vertexOffsets.capacity() < 1
+                || vertexOffsets.get(vertexOffsets.capacity() - 1) != vertexWays.capacity()) {
+            throw new IllegalArgumentException("Inconsistent way columns");
+        }
+        this.ids = ids;
+        this.nameIndices = nameIndices;
+        this.namePool = namePool;
+        this.refOffsets = refOffsets;
+        this.refs = refs;
+        this.vertexOffsets = vertexOffsets;
+        this.vertexWays = vertexWays;
+    }
+
+    /* Returns the number of ways */
+    public int size() {
+        return ids.capacity();
+    }
+
+    /**
+     * Returns the index of a way.
+     * @param id the OSM id of the way
+     * @return the way index, or NO_VERTEX if there is no such way
+     */
+    public int indexOf(long id) {
+        int lo = 0, hi = ids.capacity() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midId = ids.get(mid);
+            if (midId < id) lo = mid + 1;
+            else if (midId > id) hi = mid - 1;
+            else return mid;
+        }
+        return CompactGraph.NO_VERTEX;
+    }
+
+    /* Returns the OSM id of way w */
+    public long id(int w) {
+        return ids.get(w);
+    }
+
+    /* Returns the name of way w, null if it has none */
+    public String name(int w) {
+        return nameOf(nameIndices.get(w));
+    }
+
+    /* Returns the index of the name of way w in the name pool, or NO_NAME */
+    public int nameIndex(int w) {
+        return nameIndices.get(w);
+    }
+
+    /* Returns the name at index i of the name pool, null for NO_NAME */
+    public String nameOf(int i) {
+        return i == NO_NAME ? null : namePool[i];
+    }
+
+    /* Returns the number of distinct way names */
+    public int nameCount() {
+        return namePool.length;
+    }
+
+    /* Returns the index of the first node ref of way w; w may be size() */
+    public int refsBegin(int w) {
+        return refOffsets.get(w);
+    }
+
+    public int refsEnd(int w) {
+        return refOffsets.get(w + 1);
+    }
+
+    /* Returns the OSM id of the node at index i of the refs of all ways */
+    public long ref(int i) {
+        return refs.get(i);
+    }
+
+    /* Returns the index of the first way of vertex v; v may be the number of vertices */
+    public int waysBegin(int v) {
+        return vertexOffsets.get(v);
+    }
+
+    public int waysEnd(int v) {
+        return vertexOffsets.get(v + 1);
+    }
+
+    /* Returns the way at index i of the ways of all vertices */
+    public int way(int i) {
+        return vertexWays.get(i);
+    }
+
+    /* Whether way w lists the node with the given OSM id */
+    public boolean contains(int w, long nodeId) {
+        for (int i = refsBegin(w); i < refsEnd(w); i++) {
+            if (refs.get(i) == nodeId) return true;
+        }
+        return false;
+    }
+
+    /* Returns a view of the OSM ids of the ways vertex v lies on */
+    public Set<Long> wayIds(int v) {
+        return new WayIds(waysBegin(v), waysEnd(v));
+    }
+
+    /* Returns a view of the distinct names of the ways vertex v lies on */
+    public Set<String> names(int v) {
+        return new WayNames(waysBegin(v), waysEnd(v));
+    }
+
+    /* The ways of a vertex as a set of way ids; a vertex lists each of its ways once */
+    private class WayIds extends AbstractSet<Long> {
+        private final int begin;
+        private final int end;
+
+        WayIds(int begin, int end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        @Override
+        public int size() {
+            return end - begin;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Long)) return false;
+            for (int i = begin; i < end; i++) {
+                if (ids.get(vertexWays.get(i)) == (Long) o) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return new Iterator<Long>() {
+                private int i = begin;
+
+                @Override
+                public boolean hasNext() {
+                    return i < end;
+                }
+
+                @Override
+                public Long next() {
+                    if (i >= end) throw new NoSuchElementException();
+                    return ids.get(vertexWays.get(i++));
+                }
+            };
+        }
+    }
+
+    /* The ways of a vertex as a set of names; ways sharing a name yield it once, at the
+     * first of them. Vertices lie on a handful of ways, so scanning beats hashing here */
+    private class WayNames extends AbstractSet<String> {
+        private final int begin;
+        private final int end;
+
+        WayNames(int begin, int end) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        /* Whether the way at index i is the first of the range with its name */
+        private boolean isFirst(int i) {
+            int name = nameIndices.get(vertexWays.get(i));
+            for (int j = begin; j < i; j++) {
+                if (nameIndices.get(vertexWays.get(j)) == name) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (int i = begin; i < end; i++) {
+                if (isFirst(i)) size++;
+            }
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o != null && !(o instanceof String)) return false;
+            for (int i = begin; i < end; i++) {
+                if (Objects.equals(name(vertexWays.get(i)), o)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int i = advance(begin);
+
+                private int advance(int from) {
+                    while (from < end && !isFirst(from)) from++;
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return i < end;
+                }
+
+                @Override
+                public String next() {
+                    if (i >= end) throw new NoSuchElementException();
+                    String name = name(vertexWays.get(i));
+                    i = advance(i + 1);
+                    return name;
+                }
+            };
+        }
+    }
+}
@@ -101,7 +101,7 @@ public class ArrayHeapMinPQ<I> implements ExtrinsicMinPQ<I> {
     /* Promote a node up the hierarchy to the position that it belongs to */
     private void swim(int index) {
         int parentIndex = getParent(index);
-        if (index != 0 && lessThan(index, parentIndex)) {
+        if (index > 1 && lessThan(index, parentIndex)) {
             swap(index, parentIndex);
             swim(parentIndex);
         }
@@ -110,19 +110,16 @@ public class ArrayHeapMinPQ<I> implements ExtrinsicMinPQ<I> {
 
     /* Demote a node down the hierarchy to the position that it belongs to */
     private void sink(int index) {
-        if (size() == 2 && !lessThan(index, leftChild(index)))
-            swap(leftChild(index), index);
-
-        if (leftChild(index) > size() || rightChild(index) > size()) return;
-
-        if (lessThan(leftChild(index), index) || lessThan(rightChild(index), index)) {
-            if (lessThan(leftChild(index), rightChild(index))) {
-                swap(leftChild(index), index);
-                sink(leftChild(index));
-            } else {
-                swap(rightChild(index), index);
-                sink(rightChild(index));
-            }
+        int child = leftChild(index);
+        if (child > size()) return;
+
+        /* The smaller of the children, the left one may be the only one */
+        if (rightChild(index) <= size() && lessThan(rightChild(index), child))
+            child = rightChild(index);
+
+        if (lessThan(child, index)) {
+            swap(child, index);
+            sink(child);
         }
     }
 
@@ -168,6 +165,10 @@ public class ArrayHeapMinPQ<I> implements ExtrinsicMinPQ<I> {
 
         /* Remove item with lowest priority from key set */
         this.keySet.remove(smallest);
+        if (size() == 1) {
+            this.minHeap.remove(1);
+            return smallest;
+        }
         /* Change the index of the last item in the heap to 1 */
         this.keySet.put(this.minHeap.get(size()).item,1);
 
@@ -203,10 +204,10 @@ public class ArrayHeapMinPQ<I> implements ExtrinsicMinPQ<I> {
         node.setPriority(priority);
 
         /* if the priority value of the current node/item is less than its parent node/item */
-        if (lessThan(index, getParent(index))) {
+        if (index > 1 && lessThan(index, getParent(index))) {
             swim(index);
         } else {
-            if (size() != 2) sink(index);
+            sink(index);
         }
 
     }
@@ -0,0 +1,134 @@
+package utils.dataStructures.priorityQueue;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary min heap of int items in [0, capacity) with double priorities, for searches over
+ * dense vertex indices. Unlike ArrayHeapMinPQ nothing is boxed or allocated once the heap
+ * is large enough, and clear() takes constant time: an item is in the heap only if the slot
+ * its position points at holds it, so stale positions left over from earlier uses are
+ * simply ignored.
+ */
+public class IndexedMinHeap {
+    /* items[0 .. size) is the heap, priorities[i] the priority of items[i] */
+    private int[] items;
+    private double[] priorities;
+    /* positions[v] is the slot of item v, meaningful only while v is in the heap */
+    private int[] positions;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        items = new int[capacity];
+        priorities = new double[capacity];
+        positions = new int[capacity];
+    }
+
+    /* Makes room for the items [0, capacity), keeping the heap */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= positions.length) return;
+        items = Arrays.copyOf(items, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    /* Removes all items, in constant time */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int item) {
+        int i = positions[item];
+        return i < size && items[i] == item;
+    }
+
+    /* Adds an item that is not in the heap */
+    public void add(int item, double priority) {
+        items[size] = item;
+        priorities[size] = priority;
+        positions[item] = size;
+        swim(size++);
+    }
+
+    /* Changes the priority of an item in the heap, up or down */
+    public void changePriority(int item, double priority) {
+        int i = positions[item];
+        double old = priorities[i];
+        priorities[i] = priority;
+        if (priority < old) swim(i);
+        else sink(i);
+    }
+
+    /* Adds an item, or changes its priority if it is in the heap already */
+    public void addOrChange(int item, double priority) {
+        if (contains(item)) changePriority(item, priority);
+        else add(item, priority);
+    }
+
+    /* Returns the item with the smallest priority */
+    public int peek() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return items[0];
+    }
+
+    public double peekPriority() {
+        if (size == 0) throw new NoSuchElementException("Heap is empty");
+        return priorities[0];
+    }
+
+    /* Removes and returns the item with the smallest priority */
+    public int removeSmallest() {
+        int smallest = peek();
+        size--;
+        if (size > 0) {
+            move(size, 0);
+            sink(0);
+        }
+        return smallest;
+    }
+
+    private void swim(int i) {
+        int item = items[i];
+        double priority = priorities[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (priorities[parent] <= priority) break;
+            move(parent, i);
+            i = parent;
+        }
+        place(item, priority, i);
+    }
+
+    private void sink(int i) {
+        int item = items[i];
+        double priority = priorities[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && priorities[child + 1] < priorities[child]) child++;
+            if (priorities[child] >= priority) break;
+            move(child, i);
+            i = child;
+        }
+        place(item, priority, i);
+    }
+
+    /* Moves the item in slot from to slot to */
+    private void move(int from, int to) {
+        place(items[from], priorities[from], to);
+    }
+
+    private void place(int item, double priority, int i) {
+        items[i] = item;
+        priorities[i] = priority;
+        positions[item] = i;
+    }
+}
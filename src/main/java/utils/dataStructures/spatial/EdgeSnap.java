@@ -0,0 +1,29 @@
+package utils.dataStructures.spatial;
+
+/**
+ * The point of a road closest to a query point: a point on the edge between two vertices
+ * of a CompactGraph, which searches can start or end at as a virtual vertex.
+ */
+public class EdgeSnap {
+    /* The edge snapped to, which leads from vertex from to vertex to */
+    public final int edge;
+    public final int from;
+    public final int to;
+    /* Where the point lies between from (0) and to (1), linearly in longitude and latitude */
+    public final double fraction;
+    public final double lon;
+    public final double lat;
+    /* Great-circle distance in miles from the query point to the snapped point */
+    public final double distance;
+
+    public EdgeSnap(int edge, int from, int to, double fraction,
+                    double lon, double lat, double distance) {
+        this.edge = edge;
+        this.from = from;
+        this.to = to;
+        this.fraction = fraction;
+        this.lon = lon;
+        this.lat = lat;
+        this.distance = distance;
+    }
+}
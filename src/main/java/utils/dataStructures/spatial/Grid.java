@@ -0,0 +1,86 @@
+package utils.dataStructures.spatial;
+
+/**
+ * Geometry of a uniform grid over a bounding box, shared by the grid indexes. Cells are as
+ * square on the ground as the box allows, a degree of longitude being cos(lat) times as
+ * long as a degree of latitude, and are numbered row by row. Points outside of the box
+ * fall into the nearest cell on its border.
+ */
+final class Grid {
+    /* Smallest extent of the grid in degrees, so that a single point still has a cell */
+    private static final double MIN_SPAN = 1e-6;
+
+    final double minLon;
+    final double minLat;
+    final double cellLon;
+    final double cellLat;
+    final int cols;
+    final int rows;
+
+    /**
+     * Lays out about targetCells cells over a bounding box; an empty box (min > max) gets a
+     * single cell.
+     */
+    Grid(double minLon, double maxLon, double minLat, double maxLat, int targetCells) {
+        if (minLon > maxLon || minLat > maxLat) minLon = maxLon = minLat = maxLat = 0;
+        double lonSpan = Math.max(MIN_SPAN, maxLon - minLon);
+        double latSpan = Math.max(MIN_SPAN, maxLat - minLat);
+        double cos = Math.max(0.01, Math.cos(Math.toRadians((minLat + maxLat) / 2)));
+        targetCells = Math.max(1, targetCells);
+        double side = Math.sqrt(lonSpan * cos * latSpan / targetCells);
+        this.cols = (int) Math.min(targetCells, Math.max(1, Math.ceil(lonSpan * cos / side)));
+        this.rows = (int) Math.min(targetCells / cols + 1, Math.max(1, Math.ceil(latSpan / side)));
+        this.minLon = minLon;
+        this.minLat = minLat;
+        this.cellLon = lonSpan / cols;
+        this.cellLat = latSpan / rows;
+    }
+
+    int cellCount() {
+        return cols * rows;
+    }
+
+    /* Returns the column of a longitude, clamped to the grid */
+    int col(double lon) {
+        return (int) Math.max(0, Math.min(cols - 1, Math.floor((lon - minLon) / cellLon)));
+    }
+
+    int row(double lat) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((lat - minLat) / cellLat)));
+    }
+
+    int cell(int col, int row) {
+        return row * cols + col;
+    }
+
+    /* Whether a block of cells covers the whole grid */
+    boolean covers(int colLo, int colHi, int rowLo, int rowHi) {
+        return colLo <= 0 && colHi >= cols - 1 && rowLo <= 0 && rowHi >= rows - 1;
+    }
+
+    /**
+     * Returns a lower bound of the distance from a point to anything outside of a block of
+     * cells; sides at the edge of the grid have nothing beyond them.
+     * @param cosLat the cosine of the latitude of the point
+     */
+    double gapOutside(double lon, double lat, double cosLat,
+                      int colLo, int colHi, int rowLo, int rowHi) {
+        double gap = Double.POSITIVE_INFINITY;
+        if (colLo > 0) {
+            double west = minLon + colLo * cellLon;
+            gap = Math.min(gap, SphericalBounds.meridianGap(cosLat, lon - west));
+        }
+        if (colHi < cols - 1) {
+            double east = minLon + (colHi + 1) * cellLon;
+            gap = Math.min(gap, SphericalBounds.meridianGap(cosLat, east - lon));
+        }
+        if (rowLo > 0) {
+            gap = Math.min(gap, SphericalBounds.latitudeGap(lat - (minLat + rowLo * cellLat)));
+        }
+        if (rowHi < rows - 1) {
+            double north = minLat + (rowHi + 1) * cellLat;
+            gap = Math.min(gap, SphericalBounds.latitudeGap(north - lat));
+        }
+        return gap;
+    }
+}
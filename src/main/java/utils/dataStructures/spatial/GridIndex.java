@@ -0,0 +1,232 @@
+package utils.dataStructures.spatial;
+
+import service.GraphDB;
+import utils.dataStructures.graph.Columns;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the vertices of a CompactGraph, for nearest vertex, k nearest vertices
+ * and radius queries. The bounding box of the vertices is cut into cells that are roughly
+ * square on the ground and hold a few vertices each, and the vertices are bucketed by cell
+ * in CSR form: the vertices of cell c are cellVertices[cellOffsets[c] .. cellOffsets[c + 1]),
+ * in index order.
+ *
+ * Nearest queries search rings of cells around the query's cell until a great-circle lower
+ * bound of the distance to the cells not searched yet exceeds the distances found. Results
+ * are ordered by great-circle distance (GraphDB.distance), ties by vertex index, exactly as
+ * sorting all vertices would order them.
+ */
+public class GridIndex {
+    /* Average number of vertices per cell the grid is sized for */
+    private static final int VERTICES_PER_CELL = 4;
+
+    private final CompactGraph graph;
+    private final Grid grid;
+
+    private final IntBuffer cellOffsets;
+    private final IntBuffer cellVertices;
+
+    /**
+     * Builds the grid over every vertex of the graph, in the graph's storage.
+     * @param graph the graph whose vertices to index
+     */
+    public GridIndex(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.size();
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            minLon = Math.min(minLon, graph.lon(v));
+            maxLon = Math.max(maxLon, graph.lon(v));
+            minLat = Math.min(minLat, graph.lat(v));
+            maxLat = Math.max(maxLat, graph.lat(v));
+        }
+        this.grid = new Grid(minLon, maxLon, minLat, maxLat, n / VERTICES_PER_CELL);
+
+        int cells = grid.cellCount();
+        int[] offsets = new int[cells + 1];
+        int[] cellOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            cellOf[v] = grid.cell(grid.col(graph.lon(v)), grid.row(graph.lat(v)));
+            offsets[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) offsets[c + 1] += offsets[c];
+        int[] vertices = new int[n];
+        int[] next = Arrays.copyOf(offsets, cells);
+        for (int v = 0; v < n; v++) vertices[next[cellOf[v]]++] = v;
+
+        this.cellOffsets = Columns.ints(offsets, graph.isOffHeap());
+        this.cellVertices = Columns.ints(vertices, graph.isOffHeap());
+    }
+
+    /* Returns the number of indexed vertices */
+    public int size() {
+        return cellVertices.capacity();
+    }
+
+    /**
+     * Returns the vertex closest to a point.
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @return the closest vertex, the one with the smallest index among equally close ones,
+     *         or NO_VERTEX if the graph is empty
+     */
+    public int closest(double lon, double lat) {
+        int[] nearest = kNearest(lon, lat, 1);
+        return nearest.length == 0 ? CompactGraph.NO_VERTEX : nearest[0];
+    }
+
+    /**
+     * Returns the k vertices closest to a point.
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @param k the number of vertices to return
+     * @return the min(k, size()) closest vertices, closest first
+     */
+    public int[] kNearest(double lon, double lat, int k) {
+        k = Math.min(k, size());
+        if (k <= 0) return new int[0];
+        /* The k best so far, as a max-heap on distance then index whose root is the worst */
+        int[] best = new int[k];
+        double[] bestDist = new double[k];
+        int found = 0;
+
+        double cosLat = Math.cos(Math.toRadians(lat));
+        int qCol = grid.col(lon), qRow = grid.row(lat);
+        for (int r = 0; ; r++) {
+            int colLo = qCol - r, colHi = qCol + r, rowLo = qRow - r, rowHi = qRow + r;
+            for (int row = Math.max(0, rowLo); row <= Math.min(grid.rows - 1, rowHi); row++) {
+                boolean edgeRow = row == rowLo || row == rowHi;
+                for (int col = Math.max(0, colLo); col <= Math.min(grid.cols - 1, colHi); col++) {
+                    /* Only the ring itself, the inside was searched before */
+                    if (!edgeRow && col != colLo && col != colHi) {
+                        col = Math.max(col, colHi - 1);
+                        continue;
+                    }
+                    int c = grid.cell(col, row);
+                    for (int i = cellOffsets.get(c); i < cellOffsets.get(c + 1); i++) {
+                        int v = cellVertices.get(i);
+                        double dist = GraphDB.distance(lon, lat, graph.lon(v), graph.lat(v));
+                        found = offer(best, bestDist, found, v, dist);
+                    }
+                }
+            }
+
+            if (grid.covers(colLo, colHi, rowLo, rowHi)) break;
+            if (found == k && grid.gapOutside(lon, lat, cosLat, colLo, colHi, rowLo, rowHi)
+                    > bestDist[0]) {
+                break;
+            }
+        }
+        /* Heap sort: moving the worst left behind the heap orders the best closest first */
+        for (int size = k - 1; size > 0; size--) {
+            swap(best, bestDist, 0, size);
+            siftDown(best, bestDist, 0, size);
+        }
+        return best;
+    }
+
+    /* Adds v to the heap of the best found so far if it is among the best, evicting the
+     * worst once the heap is full, and returns the new count */
+    private static int offer(int[] best, double[] bestDist, int found, int v, double dist) {
+        int k = best.length;
+        if (found < k) {
+            int i = found++;
+            best[i] = v;
+            bestDist[i] = dist;
+            while (i > 0 && closer(bestDist[(i - 1) / 2], best[(i - 1) / 2], dist, v)) {
+                swap(best, bestDist, i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        } else if (closer(dist, v, bestDist[0], best[0])) {
+            best[0] = v;
+            bestDist[0] = dist;
+            siftDown(best, bestDist, 0, k);
+        }
+        return found;
+    }
+
+    /* Moves the entry at i of a heap of size entries down until no child is worse */
+    private static void siftDown(int[] best, double[] bestDist, int i, int size) {
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size
+                    && closer(bestDist[child], best[child], bestDist[child + 1], best[child + 1])) {
+                child++;
+            }
+            if (!closer(bestDist[i], best[i], bestDist[child], best[child])) return;
+            swap(best, bestDist, i, child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] best, double[] bestDist, int i, int j) {
+        int v = best[i];
+        best[i] = best[j];
+        best[j] = v;
+        double dist = bestDist[i];
+        bestDist[i] = bestDist[j];
+        bestDist[j] = dist;
+    }
+
+    private static boolean closer(double dist, int v, double otherDist, int other) {
+        return dist < otherDist || dist == otherDist && v < other;
+    }
+
+    /**
+     * Returns every vertex within a distance of a point.
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @param miles the radius in miles
+     * @return the vertices at most miles away, closest first
+     */
+    public int[] withinRadius(double lon, double lat, double miles) {
+        if (size() == 0 || miles < 0) return new int[0];
+        /* The block of cells that holds the circle: its latitude extent is the radius along
+         * the meridian, its longitude extent where the circle touches its tangent meridians */
+        double angle = miles / SphericalBounds.EARTH_RADIUS;
+        double dLat = Math.toDegrees(angle);
+        double sin = Math.sin(Math.min(angle, Math.PI / 2)) / Math.cos(Math.toRadians(lat));
+        double dLon = angle >= Math.PI / 2 || sin >= 1 ? 360 : Math.toDegrees(Math.asin(sin));
+        /* A hair of slack for rounding at the edge of the circle */
+        dLat = dLat * (1 + 1e-9) + 1e-12;
+        dLon = dLon * (1 + 1e-9) + 1e-12;
+
+        int colLo = grid.col(lon - dLon), colHi = grid.col(lon + dLon);
+        int rowLo = grid.row(lat - dLat), rowHi = grid.row(lat + dLat);
+        int[] hits = new int[16];
+        double[] hitDist = new double[16];
+        int count = 0;
+        for (int row = rowLo; row <= rowHi; row++) {
+            for (int col = colLo; col <= colHi; col++) {
+                int c = grid.cell(col, row);
+                for (int i = cellOffsets.get(c); i < cellOffsets.get(c + 1); i++) {
+                    int v = cellVertices.get(i);
+                    double dist = GraphDB.distance(lon, lat, graph.lon(v), graph.lat(v));
+                    if (dist > miles) continue;
+                    if (count == hits.length) {
+                        hits = Arrays.copyOf(hits, count * 2);
+                        hitDist = Arrays.copyOf(hitDist, count * 2);
+                    }
+                    hits[count] = v;
+                    hitDist[count++] = dist;
+                }
+            }
+        }
+        return sortByDistance(hits, hitDist, count);
+    }
+
+    /* Returns the first count vertices ordered by distance, ties by index */
+    private static int[] sortByDistance(int[] vertices, double[] dist, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> closer(dist[a], vertices[a], dist[b], vertices[b]) ? -1
+                : closer(dist[b], vertices[b], dist[a], vertices[a]) ? 1 : 0);
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) sorted[i] = vertices[order[i]];
+        return sorted;
+    }
+}
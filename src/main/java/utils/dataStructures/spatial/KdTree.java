@@ -0,0 +1,150 @@
+package utils.dataStructures.spatial;
+
+import service.GraphDB;
+import utils.dataStructures.graph.Columns;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.nio.IntBuffer;
+
+/**
+ * Balanced 2-d tree over the vertices of a CompactGraph for nearest vertex queries in
+ * logarithmic time. The tree is implicit: the vertices are permuted so that the median of
+ * every range [lo, hi) sits at (lo + hi) / 2, splitting the range by longitude at even
+ * depths and by latitude at odd depths, and only that permutation is stored.
+ *
+ * Distances are great-circle distances (GraphDB.distance), and a subtree is only skipped
+ * when a lower bound of the great-circle distance to its side of the split exceeds the best
+ * distance found so far. Ties go to the smallest vertex index, so the answer is exactly the
+ * one a linear scan in index order gives.
+ */
+public class KdTree {
+    /* Ranges this small are insertion sorted instead of partitioned during selection */
+    private static final int INSERTION_SORT_SIZE = 8;
+
+    private final CompactGraph graph;
+    /* The vertices in tree order */
+    private final IntBuffer order;
+
+    /* State of one query; every query has its own, so the tree can be queried concurrently */
+    private static final class Query {
+        final double lon;
+        final double lat;
+        final double cosLat;
+        int best = CompactGraph.NO_VERTEX;
+        double bestDist = Double.POSITIVE_INFINITY;
+
+        Query(double lon, double lat) {
+            this.lon = lon;
+            this.lat = lat;
+            this.cosLat = Math.cos(Math.toRadians(lat));
+        }
+    }
+
+    /**
+     * Builds the tree over every vertex of the graph, in the graph's storage.
+     * @param graph the graph whose vertices to index
+     */
+    public KdTree(CompactGraph graph) {
+        this.graph = graph;
+        int[] vertices = new int[graph.size()];
+        for (int v = 0; v < vertices.length; v++) vertices[v] = v;
+        build(vertices, 0, vertices.length, 0);
+        this.order = Columns.ints(vertices, graph.isOffHeap());
+    }
+
+    /* Places the median of [lo, hi) by the coordinate of this depth in the middle, then
+     * builds both halves */
+    private void build(int[] vertices, int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(vertices, lo, hi - 1, mid, depth % 2 == 0);
+            build(vertices, mid + 1, hi, depth + 1);
+            hi = mid;
+            depth++;
+        }
+    }
+
+    /* Quickselect: moves the k-th smallest vertex of [lo, hi] by longitude or latitude to k,
+     * with smaller ones before it and larger ones after it */
+    private void select(int[] vertices, int lo, int hi, int k, boolean byLon) {
+        while (hi - lo >= INSERTION_SORT_SIZE) {
+            int mid = (lo + hi) >>> 1;
+            /* Median of three as the pivot, moved to hi */
+            if (key(vertices[mid], byLon) < key(vertices[lo], byLon)) swap(vertices, lo, mid);
+            if (key(vertices[hi], byLon) < key(vertices[lo], byLon)) swap(vertices, lo, hi);
+            if (key(vertices[mid], byLon) < key(vertices[hi], byLon)) swap(vertices, mid, hi);
+            double pivot = key(vertices[hi], byLon);
+            int store = lo;
+            for (int i = lo; i < hi; i++) {
+                if (key(vertices[i], byLon) < pivot) swap(vertices, i, store++);
+            }
+            swap(vertices, store, hi);
+            if (store == k) return;
+            if (k < store) hi = store - 1;
+            else lo = store + 1;
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && key(vertices[j], byLon) < key(vertices[j - 1], byLon); j--) {
+                swap(vertices, j, j - 1);
+            }
+        }
+    }
+
+    private double key(int v, boolean byLon) {
+        return byLon ? graph.lon(v) : graph.lat(v);
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    /* Returns the number of indexed vertices */
+    public int size() {
+        return order.capacity();
+    }
+
+    /**
+     * Returns the vertex closest to a point by great-circle distance.
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @return the closest vertex, the one with the smallest index among equally close ones,
+     *         or NO_VERTEX if the graph is empty
+     */
+    public int nearest(double lon, double lat) {
+        Query query = new Query(lon, lat);
+        nearest(query, 0, size(), 0);
+        return query.best;
+    }
+
+    private void nearest(Query q, int lo, int hi, int depth) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = order.get(mid);
+            double vLon = graph.lon(v), vLat = graph.lat(v);
+            double dist = GraphDB.distance(q.lon, q.lat, vLon, vLat);
+            if (dist < q.bestDist || dist == q.bestDist && v < q.best) {
+                q.best = v;
+                q.bestDist = dist;
+            }
+
+            boolean byLon = depth % 2 == 0;
+            double delta = byLon ? q.lon - vLon : q.lat - vLat;
+            /* Search the side of the query first; the median itself is already done */
+            int nearLo = delta < 0 ? lo : mid + 1, nearHi = delta < 0 ? mid : hi;
+            int farLo = delta < 0 ? mid + 1 : lo, farHi = delta < 0 ? hi : mid;
+            nearest(q, nearLo, nearHi, depth + 1);
+            if (lowerBound(q, Math.abs(delta), byLon) > q.bestDist) return;
+            lo = farLo;
+            hi = farHi;
+            depth++;
+        }
+    }
+
+    /* Returns a lower bound of the distance from the query to the far side of a split */
+    private static double lowerBound(Query q, double delta, boolean byLon) {
+        return byLon ? SphericalBounds.meridianGap(q.cosLat, delta)
+                : SphericalBounds.latitudeGap(delta);
+    }
+}
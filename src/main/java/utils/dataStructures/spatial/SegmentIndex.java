@@ -0,0 +1,205 @@
+package utils.dataStructures.spatial;
+
+import service.GraphDB;
+import utils.dataStructures.graph.Columns;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the road segments of a CompactGraph, for snapping points onto the
+ * nearest edge rather than the nearest vertex. Every pair of opposite edges is indexed once,
+ * as the segment from its smaller vertex to its larger one, and every segment is listed in
+ * each cell its bounding box overlaps, in CSR form like GridIndex.
+ *
+ * A query point is projected onto a segment in a local equirectangular projection around the
+ * point, and its distance to the segment is the great-circle distance to that projection.
+ * Rings of cells are searched around the point until a lower bound of the distance to the
+ * cells not searched yet exceeds the best distance; since a segment lies inside its bounding
+ * box, the answer is the same as projecting onto every segment, ties going to the smallest
+ * edge index.
+ */
+public class SegmentIndex {
+    /* Average number of segments per cell the grid is sized for */
+    private static final int SEGMENTS_PER_CELL = 2;
+
+    private final CompactGraph graph;
+    private final Grid grid;
+
+    /* Segment s is edge segmentEdges[s], which leaves vertex segmentSources[s] */
+    private final IntBuffer segmentEdges;
+    private final IntBuffer segmentSources;
+
+    /* cellSegments[cellOffsets[c] .. cellOffsets[c + 1]) are the segments overlapping cell c */
+    private final IntBuffer cellOffsets;
+    private final IntBuffer cellSegments;
+
+    /* State of one query, so the index can be queried concurrently */
+    private static final class Query {
+        final double lon;
+        final double lat;
+        final double cosLat;
+        int edge = CompactGraph.NO_VERTEX;
+        int from;
+        int to;
+        double fraction;
+        double snapLon;
+        double snapLat;
+        double dist = Double.POSITIVE_INFINITY;
+
+        Query(double lon, double lat) {
+            this.lon = lon;
+            this.lat = lat;
+            this.cosLat = Math.cos(Math.toRadians(lat));
+        }
+    }
+
+    /**
+     * Builds the grid over every edge of the graph, in the graph's storage.
+     * @param graph the graph whose edges to index; its edges must come in both directions
+     */
+    public SegmentIndex(CompactGraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Builds the grid over the edges between the given vertices, in the graph's storage,
+     * such as the vertices of the largest component (see CompactGraph.largestComponent) so
+     * that points are never snapped onto a fragment of road cut off from the rest.
+     * @param graph the graph whose edges to index; its edges must come in both directions
+     * @param indexed whether to index the edges of each vertex, null to index all of them
+     */
+    public SegmentIndex(CompactGraph graph, boolean[] indexed) {
+        this.graph = graph;
+        int n = graph.size();
+        int count = 0;
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            if (graph.degree(v) == 0 || indexed != null && !indexed[v]) continue;
+            minLon = Math.min(minLon, graph.lon(v));
+            maxLon = Math.max(maxLon, graph.lon(v));
+            minLat = Math.min(minLat, graph.lat(v));
+            maxLat = Math.max(maxLat, graph.lat(v));
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.target(e);
+                if (v < w && (indexed == null || indexed[w])) count++;
+            }
+        }
+        this.grid = new Grid(minLon, maxLon, minLat, maxLat, count / SEGMENTS_PER_CELL);
+
+        int[] edges = new int[count];
+        int[] sources = new int[count];
+        int[] offsets = new int[grid.cellCount() + 1];
+        int s = 0;
+        for (int v = 0; v < n; v++) {
+            if (indexed != null && !indexed[v]) continue;
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.target(e);
+                if (v > w || indexed != null && !indexed[w]) continue;
+                edges[s] = e;
+                sources[s++] = v;
+                for (int row = rowLo(v, w); row <= rowHi(v, w); row++) {
+                    for (int col = colLo(v, w); col <= colHi(v, w); col++) {
+                        offsets[grid.cell(col, row) + 1]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < grid.cellCount(); c++) offsets[c + 1] += offsets[c];
+        int[] segments = new int[offsets[grid.cellCount()]];
+        int[] next = Arrays.copyOf(offsets, grid.cellCount());
+        for (s = 0; s < count; s++) {
+            int v = sources[s], w = graph.target(edges[s]);
+            for (int row = rowLo(v, w); row <= rowHi(v, w); row++) {
+                for (int col = colLo(v, w); col <= colHi(v, w); col++) {
+                    segments[next[grid.cell(col, row)]++] = s;
+                }
+            }
+        }
+
+        boolean offHeap = graph.isOffHeap();
+        this.segmentEdges = Columns.ints(edges, offHeap);
+        this.segmentSources = Columns.ints(sources, offHeap);
+        this.cellOffsets = Columns.ints(offsets, offHeap);
+        this.cellSegments = Columns.ints(segments, offHeap);
+    }
+
+    /* The block of cells the bounding box of the segment between v and w overlaps */
+    private int colLo(int v, int w) {
+        return grid.col(Math.min(graph.lon(v), graph.lon(w)));
+    }
+
+    private int colHi(int v, int w) {
+        return grid.col(Math.max(graph.lon(v), graph.lon(w)));
+    }
+
+    private int rowLo(int v, int w) {
+        return grid.row(Math.min(graph.lat(v), graph.lat(w)));
+    }
+
+    private int rowHi(int v, int w) {
+        return grid.row(Math.max(graph.lat(v), graph.lat(w)));
+    }
+
+    /* Returns the number of indexed segments, one per pair of opposite edges */
+    public int size() {
+        return segmentEdges.capacity();
+    }
+
+    /**
+     * Returns the point of the road network closest to a point.
+     * @param lon the longitude of the point
+     * @param lat the latitude of the point
+     * @return the closest point on an edge, leading from the smaller vertex to the larger
+     *         one, or null if the graph has no edges
+     */
+    public EdgeSnap nearest(double lon, double lat) {
+        if (size() == 0) return null;
+        Query q = new Query(lon, lat);
+        int qCol = grid.col(lon), qRow = grid.row(lat);
+        for (int r = 0; ; r++) {
+            int colLo = qCol - r, colHi = qCol + r, rowLo = qRow - r, rowHi = qRow + r;
+            for (int row = Math.max(0, rowLo); row <= Math.min(grid.rows - 1, rowHi); row++) {
+                boolean edgeRow = row == rowLo || row == rowHi;
+                for (int col = Math.max(0, colLo); col <= Math.min(grid.cols - 1, colHi); col++) {
+                    /* Only the ring itself, the inside was searched before */
+                    if (!edgeRow && col != colLo && col != colHi) {
+                        col = Math.max(col, colHi - 1);
+                        continue;
+                    }
+                    int c = grid.cell(col, row);
+                    for (int i = cellOffsets.get(c); i < cellOffsets.get(c + 1); i++) {
+                        offer(q, cellSegments.get(i));
+                    }
+                }
+            }
+            if (grid.covers(colLo, colHi, rowLo, rowHi)) break;
+            if (grid.gapOutside(lon, lat, q.cosLat, colLo, colHi, rowLo, rowHi) > q.dist) break;
+        }
+        return new EdgeSnap(q.edge, q.from, q.to, q.fraction, q.snapLon, q.snapLat, q.dist);
+    }
+
+    /* Projects the query onto segment s and keeps the projection if it is the closest yet */
+    private void offer(Query q, int s) {
+        int e = segmentEdges.get(s);
+        int v = segmentSources.get(s), w = graph.target(e);
+        double vLon = graph.lon(v), vLat = graph.lat(v);
+        double dx = (graph.lon(w) - vLon) * q.cosLat, dy = graph.lat(w) - vLat;
+        double px = (q.lon - vLon) * q.cosLat, py = q.lat - vLat;
+        double squared = dx * dx + dy * dy;
+        double t = squared == 0 ? 0 : Math.max(0, Math.min(1, (px * dx + py * dy) / squared));
+        double lon = vLon + t * (graph.lon(w) - vLon), lat = vLat + t * (graph.lat(w) - vLat);
+        double dist = GraphDB.distance(q.lon, q.lat, lon, lat);
+        if (dist < q.dist || dist == q.dist && e < q.edge) {
+            q.edge = e;
+            q.from = v;
+            q.to = w;
+            q.fraction = t;
+            q.snapLon = lon;
+            q.snapLat = lat;
+            q.dist = dist;
+        }
+    }
+}
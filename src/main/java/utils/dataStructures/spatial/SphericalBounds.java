@@ -0,0 +1,37 @@
+package utils.dataStructures.spatial;
+
+/**
+ * Lower bounds of great-circle distances in miles that the spatial indexes prune with. Every
+ * bound is shrunk by a hair so that rounding can never prune a point exactly as close as
+ * the best one found, which keeps ties decided the same way as a linear scan.
+ */
+final class SphericalBounds {
+    /* Earth radius in miles, as used by GraphDB.distance */
+    static final double EARTH_RADIUS = 3963;
+
+    private static final double SHRINK = 1 - 1e-9;
+
+    private SphericalBounds() {
+    }
+
+    /**
+     * Returns a lower bound of the distance from a point to any point whose latitude is
+     * delta degrees further north or south: the arc along the meridian.
+     */
+    static double latitudeGap(double delta) {
+        return EARTH_RADIUS * Math.toRadians(Math.max(0, delta)) * SHRINK;
+    }
+
+    /**
+     * Returns a lower bound of the distance from a point to any point beyond the meridian
+     * delta degrees of longitude east or west of it: the distance to that meridian's great
+     * circle, which only bounds points less than a quarter turn away.
+     * @param cosLat the cosine of the latitude of the point
+     * @param delta the difference in longitude in degrees
+     */
+    static double meridianGap(double cosLat, double delta) {
+        if (delta <= 0 || delta >= 90) return 0;
+        double sin = Math.min(1, Math.abs(cosLat * Math.sin(Math.toRadians(delta))));
+        return EARTH_RADIUS * Math.asin(sin) * SHRINK;
+    }
+}
@@ -0,0 +1,90 @@
+package utils.osm;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens OSM source files, which may be stored compressed. The compression is detected from
+ * the magic bytes at the start of the file rather than from its name, and compressed files
+ * are decoded on a separate thread that runs ahead of the parser (see PipelinedInputStream),
+ * so decoding and parsing overlap.
+ */
+public class OsmInput {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /* The compressions an OSM source file can be stored with */
+    public enum Compression {
+        NONE, GZIP, BZIP2, ZSTD
+    }
+
+    private OsmInput() {
+    }
+
+    /**
+     * Detects the compression of a file from its first bytes.
+     * @param file the file
+     * @return the compression, NONE for plain XML
+     */
+    public static Compression compression(File file) throws IOException {
+        byte[] magic = new byte[4];
+        int n = 0;
+        try (FileInputStream in = new FileInputStream(file)) {
+            while (n < magic.length) {
+                int read = in.read(magic, n, magic.length - n);
+                if (read < 0) break;
+                n += read;
+            }
+        }
+        if (n >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return Compression.GZIP;
+        }
+        if (n >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+            return Compression.BZIP2;
+        }
+        if (n >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return Compression.ZSTD;
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * Opens a file for parsing, decoding it on a background thread if it is compressed.
+     * @param file the plain or compressed OSM file
+     * @return the decoded bytes of the file
+     */
+    public static InputStream open(File file) throws IOException {
+        Compression compression = compression(file);
+        InputStream in = new FileInputStream(file);
+        if (compression == Compression.NONE) return in;
+        try {
+            InputStream compressed = new BufferedInputStream(in, BUFFER_SIZE);
+            return new PipelinedInputStream(decoder(compression, compressed),
+                    "osm-decode-" + file.getName());
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static InputStream decoder(Compression compression, InputStream in)
+            throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            case ZSTD:
+                return new ZstdCompressorInputStream(in);
+            default:
+                return in;
+        }
+    }
+}
@@ -0,0 +1,697 @@
+package utils.osm;
+
+import service.GraphBuilder;
+import utils.GraphBuildingHandler;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.HighwayType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Importer for OSM PBF files, the protobuf encoded format OSM extracts are distributed in.
+ * <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">Documentation</a>
+ *
+ * The file is a sequence of independently compressed blobs. The reader first walks the blob
+ * headers to find the data blobs, then inflates and decodes the blobs on the common
+ * fork-join pool, each into its own GraphBuilder, and merges the builders in file order.
+ * Like the XML importers it reads in two phases: the ways first, then the nodes they use,
+ * where only the blobs that hold nodes are decoded again.
+ *
+ * Nodes, dense nodes, ways and relations are decoded with the same rules as the XML
+ * importers: ways must carry an allowed highway tag, node names are fed to the searcher,
+ * and relations are only kept as turn restrictions of a from way, a via node and a to way.
+ *
+ * The protobuf messages are decoded by hand so that the importer needs no generated code
+ * or protobuf runtime. Only zlib compressed and uncompressed blobs are supported.
+ */
+public class OsmPbfReader {
+    private static final String HEADER_BLOB = "OSMHeader";
+    private static final String DATA_BLOB = "OSMData";
+    private static final List<String> SUPPORTED_FEATURES =
+            Arrays.asList("OsmSchema-V0.6", "DenseNodes");
+
+    /* Limits from the format specification */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final byte[] NAME = "name".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HIGHWAY = "highway".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAX_SPEED = "maxspeed".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ONE_WAY = "oneway".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JUNCTION = "junction".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE = "type".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESTRICTION = "restriction".getBytes(StandardCharsets.US_ASCII);
+
+    /* Relation member types */
+    private static final int MEMBER_NODE = 0, MEMBER_WAY = 1;
+
+    /* Protobuf wire types */
+    private static final int VARINT = 0, FIXED64 = 1, LENGTH_DELIMITED = 2, FIXED32 = 5;
+
+    private OsmPbfReader() {
+    }
+
+    /**
+     * Returns whether a file looks like an OSM PBF file, which starts with the length of
+     * the first blob header followed by the header naming an OSMHeader blob.
+     * @param file the file
+     */
+    public static boolean isPbf(File file) throws IOException {
+        byte[] start = new byte[4 + 2 + HEADER_BLOB.length()];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < start.length) return false;
+            readFully(channel, 0, start);
+        }
+        byte[] type = HEADER_BLOB.getBytes(StandardCharsets.US_ASCII);
+        if (start[4] != 0x0A || start[5] != type.length) return false;
+        for (int i = 0; i < type.length; i++) {
+            if (start[6 + i] != type[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses an OSM PBF file, decoding its blobs in parallel.
+     * @param file the PBF file
+     * @return a parallel builder holding the contents of the file
+     * @throws IOException if the file cannot be read, is malformed, or requires features
+     * this reader does not support
+     */
+    public static GraphBuilder read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<long[]> dataBlobs = indexBlobs(channel);
+
+            /* First the ways, noting which blobs hold nodes, then the nodes of those blobs */
+            boolean[] hasNodes = new boolean[dataBlobs.size()];
+            GraphBuilder builder = GraphBuilder.merge(IntStream.range(0, dataBlobs.size())
+                    .parallel()
+                    .mapToObj(i -> {
+                        GraphBuilder part = new GraphBuilder();
+                        part.beginWayPhase();
+                        hasNodes[i] = decodeDataBlob(channel, dataBlobs.get(i), part, false);
+                        return part;
+                    })
+                    .collect(Collectors.toList()), true);
+            builder.beginNodePhase();
+            builder.appendNodes(IntStream.range(0, dataBlobs.size())
+                    .filter(i -> hasNodes[i])
+                    .parallel()
+                    .mapToObj(i -> {
+                        GraphBuilder part = builder.nodePhasePart();
+                        decodeDataBlob(channel, dataBlobs.get(i), part, true);
+                        return part;
+                    })
+                    .collect(Collectors.toList()));
+            return builder;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Walks the blob headers, checking the header blob on the way.
+     * @return the offset and size of every data blob, in file order
+     */
+    private static List<long[]> indexBlobs(FileChannel channel) throws IOException {
+        List<long[]> dataBlobs = new ArrayList<>();
+        long size = channel.size();
+        long pos = 0;
+        byte[] lengthBytes = new byte[4];
+        while (pos < size) {
+            readFully(channel, pos, lengthBytes);
+            int headerSize = ByteBuffer.wrap(lengthBytes).getInt();
+            if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+                throw new IOException("Bad blob header size " + headerSize + " at " + pos);
+            }
+            byte[] header = new byte[headerSize];
+            readFully(channel, pos + 4, header);
+
+            String type = null;
+            int dataSize = -1;
+            ProtoReader reader = new ProtoReader(header, 0, header.length);
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                if (tag == (1 << 3 | LENGTH_DELIMITED)) {
+                    type = reader.readString();
+                } else if (tag == (3 << 3 | VARINT)) {
+                    dataSize = (int) reader.readVarint();
+                } else {
+                    reader.skip(tag);
+                }
+            }
+            if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                throw new IOException("Bad blob header at " + pos);
+            }
+
+            long dataStart = pos + 4 + headerSize;
+            if (HEADER_BLOB.equals(type)) {
+                checkHeaderBlock(inflate(readBlob(channel, dataStart, dataSize)));
+            } else if (DATA_BLOB.equals(type)) {
+                dataBlobs.add(new long[] {dataStart, dataSize});
+            }
+            pos = dataStart + dataSize;
+        }
+        return dataBlobs;
+    }
+
+    /* Refuses files that need features a reader has to understand to read them correctly */
+    private static void checkHeaderBlock(byte[] block) throws IOException {
+        ProtoReader reader = new ProtoReader(block, 0, block.length);
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag == (4 << 3 | LENGTH_DELIMITED)) {
+                String feature = reader.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported PBF feature " + feature);
+                }
+            } else {
+                reader.skip(tag);
+            }
+        }
+    }
+
+    /**
+     * Decodes either the nodes or the ways of a data blob into part.
+     * @param blob the offset and size of the blob
+     * @return whether the blob holds nodes
+     */
+    private static boolean decodeDataBlob(FileChannel channel, long[] blob, GraphBuilder part,
+                                          boolean nodes) {
+        try {
+            BlockDecoder decoder = new BlockDecoder(inflate(readBlob(channel, blob[0],
+                    (int) blob[1])), part, nodes);
+            decoder.decode();
+            return decoder.hasNodes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readBlob(FileChannel channel, long offset, int size)
+            throws IOException {
+        byte[] blob = new byte[size];
+        readFully(channel, offset, blob);
+        return blob;
+    }
+
+    /* Returns the uncompressed contents of a Blob message */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(blob, 0, blob.length);
+        int rawSize = -1;
+        int dataStart = -1, dataEnd = -1;
+        boolean compressed = false;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            int field = tag >>> 3;
+            if (field == 1 || field == 3) {
+                dataEnd = reader.readLengthDelimited();
+                dataStart = reader.pos;
+                reader.pos = dataEnd;
+                compressed = field == 3;
+            } else if (field == 2) {
+                rawSize = (int) reader.readVarint();
+            } else if (field >= 4 && field <= 7) {
+                throw new IOException("Unsupported PBF blob compression (field " + field + ")");
+            } else {
+                reader.skip(tag);
+            }
+        }
+        if (dataStart < 0) throw new IOException("Empty PBF blob");
+        if (!compressed) return Arrays.copyOfRange(blob, dataStart, dataEnd);
+        if (rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("Bad PBF blob raw size " + rawSize);
+        }
+
+        byte[] raw = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, dataStart, dataEnd - dataStart);
+            int n = 0;
+            while (n < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, rawSize - n);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += inflated;
+            }
+            if (n != rawSize) throw new IOException("Truncated PBF blob");
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PBF blob", e);
+        } finally {
+            inflater.end();
+        }
+        return raw;
+    }
+
+    private static void readFully(FileChannel channel, long offset, byte[] bytes)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of PBF file");
+            }
+        }
+    }
+
+    /**
+     * Decodes the nodes, or the ways and relations, of one PrimitiveBlock into a builder.
+     * Strings in the block's string table are only turned into Java Strings when a tag value
+     * or role needs them.
+     */
+    private static class BlockDecoder {
+        private final byte[] block;
+        private final GraphBuilder builder;
+        private final boolean nodes;
+        private boolean hasNodes;
+
+        private int[] stringStarts = new int[0];
+        private int[] stringEnds = new int[0];
+        private String[] strings;
+        private int nameKey = -1;
+        private int highwayKey = -1;
+        private int maxSpeedKey = -1;
+        private int oneWayKey = -1;
+        private int junctionKey = -1;
+        private int typeKey = -1;
+        private int restrictionKey = -1;
+
+        private long granularity = 100;
+        private long latOffset;
+        private long lonOffset;
+
+        private long[] refs = new long[256];
+
+        BlockDecoder(byte[] block, GraphBuilder builder, boolean nodes) {
+            this.block = block;
+            this.builder = builder;
+            this.nodes = nodes;
+        }
+
+        void decode() throws IOException {
+            /* The groups can only be decoded once the string table and offsets are known */
+            List<int[]> groups = new ArrayList<>();
+            ProtoReader reader = new ProtoReader(block, 0, block.length);
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag) {
+                    case 1 << 3 | LENGTH_DELIMITED:
+                        int end = reader.readLengthDelimited();
+                        readStringTable(new ProtoReader(block, reader.pos, end));
+                        reader.pos = end;
+                        break;
+                    case 2 << 3 | LENGTH_DELIMITED:
+                        end = reader.readLengthDelimited();
+                        groups.add(new int[] {reader.pos, end});
+                        reader.pos = end;
+                        break;
+                    case 17 << 3 | VARINT:
+                        granularity = reader.readVarint();
+                        break;
+                    case 19 << 3 | VARINT:
+                        latOffset = reader.readVarint();
+                        break;
+                    case 20 << 3 | VARINT:
+                        lonOffset = reader.readVarint();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+            for (int[] group : groups) decodeGroup(new ProtoReader(block, group[0], group[1]));
+        }
+
+        private void readStringTable(ProtoReader reader) throws IOException {
+            List<int[]> ranges = new ArrayList<>();
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                if (tag == (1 << 3 | LENGTH_DELIMITED)) {
+                    int end = reader.readLengthDelimited();
+                    ranges.add(new int[] {reader.pos, end});
+                    reader.pos = end;
+                } else {
+                    reader.skip(tag);
+                }
+            }
+            stringStarts = new int[ranges.size()];
+            stringEnds = new int[ranges.size()];
+            strings = new String[ranges.size()];
+            for (int i = 0; i < ranges.size(); i++) {
+                stringStarts[i] = ranges.get(i)[0];
+                stringEnds[i] = ranges.get(i)[1];
+                if (is(i, NAME)) nameKey = i;
+                if (is(i, HIGHWAY)) highwayKey = i;
+                if (is(i, MAX_SPEED)) maxSpeedKey = i;
+                if (is(i, ONE_WAY)) oneWayKey = i;
+                if (is(i, JUNCTION)) junctionKey = i;
+                if (is(i, TYPE)) typeKey = i;
+                if (is(i, RESTRICTION)) restrictionKey = i;
+            }
+        }
+
+        private boolean is(int string, byte[] bytes) {
+            if (stringEnds[string] - stringStarts[string] != bytes.length) return false;
+            for (int i = 0; i < bytes.length; i++) {
+                if (block[stringStarts[string] + i] != bytes[i]) return false;
+            }
+            return true;
+        }
+
+        private String string(int i) throws IOException {
+            if (i < 0 || i >= strings.length) throw new IOException("Bad PBF string index " + i);
+            if (strings[i] == null) {
+                strings[i] = new String(block, stringStarts[i], stringEnds[i] - stringStarts[i],
+                        StandardCharsets.UTF_8);
+            }
+            return strings[i];
+        }
+
+        /* Converts a coordinate in granularity units to degrees, exactly like the XML value */
+        private double lat(long value) {
+            return (latOffset + granularity * value) / 1e9;
+        }
+
+        private double lon(long value) {
+            return (lonOffset + granularity * value) / 1e9;
+        }
+
+        private void decodeGroup(ProtoReader reader) throws IOException {
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                if ((tag & 7) != LENGTH_DELIMITED) {
+                    reader.skip(tag);
+                    continue;
+                }
+                int end = reader.readLengthDelimited();
+                ProtoReader message = new ProtoReader(block, reader.pos, end);
+                switch (tag >>> 3) {
+                    case 1:
+                        hasNodes = true;
+                        if (nodes) decodeNode(message);
+                        break;
+                    case 2:
+                        hasNodes = true;
+                        if (nodes) decodeDenseNodes(message);
+                        break;
+                    case 3:
+                        if (!nodes) decodeWay(message);
+                        break;
+                    case 4:
+                        if (!nodes) decodeRelation(message);
+                        break;
+                    default:
+                        /* Changesets are not part of the graph */
+                }
+                reader.pos = end;
+            }
+        }
+
+        private void decodeNode(ProtoReader reader) throws IOException {
+            long id = 0, lat = 0, lon = 0;
+            ProtoReader keys = null, values = null;
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag) {
+                    case 1 << 3 | VARINT:
+                        id = reader.readSignedVarint();
+                        break;
+                    case 2 << 3 | LENGTH_DELIMITED:
+                        keys = reader.readPacked();
+                        break;
+                    case 3 << 3 | LENGTH_DELIMITED:
+                        values = reader.readPacked();
+                        break;
+                    case 8 << 3 | VARINT:
+                        lat = reader.readSignedVarint();
+                        break;
+                    case 9 << 3 | VARINT:
+                        lon = reader.readSignedVarint();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+            builder.addNode(id, lon(lon), lat(lat));
+            while (keys != null && values != null && keys.hasMore() && values.hasMore()) {
+                int key = (int) keys.readVarint();
+                int value = (int) values.readVarint();
+                if (key == nameKey) builder.addNodeName(id, string(value));
+            }
+        }
+
+        private void decodeDenseNodes(ProtoReader reader) throws IOException {
+            ProtoReader ids = null, lats = null, lons = null, keysValues = null;
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag) {
+                    case 1 << 3 | LENGTH_DELIMITED:
+                        ids = reader.readPacked();
+                        break;
+                    case 8 << 3 | LENGTH_DELIMITED:
+                        lats = reader.readPacked();
+                        break;
+                    case 9 << 3 | LENGTH_DELIMITED:
+                        lons = reader.readPacked();
+                        break;
+                    case 10 << 3 | LENGTH_DELIMITED:
+                        keysValues = reader.readPacked();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+            if (ids == null || lats == null || lons == null) return;
+
+            /* Ids and coordinates are delta coded, tags are key value pairs ended by 0 */
+            long id = 0, lat = 0, lon = 0;
+            while (ids.hasMore()) {
+                id += ids.readSignedVarint();
+                lat += lats.readSignedVarint();
+                lon += lons.readSignedVarint();
+                builder.addNode(id, lon(lon), lat(lat));
+                while (keysValues != null && keysValues.hasMore()) {
+                    int key = (int) keysValues.readVarint();
+                    if (key == 0) break;
+                    int value = (int) keysValues.readVarint();
+                    if (key == nameKey) builder.addNodeName(id, string(value));
+                }
+            }
+        }
+
+        private void decodeWay(ProtoReader reader) throws IOException {
+            long id = 0;
+            ProtoReader keys = null, values = null, refReader = null;
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag) {
+                    case 1 << 3 | VARINT:
+                        id = reader.readVarint();
+                        break;
+                    case 2 << 3 | LENGTH_DELIMITED:
+                        keys = reader.readPacked();
+                        break;
+                    case 3 << 3 | LENGTH_DELIMITED:
+                        values = reader.readPacked();
+                        break;
+                    case 8 << 3 | LENGTH_DELIMITED:
+                        refReader = reader.readPacked();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+
+            boolean valid = false;
+            String name = null;
+            HighwayType type = null;
+            int maxSpeed = EdgeAttributes.NO_MAX_SPEED;
+            String oneWay = null;
+            boolean roundabout = false;
+            while (keys != null && values != null && keys.hasMore() && values.hasMore()) {
+                int key = (int) keys.readVarint();
+                int value = (int) values.readVarint();
+                if (key == highwayKey) {
+                    if (GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES.contains(string(value))) {
+                        valid = true;
+                        type = HighwayType.of(string(value));
+                    }
+                } else if (key == nameKey) {
+                    name = string(value);
+                } else if (key == maxSpeedKey) {
+                    maxSpeed = HighwayType.parseMaxSpeed(string(value));
+                } else if (key == oneWayKey) {
+                    oneWay = string(value);
+                } else if (key == junctionKey) {
+                    roundabout = string(value).equals("roundabout");
+                }
+            }
+            if (!valid) return;
+
+            int count = 0;
+            long ref = 0;
+            while (refReader != null && refReader.hasMore()) {
+                ref += refReader.readSignedVarint();
+                if (count == refs.length) refs = Arrays.copyOf(refs, count * 2);
+                refs[count++] = ref;
+            }
+            builder.addWay(id, name, type, maxSpeed, EdgeAttributes.oneWay(oneWay, roundabout),
+                    refs, count);
+        }
+
+        private void decodeRelation(ProtoReader reader) throws IOException {
+            ProtoReader keys = null, values = null, roles = null, memberIds = null, types = null;
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag) {
+                    case 2 << 3 | LENGTH_DELIMITED:
+                        keys = reader.readPacked();
+                        break;
+                    case 3 << 3 | LENGTH_DELIMITED:
+                        values = reader.readPacked();
+                        break;
+                    case 8 << 3 | LENGTH_DELIMITED:
+                        roles = reader.readPacked();
+                        break;
+                    case 9 << 3 | LENGTH_DELIMITED:
+                        memberIds = reader.readPacked();
+                        break;
+                    case 10 << 3 | LENGTH_DELIMITED:
+                        types = reader.readPacked();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+
+            boolean restrictionType = false;
+            String restriction = null;
+            while (keys != null && values != null && keys.hasMore() && values.hasMore()) {
+                int key = (int) keys.readVarint();
+                int value = (int) values.readVarint();
+                if (key == typeKey) restrictionType = string(value).equals("restriction");
+                else if (key == restrictionKey) restriction = string(value);
+            }
+            if (!restrictionType || restriction == null || roles == null || memberIds == null
+                    || types == null) {
+                return;
+            }
+            if (!restriction.startsWith("no_") && !restriction.startsWith("only_")) return;
+
+            /* Member ids are delta coded; only one from way, one via node and one to way
+             * count, members in other roles are ignored, and a via way rules it out */
+            long memberId = 0, fromWay = 0, viaNode = 0, toWay = 0;
+            int fromWays = 0, viaNodes = 0, toWays = 0;
+            boolean viaWay = false;
+            while (roles.hasMore() && memberIds.hasMore() && types.hasMore()) {
+                String role = string((int) roles.readVarint());
+                memberId += memberIds.readSignedVarint();
+                int type = (int) types.readVarint();
+                if (role.equals("from") && type == MEMBER_WAY) {
+                    fromWay = memberId;
+                    fromWays++;
+                } else if (role.equals("via") && type == MEMBER_NODE) {
+                    viaNode = memberId;
+                    viaNodes++;
+                } else if (role.equals("to") && type == MEMBER_WAY) {
+                    toWay = memberId;
+                    toWays++;
+                } else if (role.equals("via") && type == MEMBER_WAY) {
+                    viaWay = true;
+                }
+            }
+            if (!viaWay && fromWays == 1 && viaNodes == 1 && toWays == 1) {
+                builder.addRestriction(fromWay, viaNode, toWay, restriction.startsWith("only_"));
+            }
+        }
+    }
+
+    /* Reads protobuf wire format from a range of a byte array */
+    private static class ProtoReader {
+        private final byte[] bytes;
+        private int pos;
+        private final int limit;
+
+        ProtoReader(byte[] bytes, int pos, int limit) {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        boolean hasMore() {
+            return pos < limit;
+        }
+
+        int readTag() throws IOException {
+            return (int) readVarint();
+        }
+
+        long readVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit) throw new IOException("Truncated PBF varint");
+                byte b = bytes[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return result;
+            }
+            throw new IOException("Malformed PBF varint");
+        }
+
+        /* Reads a zigzag encoded sint32 or sint64 */
+        long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /* Reads the length of a length delimited field and returns where the field ends */
+        int readLengthDelimited() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > limit - pos) throw new IOException("Truncated PBF field");
+            return pos + (int) length;
+        }
+
+        String readString() throws IOException {
+            int end = readLengthDelimited();
+            String s = new String(bytes, pos, end - pos, StandardCharsets.UTF_8);
+            pos = end;
+            return s;
+        }
+
+        /* Returns a reader over a packed repeated field and skips past it */
+        ProtoReader readPacked() throws IOException {
+            int end = readLengthDelimited();
+            ProtoReader packed = new ProtoReader(bytes, pos, end);
+            pos = end;
+            return packed;
+        }
+
+        void skip(int tag) throws IOException {
+            switch (tag & 7) {
+                case VARINT:
+                    readVarint();
+                    break;
+                case FIXED64:
+                    pos += 8;
+                    break;
+                case LENGTH_DELIMITED:
+                    pos = readLengthDelimited();
+                    break;
+                case FIXED32:
+                    pos += 4;
+                    break;
+                default:
+                    throw new IOException("Unsupported PBF wire type " + (tag & 7));
+            }
+            if (pos > limit) throw new IOException("Truncated PBF field");
+        }
+    }
+}
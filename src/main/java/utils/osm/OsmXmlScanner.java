@@ -0,0 +1,510 @@
+package utils.osm;
+
+import service.GraphBuilder;
+import utils.GraphBuildingHandler;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.HighwayType;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming OSM XML importer that scans the raw bytes of the file instead of going through
+ * a SAX parser. Element and attribute names are compared as bytes and ids and coordinates
+ * are parsed straight out of the input buffer into the GraphBuilder, so the only Strings
+ * created are the names of ways and named nodes.
+ *
+ * This is not a general XML parser: it understands exactly the subset of XML that OSM
+ * files are written in (elements, attributes, comments, declarations and the predefined
+ * and numeric character references) and ignores text content.
+ */
+public class OsmXmlScanner {
+    private static final byte[] NODE = ascii("node");
+    private static final byte[] WAY = ascii("way");
+    private static final byte[] RELATION = ascii("relation");
+    private static final byte[] ND = ascii("nd");
+    private static final byte[] MEMBER = ascii("member");
+    private static final byte[] TAG = ascii("tag");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] LAT = ascii("lat");
+    private static final byte[] LON = ascii("lon");
+    private static final byte[] REF = ascii("ref");
+    private static final byte[] TYPE = ascii("type");
+    private static final byte[] ROLE = ascii("role");
+    private static final byte[] K = ascii("k");
+    private static final byte[] V = ascii("v");
+    private static final byte[] HIGHWAY = ascii("highway");
+    private static final byte[] NAME = ascii("name");
+    private static final byte[] MAX_SPEED = ascii("maxspeed");
+    private static final byte[] ONE_WAY = ascii("oneway");
+    private static final byte[] JUNCTION = ascii("junction");
+    private static final byte[] ROUNDABOUT = ascii("roundabout");
+    private static final byte[] RESTRICTION = ascii("restriction");
+    private static final byte[] FROM = ascii("from");
+    private static final byte[] VIA = ascii("via");
+    private static final byte[] TO = ascii("to");
+    private static final byte[][] ALLOWED_HIGHWAY_TYPES;
+
+    static {
+        ALLOWED_HIGHWAY_TYPES = new byte[GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES.size()][];
+        int i = 0;
+        for (String type : GraphBuildingHandler.ALLOWED_HIGHWAY_TYPES) {
+            ALLOWED_HIGHWAY_TYPES[i++] = ascii(type);
+        }
+    }
+
+    /* Powers of ten that are exactly representable as doubles */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    /* Which element the scanner is inside of */
+    private static final int OUTSIDE = 0, IN_NODE = 1, IN_WAY = 2, IN_RELATION = 3;
+
+    /* The id of a relation member that has not been seen */
+    private static final long NO_MEMBER = Long.MIN_VALUE;
+
+    private final GraphBuilder builder;
+
+    private InputStream in;
+    private final byte[] buf = new byte[1 << 16];
+    private int pos, limit;
+
+    /* Scratch buffers for the current element name, attribute name and attribute values */
+    private byte[] element = new byte[32];
+    private int elementLength;
+    private byte[] attribute = new byte[32];
+    private int attributeLength;
+    private byte[] value = new byte[256];
+    private int valueLength;
+    private byte[] tagKey = new byte[32];
+    private int tagKeyLength;
+    private byte[] tagValue = new byte[256];
+    private int tagValueLength;
+    private boolean hasTagValue;
+    private byte[] memberType = new byte[16];
+    private int memberTypeLength;
+    private byte[] memberRole = new byte[16];
+    private int memberRoleLength;
+
+    private int state = OUTSIDE;
+    private long id, ref;
+    private double lon, lat;
+    private long nodeId;
+    private long wayId;
+    private String wayName;
+    private boolean wayValid;
+    private HighwayType wayType;
+    private int wayMaxSpeed;
+    private String wayOneWay;
+    private boolean wayRoundabout;
+    private long[] wayRefs = new long[256];
+    private int wayRefCount;
+    private long fromWay, viaNode, toWay;
+    /* Number of from ways, via nodes and to ways of the relation, and whether it has a via
+     * way, which only restrictions through a via node do not */
+    private int fromWays, viaNodes, toWays;
+    private boolean viaWay;
+    private boolean restrictionType;
+    private String restriction;
+
+    /**
+     * Creates a scanner that feeds the given builder.
+     * @param builder the builder to push nodes and ways into
+     */
+    public OsmXmlScanner(GraphBuilder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Scans an OSM XML stream to its end. The stream is not closed.
+     * @param in the stream to read
+     * @throws IOException if the stream cannot be read or ends inside an element
+     */
+    public void scan(InputStream in) throws IOException {
+        this.in = in;
+        pos = limit = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') continue;
+            c = next();
+            if (c == '?') {
+                skipPast('?', '>');
+            } else if (c == '!') {
+                skipMarkup();
+            } else if (c == '/') {
+                c = readElementName(next());
+                while (c != '>') c = next();
+                endElement();
+            } else {
+                c = readElementName(c);
+                startElement(c);
+            }
+        }
+    }
+
+    /* Reads an element name starting with c, returns the first byte after the name */
+    private int readElementName(int c) throws IOException {
+        elementLength = 0;
+        while (c != '>' && c != '/' && !isSpace(c)) {
+            if (elementLength == element.length) element = Arrays.copyOf(element, elementLength * 2);
+            element[elementLength++] = (byte) c;
+            c = next();
+        }
+        return c;
+    }
+
+    private void startElement(int c) throws IOException {
+        hasTagValue = false;
+        tagKeyLength = 0;
+        memberTypeLength = memberRoleLength = 0;
+        boolean selfClosing = readAttributes(c);
+
+        if (is(element, elementLength, NODE)) {
+            builder.addNode(id, lon, lat);
+            nodeId = id;
+            state = selfClosing ? OUTSIDE : IN_NODE;
+        } else if (is(element, elementLength, WAY)) {
+            wayId = id;
+            wayName = null;
+            wayValid = false;
+            wayMaxSpeed = EdgeAttributes.NO_MAX_SPEED;
+            wayOneWay = null;
+            wayRoundabout = false;
+            wayRefCount = 0;
+            state = IN_WAY;
+            if (selfClosing) endWay();
+        } else if (state == IN_WAY && is(element, elementLength, ND)) {
+            if (wayRefCount == wayRefs.length) wayRefs = Arrays.copyOf(wayRefs, wayRefCount * 2);
+            wayRefs[wayRefCount++] = ref;
+        } else if (is(element, elementLength, RELATION)) {
+            fromWay = viaNode = toWay = NO_MEMBER;
+            fromWays = viaNodes = toWays = 0;
+            viaWay = false;
+            restrictionType = false;
+            restriction = null;
+            state = IN_RELATION;
+            if (selfClosing) endRelation();
+        } else if (state == IN_RELATION && is(element, elementLength, MEMBER)) {
+            boolean way = is(memberType, memberTypeLength, WAY);
+            boolean node = is(memberType, memberTypeLength, NODE);
+            boolean via = is(memberRole, memberRoleLength, VIA);
+            if (way && is(memberRole, memberRoleLength, FROM)) {
+                fromWay = ref;
+                fromWays++;
+            } else if (node && via) {
+                viaNode = ref;
+                viaNodes++;
+            } else if (way && is(memberRole, memberRoleLength, TO)) {
+                toWay = ref;
+                toWays++;
+            } else if (way && via) {
+                viaWay = true;
+            }
+        } else if (is(element, elementLength, TAG) && hasTagValue) {
+            if (state == IN_WAY) {
+                if (is(tagKey, tagKeyLength, HIGHWAY)) {
+                    if (isAllowedHighway()) {
+                        wayValid = true;
+                        wayType = HighwayType.of(decode(tagValue, tagValueLength));
+                    }
+                } else if (is(tagKey, tagKeyLength, NAME)) {
+                    wayName = decode(tagValue, tagValueLength);
+                } else if (is(tagKey, tagKeyLength, MAX_SPEED)) {
+                    wayMaxSpeed = HighwayType.parseMaxSpeed(decode(tagValue, tagValueLength));
+                } else if (is(tagKey, tagKeyLength, ONE_WAY)) {
+                    wayOneWay = decode(tagValue, tagValueLength);
+                } else if (is(tagKey, tagKeyLength, JUNCTION)) {
+                    wayRoundabout = is(tagValue, tagValueLength, ROUNDABOUT);
+                }
+            } else if (state == IN_RELATION) {
+                if (is(tagKey, tagKeyLength, TYPE)) {
+                    restrictionType = is(tagValue, tagValueLength, RESTRICTION);
+                } else if (is(tagKey, tagKeyLength, RESTRICTION)) {
+                    restriction = decode(tagValue, tagValueLength);
+                }
+            } else if (state == IN_NODE && is(tagKey, tagKeyLength, NAME)) {
+                builder.addNodeName(nodeId, decode(tagValue, tagValueLength));
+            }
+        } else if (!is(element, elementLength, TAG)) {
+            /* Anything else ends node, way and relation context */
+            state = OUTSIDE;
+        }
+    }
+
+    private void endElement() {
+        if (is(element, elementLength, WAY)) {
+            endWay();
+        } else if (is(element, elementLength, RELATION)) {
+            endRelation();
+        } else if (is(element, elementLength, NODE)) {
+            state = OUTSIDE;
+        }
+    }
+
+    private void endWay() {
+        if (state == IN_WAY && wayValid) {
+            builder.addWay(wayId, wayName, wayType, wayMaxSpeed,
+                    EdgeAttributes.oneWay(wayOneWay, wayRoundabout), wayRefs, wayRefCount);
+        }
+        state = OUTSIDE;
+        wayRefCount = 0;
+    }
+
+    /* Adds the relation as a turn restriction if it is one of a from way, a via node and a
+     * to way; members in any other role, such as a location_hint, are ignored */
+    private void endRelation() {
+        if (state == IN_RELATION && restrictionType && restriction != null && !viaWay
+                && fromWays == 1 && viaNodes == 1 && toWays == 1
+                && (restriction.startsWith("no_") || restriction.startsWith("only_"))) {
+            builder.addRestriction(fromWay, viaNode, toWay, restriction.startsWith("only_"));
+        }
+        state = OUTSIDE;
+    }
+
+    /**
+     * Reads the attributes of the current element and stores the ones the importer needs.
+     * @param c the first byte after the element name
+     * @return true if the element is self-closing
+     */
+    private boolean readAttributes(int c) throws IOException {
+        while (true) {
+            while (isSpace(c)) c = next();
+            if (c == '>') return false;
+            if (c == '/') {
+                while (c != '>') c = next();
+                return true;
+            }
+
+            attributeLength = 0;
+            while (c != '=' && !isSpace(c)) {
+                if (attributeLength == attribute.length) {
+                    attribute = Arrays.copyOf(attribute, attributeLength * 2);
+                }
+                attribute[attributeLength++] = (byte) c;
+                c = next();
+            }
+            while (c != '=') c = next();
+            c = next();
+            while (isSpace(c)) c = next();
+
+            int quote = c;
+            valueLength = 0;
+            while ((c = next()) != quote) {
+                if (valueLength == value.length) value = Arrays.copyOf(value, valueLength * 2);
+                value[valueLength++] = (byte) c;
+            }
+            attribute();
+            c = next();
+        }
+    }
+
+    /* Stores the value of the attribute that was just read, if it is one of interest */
+    private void attribute() {
+        if (is(attribute, attributeLength, ID)) {
+            id = parseLong(value, valueLength);
+        } else if (is(attribute, attributeLength, LAT)) {
+            lat = parseDouble(value, valueLength);
+        } else if (is(attribute, attributeLength, LON)) {
+            lon = parseDouble(value, valueLength);
+        } else if (is(attribute, attributeLength, REF)) {
+            ref = parseLong(value, valueLength);
+        } else if (is(attribute, attributeLength, TYPE)) {
+            if (memberType.length < valueLength) memberType = new byte[valueLength];
+            System.arraycopy(value, 0, memberType, 0, valueLength);
+            memberTypeLength = valueLength;
+        } else if (is(attribute, attributeLength, ROLE)) {
+            if (memberRole.length < valueLength) memberRole = new byte[valueLength];
+            System.arraycopy(value, 0, memberRole, 0, valueLength);
+            memberRoleLength = valueLength;
+        } else if (is(attribute, attributeLength, K)) {
+            if (tagKey.length < valueLength) tagKey = new byte[valueLength];
+            System.arraycopy(value, 0, tagKey, 0, valueLength);
+            tagKeyLength = valueLength;
+        } else if (is(attribute, attributeLength, V)) {
+            if (tagValue.length < valueLength) tagValue = new byte[valueLength];
+            System.arraycopy(value, 0, tagValue, 0, valueLength);
+            tagValueLength = valueLength;
+            hasTagValue = true;
+        }
+    }
+
+    private boolean isAllowedHighway() {
+        for (byte[] type : ALLOWED_HIGHWAY_TYPES) {
+            if (is(tagValue, tagValueLength, type)) return true;
+        }
+        return false;
+    }
+
+    /* Skips a comment, CDATA section or declaration that starts with "<!" */
+    private void skipMarkup() throws IOException {
+        int c = next();
+        if (c == '-') {
+            next();
+            int dashes = 0;
+            while (true) {
+                c = next();
+                if (c == '>' && dashes >= 2) return;
+                dashes = c == '-' ? dashes + 1 : 0;
+            }
+        }
+        int depth = 1;
+        while (depth > 0) {
+            c = next();
+            if (c == '<') depth++;
+            else if (c == '>') depth--;
+        }
+    }
+
+    private void skipPast(int first, int second) throws IOException {
+        int prev = 0, c;
+        while (!((c = next()) == second && prev == first)) prev = c;
+    }
+
+    /* Returns the next byte, or -1 at the end of the stream */
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    /* Returns the next byte, the stream must not end inside markup */
+    private int next() throws IOException {
+        int c = read();
+        if (c == -1) throw new EOFException("OSM XML ends inside an element");
+        return c;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r';
+    }
+
+    private static boolean is(byte[] a, int length, byte[] b) {
+        if (length != b.length) return false;
+        for (int i = 0; i < length; i++) if (a[i] != b[i]) return false;
+        return true;
+    }
+
+    private static long parseLong(byte[] s, int length) {
+        int i = 0;
+        boolean negative = length > 0 && s[0] == '-';
+        if (negative) i++;
+        long result = 0;
+        for (; i < length; i++) {
+            int d = s[i] - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException(new String(s, 0, length,
+                    StandardCharsets.US_ASCII));
+            result = result * 10 + d;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a decimal coordinate. Values of the form [-]digits[.digits] with at most 15
+     * significant digits are computed as an exact integer divided by an exact power of ten,
+     * which IEEE division rounds correctly, so the result equals Double.parseDouble.
+     * Anything else is handed to Double.parseDouble.
+     */
+    private static double parseDouble(byte[] s, int length) {
+        int i = 0;
+        boolean negative = length > 0 && s[0] == '-';
+        if (negative) i++;
+        long mantissa = 0;
+        int digits = 0, decimals = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            int c = s[i];
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) digits++;
+                if (point) decimals++;
+            } else {
+                digits = Integer.MAX_VALUE;
+                break;
+            }
+        }
+        if (digits > 15 || decimals >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(new String(s, 0, length, StandardCharsets.US_ASCII));
+        }
+        double result = mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -result : result;
+    }
+
+    /* Decodes an attribute value: UTF-8, character references and whitespace normalisation */
+    private static String decode(byte[] s, int length) {
+        boolean plain = true;
+        for (int i = 0; i < length && plain; i++) {
+            plain = s[i] != '&' && s[i] != '\n' && s[i] != '\t' && s[i] != '\r';
+        }
+        if (plain) return new String(s, 0, length, StandardCharsets.UTF_8);
+
+        byte[] out = new byte[length];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            byte c = s[i];
+            if (c == '\r') {
+                if (i + 1 < length && s[i + 1] == '\n') i++;
+                out[n++] = ' ';
+            } else if (c == '\n' || c == '\t') {
+                out[n++] = ' ';
+            } else if (c == '&') {
+                int end = i + 1;
+                while (end < length && s[end] != ';') end++;
+                byte[] replacement = end == length ? null
+                        : entity(new String(s, i + 1, end - i - 1, StandardCharsets.US_ASCII));
+                if (replacement == null) {
+                    /* An unknown entity, or a stray ampersand, is kept as it is written */
+                    out[n++] = c;
+                    continue;
+                }
+                System.arraycopy(replacement, 0, out, n, replacement.length);
+                n += replacement.length;
+                i = end;
+            } else {
+                out[n++] = c;
+            }
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /* The UTF-8 bytes an entity or character reference stands for, which are never more than
+     * its own, null if it is neither one of the five XML entities nor a valid reference */
+    private static byte[] entity(String entity) {
+        switch (entity) {
+            case "amp": return ascii("&");
+            case "lt": return ascii("<");
+            case "gt": return ascii(">");
+            case "quot": return ascii("\"");
+            case "apos": return ascii("'");
+            default:
+                if (!entity.startsWith("#")) return null;
+                try {
+                    int codePoint = entity.startsWith("#x")
+                            ? Integer.parseInt(entity.substring(2), 16)
+                            : Integer.parseInt(entity.substring(1));
+                    return new String(Character.toChars(codePoint))
+                            .getBytes(StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,161 @@
+package utils.osm;
+
+import service.GraphBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Imports an OSM XML file on all cores. The file is split into chunks that each start at a
+ * top level node, way or relation element, every chunk is memory mapped and scanned by its
+ * own OsmXmlScanner into its own GraphBuilder on the common fork-join pool, and the chunk
+ * builders are merged in file order into one parallel builder. The chunks are scanned
+ * twice, first for the ways and then for the nodes those ways use.
+ *
+ * Splitting relies on '<' only ever starting markup in OSM XML, which holds because the
+ * character is escaped in attribute values and OSM files have no text content.
+ */
+public class ParallelOsmImporter {
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+    private static final int WINDOW_SIZE = 1 << 16;
+
+    private static final byte[][] TOP_LEVEL_ELEMENTS = {
+        "node".getBytes(StandardCharsets.US_ASCII),
+        "way".getBytes(StandardCharsets.US_ASCII),
+        "relation".getBytes(StandardCharsets.US_ASCII)
+    };
+
+    /* Bytes needed after a '<' to recognize a top level element: "relation" and a delimiter */
+    private static final int LOOKAHEAD = 9;
+
+    private ParallelOsmImporter() {
+    }
+
+    /**
+     * Parses an OSM XML file in parallel.
+     * @param file the OSM XML file
+     * @return a parallel builder holding the contents of the file
+     */
+    public static GraphBuilder read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Long> bounds = chunkBounds(channel);
+            GraphBuilder builder = GraphBuilder.merge(scanChunks(channel, bounds, () -> {
+                GraphBuilder part = new GraphBuilder();
+                part.beginWayPhase();
+                return part;
+            }), true);
+            builder.beginNodePhase();
+            builder.appendNodes(scanChunks(channel, bounds, builder::nodePhasePart));
+            return builder;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /* Returns the offsets the chunks start at, followed by the size of the file */
+    private static List<Long> chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkSize = size / (ForkJoinPool.getCommonPoolParallelism() * 4L);
+        chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        long start = 0;
+        while (start + chunkSize < size) {
+            start = nextElementStart(channel, start + chunkSize);
+            if (start >= size) break;
+            bounds.add(start);
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+    /* Returns the offset of the first top level element at or after from, or the file size */
+    private static long nextElementStart(FileChannel channel, long from) throws IOException {
+        long size = channel.size();
+        ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+        for (long base = from; base < size; base += WINDOW_SIZE - LOOKAHEAD) {
+            window.clear();
+            while (window.hasRemaining() && channel.read(window, base + window.position()) >= 0) {
+                if (base + window.position() >= size) break;
+            }
+            int limit = window.position();
+            boolean last = base + limit >= size;
+            int end = last ? limit : limit - LOOKAHEAD;
+            for (int i = 0; i < end; i++) {
+                if (window.get(i) == '<' && isTopLevelElement(window, i + 1, limit)) return base + i;
+            }
+            if (last) break;
+        }
+        return size;
+    }
+
+    /* Whether the bytes at pos name a node, way or relation element */
+    private static boolean isTopLevelElement(ByteBuffer window, int pos, int limit) {
+        for (byte[] name : TOP_LEVEL_ELEMENTS) {
+            if (pos + name.length >= limit) continue;
+            boolean match = true;
+            for (int i = 0; i < name.length && match; i++) match = window.get(pos + i) == name[i];
+            if (!match) continue;
+            byte c = window.get(pos + name.length);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '/' || c == '>') return true;
+        }
+        return false;
+    }
+
+    /* Scans every chunk into its own builder created by parts, in parallel */
+    private static List<GraphBuilder> scanChunks(FileChannel channel, List<Long> bounds,
+                                                 Supplier<GraphBuilder> parts) {
+        return IntStream.range(0, bounds.size() - 1).parallel()
+                .mapToObj(i -> scanChunk(channel, bounds.get(i), bounds.get(i + 1), parts.get()))
+                .collect(Collectors.toList());
+    }
+
+    /* Scans the bytes [start, end) of the file into part */
+    private static GraphBuilder scanChunk(FileChannel channel, long start, long end,
+                                          GraphBuilder part) {
+        try {
+            ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            new OsmXmlScanner(part).scan(new ByteBufferInputStream(chunk));
+            return part;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /* Reads a mapped chunk of the file without copying it through a FileInputStream */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+    }
+}
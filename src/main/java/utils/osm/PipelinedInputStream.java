@@ -0,0 +1,129 @@
+package utils.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a source stream on a background thread and hands its bytes to the reader through a
+ * bounded queue of blocks, so that an expensive source (a decompressor) and the consumer
+ * (the parser) run at the same time. The reader never waits for more than one block, and
+ * the producer never gets more than a fixed number of blocks ahead.
+ *
+ * Blocks are recycled between the two threads, so a steady state read does not allocate.
+ * An exception thrown by the source is rethrown to the reader once it has consumed the
+ * blocks queued before the failure.
+ */
+public class PipelinedInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BLOCKS_IN_FLIGHT = 16;
+
+    /* A filled block; length -1 marks the end of the source */
+    private static class Block {
+        private final byte[] bytes = new byte[BLOCK_SIZE];
+        private int length;
+    }
+
+    private final InputStream source;
+    private final BlockingQueue<Block> filled = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT + 1);
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(BLOCKS_IN_FLIGHT);
+    private final Thread producer;
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private Block current;
+    private int pos;
+
+    /**
+     * Starts reading source on a new daemon thread.
+     * @param source the stream to read ahead of the caller, closed when this stream is
+     * @param name the name of the reading thread
+     */
+    public PipelinedInputStream(InputStream source, String name) {
+        this.source = source;
+        for (int i = 0; i < BLOCKS_IN_FLIGHT; i++) free.add(new Block());
+        producer = new Thread(this::produce, name);
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce() {
+        try {
+            while (!closed) {
+                Block block = free.take();
+                int n = fill(block.bytes);
+                block.length = n == 0 ? -1 : n;
+                filled.put(block);
+                if (n == 0) return;
+            }
+        } catch (IOException e) {
+            failure = e;
+            endOfSource();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+            endOfSource();
+        }
+    }
+
+    /* Fills bytes from the source as far as possible, returns 0 at the end of the source */
+    private int fill(byte[] bytes) throws IOException {
+        int n = 0;
+        while (n < bytes.length) {
+            int read = source.read(bytes, n, bytes.length - n);
+            if (read < 0) break;
+            n += read;
+        }
+        return n;
+    }
+
+    /* Queues the end marker, there is always room for it next to the blocks in flight */
+    private void endOfSource() {
+        Block end = new Block();
+        end.length = -1;
+        filled.offer(end);
+    }
+
+    /* Makes current a block with unread bytes, returns false at the end of the source */
+    private boolean nextBlock() throws IOException {
+        if (current != null && pos < current.length) return true;
+        if (current != null && current.length < 0) return false;
+        if (current != null) free.offer(current);
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        pos = 0;
+        if (current.length >= 0) return true;
+        if (failure != null) throw failure;
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) return -1;
+        return current.bytes[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!nextBlock()) return -1;
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.bytes, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        producer.interrupt();
+        source.close();
+    }
+}
@@ -0,0 +1,24 @@
+import service.GraphDB;
+import service.ImportStats;
+import utils.Constants;
+
+/**
+ * Compares the import pipelines on the same OSM file, reporting parse throughput and the
+ * bytes allocated per parsed node. Not run as part of the test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="ImportBenchmark"
+ * and optionally pass an OSM file path and a number of rounds as arguments.
+ */
+public class ImportBenchmark {
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        for (GraphDB.Importer importer : GraphDB.Importer.values()) {
+            /* The first rounds only warm up the JIT */
+            for (int i = 0; i < rounds; i++) {
+                ImportStats stats = new GraphDB(dbPath, importer).getImportStats();
+                if (i >= rounds / 2) System.out.println(importer + ": " + stats);
+            }
+        }
+    }
+}
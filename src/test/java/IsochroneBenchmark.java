@@ -0,0 +1,54 @@
+import service.GraphDB;
+import service.Isochrone;
+import service.IsochroneSearch;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.util.Random;
+
+/**
+ * Times isochrones around random nodes for growing distances, up to one that takes in the
+ * whole graph, reporting the nodes they reach and the cells of their outline. Not run as
+ * part of the test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="IsochroneBenchmark"
+ * and optionally pass an OSM file path and a number of isochrones per distance as arguments.
+ */
+public class IsochroneBenchmark {
+    private static final double[] MILES = {0.5, 1, 2, 5, 1000};
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        GraphDB db = GraphDB.load(dbPath, Constants.OSM_IMPORTER);
+        CompactGraph g = db.getCompactGraph();
+
+        boolean[] largest = g.largestComponent();
+        Random random = new Random(1);
+        int[] origins = new int[count];
+        for (int i = 0; i < count; i++) {
+            do {
+                origins[i] = random.nextInt(g.size());
+            } while (!largest[origins[i]]);
+        }
+
+        /* The first round warms up the JIT and builds the lazily built indexes */
+        for (int round = 0; round < 2; round++) {
+            for (double miles : MILES) {
+                long nodes = 0, cells = 0;
+                long start = System.nanoTime();
+                for (int v : origins) {
+                    Isochrone isochrone = IsochroneSearch.isochrone(db, g.lon(v), g.lat(v), miles);
+                    nodes += isochrone.nodes.length;
+                }
+                double millis = (System.nanoTime() - start) / 1e6 / count;
+                for (int v : origins) {
+                    cells += IsochroneSearch.isochrone(db, g.lon(v), g.lat(v), miles).cells().size();
+                }
+                if (round > 0) {
+                    System.out.printf("%7.1f miles %8d nodes %6d cells %8.2f ms%n", miles,
+                            nodes / count, cells / count, millis);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import service.GraphDB;
+import service.Router;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.util.Random;
+
+/**
+ * Compares A* with the great circle heuristic to ALT, A* with landmark bounds, by the
+ * vertices they expand and the time they take on routes between random nodes of the largest
+ * connected component, searched on the graph, on the contracted graph and between snapped
+ * points. Also reports how long picking the landmarks takes. Not run as part of the test
+ * suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="LandmarkBenchmark"
+ * and optionally pass an OSM file path and a number of routes as arguments.
+ */
+public class LandmarkBenchmark {
+    private static final Router.Search[] SEARCHES = {Router.Search.ASTAR, Router.Search.ALT};
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int routes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        GraphDB db = GraphDB.load(dbPath, Constants.OSM_IMPORTER);
+        CompactGraph g = db.getCompactGraph();
+
+        long start = System.nanoTime();
+        db.getLandmarks();
+        System.out.printf("%d landmarks picked in %.1f ms%n", Constants.LANDMARK_COUNT,
+                (System.nanoTime() - start) / 1e6);
+
+        boolean[] largest = g.largestComponent();
+        Random random = new Random(1);
+        double[][] queries = new double[routes][];
+        for (int i = 0; i < routes; i++) {
+            int s, t;
+            do {
+                s = random.nextInt(g.size());
+                t = random.nextInt(g.size());
+            } while (!largest[s] || !largest[t]);
+            queries[i] = new double[] {g.lon(s), g.lat(s), g.lon(t), g.lat(t)};
+        }
+
+        /* The first round warms up the JIT and builds the lazily built indexes */
+        for (int round = 0; round < 2; round++) {
+            for (String mode : new String[] {"graph", "contracted", "snapped"}) {
+                for (Router.Search search : SEARCHES) {
+                    run(db, queries, mode, search, round > 0);
+                }
+            }
+        }
+    }
+
+    /* Searches every query once, printing the mean expansions and time if asked to */
+    private static void run(GraphDB db, double[][] queries, String mode, Router.Search search,
+                            boolean print) {
+        long expanded = 0;
+        long start = System.nanoTime();
+        for (double[] q : queries) {
+            if (mode.equals("snapped")) {
+                Router.snappedPath(db, q[0], q[1], q[2], q[3], search);
+            } else {
+                Router.shortestPath(db, q[0], q[1], q[2], q[3], mode.equals("contracted"),
+                        search);
+            }
+            expanded += Router.expandedVertices();
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / queries.length;
+        if (print) {
+            System.out.printf("%-10s %-6s %8d expanded %8.3f ms%n", mode, search,
+                    expanded / queries.length, millis);
+        }
+    }
+}
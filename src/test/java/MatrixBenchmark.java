@@ -0,0 +1,54 @@
+import service.DistanceMatrix;
+import service.GraphDB;
+import service.Router;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.util.Random;
+
+/**
+ * Compares a distance matrix between random nodes of the largest connected component with
+ * searching the route between every source and target one at a time. Not run as part of the
+ * test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="MatrixBenchmark"
+ * and optionally pass an OSM file path and the number of sources and targets as arguments.
+ */
+public class MatrixBenchmark {
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        GraphDB db = GraphDB.load(dbPath, Constants.OSM_IMPORTER);
+        CompactGraph g = db.getCompactGraph();
+
+        boolean[] largest = g.largestComponent();
+        Random random = new Random(1);
+        double[][] sources = new double[size][];
+        double[][] targets = new double[size][];
+        for (double[][] points : new double[][][] {sources, targets}) {
+            for (int i = 0; i < size; i++) {
+                int v;
+                do {
+                    v = random.nextInt(g.size());
+                } while (!largest[v]);
+                points[i] = new double[] {g.lon(v), g.lat(v)};
+            }
+        }
+
+        /* The first round warms up the JIT and builds the lazily built indexes */
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            DistanceMatrix.distanceMatrix(db, sources, targets);
+            double matrixMillis = (System.nanoTime() - start) / 1e6;
+
+            start = System.nanoTime();
+            for (double[] s : sources) {
+                for (double[] t : targets) Router.snappedPath(db, s[0], s[1], t[0], t[1]);
+            }
+            double routesMillis = (System.nanoTime() - start) / 1e6;
+            if (round > 0) {
+                System.out.printf("%dx%d matrix: %8.1f ms%n", size, size, matrixMillis);
+                System.out.printf("%d routes:   %8.1f ms%n", size * size, routesMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Converts an OSM XML file to OSM PBF, so that the PBF importer can be tested and benchmarked
+ * against the XML importers on the same data. Nodes are written as dense nodes, ways and
+ * relations with their tags and relations with their members. Blocks hold up to BLOCK_SIZE
+ * entities.
+ */
+public class OsmPbfWriter {
+    private static final int BLOCK_SIZE = 8000;
+
+    private static class Entity {
+        long id;
+        long lat, lon;
+        List<Long> refs = new ArrayList<>();
+        /* The types and roles of the members of a relation, whose ids are in refs */
+        List<String> memberTypes = new ArrayList<>();
+        List<String> roles = new ArrayList<>();
+        Map<String, String> tags = new LinkedHashMap<>();
+    }
+
+    /**
+     * Converts xml to PBF.
+     * @param xml the OSM XML file
+     * @param pbf the PBF file to write
+     */
+    public static void convert(File xml, File pbf) throws Exception {
+        List<Entity> nodes = new ArrayList<>();
+        List<Entity> ways = new ArrayList<>();
+        List<Entity> relations = new ArrayList<>();
+        SAXParserFactory.newInstance().newSAXParser().parse(xml, new DefaultHandler() {
+            private Entity current;
+
+            @Override
+            public void startElement(String uri, String localName, String qName,
+                                     Attributes attributes) {
+                if (qName.equals("node")) {
+                    current = new Entity();
+                    current.id = Long.parseLong(attributes.getValue("id"));
+                    current.lat = nanos(attributes.getValue("lat"));
+                    current.lon = nanos(attributes.getValue("lon"));
+                    nodes.add(current);
+                } else if (qName.equals("way")) {
+                    current = new Entity();
+                    current.id = Long.parseLong(attributes.getValue("id"));
+                    ways.add(current);
+                } else if (qName.equals("relation")) {
+                    current = new Entity();
+                    current.id = Long.parseLong(attributes.getValue("id"));
+                    relations.add(current);
+                } else if (qName.equals("member") && current != null) {
+                    current.refs.add(Long.parseLong(attributes.getValue("ref")));
+                    current.memberTypes.add(attributes.getValue("type"));
+                    current.roles.add(attributes.getValue("role"));
+                } else if (qName.equals("nd") && current != null) {
+                    current.refs.add(Long.parseLong(attributes.getValue("ref")));
+                } else if (qName.equals("tag") && current != null) {
+                    current.tags.put(attributes.getValue("k"), attributes.getValue("v"));
+                } else if (!qName.equals("tag")) {
+                    current = null;
+                }
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(pbf))) {
+            ProtoWriter header = new ProtoWriter();
+            header.string(4, "OsmSchema-V0.6");
+            header.string(4, "DenseNodes");
+            writeBlob(out, "OSMHeader", header.toByteArray());
+            for (int i = 0; i < nodes.size(); i += BLOCK_SIZE) {
+                writeBlob(out, "OSMData",
+                        denseBlock(nodes.subList(i, Math.min(nodes.size(), i + BLOCK_SIZE))));
+            }
+            for (int i = 0; i < ways.size(); i += BLOCK_SIZE) {
+                writeBlob(out, "OSMData",
+                        wayBlock(ways.subList(i, Math.min(ways.size(), i + BLOCK_SIZE))));
+            }
+            for (int i = 0; i < relations.size(); i += BLOCK_SIZE) {
+                writeBlob(out, "OSMData", relationBlock(
+                        relations.subList(i, Math.min(relations.size(), i + BLOCK_SIZE))));
+            }
+        }
+    }
+
+    private static long nanos(String degrees) {
+        return new BigDecimal(degrees).movePointRight(9).longValueExact();
+    }
+
+    private static byte[] denseBlock(List<Entity> nodes) throws IOException {
+        long granularity = 100;
+        for (Entity node : nodes) {
+            if (node.lat % 100 != 0 || node.lon % 100 != 0) granularity = 1;
+        }
+        StringTable strings = new StringTable();
+        ProtoWriter ids = new ProtoWriter(), lats = new ProtoWriter(), lons = new ProtoWriter();
+        ProtoWriter keysValues = new ProtoWriter();
+        long id = 0, lat = 0, lon = 0;
+        for (Entity node : nodes) {
+            ids.signedVarint(node.id - id);
+            lats.signedVarint(node.lat / granularity - lat);
+            lons.signedVarint(node.lon / granularity - lon);
+            id = node.id;
+            lat = node.lat / granularity;
+            lon = node.lon / granularity;
+            for (Map.Entry<String, String> tag : node.tags.entrySet()) {
+                keysValues.varint(strings.index(tag.getKey()));
+                keysValues.varint(strings.index(tag.getValue()));
+            }
+            keysValues.varint(0);
+        }
+        ProtoWriter dense = new ProtoWriter();
+        dense.bytes(1, ids.toByteArray());
+        dense.bytes(8, lats.toByteArray());
+        dense.bytes(9, lons.toByteArray());
+        dense.bytes(10, keysValues.toByteArray());
+        ProtoWriter group = new ProtoWriter();
+        group.bytes(2, dense.toByteArray());
+        return block(strings, group, granularity);
+    }
+
+    private static byte[] wayBlock(List<Entity> ways) throws IOException {
+        StringTable strings = new StringTable();
+        ProtoWriter group = new ProtoWriter();
+        for (Entity way : ways) {
+            ProtoWriter keys = new ProtoWriter(), values = new ProtoWriter();
+            for (Map.Entry<String, String> tag : way.tags.entrySet()) {
+                keys.varint(strings.index(tag.getKey()));
+                values.varint(strings.index(tag.getValue()));
+            }
+            ProtoWriter refs = new ProtoWriter();
+            long ref = 0;
+            for (long r : way.refs) {
+                refs.signedVarint(r - ref);
+                ref = r;
+            }
+            ProtoWriter message = new ProtoWriter();
+            message.tag(1, 0);
+            message.varint(way.id);
+            message.bytes(2, keys.toByteArray());
+            message.bytes(3, values.toByteArray());
+            message.bytes(8, refs.toByteArray());
+            group.bytes(3, message.toByteArray());
+        }
+        return block(strings, group, 100);
+    }
+
+    private static byte[] relationBlock(List<Entity> relations) throws IOException {
+        StringTable strings = new StringTable();
+        ProtoWriter group = new ProtoWriter();
+        for (Entity relation : relations) {
+            ProtoWriter keys = new ProtoWriter(), values = new ProtoWriter();
+            for (Map.Entry<String, String> tag : relation.tags.entrySet()) {
+                keys.varint(strings.index(tag.getKey()));
+                values.varint(strings.index(tag.getValue()));
+            }
+            ProtoWriter roles = new ProtoWriter(), ids = new ProtoWriter();
+            ProtoWriter types = new ProtoWriter();
+            long ref = 0;
+            for (int i = 0; i < relation.refs.size(); i++) {
+                roles.varint(strings.index(relation.roles.get(i)));
+                ids.signedVarint(relation.refs.get(i) - ref);
+                ref = relation.refs.get(i);
+                String type = relation.memberTypes.get(i);
+                types.varint(type.equals("node") ? 0 : type.equals("way") ? 1 : 2);
+            }
+            ProtoWriter message = new ProtoWriter();
+            message.tag(1, 0);
+            message.varint(relation.id);
+            message.bytes(2, keys.toByteArray());
+            message.bytes(3, values.toByteArray());
+            message.bytes(8, roles.toByteArray());
+            message.bytes(9, ids.toByteArray());
+            message.bytes(10, types.toByteArray());
+            group.bytes(4, message.toByteArray());
+        }
+        return block(strings, group, 100);
+    }
+
+    private static byte[] block(StringTable strings, ProtoWriter group, long granularity)
+            throws IOException {
+        ProtoWriter table = new ProtoWriter();
+        for (String s : strings.strings) table.string(1, s);
+        ProtoWriter block = new ProtoWriter();
+        block.bytes(1, table.toByteArray());
+        block.bytes(2, group.toByteArray());
+        block.tag(17, 0);
+        block.varint(granularity);
+        return block.toByteArray();
+    }
+
+    private static void writeBlob(DataOutputStream out, String type, byte[] data)
+            throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream deflater = new DeflaterOutputStream(compressed,
+                new Deflater(Deflater.DEFAULT_COMPRESSION))) {
+            deflater.write(data);
+        }
+        ProtoWriter blob = new ProtoWriter();
+        blob.tag(2, 0);
+        blob.varint(data.length);
+        blob.bytes(3, compressed.toByteArray());
+        byte[] blobBytes = blob.toByteArray();
+
+        ProtoWriter header = new ProtoWriter();
+        header.string(1, type);
+        header.tag(3, 0);
+        header.varint(blobBytes.length);
+        byte[] headerBytes = header.toByteArray();
+
+        out.writeInt(headerBytes.length);
+        out.write(headerBytes);
+        out.write(blobBytes);
+    }
+
+    /* Strings of a block; index 0 is reserved as the delimiter of dense node tags */
+    private static class StringTable {
+        private final List<String> strings = new ArrayList<>();
+        private final Map<String, Integer> indices = new LinkedHashMap<>();
+
+        StringTable() {
+            strings.add("");
+        }
+
+        int index(String s) {
+            return indices.computeIfAbsent(s, key -> {
+                strings.add(key);
+                return strings.size() - 1;
+            });
+        }
+    }
+
+    private static class ProtoWriter extends ByteArrayOutputStream {
+        void tag(int field, int wireType) {
+            varint(field << 3 | wireType);
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void signedVarint(long value) {
+            varint(value << 1 ^ value >> 63);
+        }
+
+        void bytes(int field, byte[] bytes) {
+            tag(field, 2);
+            varint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void string(int field, String s) {
+            bytes(field, s.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        convert(new File(args[0]), new File(args[1]));
+    }
+}
@@ -0,0 +1,39 @@
+import service.GraphDB;
+import service.ImportStats;
+import utils.Constants;
+
+import java.io.File;
+
+/**
+ * Compares importing a region from OSM PBF against importing it from OSM XML. The PBF is
+ * converted from the XML with OsmPbfWriter first, so both imports read the same data. Not
+ * run as part of the test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="PbfBenchmark"
+ * and optionally pass an OSM XML file path and a number of rounds as arguments.
+ */
+public class PbfBenchmark {
+    public static void main(String[] args) throws Exception {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File pbf = File.createTempFile("bearmap", ".osm.pbf");
+        pbf.deleteOnExit();
+        OsmPbfWriter.convert(new File(dbPath), pbf);
+        System.out.printf("XML %.1f MB, PBF %.1f MB%n",
+                new File(dbPath).length() / 1e6, pbf.length() / 1e6);
+
+        for (GraphDB.Importer importer
+                : new GraphDB.Importer[] {GraphDB.Importer.STREAMING, GraphDB.Importer.PARALLEL}) {
+            run("XML " + importer, dbPath, importer, rounds);
+        }
+        run("PBF", pbf.getPath(), GraphDB.Importer.PARALLEL, rounds);
+    }
+
+    private static void run(String label, String path, GraphDB.Importer importer, int rounds) {
+        /* The first rounds only warm up the JIT */
+        for (int i = 0; i < rounds; i++) {
+            ImportStats stats = new GraphDB(path, importer).getImportStats();
+            if (i >= rounds / 2) System.out.println(label + ": " + stats);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import service.GraphDB;
+import service.Router;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures route throughput with 1, 2, 4, ... threads searching routes between random
+ * points at once, up to the number of cores, to show how routing scales now that searches
+ * share no state. Not run as part of the test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="RouteBenchmark"
+ * and optionally pass an OSM file path, a number of routes per thread count and a maximum
+ * number of threads as arguments.
+ */
+public class RouteBenchmark {
+    public static void main(String[] args) throws Exception {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int routes = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        GraphDB db = GraphDB.load(dbPath, Constants.OSM_IMPORTER);
+        CompactGraph g = db.getCompactGraph();
+
+        Random random = new Random(1);
+        double[][] queries = new double[routes][];
+        for (int i = 0; i < routes; i++) {
+            int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+            queries[i] = new double[] {g.lon(s), g.lat(s), g.lon(t), g.lat(t)};
+        }
+
+        /* Warms up the JIT and builds the lazily built indexes */
+        run(db, queries, 1);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long start = System.nanoTime();
+            run(db, queries, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%2d threads: %8.1f routes/s%n", threads, routes / seconds);
+        }
+    }
+
+    /* Searches every query once, spread over the given number of threads */
+    private static void run(GraphDB db, double[][] queries, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                results.add(pool.submit(() -> {
+                    double total = 0;
+                    for (int i = first; i < queries.length; i += threads) {
+                        double[] q = queries[i];
+                        total += Router.snappedPath(db, q[0], q[1], q[2], q[3]).distance;
+                    }
+                    return total;
+                }));
+            }
+            for (Future<Double> result : results) result.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
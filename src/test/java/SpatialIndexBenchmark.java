@@ -0,0 +1,120 @@
+import service.GraphDB;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.spatial.GridIndex;
+import utils.dataStructures.spatial.KdTree;
+import utils.dataStructures.spatial.SegmentIndex;
+
+import java.util.Random;
+
+/**
+ * Compares the spatial indexes against linear scans over all vertices, the way
+ * GraphDB.closest used to snap points: nearest vertex with a scan, the KdTree and the
+ * GridIndex, then k nearest and radius queries with a scan and the GridIndex, and finally
+ * snapping onto the nearest edge with the SegmentIndex. Query points
+ * are drawn uniformly from the bounding box of the graph. Not run as part of the test
+ * suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="SpatialIndexBenchmark"
+ * and optionally pass an OSM file path and a number of queries as arguments.
+ */
+public class SpatialIndexBenchmark {
+    private static final int K = 10;
+    private static final double RADIUS = 0.25;
+
+    public static void main(String[] args) {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        GraphDB db = new GraphDB(dbPath, Constants.OSM_IMPORTER);
+        CompactGraph g = db.getCompactGraph();
+
+        long start = System.nanoTime();
+        KdTree tree = new KdTree(g);
+        System.out.printf("%d vertices, KdTree built in %.1f ms%n", g.size(), millis(start));
+        start = System.nanoTime();
+        GridIndex grid = new GridIndex(g);
+        System.out.printf("GridIndex built in %.1f ms%n", millis(start));
+        start = System.nanoTime();
+        SegmentIndex segments = new SegmentIndex(g, g.largestComponent());
+        System.out.printf("SegmentIndex over %d segments built in %.1f ms%n", segments.size(),
+                millis(start));
+
+        double[][] points = randomPoints(g, queries);
+        /* Scans are slow, so they only get a slice of the queries */
+        int scanned = Math.max(1, Math.min(queries, 200));
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println(round == 0 ? "Warm-up round:" : "Measured round:");
+            long sink = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < scanned; i++) sink += scanClosest(g, points[i][0], points[i][1]);
+            report("closest, linear scan", start, scanned);
+            start = System.nanoTime();
+            for (double[] p : points) sink += tree.nearest(p[0], p[1]);
+            report("closest, KdTree", start, queries);
+            start = System.nanoTime();
+            for (double[] p : points) sink += grid.closest(p[0], p[1]);
+            report("closest, GridIndex", start, queries);
+
+            start = System.nanoTime();
+            for (int i = 0; i < scanned; i++) sink += scanWithin(g, points[i][0], points[i][1]);
+            report("within " + RADIUS + " mi, linear scan", start, scanned);
+            start = System.nanoTime();
+            for (double[] p : points) sink += grid.withinRadius(p[0], p[1], RADIUS).length;
+            report("within " + RADIUS + " mi, GridIndex", start, queries);
+            start = System.nanoTime();
+            for (double[] p : points) sink += grid.kNearest(p[0], p[1], K)[0];
+            report(K + " nearest, GridIndex", start, queries);
+            start = System.nanoTime();
+            for (double[] p : points) sink += segments.nearest(p[0], p[1]).edge;
+            report("nearest edge, SegmentIndex", start, queries);
+            if (sink == 42) System.out.println();
+        }
+    }
+
+    private static double[][] randomPoints(CompactGraph g, int count) {
+        double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < g.size(); v++) {
+            minLon = Math.min(minLon, g.lon(v));
+            maxLon = Math.max(maxLon, g.lon(v));
+            minLat = Math.min(minLat, g.lat(v));
+            maxLat = Math.max(maxLat, g.lat(v));
+        }
+        Random random = new Random(1);
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new double[] {minLon + random.nextDouble() * (maxLon - minLon),
+                minLat + random.nextDouble() * (maxLat - minLat)};
+        }
+        return points;
+    }
+
+    private static int scanClosest(CompactGraph g, double lon, double lat) {
+        int best = CompactGraph.NO_VERTEX;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < g.size(); v++) {
+            double dist = GraphDB.distance(lon, lat, g.lon(v), g.lat(v));
+            if (dist < bestDist) {
+                best = v;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }
+
+    private static int scanWithin(CompactGraph g, double lon, double lat) {
+        int count = 0;
+        for (int v = 0; v < g.size(); v++) {
+            if (GraphDB.distance(lon, lat, g.lon(v), g.lat(v)) <= RADIUS) count++;
+        }
+        return count;
+    }
+
+    private static double millis(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    private static void report(String label, long start, int queries) {
+        System.out.printf("  %-28s %10.2f us/query%n", label, millis(start) * 1000 / queries);
+    }
+}
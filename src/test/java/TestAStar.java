@@ -0,0 +1,142 @@
+import service.GraphDB;
+import service.Router;
+import utils.dataStructures.graph.CompactGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks A* against a Dijkstra oracle, for the queries of test-data/path_params.txt and
+ * random ones, on a grid of streets laid over the area those queries cover: every route must
+ * be a shortest one, A* must expand no vertex Dijkstra would not have settled, and landmarks
+ * must save A* expansions. Searching from both ends, or over the Contraction Hierarchy, must
+ * find routes as short as searching from the start only.
+ */
+public class TestAStar {
+    private static final String PARAMS_FILE = "test-data/path_params.txt";
+    private static final int NUM_TESTS = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameRoutesAsDijkstra() throws Exception {
+        File osm = folder.newFile("berkeley-grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(16), 30,
+                -122.295, 37.82, 0.0025).getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+
+        List<double[]> queries = paramsFromFile();
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+            queries.add(new double[] {g.lon(s), g.lat(s), g.lon(t), g.lat(t)});
+        }
+
+        long expandedByAStar = 0, expandedByAlt = 0, settledByDijkstra = 0;
+        for (double[] q : queries) {
+            int s = g.indexOf(graph.closest(q[0], q[1]));
+            int t = g.indexOf(graph.closest(q[2], q[3]));
+            double[] dist = TestContractedGraph.dijkstra(g, s, 0, s, 0);
+            int settled = 0;
+            for (double d : dist) {
+                if (d <= dist[t]) settled++;
+            }
+
+            for (boolean contracted : new boolean[] {false, true}) {
+                for (Router.Search search : Router.Search.values()) {
+                    List<Long> path = Router.shortestPath(graph, q[0], q[1], q[2], q[3],
+                            contracted, search);
+                    if (Double.isInfinite(dist[t])) {
+                        assertTrue(path.isEmpty());
+                        continue;
+                    }
+                    assertEquals(g.id(s), (long) path.get(0));
+                    assertEquals(g.id(t), (long) path.get(path.size() - 1));
+                    assertEquals(dist[t], length(graph, path), 1e-6);
+                    if (!contracted && search == Router.Search.ASTAR && s != t) {
+                        assertTrue(Router.expandedVertices() < settled);
+                        expandedByAStar += Router.expandedVertices();
+                        settledByDijkstra += settled;
+                    }
+                    if (!contracted && search == Router.Search.ALT) {
+                        expandedByAlt += Router.expandedVertices();
+                    }
+                }
+            }
+        }
+        assertTrue(expandedByAStar < settledByDijkstra / 2);
+        assertTrue(expandedByAlt < expandedByAStar);
+    }
+
+    @Test
+    public void testSnappedRoutesOfEverySearch() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(17), 20)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            double[] q = new double[4];
+            for (int j = 0; j < 4; j++) {
+                q[j] = (j % 2 == 0 ? -122.2505 : 37.8495) + random.nextDouble() * 0.021;
+            }
+            Router.Route one = Router.snappedPath(graph, q[0], q[1], q[2], q[3],
+                    Router.Search.ASTAR);
+            for (Router.Search search : Router.Search.values()) {
+                Router.Route route = Router.snappedPath(graph, q[0], q[1], q[2], q[3], search);
+                assertEquals(one.distance, route.distance, 1e-9);
+                if (route.nodes.size() > 1) {
+                    assertEquals(one.distance, length(graph, route), 1e-6);
+                }
+            }
+        }
+    }
+
+    /* The length of a snapped route, from the start point through its nodes to the end point */
+    private static double length(GraphDB graph, Router.Route route) {
+        long first = route.nodes.get(0), last = route.nodes.get(route.nodes.size() - 1);
+        return GraphDB.distance(route.startLon, route.startLat, graph.lon(first), graph.lat(first))
+                + length(graph, route.nodes)
+                + GraphDB.distance(graph.lon(last), graph.lat(last), route.destLon, route.destLat);
+    }
+
+    /* Sums the lengths of the edges of a path, checking that they exist */
+    private static double length(GraphDB graph, List<Long> path) {
+        double length = 0;
+        for (int i = 1; i < path.size(); i++) {
+            boolean adjacent = false;
+            for (long w : graph.adjacent(path.get(i - 1))) adjacent |= w == path.get(i);
+            assertTrue(adjacent);
+            length += graph.distance(path.get(i - 1), path.get(i));
+        }
+        return length;
+    }
+
+    private static List<double[]> paramsFromFile() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
+        List<double[]> queries = new ArrayList<>();
+        int lineIdx = 2; // ignore comment lines
+        for (int i = 0; i < NUM_TESTS; i++) {
+            double[] q = new double[4];
+            for (int j = 0; j < 4; j++) q[j] = Double.parseDouble(lines.get(lineIdx + j));
+            queries.add(q);
+            lineIdx += 4;
+        }
+        return queries;
+    }
+}
@@ -0,0 +1,114 @@
+import service.AlternativeRoutes;
+import service.GraphDB;
+import service.Router;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.Constants;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that alternative routes start with the shortest route, and that every alternative
+ * is a simple route no longer than the stretch allows and unlike the routes before it.
+ */
+public class TestAlternativeRoutes {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAlternatives() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(41), 20)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+
+        Random random = new Random(6);
+        int alternatives = 0;
+        for (int i = 0; i < 50; i++) {
+            EdgeSnap start = graph.snap(-122.2505 + random.nextDouble() * 0.021,
+                    37.8495 + random.nextDouble() * 0.021);
+            EdgeSnap dest = graph.snap(-122.2505 + random.nextDouble() * 0.021,
+                    37.8495 + random.nextDouble() * 0.021);
+            List<Router.Route> routes = AlternativeRoutes.alternativeRoutes(graph, start, dest, 3);
+            Router.Route shortest = Router.snappedPath(graph, start, dest, Router.Search.ASTAR);
+            assertTrue(routes.size() >= 1 && routes.size() <= 3);
+            assertEquals(shortest.distance, routes.get(0).distance, 1e-9);
+            if (!shortest.found()) continue;
+
+            for (int j = 1; j < routes.size(); j++) {
+                Router.Route route = routes.get(j);
+                assertTrue(route.distance <= Constants.ALTERNATIVE_MAX_STRETCH
+                        * shortest.distance + 1e-9);
+                assertEquals(route.distance, length(graph, route), 1e-6);
+                assertEquals(route.nodes.size(), new HashSet<>(route.nodes).size());
+                for (int k = 0; k < j; k++) assertFalse(route.nodes.equals(routes.get(k).nodes));
+                alternatives++;
+            }
+        }
+        assertTrue(alternatives > 0);
+    }
+
+    @Test
+    public void testFastestAlternatives() throws Exception {
+        /* A grid of roads of random types, so the fastest routes are not the shortest */
+        Random random = new Random(42);
+        String grid = TestContractedGraph.randomGrid(random, 15);
+        String[] types = {"motorway", "primary", "residential", "living_street"};
+        StringBuffer xml = new StringBuffer();
+        Matcher m = Pattern.compile("v=\"residential\"").matcher(grid);
+        while (m.find()) {
+            m.appendReplacement(xml, "v=\"" + types[random.nextInt(types.length)] + "\"");
+        }
+        m.appendTail(xml);
+        File osm = folder.newFile("typed.osm.xml");
+        Files.write(osm.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+
+        for (int i = 0; i < 30; i++) {
+            EdgeSnap start = graph.snap(-122.2505 + random.nextDouble() * 0.016,
+                    37.8495 + random.nextDouble() * 0.016);
+            EdgeSnap dest = graph.snap(-122.2505 + random.nextDouble() * 0.016,
+                    37.8495 + random.nextDouble() * 0.016);
+            List<Router.Route> routes = AlternativeRoutes.alternativeRoutes(graph, start, dest, 3,
+                    Router.Weighting.FASTEST);
+            Router.Route fastest = Router.snappedPath(graph, start, dest, Router.Search.ASTAR,
+                    Router.Weighting.FASTEST);
+            assertEquals(fastest.nodes, routes.get(0).nodes);
+            assertEquals(fastest.distance, routes.get(0).distance, 1e-9);
+            for (int j = 1; j < routes.size(); j++) {
+                assertEquals(routes.get(j).distance, length(graph, routes.get(j)), 1e-6);
+            }
+        }
+    }
+
+    /* The length of a route from the start point through its nodes to the end point,
+     * checking that consecutive nodes are adjacent */
+    private static double length(GraphDB graph, Router.Route route) {
+        List<Long> nodes = route.nodes;
+        long first = nodes.get(0), last = nodes.get(nodes.size() - 1);
+        double length = GraphDB.distance(route.startLon, route.startLat,
+                graph.lon(first), graph.lat(first));
+        for (int i = 1; i < nodes.size(); i++) {
+            Set<Long> adjacent = new HashSet<>();
+            for (long w : graph.adjacent(nodes.get(i - 1))) adjacent.add(w);
+            assertTrue(adjacent.contains(nodes.get(i)));
+            length += graph.distance(nodes.get(i - 1), nodes.get(i));
+        }
+        return length + GraphDB.distance(graph.lon(last), graph.lat(last),
+                route.destLon, route.destLat);
+    }
+}
@@ -0,0 +1,76 @@
+import service.GraphDB;
+import utils.dataStructures.graph.CompactGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sanity checks for the CSR form of the tiny clean graph.
+ */
+public class TestCompactGraph {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+    private static GraphDB graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new GraphDB(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testIndicesAreDenseAndSorted() {
+        CompactGraph g = graphTiny.getCompactGraph();
+        assertEquals(7, g.size());
+        for (int v = 0; v < g.size(); v++) {
+            assertEquals(v, g.indexOf(g.id(v)));
+            if (v > 0) assertTrue(g.id(v - 1) < g.id(v));
+        }
+        assertEquals(CompactGraph.NO_VERTEX, g.indexOf(12345L));
+    }
+
+    @Test
+    public void testEdgesMatchAdjacency() {
+        CompactGraph g = graphTiny.getCompactGraph();
+        int v = g.indexOf(63L);
+        HashSet<Long> expected = new HashSet<>();
+        HashSet<Long> actual = new HashSet<>();
+        for (long neighbor : graphTiny.adjacent(63L)) {
+            expected.add(neighbor);
+        }
+        for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+            actual.add(g.id(g.target(e)));
+            assertEquals(graphTiny.distance(63L, g.id(g.target(e))), g.length(e), 0.0001);
+        }
+        assertEquals(expected, actual);
+        assertEquals(3, g.degree(v));
+    }
+
+    @Test
+    public void testOffHeapCopy() {
+        CompactGraph g = graphTiny.getCompactGraph();
+        CompactGraph offHeap = g.offHeap();
+        assertTrue(offHeap.isOffHeap());
+        assertEquals(g.size(), offHeap.size());
+        assertEquals(g.edgeCount(), offHeap.edgeCount());
+        for (int v = 0; v < g.size(); v++) {
+            assertEquals(v, offHeap.indexOf(g.id(v)));
+            assertEquals(g.lon(v), offHeap.lon(v), 0.0);
+            assertEquals(g.lat(v), offHeap.lat(v), 0.0);
+            assertEquals(g.edgeBegin(v), offHeap.edgeBegin(v));
+            assertEquals(g.edgeEnd(v), offHeap.edgeEnd(v));
+        }
+        for (int e = 0; e < g.edgeCount(); e++) {
+            assertEquals(g.target(e), offHeap.target(e));
+            assertEquals(g.length(e), offHeap.length(e), 0.0);
+        }
+        assertEquals(CompactGraph.NO_VERTEX, offHeap.indexOf(12345L));
+    }
+}
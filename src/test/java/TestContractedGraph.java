@@ -0,0 +1,228 @@
+import service.GraphDB;
+import service.Router;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.spatial.EdgeSnap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the contraction of degree-2 chains and routing on the contracted graph, between
+ * nodes and between points snapped onto edges.
+ */
+public class TestContractedGraph {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTinyContraction() {
+        GraphDB graph = new GraphDB(OSM_DB_PATH_TINY);
+        CompactGraph g = graph.getCompactGraph();
+        ContractedGraph cg = graph.getContractedGraph();
+
+        /* 22, 46 and 66 are shape points of the chain 11 - 22 - 46 - 66 - 63 */
+        assertEquals(4, cg.size());
+        HashSet<Long> shapePoints = new HashSet<>();
+        for (int v = 0; v < g.size(); v++) {
+            if (cg.coreOf(v) == CompactGraph.NO_VERTEX) shapePoints.add(g.id(v));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(22L, 46L, 66L)), shapePoints);
+
+        int e = cg.chainEdge(g.indexOf(46));
+        double chain = graph.distance(11L, 22L) + graph.distance(22L, 46L)
+                + graph.distance(46L, 66L) + graph.distance(66L, 63L);
+        assertEquals(chain, cg.length(e), 1e-4);
+        assertEquals(3, cg.shapeEnd(e) - cg.shapeBegin(e));
+    }
+
+    @Test
+    public void testSameRoutesAsDijkstra() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), randomGrid(new Random(8), 12).getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+        assertTrue(graph.getContractedGraph().size() < g.size() / 2);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+            List<Long> path = Router.shortestPath(graph, g.lon(s), g.lat(s), g.lon(t), g.lat(t),
+                    true);
+            double expected = dijkstra(g, s, t);
+            if (Double.isInfinite(expected)) {
+                assertTrue(path.isEmpty());
+                continue;
+            }
+            assertEquals(g.id(s), (long) path.get(0));
+            assertEquals(g.id(t), (long) path.get(path.size() - 1));
+            double length = 0;
+            for (int j = 1; j < path.size(); j++) {
+                assertTrue(toSet(graph.adjacent(path.get(j - 1))).contains(path.get(j)));
+                length += graph.distance(path.get(j - 1), path.get(j));
+            }
+            assertEquals(expected, length, 1e-6);
+        }
+    }
+
+    @Test
+    public void testSnappedRoutesAsDijkstra() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), randomGrid(new Random(9), 10).getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+
+        Random random = new Random(43);
+        for (int i = 0; i < 300; i++) {
+            double[] from = randomPoint(random), to = randomPoint(random);
+            if (i % 10 == 0) {
+                /* Both ends on the same block */
+                to = new double[] {from[0] + random.nextDouble() * 0.0004, from[1]};
+            }
+            Router.Route route = Router.snappedPath(graph, from[0], from[1], to[0], to[1]);
+            EdgeSnap start = graph.snap(from[0], from[1]), dest = graph.snap(to[0], to[1]);
+            assertEquals(start.lon, route.startLon, 0);
+            assertEquals(dest.lat, route.destLat, 0);
+
+            /* Dijkstra from the ends of the start edge, and straight along a shared edge */
+            double[] dist = dijkstra(g, start.from, snapDist(g, start, start.from),
+                    start.to, snapDist(g, start, start.to));
+            double expected = Math.min(
+                    dist[dest.from] + snapDist(g, dest, dest.from),
+                    dist[dest.to] + snapDist(g, dest, dest.to));
+            if (start.edge == dest.edge) {
+                expected = Math.min(expected, GraphDB.distance(start.lon, start.lat,
+                        dest.lon, dest.lat));
+            }
+            if (Double.isInfinite(expected)) {
+                assertTrue(!route.found() && route.nodes.isEmpty());
+                continue;
+            }
+            assertEquals(expected, route.distance, 1e-4);
+
+            /* The route walks edges from the start point to the destination point */
+            double length;
+            List<Long> path = route.nodes;
+            if (path.isEmpty()) {
+                length = GraphDB.distance(route.startLon, route.startLat,
+                        route.destLon, route.destLat);
+            } else {
+                length = GraphDB.distance(route.startLon, route.startLat,
+                        graph.lon(path.get(0)), graph.lat(path.get(0)));
+                for (int j = 1; j < path.size(); j++) {
+                    assertTrue(toSet(graph.adjacent(path.get(j - 1))).contains(path.get(j)));
+                    length += graph.distance(path.get(j - 1), path.get(j));
+                }
+                long last = path.get(path.size() - 1);
+                length += GraphDB.distance(graph.lon(last), graph.lat(last),
+                        route.destLon, route.destLat);
+            }
+            assertEquals(expected, length, 1e-4);
+        }
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[] {-122.2505 + random.nextDouble() * 0.011,
+            37.8495 + random.nextDouble() * 0.011};
+    }
+
+    /* Distance from a snapped point to vertex v, one of the ends of its edge */
+    private static double snapDist(CompactGraph g, EdgeSnap snap, int v) {
+        return GraphDB.distance(snap.lon, snap.lat, g.lon(v), g.lat(v));
+    }
+
+    /* A grid of streets whose blocks are drawn with shape points, plus a few dead ends */
+    static String randomGrid(Random random, int n) {
+        return randomGrid(random, n, -122.25, 37.85, 0.001);
+    }
+
+    /* The same, with its first corner near (lon, lat) and the given spacing in degrees */
+    static String randomGrid(Random random, int n, double lon, double lat, double spacing) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='UTF-8'?>\n<osm>\n");
+        StringBuilder ways = new StringBuilder();
+        long nextId = 1;
+        long[][] corners = new long[n][n];
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                corners[r][c] = nextId++;
+                node(xml, corners[r][c], r, c, lon, lat, spacing, random);
+            }
+        }
+        long wayId = 1;
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                for (int[] d : new int[][] {{0, 1}, {1, 0}}) {
+                    int r2 = r + d[0], c2 = c + d[1];
+                    if (r2 >= n || c2 >= n || random.nextInt(6) == 0) continue;
+                    ways.append(" <way id=\"").append(wayId++).append("\">");
+                    ways.append("<nd ref=\"").append(corners[r][c]).append("\"/>");
+                    int shapePoints = random.nextInt(4);
+                    for (int k = 1; k <= shapePoints; k++) {
+                        double f = (double) k / (shapePoints + 1);
+                        node(xml, nextId, r + f * d[0], c + f * d[1], lon, lat, spacing,
+                                random);
+                        ways.append("<nd ref=\"").append(nextId++).append("\"/>");
+                    }
+                    ways.append("<nd ref=\"").append(corners[r2][c2]).append("\"/>");
+                    ways.append("<tag k=\"highway\" v=\"residential\"/></way>\n");
+                }
+            }
+        }
+        return xml.append(ways).append("</osm>\n").toString();
+    }
+
+    private static void node(StringBuilder xml, long id, double r, double c, double lon0,
+                             double lat0, double spacing, Random random) {
+        double lat = lat0 + r * spacing + random.nextDouble() * spacing / 5;
+        double lon = lon0 + c * spacing + random.nextDouble() * spacing / 5;
+        xml.append(String.format(" <node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>%n", id, lat, lon));
+    }
+
+    private static double dijkstra(CompactGraph g, int s, int t) {
+        return dijkstra(g, s, 0, s, 0)[t];
+    }
+
+    /* Distances from two sources that start at the given distances */
+    static double[] dijkstra(CompactGraph g, int s1, double d1, int s2, double d2) {
+        double[] dist = new double[g.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[s1] = d1;
+        dist[s2] = Math.min(dist[s2], d2);
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pq.add(new double[] {dist[s1], s1});
+        pq.add(new double[] {dist[s2], s2});
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) continue;
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+                double d = dist[v] + g.length(e);
+                if (d < dist[g.target(e)]) {
+                    dist[g.target(e)] = d;
+                    pq.add(new double[] {d, g.target(e)});
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static HashSet<Long> toSet(Iterable<Long> it) {
+        HashSet<Long> set = new HashSet<>();
+        for (long v : it) set.add(v);
+        return set;
+    }
+}
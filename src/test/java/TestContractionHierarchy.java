@@ -0,0 +1,69 @@
+import service.GraphDB;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractionHierarchy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the Contraction Hierarchy over a random grid of streets: every vertex has its own
+ * rank, every arc leads upward, and every shortcut unpacks into a walk over contracted edges
+ * as long as the shortcut. The routes it finds are checked against Dijkstra in TestAStar.
+ */
+public class TestContractionHierarchy {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHierarchy() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(21), 25)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        ContractedGraph cg = graph.getContractedGraph();
+        ContractionHierarchy ch = graph.getContractionHierarchy();
+        assertEquals(cg.size(), ch.size());
+
+        boolean[] ranked = new boolean[ch.size()];
+        for (int v = 0; v < ch.size(); v++) {
+            assertFalse(ranked[ch.rank(v)]);
+            ranked[ch.rank(v)] = true;
+            for (boolean forward : new boolean[] {true, false}) {
+                for (int i = ch.arcBegin(v, forward); i < ch.arcEnd(v, forward); i++) {
+                    int e = ch.arc(i, forward);
+                    assertEquals(v, forward ? ch.source(e) : ch.target(e));
+                    int other = forward ? ch.target(e) : ch.source(e);
+                    assertTrue(ch.rank(other) > ch.rank(v));
+                }
+            }
+        }
+
+        int shortcuts = 0;
+        for (int e = 0; e < ch.edgeCount(); e++) {
+            List<Integer> edges = new ArrayList<>();
+            ch.unpack(e, edges);
+            int at = ch.source(e);
+            double length = 0;
+            for (int f : edges) {
+                assertEquals(at, cg.source(f));
+                at = cg.target(f);
+                length += cg.length(f);
+            }
+            assertEquals(ch.target(e), at);
+            assertEquals(ch.weight(e), length, 1e-6);
+            if (ch.isShortcut(e)) shortcuts++;
+        }
+        assertTrue(shortcuts > 0);
+    }
+}
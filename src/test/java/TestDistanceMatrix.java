@@ -0,0 +1,80 @@
+import service.DistanceMatrix;
+import service.GraphDB;
+import service.Router;
+import utils.dataStructures.graph.HighwayType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that every entry of a distance matrix is the length of the snapped route between
+ * its source and target, and that a time matrix holds the times of the fastest routes.
+ */
+public class TestDistanceMatrix {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAsRoutes() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(23), 20)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+
+        Random random = new Random(4);
+        double[][] sources = randomPoints(random, 15);
+        double[][] targets = randomPoints(random, 25);
+        /* A target on the same edge as a source, and a source repeated */
+        targets[0] = new double[] {sources[0][0] + 1e-5, sources[0][1]};
+        sources[1] = sources[2];
+
+        double[][] matrix = DistanceMatrix.distanceMatrix(graph, sources, targets);
+        assertEquals(sources.length, matrix.length);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(targets.length, matrix[i].length);
+            for (int j = 0; j < targets.length; j++) {
+                Router.Route route = Router.snappedPath(graph, sources[i][0], sources[i][1],
+                        targets[j][0], targets[j][1]);
+                assertEquals(route.distance, matrix[i][j], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testTimesOfFastestRoutes() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(24), 12)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+
+        /* Every road of the grid is residential without a speed limit, so the fastest
+         * routes are the shortest, driven at the default speed of residential roads */
+        Random random = new Random(5);
+        double[][] sources = randomPoints(random, 8);
+        double[][] targets = randomPoints(random, 10);
+        double[][] distances = DistanceMatrix.distanceMatrix(graph, sources, targets);
+        double[][] times = DistanceMatrix.timeMatrix(graph, sources, targets);
+        double speed = HighwayType.RESIDENTIAL.defaultSpeed;
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                assertEquals(distances[i][j] / speed * 60, times[i][j], 1e-4);
+            }
+        }
+    }
+
+    private static double[][] randomPoints(Random random, int count) {
+        double[][] points = new double[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new double[] {-122.2505 + random.nextDouble() * 0.021,
+                    37.8495 + random.nextDouble() * 0.021};
+        }
+        return points;
+    }
+}
@@ -0,0 +1,126 @@
+import service.GraphDB;
+import service.GraphSnapshot;
+import utils.dataStructures.graph.ContractionHierarchy;
+import utils.dataStructures.graph.EdgeAttributes;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip tests of the binary graph snapshot on the tiny clean graph.
+ */
+public class TestGraphSnapshot {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File source;
+    private File snapshot;
+    private GraphDB graph;
+
+    @Before
+    public void setUp() throws Exception {
+        source = folder.newFile("tiny.osm.xml");
+        Files.copy(new File(OSM_DB_PATH_TINY).toPath(), source.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        snapshot = GraphSnapshot.snapshotFor(source.getPath());
+        graph = new GraphDB(source.getPath());
+        GraphSnapshot.write(graph, source, snapshot);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        assertSameGraph(GraphSnapshot.read(source, snapshot));
+    }
+
+    @Test
+    public void testOffHeapRoundTrip() {
+        GraphDB loaded = GraphSnapshot.read(source, snapshot, GraphDB.Storage.OFF_HEAP);
+        assertNotNull(loaded);
+        assertTrue(loaded.getCompactGraph().isOffHeap());
+        assertSameGraph(loaded);
+        assertTrue(loaded.getContractedGraph().size() > 0);
+    }
+
+    @Test
+    public void testOffHeapImport() {
+        GraphDB offHeap = new GraphDB(source.getPath(), GraphDB.Importer.STREAMING,
+                GraphDB.Storage.OFF_HEAP);
+        assertTrue(offHeap.getCompactGraph().isOffHeap());
+        assertSameGraph(offHeap);
+    }
+
+    private void assertSameGraph(GraphDB loaded) {
+        assertNotNull(loaded);
+        assertEquals(toList(graph.vertices()), toList(loaded.vertices()));
+        for (long v : graph.vertices()) {
+            assertEquals(new HashSet<>(toList(graph.adjacent(v))),
+                    new HashSet<>(toList(loaded.adjacent(v))));
+            assertEquals(graph.lon(v), loaded.lon(v), 0.0);
+            assertEquals(graph.lat(v), loaded.lat(v), 0.0);
+            assertEquals(graph.getWayNameListByNode(v), loaded.getWayNameListByNode(v));
+        }
+        assertEquals(graph.getSearcher().getKeysByPrefix("a"),
+                loaded.getSearcher().getKeysByPrefix("a"));
+        EdgeAttributes attributes = graph.getEdgeAttributes();
+        EdgeAttributes loadedAttributes = loaded.getEdgeAttributes();
+        assertEquals(attributes.edgeCount(), loadedAttributes.edgeCount());
+        for (int e = 0; e < attributes.edgeCount(); e++) {
+            assertEquals(attributes.type(e), loadedAttributes.type(e));
+            assertEquals(attributes.maxSpeed(e), loadedAttributes.maxSpeed(e));
+            assertEquals(attributes.noEntry(e), loadedAttributes.noEntry(e));
+        }
+        assertEquals(graph.getTurnRestrictions().count(), loaded.getTurnRestrictions().count());
+        ContractionHierarchy ch = graph.getContractionHierarchy();
+        ContractionHierarchy loadedCh = loaded.getContractionHierarchy();
+        assertEquals(ch.size(), loadedCh.size());
+        assertEquals(ch.edgeCount(), loadedCh.edgeCount());
+        for (int v = 0; v < ch.size(); v++) assertEquals(ch.rank(v), loadedCh.rank(v));
+    }
+
+    @Test
+    public void testStaleSnapshotIsIgnored() {
+        source.setLastModified(source.lastModified() - 60000);
+        assertNull(GraphSnapshot.read(source, snapshot));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0xFF);
+        }
+        assertNull(GraphSnapshot.read(source, snapshot));
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsIgnored() throws Exception {
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertNull(GraphSnapshot.read(source, snapshot));
+    }
+
+    private static <T> List<T> toList(Iterable<T> it) {
+        List<T> list = new ArrayList<>();
+        for (T t : it) list.add(t);
+        return list;
+    }
+}
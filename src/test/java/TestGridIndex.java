@@ -0,0 +1,96 @@
+import service.GraphDB;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.spatial.GridIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the grid index against sorting all vertices by distance.
+ */
+public class TestGridIndex {
+    @Test
+    public void testClosestAndKNearest() {
+        Random random = new Random(21);
+        for (CompactGraph g : new CompactGraph[] {randomPoints(random, 4000, false),
+                randomPoints(random, 4000, true)}) {
+            GridIndex grid = new GridIndex(g);
+            for (int i = 0; i < 500; i++) {
+                double lon = -122.27 + random.nextDouble() * 0.07;
+                double lat = 37.83 + random.nextDouble() * 0.07;
+                int[] expected = sortedByDistance(g, lon, lat, Double.POSITIVE_INFINITY);
+                assertEquals(expected[0], grid.closest(lon, lat));
+                int k = 1 + random.nextInt(20);
+                int[] prefix = new int[k];
+                System.arraycopy(expected, 0, prefix, 0, k);
+                assertArrayEquals(prefix, grid.kNearest(lon, lat, k));
+            }
+        }
+    }
+
+    @Test
+    public void testWithinRadius() {
+        Random random = new Random(22);
+        CompactGraph g = randomPoints(random, 4000, false);
+        GridIndex grid = new GridIndex(g.offHeap());
+        for (int i = 0; i < 300; i++) {
+            double lon = -122.27 + random.nextDouble() * 0.07;
+            double lat = 37.83 + random.nextDouble() * 0.07;
+            double miles = random.nextDouble() * 0.5;
+            assertArrayEquals(sortedByDistance(g, lon, lat, miles),
+                    grid.withinRadius(lon, lat, miles));
+        }
+    }
+
+    @Test
+    public void testSmallGraphs() {
+        CompactGraph empty = new CompactGraph(new long[0], new double[0], new double[0],
+                new int[1], new int[0], new float[0]);
+        assertEquals(0, new GridIndex(empty).kNearest(-122.25, 37.85, 3).length);
+        assertEquals(CompactGraph.NO_VERTEX, new GridIndex(empty).closest(-122.25, 37.85));
+
+        CompactGraph single = new CompactGraph(new long[] {7}, new double[] {-122.25},
+                new double[] {37.85}, new int[2], new int[0], new float[0]);
+        assertArrayEquals(new int[] {0}, new GridIndex(single).kNearest(0, 0, 3));
+        assertArrayEquals(new int[] {0}, new GridIndex(single).withinRadius(-122.25, 37.85, 0));
+    }
+
+    /* Vertices without edges, on a coarse lattice when clustered so that ties are common */
+    private static CompactGraph randomPoints(Random random, int n, boolean clustered) {
+        long[] ids = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int v = 0; v < n; v++) {
+            ids[v] = v + 1;
+            if (clustered) {
+                lons[v] = -122.25 + random.nextInt(12) * 0.002;
+                lats[v] = 37.85 + random.nextInt(12) * 0.002;
+            } else {
+                lons[v] = -122.25 + random.nextDouble() * 0.03;
+                lats[v] = 37.85 + random.nextDouble() * 0.03;
+            }
+        }
+        return new CompactGraph(ids, lons, lats, new int[n + 1], new int[0], new float[0]);
+    }
+
+    private static int[] sortedByDistance(CompactGraph g, double lon, double lat, double max) {
+        double[] dist = new double[g.size()];
+        List<Integer> vertices = new ArrayList<>();
+        for (int v = 0; v < g.size(); v++) {
+            dist[v] = GraphDB.distance(lon, lat, g.lon(v), g.lat(v));
+            if (dist[v] <= max) vertices.add(v);
+        }
+        vertices.sort((a, b) -> {
+            int c = Double.compare(dist[a], dist[b]);
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        int[] sorted = new int[vertices.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = vertices.get(i);
+        return sorted;
+    }
+}
@@ -0,0 +1,87 @@
+import utils.dataStructures.priorityQueue.IndexedMinHeap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks IndexedMinHeap against a plain array of priorities under random operations.
+ */
+public class TestIndexedMinHeap {
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(15);
+        int n = 200;
+        IndexedMinHeap heap = new IndexedMinHeap(n / 2);
+        heap.ensureCapacity(n);
+        /* The priority of every item in the heap, NaN for the others */
+        double[] expected = new double[n];
+        Arrays.fill(expected, Double.NaN);
+        for (int op = 0; op < 20000; op++) {
+            int item = random.nextInt(n);
+            double priority = random.nextInt(50);
+            switch (random.nextInt(4)) {
+                case 0:
+                    heap.addOrChange(item, priority);
+                    expected[item] = priority;
+                    break;
+                case 1:
+                    if (!Double.isNaN(expected[item])) {
+                        heap.changePriority(item, priority);
+                        expected[item] = priority;
+                    }
+                    break;
+                case 2:
+                    if (!heap.isEmpty()) {
+                        double smallest = min(expected);
+                        assertEquals(smallest, heap.peekPriority(), 0);
+                        int removed = heap.removeSmallest();
+                        assertEquals(smallest, expected[removed], 0);
+                        expected[removed] = Double.NaN;
+                    }
+                    break;
+                default:
+                    if (random.nextInt(100) == 0) {
+                        heap.clear();
+                        Arrays.fill(expected, Double.NaN);
+                    }
+            }
+            assertEquals(!Double.isNaN(expected[item]), heap.contains(item));
+            assertEquals(count(expected), heap.size());
+        }
+    }
+
+    @Test
+    public void testClearForgetsItems() {
+        IndexedMinHeap heap = new IndexedMinHeap(4);
+        heap.add(3, 1.0);
+        heap.add(1, 0.5);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(1));
+        assertFalse(heap.contains(3));
+        heap.add(1, 2.0);
+        assertFalse(heap.contains(3));
+        assertEquals(1, heap.removeSmallest());
+    }
+
+    private static double min(double[] priorities) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double p : priorities) {
+            if (!Double.isNaN(p)) min = Math.min(min, p);
+        }
+        return min;
+    }
+
+    private static int count(double[] priorities) {
+        int count = 0;
+        for (double p : priorities) {
+            if (!Double.isNaN(p)) count++;
+        }
+        return count;
+    }
+}
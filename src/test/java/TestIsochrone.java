@@ -0,0 +1,85 @@
+import service.GraphDB;
+import service.Isochrone;
+import service.IsochroneSearch;
+import service.Router;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.dataStructures.graph.CompactGraph;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that an isochrone holds exactly the nodes whose snapped route from its origin is
+ * within its distance, and that its outline encloses them.
+ */
+public class TestIsochrone {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAsRoutes() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(31), 20)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+
+        Random random = new Random(8);
+        for (int i = 0; i < 5; i++) {
+            double lon = -122.2505 + random.nextDouble() * 0.021;
+            double lat = 37.8495 + random.nextDouble() * 0.021;
+            double miles = 0.1 + random.nextDouble() * 0.5;
+            Isochrone isochrone = IsochroneSearch.isochrone(graph, lon, lat, miles);
+
+            Set<Long> nodes = new HashSet<>();
+            for (long id : isochrone.nodes) assertTrue(nodes.add(id));
+            for (int v = 0; v < g.size(); v++) {
+                double distance = Router.snappedPath(graph, lon, lat, g.lon(v), g.lat(v))
+                        .distance;
+                /* Nodes right at the distance may fall either way */
+                if (Math.abs(distance - miles) < 1e-9) continue;
+                assertEquals(distance < miles, nodes.contains(g.id(v)));
+            }
+
+            assertFalse(isochrone.nodes.length == 0);
+            assertFalse(isochrone.outline().isEmpty());
+            for (long id : isochrone.nodes) {
+                assertTrue(inside(isochrone, graph.lon(id), graph.lat(id)));
+            }
+        }
+    }
+
+    @Test
+    public void testTinyDistance() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(31), 10)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+
+        /* Within an inch of a node, only the node itself is reachable */
+        Isochrone isochrone = IsochroneSearch.isochrone(graph, g.lon(0), g.lat(0), 1e-5);
+        assertEquals(1, isochrone.nodes.length);
+        assertEquals(g.id(0), isochrone.nodes[0]);
+        assertEquals(4, isochrone.outline().size());
+    }
+
+    private static boolean inside(Isochrone isochrone, double lon, double lat) {
+        for (double[] cell : isochrone.cells()) {
+            if (cell[0] <= lon && lon <= cell[2] && cell[3] <= lat && lat <= cell[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+import service.GraphDB;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.spatial.KdTree;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the 2-d tree against a linear scan over the vertices.
+ */
+public class TestKdTree {
+    @Test
+    public void testSameAsLinearScan() {
+        Random random = new Random(11);
+        CompactGraph g = randomPoints(random, 5000, 0.1);
+        KdTree tree = new KdTree(g);
+        for (int i = 0; i < 2000; i++) {
+            double lon = -122.3 + random.nextDouble() * 0.2;
+            double lat = 37.8 + random.nextDouble() * 0.2;
+            assertEquals(scan(g, lon, lat), tree.nearest(lon, lat));
+        }
+    }
+
+    @Test
+    public void testTiesGoToTheSmallestIndex() {
+        /* Few distinct coordinates, so most vertices share theirs with others */
+        Random random = new Random(12);
+        CompactGraph g = randomPoints(random, 3000, 0.0);
+        KdTree tree = new KdTree(g.offHeap());
+        for (int v = 0; v < g.size(); v += 7) {
+            assertEquals(scan(g, g.lon(v), g.lat(v)), tree.nearest(g.lon(v), g.lat(v)));
+        }
+    }
+
+    @Test
+    public void testEmptyGraph() {
+        CompactGraph g = new CompactGraph(new long[0], new double[0], new double[0],
+                new int[1], new int[0], new float[0]);
+        assertEquals(CompactGraph.NO_VERTEX, new KdTree(g).nearest(-122.25, 37.85));
+    }
+
+    /* Vertices without edges; a spread of 0 snaps them to a coarse lattice */
+    private static CompactGraph randomPoints(Random random, int n, double spread) {
+        long[] ids = new long[n];
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        for (int v = 0; v < n; v++) {
+            ids[v] = v + 1;
+            if (spread > 0) {
+                lons[v] = -122.25 + random.nextDouble() * spread;
+                lats[v] = 37.85 + random.nextDouble() * spread;
+            } else {
+                lons[v] = -122.25 + random.nextInt(10) * 0.001;
+                lats[v] = 37.85 + random.nextInt(10) * 0.001;
+            }
+        }
+        return new CompactGraph(ids, lons, lats, new int[n + 1], new int[0], new float[0]);
+    }
+
+    private static int scan(CompactGraph g, double lon, double lat) {
+        int best = CompactGraph.NO_VERTEX;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < g.size(); v++) {
+            double dist = GraphDB.distance(lon, lat, g.lon(v), g.lat(v));
+            if (dist < bestDist) {
+                best = v;
+                bestDist = dist;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,65 @@
+import utils.dataStructures.cache.LruCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that LruCache evicts the least recently used entries and counts its hits, misses
+ * and evictions, also when many threads use it at once.
+ */
+public class TestLruCache {
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(3, 1);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+        assertEquals("a", cache.get(1));
+        cache.put(4, "d");
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals("d", cache.get(4));
+        assertEquals(3, cache.size());
+        assertEquals(4, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.evictions());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(1));
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        LruCache<Integer, Integer> cache = new LruCache<>(100, 8);
+        AtomicInteger wrong = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    int key = (i * 7 + offset) % 300;
+                    Integer value = cache.get(key);
+                    if (value == null) cache.put(key, key);
+                    else if (value != key) wrong.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, wrong.get());
+        assertEquals(40000, cache.hits() + cache.misses());
+        assertEquals(100, cache.size());
+        /* Two threads missing the same key both put it, and the second put evicts nothing */
+        assertTrue(cache.evictions() <= cache.misses() - cache.size());
+        assertTrue(cache.evictions() > 0);
+    }
+}
@@ -0,0 +1,120 @@
+import service.GraphDB;
+import utils.osm.OsmInput;
+import utils.osm.PipelinedInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests reading compressed OSM files and the pipelined decode stream.
+ */
+public class TestOsmInput {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCompressedGraphs() throws Exception {
+        byte[] xml = Files.readAllBytes(Paths.get(OSM_DB_PATH_TINY));
+        GraphDB plain = new GraphDB(OSM_DB_PATH_TINY, GraphDB.Importer.STREAMING);
+
+        File gzip = folder.newFile("tiny.osm.xml.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+            out.write(xml);
+        }
+        File bzip2 = folder.newFile("tiny.osm.xml.bz2");
+        try (OutputStream out = new BZip2CompressorOutputStream(new FileOutputStream(bzip2))) {
+            out.write(xml);
+        }
+        File zstd = folder.newFile("tiny.osm.xml.zst");
+        try (OutputStream out = new ZstdCompressorOutputStream(new FileOutputStream(zstd))) {
+            out.write(xml);
+        }
+
+        assertEquals(OsmInput.Compression.NONE, OsmInput.compression(new File(OSM_DB_PATH_TINY)));
+        assertEquals(OsmInput.Compression.GZIP, OsmInput.compression(gzip));
+        assertEquals(OsmInput.Compression.BZIP2, OsmInput.compression(bzip2));
+        assertEquals(OsmInput.Compression.ZSTD, OsmInput.compression(zstd));
+        for (File file : new File[] {gzip, bzip2, zstd}) {
+            for (GraphDB.Importer importer : GraphDB.Importer.values()) {
+                assertSameGraph(plain, new GraphDB(file.getPath(), importer));
+            }
+        }
+    }
+
+    @Test
+    public void testPipelinedStream() throws Exception {
+        byte[] bytes = new byte[3 * 1000 * 1000 + 17];
+        new Random(61).nextBytes(bytes);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = new PipelinedInputStream(new ByteArrayInputStream(bytes), "test")) {
+            byte[] buf = new byte[5000];
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) >= 0) read.write(buf, 0, n);
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(bytes, read.toByteArray());
+    }
+
+    @Test
+    public void testPipelinedStreamFailure() throws Exception {
+        InputStream failing = new InputStream() {
+            private int left = 100000;
+
+            @Override
+            public int read() throws IOException {
+                if (left == 0) throw new IOException("truncated");
+                left--;
+                return 'x';
+            }
+        };
+        try (InputStream in = new PipelinedInputStream(failing, "test")) {
+            while (in.read() >= 0) {
+                continue;
+            }
+            fail("the failure of the source was not rethrown");
+        } catch (IOException e) {
+            assertEquals("truncated", e.getMessage());
+        }
+    }
+
+    private static void assertSameGraph(GraphDB expected, GraphDB actual) {
+        List<Long> vertices = toList(expected.vertices());
+        assertEquals(vertices, toList(actual.vertices()));
+        for (long v : vertices) {
+            assertEquals(new HashSet<>(toList(expected.adjacent(v))),
+                    new HashSet<>(toList(actual.adjacent(v))));
+            assertEquals(expected.getWayNameListByNode(v), actual.getWayNameListByNode(v));
+        }
+        assertEquals(expected.getSearcher().getKeysByPrefix("a"),
+                actual.getSearcher().getKeysByPrefix("a"));
+    }
+
+    private static <T> List<T> toList(Iterable<T> it) {
+        List<T> list = new ArrayList<>();
+        for (T t : it) list.add(t);
+        return list;
+    }
+}
@@ -0,0 +1,121 @@
+import service.GraphDB;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.TurnRestrictions;
+import utils.osm.OsmPbfReader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the PBF importer builds the same graph as the XML importers from the same data.
+ */
+public class TestOsmPbfReader {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    private static final String OSM_XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + " <node id=\"1\" lat=\"37.8500000\" lon=\"-122.2500000\"/>\n"
+            + " <node id=\"2\" lat=\"37.8510000\" lon=\"-122.2500000\"/>\n"
+            + " <node id=\"3\" lat=\"37.8520001\" lon=\"-122.2490000\">\n"
+            + "  <tag k=\"amenity\" v=\"cafe\"/>\n"
+            + "  <tag k=\"name\" v=\"Caf\u00e9 Strada\"/>\n"
+            + " </node>\n"
+            + " <node id=\"4\" lat=\"37.86\" lon=\"-122.24\"/>\n"
+            + " <way id=\"10\">\n"
+            + "  <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"99\"/>\n"
+            + "  <tag k=\"highway\" v=\"residential\"/>\n"
+            + "  <tag k=\"name\" v=\"College Avenue\"/>\n"
+            + " </way>\n"
+            + " <way id=\"11\">\n"
+            + "  <nd ref=\"3\"/><nd ref=\"4\"/>\n"
+            + "  <tag k=\"highway\" v=\"footway\"/>\n"
+            + " </way>\n"
+            + " <way id=\"12\">\n"
+            + "  <nd ref=\"4\"/><nd ref=\"2\"/>\n"
+            + "  <tag k=\"highway\" v=\"primary\"/>\n"
+            + "  <tag k=\"maxspeed\" v=\"30 mph\"/>\n"
+            + "  <tag k=\"oneway\" v=\"yes\"/>\n"
+            + " </way>\n"
+            + " <relation id=\"20\">\n"
+            + "  <member type=\"way\" ref=\"12\" role=\"from\"/>\n"
+            + "  <member type=\"node\" ref=\"2\" role=\"via\"/>\n"
+            + "  <member type=\"way\" ref=\"10\" role=\"to\"/>\n"
+            + "  <member type=\"node\" ref=\"1\" role=\"location_hint\"/>\n"
+            + "  <tag k=\"type\" v=\"restriction\"/>\n"
+            + "  <tag k=\"restriction\" v=\"no_right_turn\"/>\n"
+            + " </relation>\n"
+            + "</osm>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameGraphAsXml() throws Exception {
+        File xml = folder.newFile("pbf.osm.xml");
+        Files.write(xml.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        assertSameGraph(xml);
+        /* The restriction counts despite its location hint */
+        assertTrue(new GraphDB(xml.getPath()).getTurnRestrictions().count() > 0);
+        assertSameGraph(new File(OSM_DB_PATH_TINY));
+    }
+
+    @Test
+    public void testDetection() throws Exception {
+        File pbf = folder.newFile("tiny.osm.pbf");
+        OsmPbfWriter.convert(new File(OSM_DB_PATH_TINY), pbf);
+        assertTrue(OsmPbfReader.isPbf(pbf));
+        assertFalse(OsmPbfReader.isPbf(new File(OSM_DB_PATH_TINY)));
+    }
+
+    private void assertSameGraph(File xml) throws Exception {
+        File pbf = folder.newFile();
+        OsmPbfWriter.convert(xml, pbf);
+        GraphDB expected = new GraphDB(xml.getPath(), GraphDB.Importer.SAX);
+        GraphDB actual = new GraphDB(pbf.getPath());
+
+        List<Long> vertices = toList(expected.vertices());
+        assertEquals(vertices, toList(actual.vertices()));
+        for (long v : vertices) {
+            assertEquals(new HashSet<>(toList(expected.adjacent(v))),
+                    new HashSet<>(toList(actual.adjacent(v))));
+            assertEquals(expected.lon(v), actual.lon(v), 0.0);
+            assertEquals(expected.lat(v), actual.lat(v), 0.0);
+            assertEquals(expected.getWayNameListByNode(v), actual.getWayNameListByNode(v));
+        }
+        for (String prefix : new String[] {"a", "c"}) {
+            assertEquals(expected.getSearcher().getKeysByPrefix(prefix),
+                    actual.getSearcher().getKeysByPrefix(prefix));
+        }
+        EdgeAttributes expectedAttributes = expected.getEdgeAttributes();
+        EdgeAttributes actualAttributes = actual.getEdgeAttributes();
+        assertEquals(expectedAttributes.edgeCount(), actualAttributes.edgeCount());
+        for (int e = 0; e < expectedAttributes.edgeCount(); e++) {
+            assertEquals(expectedAttributes.type(e), actualAttributes.type(e));
+            assertEquals(expectedAttributes.maxSpeed(e), actualAttributes.maxSpeed(e));
+            assertEquals(expectedAttributes.noEntry(e), actualAttributes.noEntry(e));
+        }
+        TurnRestrictions expectedTurns = expected.getTurnRestrictions();
+        TurnRestrictions actualTurns = actual.getTurnRestrictions();
+        assertEquals(expectedTurns.count(), actualTurns.count());
+        for (int i = 0; i < expectedTurns.count(); i++) {
+            assertEquals(expectedTurns.key(i), actualTurns.key(i));
+        }
+    }
+
+    private static <T> List<T> toList(Iterable<T> it) {
+        List<T> list = new ArrayList<>();
+        for (T t : it) list.add(t);
+        return list;
+    }
+}
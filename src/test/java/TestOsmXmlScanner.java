@@ -0,0 +1,138 @@
+import service.GraphDB;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the streaming and parallel importers build the same graph as the SAX importer,
+ * including on the XML constructs OSM files may contain.
+ */
+public class TestOsmXmlScanner {
+    private static final String OSM_DB_PATH_TINY = "../library-sp18/data/tiny-clean.osm.xml";
+
+    private static final String OSM_XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<!-- generated for TestOsmXmlScanner -->\n"
+            + "<osm version=\"0.6\">\n"
+            + " <bounds minlat=\"37.8\" minlon=\"-122.3\" maxlat=\"37.9\" maxlon=\"-122.2\"/>\n"
+            + " <node id=\"1\" lat=\"37.8500000\" lon=\"-122.2500000\"/>\n"
+            + " <node id='2' lat='37.8510000' lon='-122.2500000' version=\"2\" />\n"
+            + " <node id=\"3\" lat=\"3.78520e1\" lon=\"-122.2490000\">\n"
+            + "  <tag k=\"name\" v=\"Caf\u00e9 &amp; Bar &#x2615; &quot;Joe&apos;s&quot;\"/>\n"
+            + " </node>\n"
+            + " <node id=\"4\" lat=\"37.86\" lon=\"-122.24\"><tag v=\"Peet&#39;s\" k=\"name\"/></node>\n"
+            + " <node id=\"5\" lat=\"37.87\" lon=\"-122.23\"><tag k=\"name\" v=\"Museum\"/></node>\n"
+            + " <node id=\"6\" lat=\"37.88\" lon=\"-122.22\"/>\n"
+            + " <way id=\"10\">\n"
+            + "  <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"99\"/>\n"
+            + "  <tag k=\"highway\" v=\"residential\"/>\n"
+            + "  <tag k=\"name\" v=\"Telegraph &gt; Avenue\"/>\n"
+            + " </way>\n"
+            + " <way id=\"11\">\n"
+            + "  <nd ref=\"3\"/><nd ref=\"4\"/>\n"
+            + "  <tag k=\"highway\" v=\"footway\"/>\n"
+            + " </way>\n"
+            + " <way id=\"12\">\n"
+            + "  <nd ref=\"2\"/><nd ref=\"4\"/>\n"
+            + "  <tag k=\"highway\" v=\"primary\"/>\n"
+            + " </way>\n"
+            + " <way id=\"13\"/>\n"
+            + " <relation id=\"1\">\n"
+            + "  <member type=\"way\" ref=\"10\" role=\"outer\"/>\n"
+            + "  <tag k=\"name\" v=\"Not a way name\"/>\n"
+            + " </relation>\n"
+            + "</osm>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File osm;
+
+    @Before
+    public void setUp() throws Exception {
+        osm = folder.newFile("scanner.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSameGraphAsSax() {
+        assertSameGraph(osm.getPath());
+        assertSameGraph(OSM_DB_PATH_TINY);
+    }
+
+    @Test
+    public void testNamesAndCoordinates() {
+        GraphDB graph = new GraphDB(osm.getPath(), GraphDB.Importer.STREAMING);
+        assertEquals(37.852, graph.lat(3L), 0.0);
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L, 4L)), toSet(graph.adjacent(2L)));
+        assertEquals(new HashSet<>(Arrays.asList("Telegraph > Avenue")),
+                graph.getWayNameListByNode(1L));
+        assertEquals(Arrays.asList("Caf\u00e9 & Bar \u2615 \"Joe's\""),
+                graph.getSearcher().getKeysByPrefix("c"));
+        assertEquals(Arrays.asList("Peet's"), graph.getSearcher().getKeysByPrefix("p"));
+    }
+
+    @Test
+    public void testUnusedNodesAreDropped() {
+        for (GraphDB.Importer importer : GraphDB.Importer.values()) {
+            GraphDB graph = new GraphDB(osm.getPath(), importer);
+            assertEquals(6, graph.getImportStats().getNodes());
+            assertEquals(4, graph.getImportStats().getKeptNodes());
+            assertEquals(Arrays.asList("Museum"), graph.getSearcher().getKeysByPrefix("m"));
+        }
+    }
+
+    @Test
+    public void testUnknownEntitiesAreKept() throws Exception {
+        File unknown = folder.newFile("unknown.osm.xml");
+        String xml = OSM_XML.replace("v=\"Museum\"", "v=\"Museum&nbsp;of &#xZZ; Art\"");
+        Files.write(unknown.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        for (GraphDB.Importer importer : Arrays.asList(GraphDB.Importer.STREAMING,
+                GraphDB.Importer.PARALLEL)) {
+            GraphDB graph = new GraphDB(unknown.getPath(), importer);
+            assertEquals(Arrays.asList("Museum&nbsp;of &#xZZ; Art"),
+                    graph.getSearcher().getKeysByPrefix("m"));
+        }
+    }
+
+    private static void assertSameGraph(String path) {
+        GraphDB sax = new GraphDB(path, GraphDB.Importer.SAX);
+        assertSameGraph(sax, new GraphDB(path, GraphDB.Importer.STREAMING));
+        assertSameGraph(sax, new GraphDB(path, GraphDB.Importer.PARALLEL));
+    }
+
+    private static void assertSameGraph(GraphDB sax, GraphDB streaming) {
+        List<Long> vertices = toList(sax.vertices());
+        assertEquals(vertices, toList(streaming.vertices()));
+        for (long v : vertices) {
+            assertEquals(toSet(sax.adjacent(v)), toSet(streaming.adjacent(v)));
+            assertEquals(sax.lon(v), streaming.lon(v), 0.0);
+            assertEquals(sax.lat(v), streaming.lat(v), 0.0);
+            assertEquals(sax.getWayNameListByNode(v), streaming.getWayNameListByNode(v));
+        }
+        for (String prefix : new String[] {"c", "p"}) {
+            assertEquals(sax.getSearcher().getKeysByPrefix(prefix),
+                    streaming.getSearcher().getKeysByPrefix(prefix));
+        }
+    }
+
+    private static <T> List<T> toList(Iterable<T> it) {
+        List<T> list = new ArrayList<>();
+        for (T t : it) list.add(t);
+        return list;
+    }
+
+    private static <T> HashSet<T> toSet(Iterable<T> it) {
+        return new HashSet<>(toList(it));
+    }
+}
@@ -0,0 +1,84 @@
+import service.GraphDB;
+import service.Router;
+import utils.dataStructures.graph.CompactGraph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Searches routes on many threads at once and checks that every thread gets exactly the
+ * routes a single thread gets.
+ */
+public class TestRouterConcurrency {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentRoutesMatchSequential() throws Exception {
+        File osm = folder.newFile("grid.osm.xml");
+        Files.write(osm.toPath(), TestContractedGraph.randomGrid(new Random(10), 12)
+                .getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        CompactGraph g = graph.getCompactGraph();
+
+        Random random = new Random(44);
+        List<double[]> queries = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+            double[] q = {g.lon(s) + 0.0001, g.lat(s), g.lon(t), g.lat(t) - 0.0001};
+            queries.add(q);
+            expected.add(routes(graph, q));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int offset = t * 13;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int mismatches = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        for (int i = 0; i < queries.size(); i++) {
+                            int j = (i + offset) % queries.size();
+                            if (!expected.get(j).equals(routes(graph, queries.get(j)))) {
+                                mismatches++;
+                            }
+                        }
+                    }
+                    return mismatches;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) assertEquals(0, (int) result.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /* The routes of every kind for one query, as a string to compare */
+    private static String routes(GraphDB graph, double[] q) {
+        Router.Route snapped = Router.snappedPath(graph, q[0], q[1], q[2], q[3]);
+        return Router.shortestPath(graph, q[0], q[1], q[2], q[3], true) + " "
+                + Router.shortestPath(graph, q[0], q[1], q[2], q[3], false) + " "
+                + snapped.nodes + " " + snapped.distance;
+    }
+}
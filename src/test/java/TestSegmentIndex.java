@@ -0,0 +1,119 @@
+import service.GraphDB;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.spatial.EdgeSnap;
+import utils.dataStructures.spatial.SegmentIndex;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks snapping onto edges against projecting onto every edge.
+ */
+public class TestSegmentIndex {
+    @Test
+    public void testSameSnapsAsScan() {
+        Random random = new Random(31);
+        for (boolean lattice : new boolean[] {false, true}) {
+            CompactGraph g = randomGraph(random, 1500, lattice);
+            SegmentIndex index = new SegmentIndex(lattice ? g.offHeap() : g);
+            for (int i = 0; i < 500; i++) {
+                double lon = -122.27 + random.nextDouble() * 0.07;
+                double lat = 37.83 + random.nextDouble() * 0.07;
+                if (lattice) {
+                    /* Points on lattice lines and nodes, where edges tie */
+                    lon = -122.25 + random.nextInt(14) * 0.002 - 0.002;
+                    if (random.nextBoolean()) lat = 37.85 + random.nextInt(14) * 0.002 - 0.002;
+                }
+                int expected = scan(g, lon, lat);
+                EdgeSnap snap = index.nearest(lon, lat);
+                assertEquals(expected, snap.edge);
+                assertEquals(g.target(snap.edge), snap.to);
+                assertEquals(GraphDB.distance(lon, lat, snap.lon, snap.lat), snap.distance, 0);
+                double fromLon = g.lon(snap.from), toLon = g.lon(snap.to);
+                assertEquals(fromLon + snap.fraction * (toLon - fromLon), snap.lon, 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testWithoutEdges() {
+        CompactGraph empty = new CompactGraph(new long[0], new double[0], new double[0],
+                new int[1], new int[0], new float[0]);
+        assertNull(new SegmentIndex(empty).nearest(-122.25, 37.85));
+    }
+
+    /* Random points joined to a few random neighbours, or a lattice of streets when lattice */
+    private static CompactGraph randomGraph(Random random, int n, boolean lattice) {
+        int side = 12;
+        if (lattice) n = side * side;
+        double[] lons = new double[n];
+        double[] lats = new double[n];
+        List<List<Integer>> adj = new ArrayList<>();
+        for (int v = 0; v < n; v++) {
+            adj.add(new ArrayList<>());
+            lons[v] = lattice ? -122.25 + v % side * 0.002 : -122.25 + random.nextDouble() * 0.03;
+            lats[v] = lattice ? 37.85 + v / side * 0.002 : 37.85 + random.nextDouble() * 0.03;
+        }
+        for (int v = 0; v < n; v++) {
+            if (lattice) {
+                if (v % side + 1 < side) link(adj, v, v + 1);
+                if (v + side < n) link(adj, v, v + side);
+            } else {
+                for (int k = 0; k < 2; k++) {
+                    int w = Math.min(n - 1, Math.max(0, v + random.nextInt(41) - 20));
+                    if (w != v && !adj.get(v).contains(w)) link(adj, v, w);
+                }
+            }
+        }
+
+        long[] ids = new long[n];
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            ids[v] = v + 1;
+            offsets[v + 1] = offsets[v] + adj.get(v).size();
+        }
+        int[] targets = new int[offsets[n]];
+        float[] lengths = new float[offsets[n]];
+        for (int v = 0, e = 0; v < n; v++) {
+            adj.get(v).sort(null);
+            for (int w : adj.get(v)) {
+                targets[e] = w;
+                lengths[e++] = (float) GraphDB.distance(lons[v], lats[v], lons[w], lats[w]);
+            }
+        }
+        return new CompactGraph(ids, lons, lats, offsets, targets, lengths);
+    }
+
+    private static void link(List<List<Integer>> adj, int v, int w) {
+        adj.get(v).add(w);
+        adj.get(w).add(v);
+    }
+
+    /* Returns the edge from its smaller to its larger vertex whose projection is closest */
+    private static int scan(CompactGraph g, double lon, double lat) {
+        double cos = Math.cos(Math.toRadians(lat));
+        int best = CompactGraph.NO_VERTEX;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+                int w = g.target(e);
+                if (v > w) continue;
+                double dx = (g.lon(w) - g.lon(v)) * cos, dy = g.lat(w) - g.lat(v);
+                double px = (lon - g.lon(v)) * cos, py = lat - g.lat(v);
+                double t = Math.max(0, Math.min(1, (px * dx + py * dy) / (dx * dx + dy * dy)));
+                double dist = GraphDB.distance(lon, lat, g.lon(v) + t * (g.lon(w) - g.lon(v)),
+                        g.lat(v) + t * (g.lat(w) - g.lat(v)));
+                if (dist < bestDist) {
+                    best = e;
+                    bestDist = dist;
+                }
+            }
+        }
+        return best;
+    }
+}
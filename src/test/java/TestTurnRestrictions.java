@@ -0,0 +1,588 @@
+import service.AlternativeRoutes;
+import service.DistanceMatrix;
+import service.GraphDB;
+import service.GraphSnapshot;
+import service.IsochroneSearch;
+import service.Router;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.ContractedRestrictions;
+import utils.dataStructures.graph.ContractionHierarchy;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.graph.TurnRestrictions;
+import utils.dataStructures.spatial.EdgeSnap;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that one-way streets and turn restrictions are imported, and that routes never run
+ * against a one-way street or make a forbidden turn, yet are as light as the lightest legal
+ * routes a search over the edges of the underlying graph finds.
+ */
+public class TestTurnRestrictions {
+    private static final String OSM_XML = "<?xml version='1.0' encoding='UTF-8'?>\n<osm>\n"
+            + " <node id=\"1\" lat=\"37.850\" lon=\"-122.250\"/>\n"
+            + " <node id=\"2\" lat=\"37.851\" lon=\"-122.250\"/>\n"
+            + " <node id=\"3\" lat=\"37.852\" lon=\"-122.250\"/>\n"
+            + " <node id=\"4\" lat=\"37.851\" lon=\"-122.249\"/>\n"
+            + " <node id=\"5\" lat=\"37.851\" lon=\"-122.251\"/>\n"
+            + " <node id=\"6\" lat=\"37.853\" lon=\"-122.249\"/>\n"
+            + " <node id=\"7\" lat=\"37.853\" lon=\"-122.251\"/>\n"
+            + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+            + " <way id=\"11\"><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"oneway\" v=\"yes\"/></way>\n"
+            + " <way id=\"12\"><nd ref=\"2\"/><nd ref=\"4\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"oneway\" v=\"-1\"/></way>\n"
+            + " <way id=\"13\"><nd ref=\"2\"/><nd ref=\"5\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"oneway\" v=\"no\"/></way>\n"
+            + " <way id=\"14\"><nd ref=\"3\"/><nd ref=\"6\"/><nd ref=\"7\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"primary\"/><tag k=\"junction\" v=\"roundabout\"/></way>\n"
+            + " <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"from\"/>"
+            + "<member type=\"node\" ref=\"2\" role=\"via\"/>"
+            + "<member type=\"way\" ref=\"13\" role=\"to\"/>"
+            + "<member type=\"node\" ref=\"1\" role=\"location_hint\"/>"
+            + "<tag k=\"type\" v=\"restriction\"/><tag k=\"restriction\" v=\"no_left_turn\"/>"
+            + "</relation>\n"
+            + " <relation id=\"21\"><member type=\"way\" ref=\"12\" role=\"from\"/>"
+            + "<member type=\"node\" ref=\"2\" role=\"via\"/>"
+            + "<member type=\"way\" ref=\"10\" role=\"to\"/>"
+            + "<tag k=\"type\" v=\"restriction\"/>"
+            + "<tag k=\"restriction\" v=\"only_straight_on\"/></relation>\n"
+            + " <relation id=\"22\"><member type=\"way\" ref=\"13\" role=\"from\"/>"
+            + "<member type=\"way\" ref=\"11\" role=\"via\"/>"
+            + "<member type=\"way\" ref=\"14\" role=\"to\"/>"
+            + "<tag k=\"type\" v=\"restriction\"/><tag k=\"restriction\" v=\"no_u_turn\"/>"
+            + "</relation>\n"
+            + " <relation id=\"23\"><member type=\"way\" ref=\"10\" role=\"from\"/>"
+            + "<member type=\"way\" ref=\"13\" role=\"from\"/>"
+            + "<member type=\"node\" ref=\"2\" role=\"via\"/>"
+            + "<member type=\"way\" ref=\"11\" role=\"to\"/>"
+            + "<tag k=\"type\" v=\"restriction\"/><tag k=\"restriction\" v=\"no_right_turn\"/>"
+            + "</relation>\n"
+            + "</osm>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testImport() throws Exception {
+        File osm = folder.newFile("restrictions.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        for (GraphDB.Importer importer : GraphDB.Importer.values()) {
+            GraphDB graph = new GraphDB(osm.getPath(), importer);
+            CompactGraph g = graph.getCompactGraph();
+            EdgeAttributes attributes = graph.getEdgeAttributes();
+            assertFalse(attributes.noEntry(edge(g, 1L, 2L)));
+            assertFalse(attributes.noEntry(edge(g, 2L, 1L)));
+            assertFalse(attributes.noEntry(edge(g, 2L, 3L)));
+            assertTrue(attributes.noEntry(edge(g, 3L, 2L)));
+            assertTrue(attributes.noEntry(edge(g, 2L, 4L)));
+            assertFalse(attributes.noEntry(edge(g, 4L, 2L)));
+            assertFalse(attributes.noEntry(edge(g, 5L, 2L)));
+            assertFalse(attributes.noEntry(edge(g, 3L, 6L)));
+            assertTrue(attributes.noEntry(edge(g, 6L, 3L)));
+            assertFalse(attributes.noEntry(edge(g, 7L, 3L)));
+            assertTrue(attributes.noEntry(edge(g, 3L, 7L)));
+
+            /* One turn from the no_ relation, whose location hint does not count, every other
+             * turn from way 12 from the only_ relation, U-turn included; the relations via a
+             * way and with two from ways are left out */
+            TurnRestrictions turns = graph.getTurnRestrictions();
+            assertEquals(4, turns.count());
+            int v = g.indexOf(2);
+            assertTrue(turns.forbidden(v, slot(g, 2, 1), slot(g, 2, 5)));
+            assertFalse(turns.forbidden(v, slot(g, 2, 5), slot(g, 2, 1)));
+            assertFalse(turns.forbidden(v, slot(g, 2, 4), slot(g, 2, 1)));
+            assertTrue(turns.forbidden(v, slot(g, 2, 4), slot(g, 2, 3)));
+            assertTrue(turns.forbidden(v, slot(g, 2, 4), slot(g, 2, 5)));
+            assertTrue(turns.forbidden(v, slot(g, 2, 4), slot(g, 2, 4)));
+            assertFalse(turns.forbidden(v, slot(g, 2, 1), slot(g, 2, 3)));
+            assertFalse(turns.isVia(g.indexOf(3)));
+
+            /* From 1 to 5 the route may not turn left at 2, nor go around against way 11 */
+            List<Long> path = Router.shortestPath(graph, g.lon(g.indexOf(1)),
+                    g.lat(g.indexOf(1)), g.lon(g.indexOf(5)), g.lat(g.indexOf(5)));
+            assertTrue(path.isEmpty());
+            path = Router.shortestPath(graph, g.lon(g.indexOf(5)), g.lat(g.indexOf(5)),
+                    g.lon(g.indexOf(7)), g.lat(g.indexOf(7)));
+            assertEquals(Arrays.asList(5L, 2L, 3L, 6L, 7L), path);
+        }
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        File osm = folder.newFile("restrictions.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        File snapshot = GraphSnapshot.snapshotFor(osm.getPath());
+        GraphDB graph = new GraphDB(osm.getPath());
+        GraphSnapshot.write(graph, osm, snapshot);
+        for (GraphDB.Storage storage : GraphDB.Storage.values()) {
+            GraphDB loaded = GraphSnapshot.read(osm, snapshot, storage);
+            EdgeAttributes attributes = graph.getEdgeAttributes();
+            for (int e = 0; e < attributes.edgeCount(); e++) {
+                assertEquals(attributes.type(e), loaded.getEdgeAttributes().type(e));
+                assertEquals(attributes.noEntry(e), loaded.getEdgeAttributes().noEntry(e));
+            }
+            TurnRestrictions turns = graph.getTurnRestrictions();
+            assertEquals(turns.count(), loaded.getTurnRestrictions().count());
+            for (int i = 0; i < turns.count(); i++) {
+                assertEquals(turns.key(i), loaded.getTurnRestrictions().key(i));
+            }
+            CompactGraph g = loaded.getCompactGraph();
+            assertTrue(Router.shortestPath(loaded, g.lon(g.indexOf(1)), g.lat(g.indexOf(1)),
+                    g.lon(g.indexOf(5)), g.lat(g.indexOf(5))).isEmpty());
+        }
+    }
+
+    @Test
+    public void testLightestAsEdgeDijkstra() throws Exception {
+        GraphDB graph = randomGraph(12, 61);
+        CompactGraph g = graph.getCompactGraph();
+        assertFalse(graph.getTurnRestrictions().isEmpty());
+        Random random = new Random(62);
+        for (Router.Weighting weighting : Router.Weighting.values()) {
+            EdgeWeights weights = graph.getEdgeWeights(weighting);
+            for (int i = 0; i < 60; i++) {
+                int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+                if (s == t) continue;
+                double[] dist = dijkstra(graph, weights, new int[0], new double[0], s);
+                double expected = Double.POSITIVE_INFINITY;
+                for (int e = 0; e < g.edgeCount(); e++) {
+                    if (g.target(e) == t) expected = Math.min(expected, dist[e]);
+                }
+                for (Router.Search search : Router.Search.values()) {
+                    for (boolean contracted : new boolean[] {false, true}) {
+                        List<Long> path = Router.shortestPath(graph, g.lon(s), g.lat(s),
+                                g.lon(t), g.lat(t), contracted, search, weighting);
+                        if (Double.isInfinite(expected)) {
+                            assertTrue(path.isEmpty());
+                            continue;
+                        }
+                        assertEquals(g.id(s), (long) path.get(0));
+                        assertEquals(g.id(t), (long) path.get(path.size() - 1));
+                        int[] walk = new int[path.size()];
+                        for (int j = 0; j < walk.length; j++) walk[j] = g.indexOf(path.get(j));
+                        assertEquals(expected, weight(graph, weights, walk), 1e-5);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSnappedRoutesAsEdgeDijkstra() throws Exception {
+        GraphDB graph = randomGraph(10, 63);
+        CompactGraph g = graph.getCompactGraph();
+        EdgeWeights lengths = graph.getEdgeWeights(Router.Weighting.SHORTEST);
+        Random random = new Random(64);
+        for (int i = 0; i < 300; i++) {
+            double[] from = randomPoint(random), to = randomPoint(random);
+            if (i % 10 == 0) {
+                /* Both ends on the same block */
+                to = new double[] {from[0] + random.nextDouble() * 0.0004, from[1]};
+            }
+            EdgeSnap start = graph.snap(from[0], from[1]), dest = graph.snap(to[0], to[1]);
+            /* Points snapped onto a vertex start or end on either of its edges */
+            if (start.fraction <= 0 || start.fraction >= 1
+                    || dest.fraction <= 0 || dest.fraction >= 1) {
+                continue;
+            }
+            Router.Route route = Router.snappedPath(graph, from[0], from[1], to[0], to[1],
+                    Router.Search.ASTAR);
+
+            /* Leave the start edge toward either end, and reach the destination edge from
+             * either end, or stay on a shared edge */
+            int[] firsts = {edge(g, start.from, start.to), edge(g, start.to, start.from)};
+            double[] firstWeights = {snapDist(g, start, start.to),
+                snapDist(g, start, start.from)};
+            double[] dist = dijkstra(graph, lengths, firsts, firstWeights, -1);
+            double expected = Double.POSITIVE_INFINITY;
+            for (int e = 0; e < g.edgeCount(); e++) {
+                int x = g.target(e), y;
+                if (x == dest.from) y = dest.to;
+                else if (x == dest.to) y = dest.from;
+                else continue;
+                if (graph.getEdgeAttributes().noEntry(edge(g, x, y))) continue;
+                if (!turnAllowed(graph, source(g, e), x, y)) continue;
+                expected = Math.min(expected, dist[e] + snapDist(g, dest, x));
+            }
+            boolean along = false;
+            if (sameSegment(start, dest)) {
+                double at = dest.from == start.from ? dest.fraction : 1 - dest.fraction;
+                int e = at >= start.fraction ? edge(g, start.from, start.to)
+                        : edge(g, start.to, start.from);
+                double direct = GraphDB.distance(start.lon, start.lat, dest.lon, dest.lat);
+                if (!graph.getEdgeAttributes().noEntry(e) && direct <= expected) {
+                    expected = direct;
+                    along = true;
+                }
+            }
+            if (Double.isInfinite(expected)) {
+                assertTrue(!route.found() && route.nodes.isEmpty());
+                continue;
+            }
+            assertEquals(expected, route.distance, 1e-4);
+            if (along && route.nodes.isEmpty()) continue;
+
+            /* The route leaves the start edge and enters the destination edge legally */
+            int[] walk = new int[route.nodes.size() + 2];
+            for (int j = 0; j < route.nodes.size(); j++) {
+                walk[j + 1] = g.indexOf(route.nodes.get(j));
+            }
+            walk[0] = walk[1] == start.from ? start.to : start.from;
+            walk[walk.length - 1] = walk[walk.length - 2] == dest.from ? dest.to : dest.from;
+            weight(graph, lengths, walk);
+        }
+    }
+
+    @Test
+    public void testHierarchyKeepsToOneWays() throws Exception {
+        GraphDB graph = randomGraph(12, 71);
+        ContractedGraph cg = graph.getContractedGraph();
+        ContractedRestrictions restrictions = graph.getContractedRestrictions();
+        ContractionHierarchy ch = graph.getContractionHierarchy();
+        int closed = 0;
+        for (int e = 0; e < cg.edgeCount(); e++) {
+            if (!restrictions.open(e)) closed++;
+        }
+        assertTrue(closed > 0);
+        /* Every edge of the hierarchy, shortcut or not, only drives open edges */
+        for (int e = 0; e < ch.edgeCount(); e++) {
+            List<Integer> edges = new ArrayList<>();
+            ch.unpack(e, edges);
+            for (int f : edges) assertTrue(restrictions.open(f));
+        }
+    }
+
+    @Test
+    public void testRouteFromCoreAlongItsChain() throws Exception {
+        /* 1 is a core vertex at the end of the chain 1-2-3-4, so a route from it to a shape
+         * point of the chain drives straight along it */
+        String xml = "<?xml version='1.0' encoding='UTF-8'?>\n<osm>\n"
+                + " <node id=\"1\" lat=\"37.850\" lon=\"-122.250\"/>\n"
+                + " <node id=\"2\" lat=\"37.851\" lon=\"-122.250\"/>\n"
+                + " <node id=\"3\" lat=\"37.852\" lon=\"-122.250\"/>\n"
+                + " <node id=\"4\" lat=\"37.853\" lon=\"-122.250\"/>\n"
+                + " <node id=\"5\" lat=\"37.850\" lon=\"-122.251\"/>\n"
+                + " <node id=\"6\" lat=\"37.850\" lon=\"-122.249\"/>\n"
+                + " <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"4\"/>"
+                + "<tag k=\"highway\" v=\"residential\"/></way>\n"
+                + " <way id=\"11\"><nd ref=\"5\"/><nd ref=\"1\"/><nd ref=\"6\"/>"
+                + "<tag k=\"highway\" v=\"residential\"/><tag k=\"oneway\" v=\"yes\"/></way>\n"
+                + "</osm>\n";
+        File osm = folder.newFile("chain.osm.xml");
+        Files.write(osm.toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        for (Router.Search search : Router.Search.values()) {
+            assertEquals(Arrays.asList(1L, 2L, 3L), Router.shortestPath(graph, graph.lon(1),
+                    graph.lat(1), graph.lon(3), graph.lat(3), true, search));
+            assertEquals(Arrays.asList(4L, 3L, 2L), Router.shortestPath(graph, graph.lon(4),
+                    graph.lat(4), graph.lon(2), graph.lat(2), true, search));
+        }
+    }
+
+    @Test
+    public void testMatrixKeepsToRestrictions() throws Exception {
+        File osm = folder.newFile("restrictions.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        double[][] points = {nodePoint(graph, 1), nodePoint(graph, 3), nodePoint(graph, 5)};
+        double[][] matrix = DistanceMatrix.distanceMatrix(graph, points, points);
+        /* 1 may not turn left onto 13, and 3 may not drive back against 11 */
+        assertTrue(Double.isInfinite(matrix[0][2]));
+        assertTrue(Double.isInfinite(matrix[1][0]));
+        assertTrue(Double.isInfinite(matrix[1][2]));
+        assertEquals(GraphDB.distance(points[0][0], points[0][1], points[1][0], points[1][1]),
+                matrix[0][1], 1e-6);
+        assertFalse(Double.isInfinite(matrix[2][0]));
+
+        /* The matrix agrees with the routes, which keep to the restrictions */
+        graph = randomGraph(10, 65);
+        Random random = new Random(66);
+        points = new double[12][];
+        for (int i = 0; i < points.length; i++) points[i] = randomPoint(random);
+        matrix = DistanceMatrix.distanceMatrix(graph, points, points);
+        for (int i = 0; i < points.length; i++) {
+            for (int j = 0; j < points.length; j++) {
+                Router.Route route = Router.snappedPath(graph, points[i][0], points[i][1],
+                        points[j][0], points[j][1], Router.Search.ASTAR);
+                assertEquals(route.distance, matrix[i][j], 1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testIsochroneKeepsToRestrictions() throws Exception {
+        File osm = folder.newFile("restrictions.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        double[] from = nodePoint(graph, 1);
+        List<Long> nodes = new ArrayList<>();
+        for (long id : IsochroneSearch.isochrone(graph, from[0], from[1], 10).nodes) nodes.add(id);
+        assertTrue(nodes.containsAll(Arrays.asList(1L, 2L, 3L, 6L, 7L)));
+        assertFalse(nodes.contains(4L));
+        assertFalse(nodes.contains(5L));
+
+        /* The nodes an isochrone reaches are those a search over the edges of the
+         * underlying graph reaches within the distance */
+        graph = randomGraph(10, 67);
+        CompactGraph g = graph.getCompactGraph();
+        EdgeWeights lengths = graph.getEdgeWeights(Router.Weighting.SHORTEST);
+        Random random = new Random(68);
+        for (int i = 0; i < 40; i++) {
+            double[] point = randomPoint(random);
+            double miles = 0.05 + random.nextDouble() * 0.3;
+            EdgeSnap start = graph.snap(point[0], point[1]);
+            if (start.fraction <= 0 || start.fraction >= 1) continue;
+            int[] firsts = {edge(g, start.from, start.to), edge(g, start.to, start.from)};
+            double[] firstWeights = {snapDist(g, start, start.to),
+                snapDist(g, start, start.from)};
+            double[] dist = dijkstra(graph, lengths, firsts, firstWeights, -1);
+            List<Long> expected = new ArrayList<>();
+            for (int v = 0; v < g.size(); v++) {
+                for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+                    int twin = edge(g, g.target(e), v);
+                    if (dist[twin] <= miles) {
+                        expected.add(g.id(v));
+                        break;
+                    }
+                }
+            }
+            List<Long> actual = new ArrayList<>();
+            for (long id : IsochroneSearch.isochrone(graph, point[0], point[1], miles).nodes) {
+                actual.add(id);
+            }
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testAlternativesKeepToRestrictions() throws Exception {
+        File osm = folder.newFile("restrictions.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        GraphDB graph = new GraphDB(osm.getPath());
+        double[] from = nodePoint(graph, 1), to = nodePoint(graph, 5);
+        List<Router.Route> routes = AlternativeRoutes.alternativeRoutes(graph,
+                graph.snap(from[0], from[1]), graph.snap(to[0], to[1]), 3);
+        assertEquals(1, routes.size());
+        assertFalse(routes.get(0).found());
+
+        /* Every route may be driven, and the first is the lightest route */
+        graph = randomGraph(15, 69);
+        CompactGraph g = graph.getCompactGraph();
+        EdgeWeights lengths = graph.getEdgeWeights(Router.Weighting.SHORTEST);
+        Random random = new Random(70);
+        int alternatives = 0;
+        for (int i = 0; i < 100; i++) {
+            double[] a = randomPoint(random), b = randomPoint(random);
+            EdgeSnap start = graph.snap(a[0], a[1]), dest = graph.snap(b[0], b[1]);
+            if (start.fraction <= 0 || start.fraction >= 1
+                    || dest.fraction <= 0 || dest.fraction >= 1) {
+                continue;
+            }
+            routes = AlternativeRoutes.alternativeRoutes(graph, start, dest, 3);
+            Router.Route lightest = Router.snappedPath(graph, a[0], a[1], b[0], b[1],
+                    Router.Search.ALT);
+            assertEquals(lightest.distance, routes.get(0).distance, 1e-4);
+            alternatives += routes.size() - 1;
+            for (Router.Route route : routes) {
+                if (route.nodes.isEmpty()) continue;
+                int[] walk = new int[route.nodes.size() + 2];
+                for (int j = 0; j < route.nodes.size(); j++) {
+                    walk[j + 1] = g.indexOf(route.nodes.get(j));
+                }
+                walk[0] = walk[1] == start.from ? start.to : start.from;
+                walk[walk.length - 1] = walk[walk.length - 2] == dest.from
+                        ? dest.to : dest.from;
+                weight(graph, lengths, walk);
+            }
+        }
+        assertTrue(alternatives > 0);
+    }
+
+    /* A random grid whose blocks are one-way now and then, with restrictions at corners */
+    private GraphDB randomGraph(int n, long seed) throws Exception {
+        Random random = new Random(seed);
+        String grid = TestContractedGraph.randomGrid(random, n);
+        Matcher m = Pattern.compile("<way id=\"(\\d+)\"><nd ref=\"(\\d+)\"/>(?:<nd ref=\"\\d+\"/>)*"
+                + "<nd ref=\"(\\d+)\"/><tag k=\"highway\" v=\"residential\"/>").matcher(grid);
+        StringBuffer xml = new StringBuffer();
+        Map<Long, List<Long>> waysAt = new HashMap<>();
+        while (m.find()) {
+            long way = Long.parseLong(m.group(1));
+            for (int end = 2; end <= 3; end++) {
+                waysAt.computeIfAbsent(Long.parseLong(m.group(end)), k -> new ArrayList<>())
+                        .add(way);
+            }
+            String tags = "";
+            int oneWay = random.nextInt(8);
+            if (oneWay < 2) tags = "<tag k=\"oneway\" v=\"yes\"/>";
+            else if (oneWay == 2) tags = "<tag k=\"oneway\" v=\"-1\"/>";
+            m.appendReplacement(xml, Matcher.quoteReplacement(m.group() + tags));
+        }
+        m.appendTail(xml);
+
+        StringBuilder relations = new StringBuilder();
+        List<Long> corners = new ArrayList<>(waysAt.keySet());
+        corners.sort(null);
+        for (int i = 0; i < n * n / 3; i++) {
+            long corner = corners.get(random.nextInt(corners.size()));
+            List<Long> ways = waysAt.get(corner);
+            long fromWay = ways.get(random.nextInt(ways.size()));
+            long toWay = ways.get(random.nextInt(ways.size()));
+            String restriction = random.nextInt(4) == 0 ? "only_straight_on" : "no_left_turn";
+            relations.append(" <relation id=\"").append(i + 1).append("\">")
+                    .append("<member type=\"way\" ref=\"").append(fromWay)
+                    .append("\" role=\"from\"/>")
+                    .append("<member type=\"node\" ref=\"").append(corner)
+                    .append("\" role=\"via\"/>")
+                    .append("<member type=\"way\" ref=\"").append(toWay)
+                    .append("\" role=\"to\"/>")
+                    .append("<tag k=\"type\" v=\"restriction\"/>")
+                    .append("<tag k=\"restriction\" v=\"").append(restriction)
+                    .append("\"/></relation>\n");
+        }
+        String osmXml = xml.toString().replace("</osm>", relations + "</osm>");
+        File osm = folder.newFile("grid" + seed + ".osm.xml");
+        Files.write(osm.toPath(), osmXml.getBytes(StandardCharsets.UTF_8));
+        return new GraphDB(osm.getPath());
+    }
+
+    private static double[] randomPoint(Random random) {
+        return new double[] {-122.2505 + random.nextDouble() * 0.011,
+            37.8495 + random.nextDouble() * 0.011};
+    }
+
+    private static double[] nodePoint(GraphDB graph, long id) {
+        return new double[] {graph.lon(id), graph.lat(id)};
+    }
+
+    private static double snapDist(CompactGraph g, EdgeSnap snap, int v) {
+        return GraphDB.distance(snap.lon, snap.lat, g.lon(v), g.lat(v));
+    }
+
+    private static boolean sameSegment(EdgeSnap a, EdgeSnap b) {
+        return a.from == b.from && a.to == b.to || a.from == b.to && a.to == b.from;
+    }
+
+    /**
+     * The least weights of walks over the edges of the underlying graph that drive along
+     * each edge last, never against a one-way street nor through a forbidden turn, and
+     * never turning back at a shape point of the contracted graph.
+     * @param firsts the edges the walks may start with, besides those leaving vertex s
+     * @param firstWeights the weights of the walks that start with each of firsts
+     * @param s the vertex the walks may start from, or -1
+     */
+    private static double[] dijkstra(GraphDB graph, EdgeWeights weights, int[] firsts,
+                                     double[] firstWeights, int s) {
+        CompactGraph g = graph.getCompactGraph();
+        EdgeAttributes attributes = graph.getEdgeAttributes();
+        double[] dist = new double[g.edgeCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < firsts.length; i++) {
+            if (attributes.noEntry(firsts[i])) continue;
+            dist[firsts[i]] = firstWeights[i];
+            pq.add(new double[] {firstWeights[i], firsts[i]});
+        }
+        if (s >= 0) {
+            for (int e = g.edgeBegin(s); e < g.edgeEnd(s); e++) {
+                if (attributes.noEntry(e) || weights.base(e) >= dist[e]) continue;
+                dist[e] = weights.base(e);
+                pq.add(new double[] {dist[e], e});
+            }
+        }
+        int[] sources = sources(g);
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int e = (int) top[1], v = g.target(e);
+            if (top[0] > dist[e]) continue;
+            for (int f = g.edgeBegin(v); f < g.edgeEnd(v); f++) {
+                if (attributes.noEntry(f)) continue;
+                if (!turnAllowed(graph, sources[e], v, g.target(f))) continue;
+                double d = dist[e] + weights.base(f);
+                if (d < dist[f]) {
+                    dist[f] = d;
+                    pq.add(new double[] {d, f});
+                }
+            }
+        }
+        return dist;
+    }
+
+    /* The weight of a walk through adjacent vertices, asserting that it may be driven */
+    private static double weight(GraphDB graph, EdgeWeights weights, int[] walk) {
+        CompactGraph g = graph.getCompactGraph();
+        double weight = 0;
+        for (int i = 1; i < walk.length; i++) {
+            int e = edge(g, walk[i - 1], walk[i]);
+            assertFalse(graph.getEdgeAttributes().noEntry(e));
+            if (i > 1) assertTrue(turnAllowed(graph, walk[i - 2], walk[i - 1], walk[i]));
+            weight += weights.base(e);
+        }
+        return weight;
+    }
+
+    /* Whether a route coming from a may turn at v toward b */
+    private static boolean turnAllowed(GraphDB graph, int a, int v, int b) {
+        CompactGraph g = graph.getCompactGraph();
+        ContractedGraph cg = graph.getContractedGraph();
+        if (a == b && cg.chainEdge(v) != CompactGraph.NO_VERTEX) return false;
+        return !graph.getTurnRestrictions().forbidden(v, edge(g, v, a) - g.edgeBegin(v),
+                edge(g, v, b) - g.edgeBegin(v));
+    }
+
+    private static int[] sources(CompactGraph g) {
+        int[] sources = new int[g.edgeCount()];
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) sources[e] = v;
+        }
+        return sources;
+    }
+
+    private static int source(CompactGraph g, int e) {
+        for (int v = 0; v < g.size(); v++) {
+            if (e >= g.edgeBegin(v) && e < g.edgeEnd(v)) return v;
+        }
+        throw new IllegalArgumentException("No edge " + e);
+    }
+
+    /* The edge from a to b, by vertex index */
+    private static int edge(CompactGraph g, int a, int b) {
+        for (int e = g.edgeBegin(a); e < g.edgeEnd(a); e++) {
+            if (g.target(e) == b) return e;
+        }
+        throw new AssertionError("No edge from " + a + " to " + b);
+    }
+
+    /* The edge between the nodes with the given ids */
+    private static int edge(CompactGraph g, long a, long b) {
+        return edge(g, g.indexOf(a), g.indexOf(b));
+    }
+
+    private static int slot(CompactGraph g, long a, long b) {
+        return edge(g, a, b) - g.edgeBegin(g.indexOf(a));
+    }
+}
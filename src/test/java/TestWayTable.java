@@ -0,0 +1,72 @@
+import service.GraphDB;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the way table and the way views GraphDB hands out.
+ */
+public class TestWayTable {
+    /* Ways 20 and 21 are two segments of the same street meeting at node 2, and way 22
+     * crosses it there without a name. Ways 21 and 22 are listed out of id order. */
+    private static final String OSM_XML = "<?xml version='1.0' encoding='UTF-8'?>\n"
+            + "<osm version=\"0.6\">\n"
+            + " <node id=\"1\" lat=\"37.850\" lon=\"-122.250\"/>\n"
+            + " <node id=\"2\" lat=\"37.851\" lon=\"-122.250\"/>\n"
+            + " <node id=\"3\" lat=\"37.852\" lon=\"-122.250\"/>\n"
+            + " <node id=\"4\" lat=\"37.851\" lon=\"-122.251\"/>\n"
+            + " <way id=\"20\"><nd ref=\"1\"/><nd ref=\"2\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Bancroft Way\"/></way>\n"
+            + " <way id=\"22\"><nd ref=\"4\"/><nd ref=\"2\"/><nd ref=\"4\"/>"
+            + "<tag k=\"highway\" v=\"living_street\"/></way>\n"
+            + " <way id=\"21\"><nd ref=\"2\"/><nd ref=\"3\"/>"
+            + "<tag k=\"highway\" v=\"residential\"/><tag k=\"name\" v=\"Bancroft Way\"/></way>\n"
+            + "</osm>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GraphDB graph;
+
+    @Before
+    public void setUp() throws Exception {
+        File osm = folder.newFile("ways.osm.xml");
+        Files.write(osm.toPath(), OSM_XML.getBytes(StandardCharsets.UTF_8));
+        graph = new GraphDB(osm.getPath(), GraphDB.Importer.STREAMING);
+    }
+
+    @Test
+    public void testNamesAreDistinct() {
+        Set<String> names = graph.getWayNameListByNode(2L);
+        assertEquals(new HashSet<>(Arrays.asList("Bancroft Way", null)), names);
+        assertEquals(2, names.size());
+        assertTrue(names.contains("Bancroft Way"));
+        assertFalse(names.contains("Durant Avenue"));
+        assertEquals(new HashSet<>(Arrays.asList("Bancroft Way")),
+                graph.getWayNameListByNode(3L));
+        assertTrue(graph.getWayNameListByNode(99L).isEmpty());
+    }
+
+    @Test
+    public void testWayIds() {
+        assertEquals(new HashSet<>(Arrays.asList(20L, 21L, 22L)), graph.getWayIdSetByNode(2L));
+        /* Way 22 passes node 4 twice but lists it once */
+        assertEquals(new HashSet<>(Arrays.asList(22L)), graph.getWayIdSetByNode(4L));
+        assertEquals(1, graph.getWayIdSetByNode(4L).size());
+        assertTrue(graph.containsNode(21L, 3L));
+        assertFalse(graph.containsNode(20L, 3L));
+        assertFalse(graph.containsNode(23L, 3L));
+    }
+}
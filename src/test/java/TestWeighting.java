@@ -0,0 +1,177 @@
+import service.GraphDB;
+import service.Router;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.EdgeAttributes;
+import utils.dataStructures.graph.EdgeWeights;
+import utils.dataStructures.graph.HighwayType;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that routes weighed by a profile are the lightest routes under its weights, with
+ * every search, and that the shortest profile weighs the roads by their lengths exactly.
+ */
+public class TestWeighting {
+    private static final String[] TYPES = {"motorway", "primary", "secondary", "residential",
+        "living_street", "motorway_link"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseMaxSpeed() {
+        assertEquals(31, HighwayType.parseMaxSpeed("50"));
+        assertEquals(25, HighwayType.parseMaxSpeed("25 mph"));
+        assertEquals(25, HighwayType.parseMaxSpeed("25mph"));
+        assertEquals(EdgeAttributes.NO_MAX_SPEED, HighwayType.parseMaxSpeed("signals"));
+        assertEquals(EdgeAttributes.NO_MAX_SPEED, HighwayType.parseMaxSpeed(""));
+        assertEquals(HighwayType.MOTORWAY, HighwayType.of("motorway"));
+        assertEquals(null, HighwayType.of("footway"));
+    }
+
+    @Test
+    public void testAttributes() throws Exception {
+        GraphDB graph = randomGraph(12, 51);
+        CompactGraph g = graph.getCompactGraph();
+        EdgeAttributes attributes = graph.getEdgeAttributes();
+        assertEquals(g.edgeCount(), attributes.edgeCount());
+        boolean limited = false;
+        for (int e = 0; e < g.edgeCount(); e++) {
+            assertTrue(attributes.speed(e) > 0);
+            limited |= attributes.maxSpeed(e) != EdgeAttributes.NO_MAX_SPEED;
+        }
+        assertTrue(limited);
+
+        EdgeWeights lengths = graph.getEdgeWeights(Router.Weighting.SHORTEST);
+        for (int e = 0; e < g.edgeCount(); e++) assertEquals(g.length(e), lengths.base(e), 0);
+        for (int e = 0; e < graph.getContractedGraph().edgeCount(); e++) {
+            assertEquals(graph.getContractedGraph().length(e), lengths.edge(e), 0);
+        }
+    }
+
+    @Test
+    public void testLightestAsDijkstra() throws Exception {
+        GraphDB graph = randomGraph(12, 52);
+        CompactGraph g = graph.getCompactGraph();
+        Random random = new Random(53);
+        for (Router.Weighting weighting : Router.Weighting.values()) {
+            EdgeWeights weights = graph.getEdgeWeights(weighting);
+            for (int i = 0; i < 100; i++) {
+                int s = random.nextInt(g.size()), t = random.nextInt(g.size());
+                double expected = dijkstra(g, weights, s)[t];
+                for (Router.Search search : Router.Search.values()) {
+                    for (boolean contracted : new boolean[] {false, true}) {
+                        List<Long> path = Router.shortestPath(graph, g.lon(s), g.lat(s),
+                                g.lon(t), g.lat(t), contracted, search, weighting);
+                        if (Double.isInfinite(expected)) {
+                            assertTrue(path.isEmpty());
+                            continue;
+                        }
+                        assertEquals(g.id(s), (long) path.get(0));
+                        assertEquals(g.id(t), (long) path.get(path.size() - 1));
+                        assertEquals(expected, weight(g, weights, path), 1e-5);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFastestIsNoSlower() throws Exception {
+        GraphDB graph = randomGraph(10, 54);
+        EdgeWeights times = graph.getEdgeWeights(Router.Weighting.FASTEST);
+        CompactGraph g = graph.getCompactGraph();
+        Random random = new Random(55);
+        for (int i = 0; i < 100; i++) {
+            double[] from = {-122.25 + random.nextDouble() * 0.01,
+                37.85 + random.nextDouble() * 0.01};
+            double[] to = {-122.25 + random.nextDouble() * 0.01,
+                37.85 + random.nextDouble() * 0.01};
+            Router.Route shortest = Router.snappedPath(graph, from[0], from[1], to[0], to[1],
+                    Router.Search.ASTAR);
+            Router.Route fastest = Router.snappedPath(graph, from[0], from[1], to[0], to[1],
+                    Router.Search.ASTAR, Router.Weighting.FASTEST);
+            assertEquals(shortest.found(), fastest.found());
+            if (!shortest.found() || shortest.nodes.size() < 2) continue;
+            /* The fastest route is never shorter, and never slower between its nodes */
+            assertTrue(fastest.distance >= shortest.distance - 1e-6);
+            Router.Route sameNodes = Router.snappedPath(graph, from[0], from[1], to[0], to[1],
+                    Router.Search.BIDIRECTIONAL, Router.Weighting.SHORTEST);
+            assertEquals(shortest.distance, sameNodes.distance, 1e-9);
+            if (fastest.nodes.size() >= 2 && fastest.nodes.get(0).equals(shortest.nodes.get(0))
+                    && fastest.nodes.get(fastest.nodes.size() - 1)
+                    .equals(shortest.nodes.get(shortest.nodes.size() - 1))) {
+                assertTrue(weight(g, times, fastest.nodes)
+                        <= weight(g, times, shortest.nodes) + 1e-5);
+            }
+        }
+    }
+
+    /* A random grid whose streets have random highway types, some with speed limits */
+    private GraphDB randomGraph(int n, long seed) throws Exception {
+        Random random = new Random(seed);
+        String grid = TestContractedGraph.randomGrid(random, n);
+        Matcher m = Pattern.compile("<tag k=\"highway\" v=\"residential\"/>").matcher(grid);
+        StringBuffer xml = new StringBuffer();
+        while (m.find()) {
+            String type = TYPES[random.nextInt(TYPES.length)];
+            String tags = "<tag k=\"highway\" v=\"" + type + "\"/>";
+            if (random.nextInt(3) == 0) {
+                tags += "<tag k=\"maxspeed\" v=\"" + (10 + 5 * random.nextInt(20))
+                        + (random.nextBoolean() ? " mph" : "") + "\"/>";
+            }
+            m.appendReplacement(xml, tags);
+        }
+        m.appendTail(xml);
+        File osm = folder.newFile("grid" + seed + ".osm.xml");
+        Files.write(osm.toPath(), xml.toString().getBytes(StandardCharsets.UTF_8));
+        return new GraphDB(osm.getPath());
+    }
+
+    /* The weight of a path through adjacent nodes, over the lightest edge between each */
+    private static double weight(CompactGraph g, EdgeWeights weights, List<Long> path) {
+        double weight = 0;
+        for (int i = 1; i < path.size(); i++) {
+            int u = g.indexOf(path.get(i - 1)), v = g.indexOf(path.get(i));
+            double edge = Double.POSITIVE_INFINITY;
+            for (int e = g.edgeBegin(u); e < g.edgeEnd(u); e++) {
+                if (g.target(e) == v) edge = Math.min(edge, weights.base(e));
+            }
+            assertTrue(edge < Double.POSITIVE_INFINITY);
+            weight += edge;
+        }
+        return weight;
+    }
+
+    private static double[] dijkstra(CompactGraph g, EdgeWeights weights, int s) {
+        double[] dist = new double[g.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[s] = 0;
+        boolean[] done = new boolean[g.size()];
+        for (int round = 0; round < g.size(); round++) {
+            int u = -1;
+            for (int v = 0; v < g.size(); v++) {
+                if (!done[v] && (u < 0 || dist[v] < dist[u])) u = v;
+            }
+            if (u < 0 || Double.isInfinite(dist[u])) break;
+            done[u] = true;
+            for (int e = g.edgeBegin(u); e < g.edgeEnd(u); e++) {
+                dist[g.target(e)] = Math.min(dist[g.target(e)], dist[u] + weights.base(e));
+            }
+        }
+        return dist;
+    }
+}
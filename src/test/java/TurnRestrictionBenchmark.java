@@ -0,0 +1,112 @@
+import service.GraphDB;
+import service.Router;
+import utils.Constants;
+import utils.dataStructures.graph.CompactGraph;
+import utils.dataStructures.graph.ContractedGraph;
+import utils.dataStructures.graph.TurnRestrictions;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Compares routing with one-way streets and turn restrictions, an edge-based search, to
+ * routing on the same roads with them left out, a node-based search, by the time every
+ * search takes on routes between random nodes of the largest connected component. The roads
+ * without restrictions are imported from a copy of the OSM file with its oneway and junction
+ * tags and its relations stripped. The Contraction Hierarchy rows include the routes it
+ * searches for again with ALT after making a forbidden turn. Also reports the memory the
+ * restrictions take. Not run as part of the test suite; run it with
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass="TurnRestrictionBenchmark"
+ * and optionally pass an OSM XML file path and a number of routes as arguments.
+ */
+public class TurnRestrictionBenchmark {
+    public static void main(String[] args) throws Exception {
+        String dbPath = args.length > 0 ? args[0] : Constants.OSM_DB_PATH;
+        int routes = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        File stripped = File.createTempFile("stripped", ".osm.xml");
+        stripped.deleteOnExit();
+        strip(new File(dbPath), stripped);
+        GraphDB restricted = new GraphDB(dbPath, Constants.OSM_IMPORTER);
+        GraphDB free = new GraphDB(stripped.getPath(), Constants.OSM_IMPORTER);
+        CompactGraph g = restricted.getCompactGraph();
+        ContractedGraph cg = restricted.getContractedGraph();
+
+        long start = System.nanoTime();
+        restricted.getContractedRestrictions();
+        TurnRestrictions turns = restricted.getTurnRestrictions();
+        int noEntry = 0;
+        for (int e = 0; e < g.edgeCount(); e++) {
+            if (restricted.getEdgeAttributes().noEntry(e)) noEntry++;
+        }
+        System.out.printf("%d of %d edges against one-way streets, %d forbidden turns%n",
+                noEntry, g.edgeCount(), turns.count());
+        System.out.printf("Contracted restrictions built in %.1f ms%n",
+                (System.nanoTime() - start) / 1e6);
+        System.out.printf("Memory: %d bytes of twins and closed edges, %d bytes of turns%n",
+                cg.edgeCount() * 4L + cg.edgeCount() / 8, turns.count() * 8L + g.size() / 8);
+
+        boolean[] largest = g.largestComponent();
+        Random random = new Random(1);
+        double[][] queries = new double[routes][];
+        for (int i = 0; i < routes; i++) {
+            int s, t;
+            do {
+                s = random.nextInt(g.size());
+                t = random.nextInt(g.size());
+            } while (!largest[s] || !largest[t]);
+            queries[i] = new double[] {g.lon(s), g.lat(s), g.lon(t), g.lat(t)};
+        }
+
+        /* The first round warms up the JIT and builds the lazily built indexes */
+        for (int round = 0; round < 2; round++) {
+            for (String mode : new String[] {"contracted", "snapped"}) {
+                for (Router.Search search : Router.Search.values()) {
+                    double free0 = run(free, queries, mode, search);
+                    double restricted0 = run(restricted, queries, mode, search);
+                    if (round > 0) {
+                        System.out.printf("%-10s %-22s %8.3f ms %8.3f ms  x%.2f%n", mode,
+                                search, free0, restricted0, restricted0 / free0);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Searches every query once, returning the mean time in milliseconds */
+    private static double run(GraphDB db, double[][] queries, String mode,
+                              Router.Search search) {
+        long start = System.nanoTime();
+        for (double[] q : queries) {
+            if (mode.equals("snapped")) {
+                Router.snappedPath(db, q[0], q[1], q[2], q[3], search);
+            } else {
+                Router.shortestPath(db, q[0], q[1], q[2], q[3], true, search);
+            }
+        }
+        return (System.nanoTime() - start) / 1e6 / queries.length;
+    }
+
+    /* Copies an OSM XML file without its oneway and junction tags and its relations */
+    private static void strip(File from, File to) throws Exception {
+        try (BufferedReader in = Files.newBufferedReader(from.toPath(), StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(to.toPath(), StandardCharsets.UTF_8)) {
+            boolean relation = false;
+            for (String line; (line = in.readLine()) != null; ) {
+                line = line.replaceAll("<tag k=\"(oneway|junction)\" v=\"[^\"]*\"/>", "");
+                if (line.contains("<relation")) relation = true;
+                if (!relation) {
+                    out.write(line);
+                    out.newLine();
+                }
+                if (line.contains("</relation>") || line.trim().startsWith("<relation")
+                        && line.trim().endsWith("/>")) {
+                    relation = false;
+                }
+            }
+        }
+    }
+}